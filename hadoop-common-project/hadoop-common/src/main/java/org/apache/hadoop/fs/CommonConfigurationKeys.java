@@ -95,6 +95,16 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Default value for IPC_SERVER_HANDLER_QUEUE_SIZE_KEY */
   public static final int     IPC_SERVER_HANDLER_QUEUE_SIZE_DEFAULT = 100;
 
+  /**
+   * How long a coordinated call may wait in the call queue for the server
+   * to catch up with the state id sent by the client.
+   */
+  public static final String  IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_KEY =
+    "ipc.server.coordinated-call.max-wait.ms";
+  /** Default value for IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_KEY */
+  public static final long    IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_DEFAULT =
+    1000;
+
   /**
    * CallQueue related settings. These are not used directly, but rather
    * combined with a namespace and port. For instance:
@@ -104,6 +114,7 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_CALLQUEUE_IMPL_KEY = "callqueue.impl";
   public static final String IPC_SCHEDULER_IMPL_KEY = "scheduler.impl";
   public static final String IPC_IDENTITY_PROVIDER_KEY = "identity-provider.impl";
+  public static final String IPC_COST_PROVIDER_KEY = "cost-provider.impl";
   public static final String IPC_BACKOFF_ENABLE = "backoff.enable";
   public static final boolean IPC_BACKOFF_ENABLE_DEFAULT = false;
 
@@ -338,6 +349,10 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String  IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
       "ipc.client.async.calls.max";
   public static final int     IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+  /** Number of threads reading the responses of the client connections. */
+  public static final String  IPC_CLIENT_SHARED_READERS_KEY =
+      "ipc.client.shared-readers";
+  public static final int     IPC_CLIENT_SHARED_READERS_DEFAULT = 0;
   public static final String  IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY = "ipc.client.fallback-to-simple-auth-allowed";
   public static final boolean IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT = false;
 
@@ -371,6 +386,17 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean RPC_METRICS_QUANTILE_ENABLE_DEFAULT = false;
   public static final String  RPC_METRICS_PERCENTILES_INTERVALS_KEY =
       "rpc.metrics.percentiles.intervals";
+  public static final String RPC_METRICS_LATENCY_HISTOGRAM_ENABLE =
+      "rpc.metrics.latency-histogram.enable";
+  public static final boolean RPC_METRICS_LATENCY_HISTOGRAM_ENABLE_DEFAULT =
+      false;
+  public static final String RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_KEY =
+      "rpc.metrics.latency-histogram.interval";
+  public static final int RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_DEFAULT = 60;
+  public static final String RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_KEY =
+      "rpc.metrics.latency-histogram.top-users";
+  public static final int RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_DEFAULT =
+      10;
   
   /** Allowed hosts for nfs exports */
   public static final String NFS_EXPORTS_ALLOWED_HOSTS_SEPARATOR = ";";
@@ -34,9 +34,10 @@ public interface GetSpaceUsed {
   long getUsed() throws IOException;
 
   /**
-   * The builder class
+   * The builder class. It can be extended to build implementations which
+   * need more than a path.
    */
-  final class Builder {
+  class Builder {
     static final Logger LOG = LoggerFactory.getLogger(Builder.class);
 
     static final String CLASSNAME_KEY = "fs.getspaceused.classname";
@@ -45,12 +45,15 @@ public interface HAServiceProtocol {
   /**
    * An HA service may be in active or standby state. During startup, it is in
    * an unknown INITIALIZING state. During shutdown, it is in the STOPPING state
-   * and can no longer return to active/standby states.
+   * and can no longer return to active/standby states. A service in the
+   * OBSERVER state is a standby that also serves read requests, and never
+   * becomes active without first being transitioned to standby.
    */
   public enum HAServiceState {
     INITIALIZING("initializing"),
     ACTIVE("active"),
     STANDBY("standby"),
+    OBSERVER("observer"),
     STOPPING("stopping");
 
     private String name;
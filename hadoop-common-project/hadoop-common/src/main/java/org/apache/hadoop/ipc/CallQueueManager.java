@@ -192,9 +192,9 @@ boolean shouldBackOff(Schedulable e) {
     return scheduler.shouldBackOff(e);
   }
 
-  void addResponseTime(String name, int priorityLevel, int queueTime,
-      int processingTime) {
-    scheduler.addResponseTime(name, priorityLevel, queueTime, processingTime);
+  void addResponseTime(String name, Schedulable schedulable,
+      ProcessingDetails details) {
+    scheduler.addResponseTime(name, schedulable, details);
   }
 
   // This should be only called once per call and cached in the call object
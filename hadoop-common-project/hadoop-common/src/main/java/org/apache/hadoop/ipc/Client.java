@@ -63,6 +63,8 @@
 import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.security.PrivilegedExceptionAction;
 import java.util.*;
 import java.util.Map.Entry;
@@ -149,6 +151,13 @@ public static void setCallIdAndRetryCount(int cid, int rc,
   private final static ClientExecutorServiceFactory clientExcecutorFactory =
       new ClientExecutorServiceFactory();
 
+  /**
+   * The threads reading the responses of the connections, or null if each
+   * connection reads its responses with its own thread.
+   */
+  private final SharedReader[] sharedReaders;
+  private final AtomicInteger nextSharedReader = new AtomicInteger();
+
   private static class ClientExecutorServiceFactory {
     private int executorRefCount = 0;
     private ExecutorService clientExecutor = null;
@@ -337,6 +346,7 @@ static class Call {
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
     private final Object externalHandler;
+    private AlignmentContext alignmentContext;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -365,6 +375,15 @@ public String toString() {
       return getClass().getSimpleName() + id;
     }
 
+    /**
+     * Set an AlignmentContext for the call to update when call is done.
+     *
+     * @param ac alignment context to update.
+     */
+    public synchronized void setAlignmentContext(AlignmentContext ac) {
+      this.alignmentContext = ac;
+    }
+
     /** Indicate when the call is complete and the
      * value or error are available.  Notifies by default.  */
     protected synchronized void callComplete() {
@@ -435,6 +454,9 @@ private class Connection extends Thread {
     private AtomicLong lastActivity = new AtomicLong();// last I/O activity time
     private AtomicBoolean shouldCloseConnection = new AtomicBoolean();  // indicate if the connection is closed
     private IOException closeException; // close reason
+    // when the connection started waiting for its current responses, used
+    // when they are read by a shared reader
+    private volatile long waitingSince;
     
     private final Object sendRpcRequestLock = new Object();
 
@@ -511,6 +533,9 @@ private void touch() {
     private synchronized boolean addCall(Call call) {
       if (shouldCloseConnection.get())
         return false;
+      if (calls.isEmpty()) {
+        waitingSince = Time.now();
+      }
       calls.put(call.id, call);
       notify();
       return true;
@@ -849,8 +874,10 @@ public AuthMethod run()
           }
 
           // start the receiver thread after the socket connection has been set
-          // up
-          start();
+          // up, unless a shared reader reads the responses
+          if (!registerWithSharedReader()) {
+            start();
+          }
           return;
         }
       } catch (Throwable t) {
@@ -1036,6 +1063,96 @@ public InetSocketAddress getRemoteAddress() {
       return server;
     }
 
+    /**
+     * Hand the connection to a shared reader, if the client has any.
+     * Responses unwrapped by SASL are buffered where the reader cannot see
+     * them, so the connections using SASL wrapping keep their own thread.
+     * @return true if a shared reader reads the responses
+     */
+    private boolean registerWithSharedReader() {
+      if (sharedReaders == null || socket.getChannel() == null) {
+        return false;
+      }
+      if (saslRpcClient != null && authMethod != AuthMethod.SIMPLE) {
+        final String qop =
+            (String) saslRpcClient.getNegotiatedProperty(Sasl.QOP);
+        if (qop != null && !"auth".equalsIgnoreCase(qop)) {
+          return false;
+        }
+      }
+      waitingSince = Time.now();
+      final int i = (nextSharedReader.getAndIncrement() & Integer.MAX_VALUE)
+          % sharedReaders.length;
+      sharedReaders[i].register(this);
+      return true;
+    }
+
+    /**
+     * Read the responses available on the connection, when a shared reader
+     * reads them. This does not wait for more responses than the ones which
+     * started to arrive.
+     */
+    private void receiveSharedResponses() {
+      try {
+        do {
+          if (calls.isEmpty()) {
+            // no response is expected, so the server closed the connection
+            markClosed(null);
+            return;
+          }
+          receiveRpcResponse();
+          waitingSince = Time.now();
+        } while (!shouldCloseConnection.get()
+            && ipcStreams.in.available() > 0);
+      } catch (Throwable t) {
+        LOG.warn("Unexpected error reading responses on connection " + this, t);
+        markClosed(new IOException("Error reading responses", t));
+      }
+    }
+
+    /**
+     * Do what the thread of the connection does while waiting for responses,
+     * when a shared reader reads them: close the connection once idle for
+     * too long or once the client is stopped, send pings and time out the
+     * calls.
+     * @return false if the connection should be closed
+     */
+    private boolean checkSharedConnection(long now) {
+      synchronized (this) {
+        if (shouldCloseConnection.get()) {
+          return false;
+        } else if (!running.get()) {
+          markClosed(calls.isEmpty() ? null : (IOException)
+              new IOException().initCause(new InterruptedException()));
+          return false;
+        } else if (calls.isEmpty()) {
+          if (now - lastActivity.get() >= maxIdleTime) {
+            markClosed(null);
+            return false;
+          }
+          return true;
+        }
+      }
+      final long waiting = now - waitingSince;
+      if (waiting < soTimeout) {
+        return true;
+      }
+      if (0 < rpcTimeout && rpcTimeout <= waiting) {
+        markClosed(new SocketTimeoutException(waiting
+            + " millis timeout while waiting for responses from " + server));
+        return false;
+      }
+      if (doPing) {
+        try {
+          sendPing();
+        } catch (IOException e) {
+          markClosed(e);
+          return false;
+        }
+      }
+      return true;
+    }
+
     /* Send a ping to the server if the time elapsed 
      * since last I/O activity is equal to or greater than the ping interval
      */
@@ -1100,10 +1217,10 @@ public void sendRpcRequest(final Call call)
       // Items '1' and '2' are prepared here. 
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
 
       final ResponseBuffer buf = new ResponseBuffer();
-      header.writeDelimitedTo(buf);
+      buf.writeDelimited(header);
       RpcWritable.wrap(call.rpcRequest).writeTo(buf);
 
       synchronized (sendRpcRequestLock) {
@@ -1176,6 +1293,9 @@ private void receiveRpcResponse() {
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = packet.newInstance(valueClass, conf);
           final Call call = calls.remove(callId);
+          if (call.alignmentContext != null) {
+            call.alignmentContext.receiveResponseState(header);
+          }
           call.setRpcResponse(value);
         }
         // verify that packet length was correct
@@ -1282,6 +1402,34 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
     this.maxAsyncCalls = conf.getInt(
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT);
+    this.sharedReaders = createSharedReaders(conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_SHARED_READERS_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_SHARED_READERS_DEFAULT));
+  }
+
+  private SharedReader[] createSharedReaders(int numReaders) {
+    if (numReaders <= 0) {
+      return null;
+    }
+    final SharedReader[] readers = new SharedReader[numReaders];
+    try {
+      for (int i = 0; i < numReaders; i++) {
+        readers[i] = new SharedReader(i);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to create the shared readers, the connections will "
+          + "read their responses with their own thread", e);
+      for (SharedReader reader : readers) {
+        if (reader != null) {
+          IOUtils.cleanupWithLogger(LOG, reader.selector);
+        }
+      }
+      return null;
+    }
+    for (SharedReader reader : readers) {
+      reader.start();
+    }
+    return readers;
   }
 
   /**
@@ -1324,6 +1472,12 @@ public void stop() {
       } catch (InterruptedException e) {
       }
     }
+
+    if (sharedReaders != null) {
+      for (SharedReader reader : sharedReaders) {
+        reader.shutdown();
+      }
+    }
     
     clientExcecutorFactory.unrefAndCleanup();
   }
@@ -1379,7 +1533,31 @@ private void checkAsyncCall() throws IOException {
   Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId, int serviceClass,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return call(rpcKind, rpcRequest, remoteId, serviceClass,
+        fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, returning the rpc response.
+   *
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @param serviceClass - service class for RPC
+   * @param fallbackToSimpleAuth - set to true or false during this method to
+   *   indicate if a secure client falls back to simple auth
+   * @param alignmentContext - state alignment context, may be null
+   * @returns the rpc response
+   * Throws exceptions if there are network problems or if the remote code
+   * threw an exception.
+   */
+  Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
+      ConnectionId remoteId, int serviceClass,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
+    call.setAlignmentContext(alignmentContext);
     final Connection connection = getConnection(remoteId, call, serviceClass,
         fallbackToSimpleAuth);
 
@@ -1553,6 +1731,94 @@ private Connection getConnection(ConnectionId remoteId,
     return connection;
   }
   
+  /**
+   * A thread which reads the responses of many connections, so that a client
+   * with many connections does not need a thread for each of them. It waits
+   * for any of its connections to become readable, then reads the responses
+   * which arrived with the same streams a connection thread uses. It also
+   * does what a connection thread does while waiting: it sends the pings,
+   * times out the calls and closes the idle connections. A response which
+   * arrives slowly delays the responses of the other connections of the
+   * reader.
+   */
+  private class SharedReader extends Thread {
+    /** How often the connections are checked when they are not read. */
+    private static final long CHECK_INTERVAL = 100;
+
+    private final Selector selector;
+    private final Queue<Connection> pending =
+        new ConcurrentLinkedQueue<Connection>();
+    private volatile boolean shutdown = false;
+
+    SharedReader(int id) throws IOException {
+      this.selector = Selector.open();
+      setName("IPC Client (" + socketFactory.hashCode() + ") shared reader #"
+          + id);
+      setDaemon(true);
+    }
+
+    void register(Connection connection) {
+      pending.add(connection);
+      selector.wakeup();
+    }
+
+    /** Stop the reader once the client has closed all its connections. */
+    void shutdown() {
+      shutdown = true;
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      LOG.debug("{}: starting", getName());
+      try {
+        while (!shutdown) {
+          selector.select(CHECK_INTERVAL);
+          for (Connection c; (c = pending.poll()) != null;) {
+            try {
+              c.socket.getChannel().register(
+                  selector, SelectionKey.OP_READ, c);
+            } catch (IOException e) {
+              c.markClosed(e);
+              c.close();
+            }
+          }
+          final Iterator<SelectionKey> it =
+              selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+            ((Connection) key.attachment()).receiveSharedResponses();
+          }
+          final long now = Time.now();
+          for (SelectionKey key : selector.keys()) {
+            final Connection c = (Connection) key.attachment();
+            if (key.isValid() && !c.checkSharedConnection(now)) {
+              key.cancel();
+              c.close();
+            }
+          }
+        }
+      } catch (Throwable t) {
+        LOG.error(getName() + ": unexpected error, closing its connections",
+            t);
+        final IOException e = new IOException("Error reading responses", t);
+        for (SelectionKey key : selector.keys()) {
+          final Connection c = (Connection) key.attachment();
+          c.markClosed(e);
+          c.close();
+        }
+        for (Connection c; (c = pending.poll()) != null;) {
+          c.markClosed(e);
+          c.close();
+        }
+      } finally {
+        IOUtils.cleanupWithLogger(LOG, selector);
+      }
+      LOG.debug("{}: stopped", getName());
+    }
+  }
+
   /**
    * This class holds the address and the user ticket. The client connections
    * to servers are uniquely identified by <remoteAddress, protocol, ticket>
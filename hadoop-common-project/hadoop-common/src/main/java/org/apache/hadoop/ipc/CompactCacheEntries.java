@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The retry cache entries of the calls which completed successfully without
+ * a payload, stored in primitive arrays rather than as one
+ * {@link RetryCache.CacheEntry} object per call, so that the garbage
+ * collector does not have to trace them.
+ * <p>
+ * The entries are kept in a ring buffer in the order they were added, which
+ * is also the order they expire in, as they all live for the same time. The
+ * oldest entries are dropped when they expire or when the ring buffer is
+ * full and cannot grow anymore. A hash table of chains of ring buffer slots,
+ * also stored in arrays, indexes the entries by client ID and call ID.
+ * <p>
+ * This class is not thread safe.
+ */
+@InterfaceAudience.Private
+class CompactCacheEntries {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int NONE = -1;
+
+  private final int maxCapacity;
+
+  // The entries, indexed by slot
+  private long[] clientIdMsbs;
+  private long[] clientIdLsbs;
+  private int[] callIds;
+  private long[] expirationTimes;
+  /** The next slot in the chain of the slot's bucket, or NONE. */
+  private int[] nextSlots;
+  /** The first slot of the chain of each bucket, or NONE. */
+  private int[] buckets;
+
+  /** The slot of the oldest entry. */
+  private int head = 0;
+  private int size = 0;
+
+  CompactCacheEntries(int maxCapacity) {
+    Preconditions.checkArgument(maxCapacity > 0);
+    this.maxCapacity = maxCapacity;
+    allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+  }
+
+  private void allocate(int capacity) {
+    clientIdMsbs = new long[capacity];
+    clientIdLsbs = new long[capacity];
+    callIds = new int[capacity];
+    expirationTimes = new long[capacity];
+    nextSlots = new int[capacity];
+    // a power of two at least as large as the capacity
+    buckets = new int[Integer.highestOneBit(Math.max(capacity - 1, 1)) * 2];
+    Arrays.fill(buckets, NONE);
+  }
+
+  int size() {
+    return size;
+  }
+
+  private int capacity() {
+    return callIds.length;
+  }
+
+  private int bucket(long msb, long lsb, int callId) {
+    final int hash = (RetryCache.CacheEntry.hashCode(msb) * 31
+        + RetryCache.CacheEntry.hashCode(lsb)) * 31 + callId;
+    return (hash ^ (hash >>> 16)) & (buckets.length - 1);
+  }
+
+  /** @return whether an entry which has not expired exists. */
+  boolean contains(long msb, long lsb, int callId, long now) {
+    evictExpired(now);
+    return find(msb, lsb, callId) != NONE;
+  }
+
+  private int find(long msb, long lsb, int callId) {
+    for (int s = buckets[bucket(msb, lsb, callId)]; s != NONE;
+        s = nextSlots[s]) {
+      if (callIds[s] == callId && clientIdMsbs[s] == msb
+          && clientIdLsbs[s] == lsb) {
+        return s;
+      }
+    }
+    return NONE;
+  }
+
+  /** Add an entry, unless it already exists. */
+  void add(long msb, long lsb, int callId, long expirationTime, long now) {
+    evictExpired(now);
+    if (find(msb, lsb, callId) != NONE) {
+      return;
+    }
+    if (size == capacity()) {
+      if (capacity() < maxCapacity) {
+        grow();
+      } else {
+        removeOldest();
+      }
+    }
+    final int slot = (head + size) % capacity();
+    clientIdMsbs[slot] = msb;
+    clientIdLsbs[slot] = lsb;
+    callIds[slot] = callId;
+    expirationTimes[slot] = expirationTime;
+    final int b = bucket(msb, lsb, callId);
+    nextSlots[slot] = buckets[b];
+    buckets[b] = slot;
+    size++;
+  }
+
+  /** Drop the expired entries, which are the oldest ones. */
+  private void evictExpired(long now) {
+    while (size > 0 && expirationTimes[head] - now <= 0) {
+      removeOldest();
+    }
+  }
+
+  private void removeOldest() {
+    final int slot = head;
+    final int b = bucket(clientIdMsbs[slot], clientIdLsbs[slot],
+        callIds[slot]);
+    if (buckets[b] == slot) {
+      buckets[b] = nextSlots[slot];
+    } else {
+      int s = buckets[b];
+      while (nextSlots[s] != slot) {
+        s = nextSlots[s];
+      }
+      nextSlots[s] = nextSlots[slot];
+    }
+    head = (head + 1) % capacity();
+    size--;
+  }
+
+  /** Double the capacity, moving the entries to the start of the arrays. */
+  private void grow() {
+    final long[] msbs = clientIdMsbs;
+    final long[] lsbs = clientIdLsbs;
+    final int[] ids = callIds;
+    final long[] times = expirationTimes;
+    final int oldHead = head;
+    final int oldSize = size;
+    final int oldCapacity = capacity();
+
+    allocate((int) Math.min((long) oldCapacity * 2, maxCapacity));
+    head = 0;
+    size = 0;
+    for (int i = 0; i < oldSize; i++) {
+      final int s = (oldHead + i) % oldCapacity;
+      final int slot = size++;
+      clientIdMsbs[slot] = msbs[s];
+      clientIdLsbs[slot] = lsbs[s];
+      callIds[slot] = ids[s];
+      expirationTimes[slot] = times[s];
+      final int b = bucket(msbs[s], lsbs[s], ids[s]);
+      nextSlots[slot] = buckets[b];
+      buckets[b] = slot;
+    }
+  }
+
+  /** Remove all the entries, keeping the current capacity. */
+  void clear() {
+    Arrays.fill(buckets, NONE);
+    head = 0;
+    size = 0;
+  }
+}
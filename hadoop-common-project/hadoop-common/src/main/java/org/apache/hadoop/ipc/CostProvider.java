@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * The CostProvider computes the cost of a call from its
+ * {@link ProcessingDetails}. A scheduler such as {@link DecayRpcScheduler}
+ * charges each caller the cost of its calls, and prioritizes the callers
+ * with the lowest total cost.
+ */
+@InterfaceAudience.Private
+public interface CostProvider {
+
+  /**
+   * Initialize this provider using the given configuration.
+   * @param namespace the namespace the scheduler is configured with, used as
+   *                  the prefix of the configuration keys
+   * @param conf the configuration to use
+   */
+  void init(String namespace, Configuration conf);
+
+  /**
+   * Get the cost of a call.
+   * @param details the times the call took to be processed
+   * @return the cost of the call
+   */
+  long getCost(ProcessingDetails details);
+}
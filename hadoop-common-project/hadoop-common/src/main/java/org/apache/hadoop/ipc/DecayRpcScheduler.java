@@ -60,6 +60,12 @@
  * decays the counts at a fixed time interval. The scheduler is optimized
  * for large periods (on the order of seconds), as it offloads work to the
  * decay sweep.
+ * <p>
+ * Instead of counting calls, the scheduler can charge each caller the cost
+ * of its calls, as computed by the configured {@link CostProvider} from the
+ * {@link ProcessingDetails} of each call once it has been processed. With
+ * the {@link DefaultCostProvider}, every call costs 1 and is charged when it
+ * is queued.
  */
 public class DecayRpcScheduler implements RpcScheduler,
     DecayRpcSchedulerMXBean, MetricsSource {
@@ -131,9 +137,9 @@ public class DecayRpcScheduler implements RpcScheduler,
 
   private static final ObjectWriter WRITER = new ObjectMapper().writer();
 
-  // Track the decayed and raw (no decay) number of calls for each schedulable
-  // identity from all previous decay windows: idx 0 for decayed call count and
-  // idx 1 for the raw call count
+  // Track the decayed and raw (no decay) number of calls, or their cost, for
+  // each schedulable identity from all previous decay windows: idx 0 for
+  // decayed call count and idx 1 for the raw call count
   private final ConcurrentHashMap<Object, List<AtomicLong>> callCounts =
       new ConcurrentHashMap<Object, List<AtomicLong>>();
 
@@ -162,6 +168,10 @@ public class DecayRpcScheduler implements RpcScheduler,
   private final int numLevels;
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
+  private final CostProvider costProvider;
+  // whether calls are charged by their cost once processed rather than
+  // counted when queued
+  private final boolean chargeProcessedCost;
   private final boolean backOffByResponseTimeEnabled;
   private final long[] backOffResponseTimeThresholds;
   private final String namespace;
@@ -213,6 +223,8 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.decayFactor = parseDecayFactor(ns, conf);
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
+    this.costProvider = this.parseCostProvider(ns, conf);
+    this.chargeProcessedCost = !(costProvider instanceof DefaultCostProvider);
     this.thresholds = parseThresholds(ns, conf, numLevels);
     this.backOffByResponseTimeEnabled = parseBackOffByResponseTimeEnabled(ns,
         conf);
@@ -256,6 +268,22 @@ private IdentityProvider parseIdentityProvider(String ns,
     return providers.get(0); // use the first
   }
 
+  private CostProvider parseCostProvider(String ns, Configuration conf) {
+    List<CostProvider> providers = conf.getInstances(
+        ns + "." + CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        CostProvider.class);
+
+    CostProvider provider;
+    if (providers.size() < 1) {
+      LOG.info("CostProvider not specified, defaulting to DefaultCostProvider");
+      provider = new DefaultCostProvider();
+    } else {
+      provider = providers.get(0); // use the first
+    }
+    provider.init(ns, conf);
+    return provider;
+  }
+
   private static double parseDecayFactor(String ns, Configuration conf) {
     double factor = conf.getDouble(ns + "." +
         IPC_FCQ_DECAYSCHEDULER_FACTOR_KEY, 0.0);
@@ -461,6 +489,16 @@ private void recomputeScheduleCache() {
    */
   private long getAndIncrementCallCounts(Object identity)
       throws InterruptedException {
+    return getAndAddCallCounts(identity, 1);
+  }
+
+  /**
+   * Get the decayed count of an identity and add to it atomically.
+   * @param identity the identity of the user to charge
+   * @param cost the count or cost to add
+   * @return the decayed value before the addition
+   */
+  private long getAndAddCallCounts(Object identity, long cost) {
     // We will increment the count, or create it if no such count exists
     List<AtomicLong> count = this.callCounts.get(identity);
     if (count == null) {
@@ -479,14 +517,22 @@ private long getAndIncrementCallCounts(Object identity)
     }
 
     // Update the total
-    totalDecayedCallCount.getAndIncrement();
-    totalRawCallCount.getAndIncrement();
+    totalDecayedCallCount.getAndAdd(cost);
+    totalRawCallCount.getAndAdd(cost);
 
     // At this point value is guaranteed to be not null. It may however have
     // been clobbered from callCounts. Nonetheless, we return what
     // we have.
-    count.get(1).getAndIncrement();
-    return count.get(0).getAndIncrement();
+    count.get(1).getAndAdd(cost);
+    return count.get(0).getAndAdd(cost);
+  }
+
+  /**
+   * @return the decayed count or cost of the identity so far
+   */
+  private long getCallCount(Object identity) {
+    List<AtomicLong> count = callCounts.get(identity);
+    return count == null ? 0 : count.get(0).get();
   }
 
   /**
@@ -521,7 +567,9 @@ private int computePriorityLevel(long occurrences) {
    */
   private int cachedOrComputedPriorityLevel(Object identity) {
     try {
-      long occurrences = this.getAndIncrementCallCounts(identity);
+      // When charging by cost, the call is charged once it is processed
+      long occurrences = chargeProcessedCost ? getCallCount(identity)
+          : this.getAndIncrementCallCounts(identity);
 
       // Try the cache
       Map<Object, Integer> scheduleCache = scheduleCacheRef.get();
@@ -604,6 +652,24 @@ public void addResponseTime(String name, int priorityLevel, int queueTime,
     }
   }
 
+  @Override
+  public void addResponseTime(String callName, Schedulable schedulable,
+      ProcessingDetails details) {
+    if (chargeProcessedCost) {
+      String identity = this.identityProvider.makeIdentity(schedulable);
+      if (identity == null) {
+        identity = DECAYSCHEDULER_UNKNOWN_IDENTITY;
+      }
+      long cost = costProvider.getCost(details);
+      getAndAddCallCounts(identity, cost);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Charged cost {} to {} for call {}: {}", cost, identity,
+            callName, details);
+      }
+    }
+    RpcScheduler.super.addResponseTime(callName, schedulable, details);
+  }
+
   // Update the cached average response time at the end of the decay window
   void updateAverageResponseTime(boolean enableDecay) {
     for (int i = 0; i < numLevels; i++) {
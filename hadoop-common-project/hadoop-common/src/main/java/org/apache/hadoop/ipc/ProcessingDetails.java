@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Stores the times that a call takes to be processed through each step of
+ * its lifecycle. The RPC server records the queue and processing times, and
+ * the server implementation can break the processing time down further, for
+ * instance by the time spent holding a lock. The times are passed to the
+ * {@link RpcScheduler} once the call has been processed, so that it can
+ * charge the caller for the cost of the call.
+ * <p>
+ * The times are stored in nanoseconds. This class is not thread safe; the
+ * details of a call are only updated by the handler processing it.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public class ProcessingDetails {
+  /** The steps of processing a call whose time is tracked. */
+  public enum Timing {
+    /** Time waiting in the call queue. */
+    QUEUE,
+    /** Time spent by the handler processing the call. */
+    PROCESSING,
+    /**
+     * Time of the processing not accounted for by the other timings, which
+     * is computed when the call has been processed.
+     */
+    LOCKFREE,
+    /** Time waiting to acquire a lock. */
+    LOCKWAIT,
+    /** Time holding a shared (read) lock. */
+    LOCKSHARED,
+    /** Time holding an exclusive (write) lock. */
+    LOCKEXCLUSIVE;
+
+    /** @return the name used for the timing in configuration keys. */
+    public String getConfigName() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final long[] timings = new long[Timing.values().length];
+
+  ProcessingDetails() {
+  }
+
+  /** @return the time of the given timing, in the given unit. */
+  public long get(Timing type, TimeUnit unit) {
+    return unit.convert(timings[type.ordinal()], TimeUnit.NANOSECONDS);
+  }
+
+  /** Set the time of the given timing. */
+  public void set(Timing type, long value, TimeUnit unit) {
+    timings[type.ordinal()] = TimeUnit.NANOSECONDS.convert(value, unit);
+  }
+
+  /** Add to the time of the given timing. */
+  public void add(Timing type, long value, TimeUnit unit) {
+    timings[type.ordinal()] += TimeUnit.NANOSECONDS.convert(value, unit);
+  }
+
+  /**
+   * Set {@link Timing#LOCKFREE} to the part of {@link Timing#PROCESSING} not
+   * spent waiting for or holding a lock.
+   */
+  void computeLockFreeTime() {
+    long lockTime = timings[Timing.LOCKWAIT.ordinal()]
+        + timings[Timing.LOCKSHARED.ordinal()]
+        + timings[Timing.LOCKEXCLUSIVE.ordinal()];
+    timings[Timing.LOCKFREE.ordinal()] =
+        Math.max(0, timings[Timing.PROCESSING.ordinal()] - lockTime);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Timing type : Timing.values()) {
+      if (sb.length() > 0) {
+        sb.append(" ");
+      }
+      sb.append(type.getConfigName()).append("Time=")
+          .append(get(type, TimeUnit.MICROSECONDS)).append("us");
+    }
+    return sb.toString();
+  }
+}
@@ -26,6 +26,9 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
 @InterfaceAudience.Private
 /** generates byte-length framed buffers. */
 public class ResponseBuffer extends DataOutputStream {
@@ -67,6 +70,15 @@ void ensureCapacity(int capacity) {
     }
   }
 
+  /**
+   * Write a length-delimited protobuf straight into the buffer. Unlike
+   * {@link Message#writeDelimitedTo}, the message is not first serialized
+   * into an intermediate buffer of the coded stream and then copied.
+   */
+  void writeDelimited(Message message) throws IOException {
+    written += ((FramedBuffer)out).writeDelimited(message);
+  }
+
   ResponseBuffer reset() {
     written = 0;
     ((FramedBuffer)out).reset();
@@ -95,6 +107,19 @@ int capacity() {
     void setCapacity(int capacity) {
       buf = Arrays.copyOf(buf, capacity + FRAMING_BYTES);
     }
+    int writeDelimited(Message message) throws IOException {
+      final int size = message.getSerializedSize();
+      final int length = CodedOutputStream.computeRawVarint32Size(size) + size;
+      if (buf.length - count < length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+      }
+      CodedOutputStream cos = CodedOutputStream.newInstance(buf, count, length);
+      cos.writeRawVarint32(size);
+      message.writeTo(cos);
+      cos.checkNoSpaceLeft();
+      count += length;
+      return length;
+    }
     @Override
     public void reset() {
       count = FRAMING_BYTES;
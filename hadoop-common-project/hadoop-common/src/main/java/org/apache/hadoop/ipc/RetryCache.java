@@ -47,6 +47,11 @@ public class RetryCache {
   public static final Logger LOG = LoggerFactory.getLogger(RetryCache.class);
   private final RetryCacheMetrics retryCacheMetrics;
   private static final int MAX_CAPACITY = 16;
+  /**
+   * The capacity of the set of the entries in progress, which are bounded by
+   * the number of RPC handlers.
+   */
+  private static final int IN_PROGRESS_CAPACITY = 1024;
 
   /**
    * CacheEntry is tracked using unique client ID and callId of the RPC request
@@ -68,6 +73,8 @@ public static class CacheEntry implements LightWeightCache.Entry {
     private final int callId;
     private final long expirationTime;
     private LightWeightGSet.LinkedElement next;
+    // the compact cache to move the entry to once it completed
+    private RetryCache compactingCache;
 
     CacheEntry(byte[] clientId, int callId, long expirationTime) {
       // ClientId must be a UUID - that is 16 octets.
@@ -87,7 +94,16 @@ public static class CacheEntry implements LightWeightCache.Entry {
       this.state = success ? SUCCESS : FAILED;
     }
 
-    private static int hashCode(long value) {
+    /** Constructor of a successful entry found in the compact entries. */
+    private CacheEntry(CacheEntry entry) {
+      this.clientIdMsb = entry.clientIdMsb;
+      this.clientIdLsb = entry.clientIdLsb;
+      this.callId = entry.callId;
+      this.expirationTime = entry.expirationTime;
+      this.state = SUCCESS;
+    }
+
+    static int hashCode(long value) {
       return (int)(value ^ (value >>> 32));
     }
     
@@ -182,6 +198,17 @@ public Object getPayload() {
   }
 
   private final LightWeightGSet<CacheEntry, CacheEntry> set;
+  /**
+   * The entries without a payload which are in progress, or null if they are
+   * kept in {@link #set}. Unlike {@link #set}, it has no expiry queue, so an
+   * entry is removed from it in constant time once it completed.
+   */
+  private final LightWeightGSet<CacheEntry, CacheEntry> inProgressEntries;
+  /**
+   * The entries which completed successfully without a payload, or null if
+   * they are kept in {@link #set}.
+   */
+  private final CompactCacheEntries compactEntries;
   private final long expirationTime;
   private String cacheName;
 
@@ -194,10 +221,28 @@ public Object getPayload() {
    * @param expirationTime time for an entry to expire in nanoseconds
    */
   public RetryCache(String cacheName, double percentage, long expirationTime) {
+    this(cacheName, percentage, expirationTime, false);
+  }
+
+  /**
+   * Constructor
+   * @param cacheName name to identify the cache by
+   * @param percentage percentage of total java heap space used by this cache
+   * @param expirationTime time for an entry to expire in nanoseconds
+   * @param compact whether to store the entries which completed successfully
+   *                without a payload in primitive arrays, instead of keeping
+   *                their {@link CacheEntry} object
+   */
+  public RetryCache(String cacheName, double percentage, long expirationTime,
+      boolean compact) {
     int capacity = LightWeightGSet.computeCapacity(percentage, cacheName);
     capacity = capacity > MAX_CAPACITY ? capacity : MAX_CAPACITY;
     this.set = new LightWeightCache<CacheEntry, CacheEntry>(capacity, capacity,
         expirationTime, 0);
+    this.inProgressEntries = compact ?
+        new LightWeightGSet<CacheEntry, CacheEntry>(IN_PROGRESS_CAPACITY) :
+        null;
+    this.compactEntries = compact ? new CompactCacheEntries(capacity) : null;
     this.expirationTime = expirationTime;
     this.cacheName = cacheName;
     this.retryCacheMetrics =  RetryCacheMetrics.create(this);
@@ -227,6 +272,17 @@ public LightWeightGSet<CacheEntry, CacheEntry> getCacheSet() {
     return set;
   }
 
+  /** @return the number of entries stored in the compact entries. */
+  @VisibleForTesting
+  public int getCompactEntriesSize() {
+    lock.lock();
+    try {
+      return compactEntries == null ? 0 : compactEntries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
   @VisibleForTesting
   public RetryCacheMetrics getMetricsForTests() {
     return retryCacheMetrics;
@@ -261,6 +317,16 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
     lock.lock();
     try {
       mapEntry = set.get(newEntry);
+      if (mapEntry == null && inProgressEntries != null) {
+        mapEntry = inProgressEntries.get(newEntry);
+      }
+      if (mapEntry == null && compactEntries != null
+          && compactEntries.contains(newEntry.clientIdMsb,
+              newEntry.clientIdLsb, newEntry.callId, System.nanoTime())) {
+        // The request completed successfully, there is nothing to wait for
+        retryCacheMetrics.incrCacheHit();
+        return new CacheEntry(newEntry);
+      }
       // If an entry in the cache does not exist, add a new one
       if (mapEntry == null) {
         if (LOG.isTraceEnabled()) {
@@ -268,7 +334,12 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
               + newEntry.clientIdMsb + newEntry.clientIdLsb + " callId "
               + newEntry.callId + " to retryCache");
         }
-        set.put(newEntry);
+        if (compactEntries != null && newEntry.getClass() == CacheEntry.class) {
+          newEntry.compactingCache = this;
+          inProgressEntries.put(newEntry);
+        } else {
+          set.put(newEntry);
+        }
         retryCacheMetrics.incrCacheUpdated();
         return newEntry;
       } else {
@@ -298,6 +369,28 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
     }
     return mapEntry;
   }
+
+  /**
+   * Move an entry which completed from {@link #inProgressEntries} to
+   * {@link #compactEntries} if it succeeded, or to {@link #set} otherwise,
+   * where it expires and its retry waits for it. An entry already moved to
+   * {@link #set} by a previous failure stays there.
+   */
+  private void completed(CacheEntry entry, boolean success) {
+    lock.lock();
+    try {
+      if (inProgressEntries.remove(entry) != null) {
+        if (success) {
+          compactEntries.add(entry.clientIdMsb, entry.clientIdLsb,
+              entry.callId, entry.expirationTime, System.nanoTime());
+        } else {
+          set.put(entry);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
   
   /** 
    * Add a new cache entry into the retry cache. The cache entry consists of 
@@ -308,7 +401,12 @@ public void addCacheEntry(byte[] clientId, int callId) {
         + expirationTime, true);
     lock.lock();
     try {
-      set.put(newEntry);
+      if (compactEntries != null) {
+        compactEntries.add(newEntry.clientIdMsb, newEntry.clientIdLsb,
+            newEntry.callId, newEntry.expirationTime, System.nanoTime());
+      } else {
+        set.put(newEntry);
+      }
     } finally {
       lock.unlock();
     }
@@ -364,6 +462,9 @@ public static void setState(CacheEntry e, boolean success) {
       return;
     }
     e.completed(success);
+    if (e.compactingCache != null) {
+      e.compactingCache.completed(e, success);
+    }
   }
 
   public static void setState(CacheEntryWithPayload e, boolean success,
@@ -378,6 +479,15 @@ public static void setState(CacheEntryWithPayload e, boolean success,
   public static void clear(RetryCache cache) {
     if (cache != null) {
       cache.set.clear();
+      if (cache.compactEntries != null) {
+        cache.lock();
+        try {
+          cache.inProgressEntries.clear();
+          cache.compactEntries.clear();
+        } finally {
+          cache.unlock();
+        }
+      }
       cache.incrCacheClearedCounter();
     }
   }
@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.ipc;
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+
 /**
  * Implement this interface to be used for RPC scheduling and backoff.
  *
@@ -33,5 +37,22 @@ public interface RpcScheduler {
   void addResponseTime(String name, int priorityLevel, int queueTime,
       int processingTime);
 
+  /**
+   * Store the processing details of a call which has been processed.
+   * Schedulers which charge callers by the cost of their calls should
+   * override this. By default it passes the queue and processing times, in
+   * milliseconds, to {@link #addResponseTime(String, int, int, int)}.
+   *
+   * @param callName the name of the call
+   * @param schedulable the call which has been processed
+   * @param details the times the call took to be processed
+   */
+  default void addResponseTime(String callName, Schedulable schedulable,
+      ProcessingDetails details) {
+    addResponseTime(callName, schedulable.getPriorityLevel(),
+        (int) details.get(Timing.QUEUE, TimeUnit.MILLISECONDS),
+        (int) details.get(Timing.PROCESSING, TimeUnit.MILLISECONDS));
+  }
+
   void stop();
 }
@@ -30,7 +30,6 @@
 import org.apache.hadoop.io.Writable;
 
 import com.google.protobuf.CodedInputStream;
-import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
 
 // note anything marked public is solely for access by SaslRpcClient
@@ -105,10 +104,7 @@ Message getMessage() {
 
     @Override
     void writeTo(ResponseBuffer out) throws IOException {
-      int length = message.getSerializedSize();
-      length += CodedOutputStream.computeRawVarint32Size(length);
-      out.ensureCapacity(length);
-      message.writeDelimitedTo(out);
+      out.writeDelimited(message);
     }
 
     @SuppressWarnings("unchecked")
@@ -62,7 +62,11 @@
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -82,11 +86,14 @@
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
 import org.apache.hadoop.ipc.RPC.RpcInvoker;
 import org.apache.hadoop.ipc.RPC.VersionMismatch;
 import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
+import org.apache.hadoop.ipc.metrics.RpcLatencyMetrics;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
 import org.apache.hadoop.ipc.protobuf.IpcConnectionContextProtos.IpcConnectionContextProto;
+import org.apache.hadoop.ipc.protobuf.ProtobufRpcEngineProtos.RequestHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcKindProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
@@ -120,6 +127,7 @@
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
@@ -140,6 +148,19 @@ public abstract class Server {
   private RpcSaslProto negotiateResponse;
   private ExceptionsHandler exceptionsHandler = new ExceptionsHandler();
   private Tracer tracer;
+  private AlignmentContext alignmentContext;
+  private final long coordinatedCallMaxWaitMs;
+  /**
+   * How long a coordinated call which is ahead of the server state waits
+   * before it is queued again.
+   */
+  private static final long COORDINATED_CALL_REQUEUE_DELAY_MS = 5;
+  /**
+   * Queues the coordinated calls ahead of the server state again after a
+   * delay, so that the handlers do not spin on them. Only started when an
+   * AlignmentContext is set.
+   */
+  private ScheduledExecutorService coordinatedCallRequeuer;
   
   /**
    * Add exception classes for which server won't log stack traces.
@@ -415,6 +436,8 @@ public static int getPriorityLevel() {
   private Class<? extends Writable> rpcRequestClass;   // class used for deserializing the rpc request
   final protected RpcMetrics rpcMetrics;
   final protected RpcDetailedMetrics rpcDetailedMetrics;
+  /** The per method and per user latency histograms, null if disabled. */
+  final protected RpcLatencyMetrics rpcLatencyMetrics;
   
   private Configuration conf;
   private String portRangeConfig = null;
@@ -506,8 +529,21 @@ void updateMetrics(String name, int queueTime, int processingTime,
     if (!deferredCall) {
       rpcMetrics.addRpcProcessingTime(processingTime);
       rpcDetailedMetrics.addProcessingTime(name, processingTime);
-      callQueue.addResponseTime(name, getPriorityLevel(), queueTime,
-          processingTime);
+      Call call = CurCall.get();
+      if (rpcLatencyMetrics != null) {
+        UserGroupInformation ugi =
+            call != null ? call.getUserGroupInformation() : null;
+        rpcLatencyMetrics.add(name,
+            ugi != null ? ugi.getShortUserName() : null,
+            queueTime, processingTime);
+      }
+      if (call != null) {
+        ProcessingDetails details = call.getProcessingDetails();
+        details.set(Timing.QUEUE, queueTime, TimeUnit.MILLISECONDS);
+        details.set(Timing.PROCESSING, processingTime, TimeUnit.MILLISECONDS);
+        details.computeLockFreeTime();
+        callQueue.addResponseTime(name, call, details);
+      }
       if (isLogSlowRPC()) {
         logSlowRpcCalls(name, processingTime);
       }
@@ -579,6 +615,11 @@ public RpcMetrics getRpcMetrics() {
   public RpcDetailedMetrics getRpcDetailedMetrics() {
     return rpcDetailedMetrics;
   }
+
+  @VisibleForTesting
+  public RpcLatencyMetrics getRpcLatencyMetrics() {
+    return rpcLatencyMetrics;
+  }
   
   @VisibleForTesting
   Iterable<? extends Thread> getHandlers() {
@@ -687,6 +728,11 @@ public static class Call implements Schedulable,
     private boolean deferredResponse = false;
     private int priorityLevel;
     // the priority level assigned by scheduler, 0 by default
+    private long clientStateId = Long.MIN_VALUE;
+    private boolean isCallCoordinated;
+    // the times the call took in each step of its processing
+    private final ProcessingDetails processingDetails =
+        new ProcessingDetails();
 
     Call() {
       this(RpcConstants.INVALID_CALL_ID, RpcConstants.INVALID_RETRY_COUNT,
@@ -794,6 +840,32 @@ public void setPriorityLevel(int priorityLevel) {
       this.priorityLevel = priorityLevel;
     }
 
+    public long getClientStateId() {
+      return this.clientStateId;
+    }
+
+    /**
+     * @return the processing details of this call, which the server
+     * implementation may add timings to while processing it.
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public ProcessingDetails getProcessingDetails() {
+      return processingDetails;
+    }
+
+    public void setClientStateId(long stateId) {
+      this.clientStateId = stateId;
+    }
+
+    public void markCallCoordinated(boolean flag) {
+      this.isCallCoordinated = flag;
+    }
+
+    public boolean isCallCoordinated() {
+      return this.isCallCoordinated;
+    }
+
     @InterfaceStability.Unstable
     public void deferResponse() {
       this.deferredResponse = true;
@@ -816,11 +888,14 @@ private class RpcCall extends Call {
     final Connection connection;  // connection to client
     final Writable rpcRequest;    // Serialized Rpc request from client
     ByteBuffer rpcResponse;       // the response for this call
+    // the client id of the request header, reused in the response header
+    private ByteString clientIdProto;
 
     RpcCall(RpcCall call) {
       super(call);
       this.connection = call.connection;
       this.rpcRequest = call.rpcRequest;
+      this.clientIdProto = call.clientIdProto;
     }
 
     RpcCall(Connection connection, int id) {
@@ -841,6 +916,21 @@ private class RpcCall extends Call {
       this.rpcRequest = param;
     }
 
+    RpcCall(Connection connection, int id, int retryCount,
+        Writable param, RPC.RpcKind kind, ByteString clientId,
+        TraceScope traceScope, CallerContext context) {
+      this(connection, id, retryCount, param, kind, clientId.toByteArray(),
+          traceScope, context);
+      this.clientIdProto = clientId;
+    }
+
+    ByteString getClientIdProto() {
+      if (clientIdProto == null) {
+        clientIdProto = ByteString.copyFrom(clientId);
+      }
+      return clientIdProto;
+    }
+
     @Override
     public String getProtocol() {
       return "rpc";
@@ -866,6 +956,14 @@ public Void run() throws Exception {
       ResponseParams responseParams = new ResponseParams();
 
       try {
+        if (isCallCoordinated() &&
+            getClientStateId() > alignmentContext.getLastSeenStateId()) {
+          // The call waited in the queue for as long as it was allowed to
+          // and the server still has not caught up with the client.
+          throw new StandbyException("Server state id "
+              + alignmentContext.getLastSeenStateId()
+              + " is behind client state id " + getClientStateId());
+        }
         value = call(
             rpcKind, connection.protocolName, rpcRequest, timestamp);
       } catch (Throwable e) {
@@ -2474,7 +2572,13 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       RpcCall call = new RpcCall(this, header.getCallId(),
           header.getRetryCount(), rpcRequest,
           ProtoUtil.convert(header.getRpcKind()),
-          header.getClientId().toByteArray(), traceScope, callerContext);
+          header.getClientId(), traceScope, callerContext);
+
+      if (alignmentContext != null && header.hasStateId()
+          && isCoordinatedCall(rpcRequest)) {
+        call.markCallCoordinated(true);
+        call.setClientStateId(header.getStateId());
+      }
 
       // Save the priority level assignment by the scheduler
       call.setPriorityLevel(callQueue.getPriorityLevel(call));
@@ -2490,6 +2594,30 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       incRpcCount();  // Increment the rpc count
     }
 
+    /**
+     * Check with the alignment context whether the call has to be aligned
+     * with the state id the client sent.
+     * @param rpcRequest - the deserialized rpc request
+     * @throws RpcServerException - the request header could not be decoded
+     */
+    private boolean isCoordinatedCall(Writable rpcRequest)
+        throws RpcServerException {
+      if (!(rpcRequest instanceof ProtobufRpcEngine.RpcProtobufRequest)) {
+        return false;
+      }
+      try {
+        RequestHeaderProto requestHeader =
+            ((ProtobufRpcEngine.RpcProtobufRequest) rpcRequest)
+                .getRequestHeader();
+        return alignmentContext.isCoordinatedCall(
+            requestHeader.getDeclaringClassProtocolName(),
+            requestHeader.getMethodName());
+      } catch (IOException ioe) {
+        throw new FatalRpcServerException(
+            RpcErrorCodeProto.FATAL_DESERIALIZING_REQUEST, ioe);
+      }
+    }
+
     /**
      * Establish RPC connection setup by negotiating SASL if required, then
      * reading and authorizing the connection header
@@ -2659,6 +2787,15 @@ public void run() {
         TraceScope traceScope = null;
         try {
           final Call call = callQueue.take(); // pop the queue; maybe blocked here
+          if (call.isCallCoordinated() && !isCallAligned(call)
+              && requeueCoordinatedCall(call)) {
+            // The server has not caught up with the state the client has
+            // already seen. Put the call back later instead of blocking this
+            // handler; coordinated calls are reads, so reordering them
+            // is harmless. Once the wait expires the call is processed
+            // and rejected with a StandbyException.
+            continue;
+          }
           if (LOG.isDebugEnabled()) {
             LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
           }
@@ -2700,6 +2837,48 @@ public void run() {
 
   }
 
+  /**
+   * @return true if the call can be processed now, either because the
+   * server state has caught up with the client or because the call has
+   * already waited for the maximum allowed time.
+   */
+  private boolean isCallAligned(Call call) {
+    return call.getClientStateId() <= alignmentContext.getLastSeenStateId()
+        || Time.now() - call.timestamp >= coordinatedCallMaxWaitMs;
+  }
+
+  /**
+   * Put a coordinated call back into the call queue after a short delay,
+   * or after the rest of its maximum wait if that is shorter. A call which
+   * does not fit in the call queue then is delayed again.
+   *
+   * @return false if the call could not be delayed, in which case it should
+   * be processed now.
+   */
+  private boolean requeueCoordinatedCall(final Call call) {
+    final ScheduledExecutorService requeuer = coordinatedCallRequeuer;
+    if (requeuer == null) {
+      return false;
+    }
+    final long remainingMs =
+        coordinatedCallMaxWaitMs - (Time.now() - call.timestamp);
+    try {
+      requeuer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (!callQueue.offer(call)) {
+            requeueCoordinatedCall(call);
+          }
+        }
+      }, Math.max(1, Math.min(COORDINATED_CALL_REQUEUE_DELAY_MS,
+          remainingMs)), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // the server is stopping
+      return false;
+    }
+    return true;
+  }
+
   @VisibleForTesting
   void logException(Logger logger, Throwable e, Call call) {
     if (exceptionsHandler.isSuppressedLog(e.getClass())) {
@@ -2809,6 +2988,7 @@ protected Server(String bindAddress, int port,
     connectionManager = new ConnectionManager();
     this.rpcMetrics = RpcMetrics.create(this, conf);
     this.rpcDetailedMetrics = RpcDetailedMetrics.create(this.port);
+    this.rpcLatencyMetrics = RpcLatencyMetrics.create(this.port, conf);
     this.tcpNoDelay = conf.getBoolean(
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_KEY,
         CommonConfigurationKeysPublic.IPC_SERVER_TCPNODELAY_DEFAULT);
@@ -2816,6 +2996,9 @@ protected Server(String bindAddress, int port,
     this.setLogSlowRPC(conf.getBoolean(
         CommonConfigurationKeysPublic.IPC_SERVER_LOG_SLOW_RPC,
         CommonConfigurationKeysPublic.IPC_SERVER_LOG_SLOW_RPC_DEFAULT));
+    this.coordinatedCallMaxWaitMs = conf.getLong(
+        CommonConfigurationKeys.IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_DEFAULT);
 
     // Create the responder here
     responder = new Responder();
@@ -2901,11 +3084,14 @@ private void setupResponse(
     }
     RpcResponseHeaderProto.Builder headerBuilder =
         RpcResponseHeaderProto.newBuilder();
-    headerBuilder.setClientId(ByteString.copyFrom(call.clientId));
+    headerBuilder.setClientId(call.getClientIdProto());
     headerBuilder.setCallId(call.callId);
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -3057,8 +3243,22 @@ public void setTracer(Tracer t) {
     this.tracer = t;
   }
 
+  /**
+   * Set the alignment context used to align the state of this server with
+   * the state seen by its clients. Must be called before the server is
+   * started.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
+    if (alignmentContext != null) {
+      coordinatedCallRequeuer = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat(
+              "IPC Server coordinated call requeuer on " + port).build());
+    }
     responder.start();
     listener.start();
     handlers = new Handler[handlerCount];
@@ -3083,9 +3283,15 @@ public synchronized void stop() {
     listener.interrupt();
     listener.doStop();
     responder.interrupt();
+    if (coordinatedCallRequeuer != null) {
+      coordinatedCallRequeuer.shutdownNow();
+    }
     notifyAll();
     this.rpcMetrics.shutdown();
     this.rpcDetailedMetrics.shutdown();
+    if (this.rpcLatencyMetrics != null) {
+      this.rpcLatencyMetrics.shutdown();
+    }
   }
 
   /** Wait for the server to be stopped.
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+
+/**
+ * The WeightedTimeCostProvider computes the cost of a call as a weighted sum
+ * of the times it took to be processed, in microseconds. By default the time
+ * spent holding a shared lock weighs 10 times and the time spent holding an
+ * exclusive lock weighs 100 times as much as the lock-free processing time,
+ * since they hold up the calls of other callers. The time spent in the call
+ * queue is not charged.
+ * <p>
+ * The weight of each {@link Timing} is configured with
+ * <code>[namespace].weighted-cost.[timing]</code>, where the timing is one of
+ * <code>queue</code>, <code>processing</code>, <code>lockfree</code>,
+ * <code>lockwait</code>, <code>lockshared</code> and
+ * <code>lockexclusive</code>.
+ */
+public class WeightedTimeCostProvider implements CostProvider {
+
+  public static final String WEIGHT_CONFIG_PREFIX = ".weighted-cost.";
+  public static final long DEFAULT_LOCKFREE_WEIGHT = 1;
+  public static final long DEFAULT_LOCKWAIT_WEIGHT = 1;
+  public static final long DEFAULT_LOCKSHARED_WEIGHT = 10;
+  public static final long DEFAULT_LOCKEXCLUSIVE_WEIGHT = 100;
+
+  private long[] weights;
+
+  @Override
+  public void init(String namespace, Configuration conf) {
+    weights = new long[Timing.values().length];
+    for (Timing timing : Timing.values()) {
+      final long defaultWeight;
+      switch (timing) {
+      case LOCKFREE:
+        defaultWeight = DEFAULT_LOCKFREE_WEIGHT;
+        break;
+      case LOCKWAIT:
+        defaultWeight = DEFAULT_LOCKWAIT_WEIGHT;
+        break;
+      case LOCKSHARED:
+        defaultWeight = DEFAULT_LOCKSHARED_WEIGHT;
+        break;
+      case LOCKEXCLUSIVE:
+        defaultWeight = DEFAULT_LOCKEXCLUSIVE_WEIGHT;
+        break;
+      default:
+        // PROCESSING is the sum of the lock timings and LOCKFREE, so it is
+        // not charged again
+        defaultWeight = 0;
+      }
+      weights[timing.ordinal()] = conf.getLong(
+          namespace + WEIGHT_CONFIG_PREFIX + timing.getConfigName(),
+          defaultWeight);
+    }
+  }
+
+  /**
+   * @return the weighted sum of the times in details, at least 1 so that
+   * every call costs something
+   */
+  @Override
+  public long getCost(ProcessingDetails details) {
+    long cost = 0;
+    for (Timing timing : Timing.values()) {
+      cost += details.get(timing, TimeUnit.MICROSECONDS)
+          * weights[timing.ordinal()];
+    }
+    return Math.max(1, cost);
+  }
+}
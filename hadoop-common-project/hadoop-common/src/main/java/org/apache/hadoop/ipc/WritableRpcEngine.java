@@ -314,6 +314,22 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
             factory, rpcTimeout, fallbackToSimpleAuth));
     return new ProtocolProxy<T>(protocol, proxy, true);
   }
+
+  @Override
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+                         InetSocketAddress addr, UserGroupInformation ticket,
+                         Configuration conf, SocketFactory factory,
+                         int rpcTimeout, RetryPolicy connectionRetryPolicy,
+                         AtomicBoolean fallbackToSimpleAuth,
+                         AlignmentContext alignmentContext)
+    throws IOException {
+    if (alignmentContext != null) {
+      throw new UnsupportedOperationException(
+          "Not supported: alignmentContext=" + alignmentContext);
+    }
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+  }
   
   /* Construct a server for a protocol implementation instance listening on a
    * port and address. */
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A histogram of non-negative long values with log-linear buckets, in the
+ * manner of HdrHistogram. Values below {@link #SUB_BUCKETS} are counted
+ * exactly; above that, each power of two is split into {@link #SUB_BUCKETS}
+ * buckets of equal width, so a value is known to within about 6%. Values
+ * of 2^{@link #MAX_EXPONENT} and above go to the last bucket.
+ * <p>
+ * {@link #add(long)} only increments an atomic counter, so it can be called
+ * concurrently from many threads without locking or allocating. The
+ * percentiles are computed by {@link #rollover()} over the values added
+ * since the previous rollover, which must be called by a single thread.
+ */
+@InterfaceAudience.Private
+public class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int MAX_EXPONENT = 40;
+  /** The buckets of each exponent, plus one for the values too large. */
+  static final int NUM_BUCKETS =
+      SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 1) + 1;
+
+  /** The percentiles computed at each rollover. */
+  static final double[] PERCENTILES = {50, 75, 90, 95, 99, 99.9};
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  /** The counts at the previous rollover. */
+  private final long[] previousCounts = new long[NUM_BUCKETS];
+
+  private volatile long intervalCount = 0;
+  private volatile long[] intervalPercentiles = new long[PERCENTILES.length];
+
+  /** Add a value to the histogram. Negative values count as 0. */
+  public void add(long value) {
+    counts.incrementAndGet(bucketOf(value));
+  }
+
+  /**
+   * Compute the percentiles of the values added since the previous rollover.
+   * @return the number of values added since the previous rollover
+   */
+  public long rollover() {
+    final long[] interval = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      final long current = counts.get(i);
+      interval[i] = current - previousCounts[i];
+      previousCounts[i] = current;
+      total += interval[i];
+    }
+
+    final long[] percentiles = new long[PERCENTILES.length];
+    if (total > 0) {
+      int bucket = 0;
+      long seen = interval[0];
+      for (int p = 0; p < PERCENTILES.length; p++) {
+        final long rank = Math.max(1,
+            (long) Math.ceil(PERCENTILES[p] / 100 * total));
+        while (seen < rank) {
+          seen += interval[++bucket];
+        }
+        percentiles[p] = highestValueOf(bucket);
+      }
+    }
+    intervalPercentiles = percentiles;
+    intervalCount = total;
+    return total;
+  }
+
+  /** @return the number of values added in the last rolled over interval */
+  public long getIntervalCount() {
+    return intervalCount;
+  }
+
+  /**
+   * @return the {@link #PERCENTILES} of the values added in the last rolled
+   * over interval, as the highest value of the bucket they fall in
+   */
+  public long[] getIntervalPercentiles() {
+    return intervalPercentiles;
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent >= MAX_EXPONENT) {
+      return NUM_BUCKETS - 1;
+    }
+    // The top SUB_BUCKET_BITS bits after the leading one pick the sub-bucket
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+        & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+  }
+
+  /** @return the highest value counted in the given bucket. */
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    if (bucket == NUM_BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+    return ((top + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
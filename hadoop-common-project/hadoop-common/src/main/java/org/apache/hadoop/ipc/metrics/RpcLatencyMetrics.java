@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc.metrics;
+
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_ENABLE;
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_ENABLE_DEFAULT;
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_DEFAULT;
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_KEY;
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_DEFAULT;
+import static org.apache.hadoop.fs.CommonConfigurationKeys.RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_KEY;
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class maintains histograms of the RPC queue and processing times per
+ * method and per user, and publishes their percentiles through the metrics
+ * interfaces, and so through JMX.
+ * <p>
+ * The percentiles are computed over fixed intervals. To bound the number of
+ * metrics, only the users who made the most calls in the last interval are
+ * published. At most twice that many users are tracked at a time; the calls
+ * of other users are counted under {@link #OTHER_USERS} until the users
+ * outside the top ones are dropped at the end of the interval.
+ * <p>
+ * Recording a call only looks up and increments the histograms, without
+ * locking or allocating once the method and user are tracked.
+ */
+@InterfaceAudience.Private
+public class RpcLatencyMetrics implements MetricsSource {
+
+  static final Logger LOG = LoggerFactory.getLogger(RpcLatencyMetrics.class);
+
+  /** The user the calls of untracked users are counted under. */
+  public static final String OTHER_USERS = "_others_";
+
+  /** The names of the {@link LatencyHistogram#PERCENTILES}, 999 for 99.9. */
+  private static final String[] PERCENTILE_NAMES =
+      new String[LatencyHistogram.PERCENTILES.length];
+  static {
+    for (int i = 0; i < PERCENTILE_NAMES.length; i++) {
+      final String s = String.valueOf(LatencyHistogram.PERCENTILES[i]);
+      PERCENTILE_NAMES[i] = (s.endsWith(".0") ?
+          s.substring(0, s.length() - 2) : s).replace(".", "");
+    }
+  }
+
+  private static final ScheduledExecutorService SCHEDULER = Executors
+      .newScheduledThreadPool(1, new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("RpcLatencyMetrics-%d").build());
+
+  /** The histograms of the calls of a method or user. */
+  static class Latencies {
+    final LatencyHistogram queueTime = new LatencyHistogram();
+    final LatencyHistogram processingTime = new LatencyHistogram();
+  }
+
+  private final String name;
+  private final String port;
+  private final int topUsers;
+  private final Map<String, Latencies> methods = new ConcurrentHashMap<>();
+  private final Map<String, Latencies> users = new ConcurrentHashMap<>();
+  private final Latencies otherUsers = new Latencies();
+  /** The top users of the last interval, in decreasing number of calls. */
+  private volatile List<String> lastTopUsers = Collections.emptyList();
+  private ScheduledFuture<?> scheduledTask;
+
+  RpcLatencyMetrics(int port, int topUsers) {
+    this.name = "RpcLatencyForPort" + port;
+    this.port = String.valueOf(port);
+    this.topUsers = topUsers;
+  }
+
+  public String name() { return name; }
+
+  /**
+   * Create and register the metrics, if they are enabled.
+   * @return the metrics, or null if they are disabled
+   */
+  public static RpcLatencyMetrics create(int port, Configuration conf) {
+    if (!conf.getBoolean(RPC_METRICS_LATENCY_HISTOGRAM_ENABLE,
+        RPC_METRICS_LATENCY_HISTOGRAM_ENABLE_DEFAULT)) {
+      return null;
+    }
+    final int interval = conf.getInt(
+        RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_KEY,
+        RPC_METRICS_LATENCY_HISTOGRAM_INTERVAL_DEFAULT);
+    final int topUsers = conf.getInt(
+        RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_KEY,
+        RPC_METRICS_LATENCY_HISTOGRAM_TOP_USERS_DEFAULT);
+    final RpcLatencyMetrics m = new RpcLatencyMetrics(port, topUsers);
+    m.scheduledTask = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        m.rollover();
+      }
+    }, interval, interval, TimeUnit.SECONDS);
+    LOG.info("Recording RPC latency histograms for port {} every {}s for "
+        + "the top {} users", port, interval, topUsers);
+    return DefaultMetricsSystem.instance().register(m.name, null, m);
+  }
+
+  /**
+   * Add the queue and processing times of a call.
+   * @param method the name of the method called
+   * @param user the short name of the caller, or null if unknown
+   * @param queueTime the queue time in milliseconds
+   * @param processingTime the processing time in milliseconds
+   */
+  public void add(String method, String user, long queueTime,
+      long processingTime) {
+    Latencies latencies = methods.get(method);
+    if (latencies == null) {
+      latencies = getOrCreate(methods, method);
+    }
+    latencies.queueTime.add(queueTime);
+    latencies.processingTime.add(processingTime);
+
+    latencies = user == null ? otherUsers : users.get(user);
+    if (latencies == null) {
+      latencies = users.size() < 2 * topUsers ?
+          getOrCreate(users, user) : otherUsers;
+    }
+    latencies.queueTime.add(queueTime);
+    latencies.processingTime.add(processingTime);
+  }
+
+  private static Latencies getOrCreate(Map<String, Latencies> map,
+      String key) {
+    final Latencies latencies = new Latencies();
+    final Latencies existing = map.putIfAbsent(key, latencies);
+    return existing != null ? existing : latencies;
+  }
+
+  /**
+   * Compute the percentiles of the interval which just ended, then drop the
+   * users outside the top ones to make room for new users.
+   */
+  @VisibleForTesting
+  synchronized void rollover() {
+    for (Latencies latencies : methods.values()) {
+      latencies.queueTime.rollover();
+      latencies.processingTime.rollover();
+    }
+    otherUsers.queueTime.rollover();
+    otherUsers.processingTime.rollover();
+
+    final List<Map.Entry<String, Latencies>> entries =
+        new ArrayList<>(users.entrySet());
+    for (Map.Entry<String, Latencies> e : entries) {
+      e.getValue().queueTime.rollover();
+      e.getValue().processingTime.rollover();
+    }
+    Collections.sort(entries, new Comparator<Map.Entry<String, Latencies>>() {
+      @Override
+      public int compare(Map.Entry<String, Latencies> a,
+          Map.Entry<String, Latencies> b) {
+        return Long.compare(b.getValue().queueTime.getIntervalCount(),
+            a.getValue().queueTime.getIntervalCount());
+      }
+    });
+
+    final List<String> top = new ArrayList<>(topUsers);
+    for (Map.Entry<String, Latencies> e : entries) {
+      if (top.size() < topUsers
+          && e.getValue().queueTime.getIntervalCount() > 0) {
+        top.add(e.getKey());
+      } else {
+        // Calls recorded for this user since the rollover are lost
+        users.remove(e.getKey());
+      }
+    }
+    lastTopUsers = Collections.unmodifiableList(top);
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    final MetricsRecordBuilder rb = collector.addRecord("RpcLatency")
+        .setContext("rpcdetailed")
+        .tag(info("port", "RPC port"), port);
+    for (Map.Entry<String, Latencies> e : methods.entrySet()) {
+      addLatencies(rb, "method=" + e.getKey(), e.getValue());
+    }
+    for (String user : lastTopUsers) {
+      final Latencies latencies = users.get(user);
+      if (latencies != null) {
+        addLatencies(rb, "user=" + user, latencies);
+      }
+    }
+    addLatencies(rb, "user=" + OTHER_USERS, otherUsers);
+  }
+
+  private static void addLatencies(MetricsRecordBuilder rb, String prefix,
+      Latencies latencies) {
+    addHistogram(rb, prefix + ".QueueTime", latencies.queueTime);
+    addHistogram(rb, prefix + ".ProcessingTime", latencies.processingTime);
+  }
+
+  private static void addHistogram(MetricsRecordBuilder rb, String prefix,
+      LatencyHistogram histogram) {
+    rb.addGauge(info(prefix + "NumOps", "Number of ops in the last interval"),
+        histogram.getIntervalCount());
+    final long[] percentiles = histogram.getIntervalPercentiles();
+    for (int i = 0; i < percentiles.length; i++) {
+      rb.addGauge(info(prefix + PERCENTILE_NAMES[i] + "thPercentileLatency",
+          PERCENTILE_NAMES[i] + " percentile latency in milliseconds in the "
+          + "last interval"), percentiles[i]);
+    }
+  }
+
+  @VisibleForTesting
+  List<String> getTopUsers() {
+    return lastTopUsers;
+  }
+
+  @VisibleForTesting
+  Latencies getMethodLatencies(String method) {
+    return methods.get(method);
+  }
+
+  @VisibleForTesting
+  Latencies getUserLatencies(String user) {
+    return OTHER_USERS.equals(user) ? otherUsers : users.get(user);
+  }
+
+  public void shutdown() {
+    if (scheduledTask != null) {
+      scheduledTask.cancel(false);
+    }
+    DefaultMetricsSystem.instance().unregisterSource(name);
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.RetryCache.CacheEntry;
+import org.apache.hadoop.ipc.RetryCache.CacheEntryWithPayload;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark of the {@link RetryCache}, with and without compact entries.
+ * Many clients make non-idempotent calls which complete successfully, and a
+ * fraction of the calls are retried. Most calls have no payload, as most of
+ * the NameNode operations, and the others have one, as create and append,
+ * so that the expiring cache stays large. It reports the time per call, the
+ * heap used by the cache and the time spent in garbage collection.
+ * <p>
+ * Input arguments:
+ * <ul>
+ * <li>numCalls - number of calls per round, 10000000 by default</li>
+ * <li>heapPercent - percentage of the heap for the cache, 3 by default</li>
+ * <li>payloadEvery - one call in payloadEvery has a payload, 10 by default;
+ * 0 for no payload</li>
+ * </ul>
+ */
+public class RetryCacheBenchmark {
+  private static final int ROUNDS = 3;
+  private static final int NUM_CLIENTS = 1000;
+  private static final int RETRY_EVERY = 100;
+
+  private static long getGcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static long getUsedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void run(boolean compact, int numCalls, double heapPercent,
+      int payloadEvery, int round) {
+    final Object payload = new Object();
+    final byte[][] clientIds = new byte[NUM_CLIENTS][];
+    for (int i = 0; i < clientIds.length; i++) {
+      clientIds[i] = ClientId.getClientId();
+    }
+    final long startHeap = getUsedHeap();
+    final RetryCache cache = new RetryCache("RetryCacheBenchmark"
+        + (compact ? "Compact" : "") + round, heapPercent,
+        600L * 1000 * 1000 * 1000, compact);
+
+    final long startGc = getGcMillis();
+    final long start = Time.monotonicNowNanos();
+    int retries = 0;
+    for (int i = 0; i < numCalls; i++) {
+      final Server.Call call = new Server.Call(i / NUM_CLIENTS, 0, null, null,
+          RpcKind.RPC_PROTOCOL_BUFFER, clientIds[i % NUM_CLIENTS]);
+      Server.getCurCall().set(call);
+      final boolean withPayload = payloadEvery > 0 && i % payloadEvery == 0;
+      if (withPayload) {
+        CacheEntryWithPayload entry =
+            RetryCache.waitForCompletion(cache, payload);
+        RetryCache.setState(entry, true, payload);
+      } else {
+        CacheEntry entry = RetryCache.waitForCompletion(cache);
+        RetryCache.setState(entry, true);
+      }
+      if (i % RETRY_EVERY == 0) {
+        final CacheEntry retry = withPayload ?
+            RetryCache.waitForCompletion(cache, payload) :
+            RetryCache.waitForCompletion(cache);
+        if (retry.isSuccess()) {
+          retries++;
+        }
+      }
+    }
+    final long nanos = Time.monotonicNowNanos() - start;
+    final long gcMillis = getGcMillis() - startGc;
+    final long heap = getUsedHeap() - startHeap;
+    Server.getCurCall().set(null);
+
+    System.out.printf("%-8s %8.1f ns/call %8d MB cache heap %6d ms GC "
+        + "(%d entries, %d retries)%n", compact ? "compact" : "objects",
+        (double) nanos / numCalls, heap >> 20, gcMillis,
+        cache.getCacheSet().size() + cache.getCompactEntriesSize(), retries);
+    RetryCache.clear(cache);
+  }
+
+  public static void main(String[] args) {
+    final int numCalls =
+        args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    final double heapPercent =
+        args.length > 1 ? Double.parseDouble(args[1]) : 3;
+    final int payloadEvery =
+        args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("Round " + round);
+      run(false, numCalls, heapPercent, payloadEvery, round);
+      run(true, numCalls, heapPercent, payloadEvery, round);
+    }
+  }
+}
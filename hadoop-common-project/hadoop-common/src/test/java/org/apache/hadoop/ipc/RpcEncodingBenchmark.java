@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.protobuf.ProtobufRpcEngineProtos.RequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto.OperationProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
+import org.apache.hadoop.util.ProtoUtil;
+import org.apache.hadoop.util.Time;
+
+import com.google.protobuf.Message;
+
+/**
+ * Benchmark for the encoding and decoding of protobuf RPC requests, as done
+ * by the client and the server without the network in between. It reports
+ * the time and the bytes allocated per request, both for the current
+ * encoding, which serializes the messages straight into the
+ * {@link ResponseBuffer}, and for the previous one, which went through
+ * {@link Message#writeDelimitedTo}.
+ * <p>
+ * Input arguments:
+ * <ul>
+ * <li>numIterations - number of requests to encode and decode per round,
+ * 1000000 by default</li>
+ * <li>messageSize - size of the string in the request, 100 by default</li>
+ * </ul>
+ */
+public class RpcEncodingBenchmark {
+  private static final int ROUNDS = 5;
+
+  private final RpcRequestHeaderProto rpcHeader;
+  private final RequestHeaderProto requestHeader;
+  private final Message payload;
+
+  RpcEncodingBenchmark(int messageSize) {
+    rpcHeader = ProtoUtil.makeRpcRequestHeader(RpcKind.RPC_PROTOCOL_BUFFER,
+        OperationProto.RPC_FINAL_PACKET, 1, 0, ClientId.getClientId());
+    requestHeader = RequestHeaderProto.newBuilder()
+        .setMethodName("echo")
+        .setDeclaringClassProtocolName("testProtocol")
+        .setClientProtocolVersion(1)
+        .build();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < messageSize; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    payload = EchoRequestProto.newBuilder().setMessage(sb.toString()).build();
+  }
+
+  /** Encode a request as the client does, then decode it as the server. */
+  long encodeDecode(boolean direct) throws IOException {
+    final ResponseBuffer buf = new ResponseBuffer();
+    if (direct) {
+      buf.writeDelimited(rpcHeader);
+      new ProtobufRpcEngine.RpcProtobufRequest(requestHeader, payload)
+          .writeTo(buf);
+    } else {
+      rpcHeader.writeDelimitedTo(buf);
+      requestHeader.writeDelimitedTo(buf);
+      payload.writeDelimitedTo(buf);
+    }
+    final byte[] bytes = buf.toByteArray();
+
+    // the server reads the request without its length
+    final ByteBuffer bb = ByteBuffer.wrap(bytes, 4, bytes.length - 4);
+    final RpcWritable.Buffer request = RpcWritable.Buffer.wrap(bb);
+    RpcRequestHeaderProto header =
+        request.getValue(RpcRequestHeaderProto.getDefaultInstance());
+    ProtobufRpcEngine.RpcProtobufRequest rpcRequest =
+        request.newInstance(ProtobufRpcEngine.RpcProtobufRequest.class, null);
+    rpcRequest.getRequestHeader();
+    final Message decoded = rpcRequest.getValue(
+        EchoRequestProto.getDefaultInstance());
+    return header.getCallId() + decoded.getSerializedSize();
+  }
+
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+  }
+
+  private void run(boolean direct, int numIterations) throws IOException {
+    long sum = 0;
+    final long startBytes = getAllocatedBytes();
+    final long start = Time.monotonicNowNanos();
+    for (int i = 0; i < numIterations; i++) {
+      sum += encodeDecode(direct);
+    }
+    final long nanos = Time.monotonicNowNanos() - start;
+    final long bytes = getAllocatedBytes() - startBytes;
+    System.out.printf("%-20s %8.1f ns/op %8.1f bytes/op (checksum %d)%n",
+        direct ? "writeDelimited" : "writeDelimitedTo",
+        (double) nanos / numIterations, (double) bytes / numIterations, sum);
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int numIterations =
+        args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    final int messageSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final RpcEncodingBenchmark benchmark =
+        new RpcEncodingBenchmark(messageSize);
+    // the first rounds warm up the JIT
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("Round " + round);
+      benchmark.run(false, numIterations);
+      benchmark.run(true, numIterations);
+    }
+  }
+}
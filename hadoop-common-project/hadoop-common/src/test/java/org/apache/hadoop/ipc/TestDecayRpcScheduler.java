@@ -26,6 +26,8 @@
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.conf.Configuration;
@@ -36,6 +38,7 @@
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
 
 public class TestDecayRpcScheduler {
   private Schedulable mockCall(String id) {
@@ -231,6 +234,78 @@ public void testPriority() throws Exception {
         cvs2.equals("{\"A\":3,\"B\":1,\"C\":1}"));
   }
 
+  private static ProcessingDetails newDetails(Timing type, long millis) {
+    ProcessingDetails details = new ProcessingDetails();
+    details.set(type, millis, TimeUnit.MILLISECONDS);
+    return details;
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testPriorityByCost() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "costns";
+    conf.set(namespace + "." + DecayRpcScheduler
+        .IPC_FCQ_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set(namespace + "." + DecayRpcScheduler
+        .IPC_FCQ_DECAYSCHEDULER_THRESHOLDS_KEY, "25, 50, 75");
+    conf.setClass(namespace + "." +
+        CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        WeightedTimeCostProvider.class, CostProvider.class);
+    scheduler = new DecayRpcScheduler(4, namespace, conf);
+
+    // Calls are not charged until they have been processed
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getTotalCallSnapshot());
+
+    // A holds the write lock for 1ms, B does 10ms of lock-free processing
+    scheduler.addResponseTime("test", mockCall("A"),
+        newDetails(Timing.LOCKEXCLUSIVE, 1));
+    for (int i = 0; i < 10; i++) {
+      scheduler.addResponseTime("test", mockCall("B"),
+          newDetails(Timing.LOCKFREE, 1));
+    }
+    assertEquals(100 * 1000,
+        scheduler.getCallCountSnapshot().get("A").longValue());
+    assertEquals(10 * 1000,
+        scheduler.getCallCountSnapshot().get("B").longValue());
+
+    // So A gets the lowest priority despite making fewer calls
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("C")));
+
+    // Calls which took no measurable time still cost something
+    scheduler.addResponseTime("test", mockCall("C"), new ProcessingDetails());
+    assertEquals(1, scheduler.getCallCountSnapshot().get("C").longValue());
+  }
+
+  @Test
+  public void testWeightedTimeCostProvider() {
+    Configuration conf = new Configuration();
+    conf.setLong("ns" + WeightedTimeCostProvider.WEIGHT_CONFIG_PREFIX
+        + Timing.LOCKSHARED.getConfigName(), 2);
+    CostProvider provider = new WeightedTimeCostProvider();
+    provider.init("ns", conf);
+
+    ProcessingDetails details = new ProcessingDetails();
+    details.set(Timing.QUEUE, 7, TimeUnit.MILLISECONDS);
+    details.set(Timing.PROCESSING, 10, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKWAIT, 1, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKSHARED, 2, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKEXCLUSIVE, 3, TimeUnit.MILLISECONDS);
+    details.computeLockFreeTime();
+    assertEquals(4, details.get(Timing.LOCKFREE, TimeUnit.MILLISECONDS));
+
+    // The queue and total processing times are not charged
+    assertEquals(4000 * WeightedTimeCostProvider.DEFAULT_LOCKFREE_WEIGHT
+        + 1000 * WeightedTimeCostProvider.DEFAULT_LOCKWAIT_WEIGHT
+        + 2000 * 2
+        + 3000 * WeightedTimeCostProvider.DEFAULT_LOCKEXCLUSIVE_WEIGHT,
+        provider.getCost(details));
+  }
+
   @Test(timeout=2000)
   @SuppressWarnings("deprecation")
   public void testPeriodic() throws InterruptedException {
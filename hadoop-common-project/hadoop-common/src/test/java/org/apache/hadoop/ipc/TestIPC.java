@@ -658,6 +658,38 @@ public void testIpcTimeout() throws IOException {
     client.stop();
   }
 
+  @Test(timeout=60000)
+  public void testSharedReaders() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_SHARED_READERS_KEY, 2);
+    internalTestSerial(3, false, 2, 10, 100);
+    internalTestSerial(3, true, 2, 5, 10);
+
+    Server server = new TestServer(1, true);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      // the calls time out and the pings are sent by the shared readers
+      try {
+        call(client, new LongWritable(RANDOM.nextLong()), addr,
+            MIN_SLEEP_TIME / 2, conf);
+        fail("Expected an exception to have been thrown");
+      } catch (SocketTimeoutException e) {
+        LOG.info("Get a SocketTimeoutException ", e);
+      }
+      call(client, new LongWritable(RANDOM.nextLong()), addr,
+          3 * PING_INTERVAL + MIN_SLEEP_TIME, conf);
+
+      // no connection started its own thread
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        assertFalse(t.getName(), t.getName().contains("connection to " + addr));
+      }
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout=60000)
   public void testIpcConnectTimeout() throws IOException {
     // start server
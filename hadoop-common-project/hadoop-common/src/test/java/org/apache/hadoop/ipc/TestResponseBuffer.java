@@ -23,6 +23,7 @@
 import java.io.DataInputStream;
 import java.io.IOException;
 import org.apache.hadoop.ipc.ResponseBuffer;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
 import org.junit.Test;
 
 /** Unit tests for ResponseBuffer. */
@@ -66,6 +67,29 @@ public void testBuffer() throws IOException {
     checkBuffer(buf, s1 + s2);
   }
 
+  @Test
+  public void testWriteDelimited() throws IOException {
+    // the buffer has to grow to fit the second message
+    ResponseBuffer buf = new ResponseBuffer(8);
+    EchoRequestProto m1 =
+        EchoRequestProto.newBuilder().setMessage("testing1").build();
+    EchoRequestProto m2 =
+        EchoRequestProto.newBuilder().setMessage("testing2").build();
+    buf.writeDelimited(m1);
+    buf.writeInt(123);
+    buf.writeDelimited(m2);
+
+    byte[] framed = buf.toByteArray();
+    DataInputStream dis =
+        new DataInputStream(new ByteArrayInputStream(framed));
+    assertEquals(framed.length - 4, dis.readInt());
+    assertEquals(framed.length - 4, buf.size());
+    assertEquals(m1, EchoRequestProto.parseDelimitedFrom(dis));
+    assertEquals(123, dis.readInt());
+    assertEquals(m2, EchoRequestProto.parseDelimitedFrom(dis));
+    assertEquals(0, dis.available());
+  }
+
   private void checkBuffer(ResponseBuffer buf, String expected)
       throws IOException {
     // buffer payload length matches expected length
@@ -28,6 +28,7 @@
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.RetryCache.CacheEntry;
 import org.apache.hadoop.ipc.RetryCache.CacheEntryWithPayload;
 import org.junit.Assert;
 import org.junit.Before;
@@ -167,6 +168,88 @@ public void testRetryAfterFailure() throws Exception {
     testOperations(input, 25, 0, false, true, call);
   }
 
+  @Test
+  public void testCompactEntries() throws Exception {
+    final RetryCache cache = new RetryCache("TestCompactRetryCache", 1,
+        100 * 1000 * 1000 * 1000L, true);
+    // A successful entry without payload is moved to the compact entries
+    final Server.Call call = newCall();
+    Server.getCurCall().set(call);
+    CacheEntry entry = RetryCache.waitForCompletion(cache);
+    Assert.assertFalse(entry.isSuccess());
+    // An entry in progress is not in the expiring cache either
+    Assert.assertEquals(0, cache.getCacheSet().size());
+    RetryCache.setState(entry, true);
+    Assert.assertEquals(0, cache.getCacheSet().size());
+    Assert.assertEquals(1, cache.getCompactEntriesSize());
+
+    // and its retries find it there
+    CacheEntry retry = RetryCache.waitForCompletion(cache);
+    Assert.assertTrue(retry.isSuccess());
+    Assert.assertEquals(entry, retry);
+    Assert.assertEquals(1, cache.getMetricsForTests().getCacheHit());
+
+    // Failed entries and entries with a payload keep their object
+    final Server.Call failedCall = newCall();
+    Server.getCurCall().set(failedCall);
+    RetryCache.setState(RetryCache.waitForCompletion(cache), false);
+    Server.getCurCall().set(newCall());
+    RetryCache.setState(RetryCache.waitForCompletion(cache, null), true, 1);
+    Assert.assertEquals(2, cache.getCacheSet().size());
+    Assert.assertEquals(1, cache.getCompactEntriesSize());
+
+    // and so does a failed entry once its retry succeeds
+    Server.getCurCall().set(failedCall);
+    CacheEntry failed = RetryCache.waitForCompletion(cache);
+    Assert.assertFalse(failed.isSuccess());
+    RetryCache.setState(failed, true);
+    Assert.assertEquals(2, cache.getCacheSet().size());
+    Assert.assertEquals(1, cache.getCompactEntriesSize());
+
+    // The entries from the edit log are added to the compact entries
+    cache.addCacheEntry(CLIENT_ID, ++callId);
+    Assert.assertEquals(2, cache.getCompactEntriesSize());
+
+    RetryCache.clear(cache);
+    Assert.assertEquals(0, cache.getCacheSet().size());
+    Assert.assertEquals(0, cache.getCompactEntriesSize());
+    Server.getCurCall().set(call);
+    Assert.assertFalse(RetryCache.waitForCompletion(cache).isSuccess());
+  }
+
+  @Test
+  public void testCompactCacheEntries() {
+    final CompactCacheEntries entries = new CompactCacheEntries(3000);
+    final long msb = r.nextLong();
+    final long lsb = r.nextLong();
+    // The entries expire in the order they were added; grow past 1024
+    for (int i = 0; i < 2000; i++) {
+      entries.add(msb, lsb, i, 1000 + i, 0);
+    }
+    entries.add(msb, lsb, 0, 5000, 0);
+    Assert.assertEquals(2000, entries.size());
+    Assert.assertTrue(entries.contains(msb, lsb, 0, 0));
+    Assert.assertFalse(entries.contains(msb + 1, lsb, 0, 0));
+    Assert.assertFalse(entries.contains(msb, lsb, 2000, 0));
+
+    Assert.assertFalse(entries.contains(msb, lsb, 500, 1500));
+    Assert.assertTrue(entries.contains(msb, lsb, 501, 1500));
+    Assert.assertEquals(1499, entries.size());
+
+    // Once full, the oldest entries are dropped
+    for (int i = 2000; i < 4000; i++) {
+      entries.add(msb, lsb, i, 1000 + i, 1500);
+    }
+    Assert.assertEquals(3000, entries.size());
+    Assert.assertFalse(entries.contains(msb, lsb, 999, 1500));
+    Assert.assertTrue(entries.contains(msb, lsb, 1000, 1500));
+    Assert.assertTrue(entries.contains(msb, lsb, 3999, 1500));
+
+    entries.clear();
+    Assert.assertEquals(0, entries.size());
+    Assert.assertFalse(entries.contains(msb, lsb, 3999, 1500));
+  }
+
   public void testOperations(final int input, final int numberOfThreads,
       final int pause, final boolean success, final boolean attemptedBefore,
       final Server.Call call) throws InterruptedException, ExecutionException {
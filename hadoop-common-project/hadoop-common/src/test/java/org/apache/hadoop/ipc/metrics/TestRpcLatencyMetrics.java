@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc.metrics;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+/**
+ * Test {@link LatencyHistogram} and {@link RpcLatencyMetrics}.
+ */
+public class TestRpcLatencyMetrics {
+
+  @Test
+  public void testBuckets() {
+    for (long v = 0; v < LatencyHistogram.SUB_BUCKETS * 2; v++) {
+      // Small values are exact
+      assertEquals(v, LatencyHistogram.highestValueOf(
+          LatencyHistogram.bucketOf(v)));
+    }
+    final Random random = new Random();
+    for (int i = 0; i < 10000; i++) {
+      final long v = random.nextInt(Integer.MAX_VALUE);
+      final int bucket = LatencyHistogram.bucketOf(v);
+      final long highest = LatencyHistogram.highestValueOf(bucket);
+      assertTrue(v + " > " + highest, v <= highest);
+      assertTrue(v + " too far from " + highest, highest - v <= v / 16);
+      if (bucket > 0) {
+        assertTrue(v > LatencyHistogram.highestValueOf(bucket - 1));
+      }
+    }
+    assertEquals(0, LatencyHistogram.bucketOf(-1));
+    assertEquals(LatencyHistogram.NUM_BUCKETS - 1,
+        LatencyHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int v = 1; v <= 1000; v++) {
+      histogram.add(v);
+    }
+    assertEquals(1000, histogram.rollover());
+    final long[] percentiles = histogram.getIntervalPercentiles();
+    for (int i = 0; i < percentiles.length; i++) {
+      final double expected = LatencyHistogram.PERCENTILES[i] * 10;
+      assertTrue(Arrays.toString(percentiles),
+          percentiles[i] >= expected && percentiles[i] <= expected * 1.07);
+    }
+
+    // The next interval only covers the values added since the rollover
+    histogram.add(3);
+    assertEquals(1, histogram.rollover());
+    assertArrayEquals(new long[] {3, 3, 3, 3, 3, 3},
+        histogram.getIntervalPercentiles());
+    assertEquals(0, histogram.rollover());
+    assertArrayEquals(new long[6], histogram.getIntervalPercentiles());
+  }
+
+  @Test
+  public void testTopUsers() {
+    final RpcLatencyMetrics metrics = new RpcLatencyMetrics(0, 2);
+    // Up to 4 users are tracked, the others are counted together
+    for (int u = 0; u < 6; u++) {
+      for (int i = 0; i <= u; i++) {
+        metrics.add("getFileInfo", "user" + u, 1, 10);
+      }
+    }
+    metrics.add("mkdirs", null, 2, 20);
+    metrics.rollover();
+
+    assertEquals(Arrays.asList("user3", "user2"), metrics.getTopUsers());
+    assertEquals(21, metrics.getMethodLatencies("getFileInfo")
+        .queueTime.getIntervalCount());
+    assertEquals(5 + 6 + 1, metrics.getUserLatencies(
+        RpcLatencyMetrics.OTHER_USERS).processingTime.getIntervalCount());
+    // The users outside the top ones were dropped, so user5 is tracked now
+    assertNull(metrics.getUserLatencies("user0"));
+    metrics.add("getFileInfo", "user5", 1, 10);
+    assertEquals(0, metrics.getUserLatencies("user5")
+        .queueTime.getIntervalCount());
+
+    MetricsRecordBuilder rb = getMetrics(metrics);
+    assertGauge("method=getFileInfo.QueueTimeNumOps", 21L, rb);
+    assertGauge("method=getFileInfo.ProcessingTime999thPercentileLatency",
+        10L, rb);
+    assertGauge("method=mkdirs.QueueTime50thPercentileLatency", 2L, rb);
+    assertGauge("user=user3.ProcessingTimeNumOps", 4L, rb);
+    assertGauge("user=_others_.ProcessingTime99thPercentileLatency", 20L, rb);
+  }
+}
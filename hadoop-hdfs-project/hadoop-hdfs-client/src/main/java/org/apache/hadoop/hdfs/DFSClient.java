@@ -39,6 +39,7 @@
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -1680,6 +1681,45 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
           UnresolvedPathException.class);
     }
   }
+
+  /**
+   * Get the file info with block locations for several files or
+   * directories, in as few RPCs as the NameNode allows.
+   * @param srcs The string representations of the paths to the files
+   * @param needBlockToken Include block tokens in {@link LocatedBlocks}.
+   * @return the file info of each of srcs, in the same order, with null
+   *         for the paths that are not found
+   *
+   * @see ClientProtocol#getBatchedLocatedFileInfo(String[], boolean) for
+   *      description of exceptions
+   */
+  public HdfsLocatedFileStatus[] getBatchedLocatedFileInfo(String[] srcs,
+      boolean needBlockToken) throws IOException {
+    checkOpen();
+    HdfsLocatedFileStatus[] result = new HdfsLocatedFileStatus[srcs.length];
+    try (TraceScope ignored = tracer.newScope("getBatchedLocatedFileInfo")) {
+      int done = 0;
+      while (done < srcs.length) {
+        // The NameNode may answer for only some of the paths; ask again for
+        // the rest.
+        String[] remaining = done == 0 ? srcs
+            : Arrays.copyOfRange(srcs, done, srcs.length);
+        HdfsLocatedFileStatus[] stats =
+            namenode.getBatchedLocatedFileInfo(remaining, needBlockToken);
+        if (stats.length == 0) {
+          throw new IOException("NameNode returned no file info for "
+              + remaining.length + " paths");
+        }
+        System.arraycopy(stats, 0, result, done, stats.length);
+        done += stats.length;
+      }
+      return result;
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class,
+          UnresolvedPathException.class);
+    }
+  }
   /**
    * Close status of a file
    * @return true if file is already closed
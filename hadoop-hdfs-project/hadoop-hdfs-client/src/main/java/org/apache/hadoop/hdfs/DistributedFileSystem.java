@@ -1580,6 +1580,43 @@ public FileStatus next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Returns the status, with block locations, of each of the given paths,
+   * using as few NameNode RPCs as possible. This is cheaper than calling
+   * {@link #getFileStatus(Path)} and
+   * {@link #getFileBlockLocations(FileStatus, long, long)} per file when
+   * many files are looked up at once.
+   * <p>
+   * Unlike {@link #getFileStatus(Path)}, symlinks in the paths are not
+   * resolved.
+   *
+   * @param paths the paths to look up
+   * @return the statuses of the paths, in the same order
+   * @throws FileNotFoundException if any of the paths does not exist
+   * @throws UnresolvedLinkException if any of the paths contains a symlink
+   * @throws IOException see specific implementation
+   */
+  public LocatedFileStatus[] getLocatedFileStatuses(Path[] paths)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    storageStatistics.incrementOpCounter(OpType.GET_FILE_STATUS);
+    final Path[] absPaths = new Path[paths.length];
+    final String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      absPaths[i] = fixRelativePart(paths[i]);
+      srcs[i] = getPathName(absPaths[i]);
+    }
+    HdfsLocatedFileStatus[] stats = dfs.getBatchedLocatedFileInfo(srcs, false);
+    LocatedFileStatus[] result = new LocatedFileStatus[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      if (stats[i] == null) {
+        throw new FileNotFoundException("File does not exist: " + paths[i]);
+      }
+      result[i] = stats[i].makeQualifiedLocated(getUri(), absPaths[i]);
+    }
+    return result;
+  }
+
   @SuppressWarnings("deprecation")
   @Override
   public void createSymlink(final Path target, final Path link,
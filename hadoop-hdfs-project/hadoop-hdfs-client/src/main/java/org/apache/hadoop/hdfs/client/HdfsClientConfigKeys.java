@@ -278,6 +278,9 @@ interface Failover {
     int     CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_DEFAULT = 0;
     String  RANDOM_ORDER = PREFIX + "random.order";
     boolean RANDOM_ORDER_DEFAULT = false;
+    String  OBSERVER_PROBE_RETRY_PERIOD_KEY =
+        PREFIX + "observer.probe.retry.period";
+    long    OBSERVER_PROBE_RETRY_PERIOD_DEFAULT = 10*MINUTE;
   }
 
   /** dfs.client.write configuration properties */
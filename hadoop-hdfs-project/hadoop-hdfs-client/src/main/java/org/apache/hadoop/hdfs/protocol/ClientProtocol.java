@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSelector;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
@@ -128,6 +129,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws IOException;
 
@@ -319,6 +321,7 @@ void setStoragePolicy(String src, String policyName)
    *           If file/dir <code>src</code> is not found
    */
   @Idempotent
+  @ReadOnly
   BlockStoragePolicy getStoragePolicy(String path) throws IOException;
 
   /**
@@ -685,6 +688,7 @@ boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
@@ -695,6 +699,7 @@ DirectoryListing getListing(String src, byte[] startAfter,
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   SnapshottableDirectoryStatus[] getSnapshottableDirListing()
       throws IOException;
 
@@ -817,6 +822,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(
    *           a symlink.
    */
   @Idempotent
+  @ReadOnly
   long getPreferredBlockSize(String filename)
       throws IOException;
 
@@ -996,6 +1002,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileInfo(String src) throws IOException;
 
   /**
@@ -1010,6 +1017,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   boolean isFileClosed(String src) throws IOException;
 
   /**
@@ -1026,6 +1034,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileLinkInfo(String src) throws IOException;
 
   /**
@@ -1040,9 +1049,33 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsLocatedFileStatus getLocatedFileInfo(String src, boolean needBlockToken)
       throws IOException;
 
+  /**
+   * Get the file info with {@link LocatedBlocks} for several files or
+   * directories at once.
+   * <p>
+   * The NameNode may return the statuses of only the first paths in
+   * <code>srcs</code>, to bound the time it spends on a single call; the
+   * client is expected to call again for the remaining paths.
+   *
+   * @param srcs The string representations of the paths to the files
+   * @param needBlockToken Generate block tokens for {@link LocatedBlocks}
+   * @return the file info of a non-empty prefix of <code>srcs</code>, in
+   *         the same order, with null for the paths that are not found
+   * @throws org.apache.hadoop.security.AccessControlException permission
+   *           denied on any of the paths
+   * @throws org.apache.hadoop.fs.UnresolvedLinkException if any of the paths
+   *           contains a symlink
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly
+  HdfsLocatedFileStatus[] getBatchedLocatedFileInfo(String[] srcs,
+      boolean needBlockToken) throws IOException;
+
   /**
    * Get {@link ContentSummary} rooted at the specified directory.
    * @param path The string representation of the path
@@ -1054,6 +1087,7 @@ HdfsLocatedFileStatus getLocatedFileInfo(String src, boolean needBlockToken)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   ContentSummary getContentSummary(String path) throws IOException;
 
   /**
@@ -1166,6 +1200,7 @@ void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   String getLinkTarget(String path) throws IOException;
 
   /**
@@ -1304,6 +1339,7 @@ void disallowSnapshot(String snapshotRoot)
    * @throws IOException on error
    */
   @Idempotent
+  @ReadOnly
   SnapshotDiffReport getSnapshotDiffReport(String snapshotRoot,
       String fromSnapshot, String toSnapshot) throws IOException;
 
@@ -1332,6 +1368,7 @@ SnapshotDiffReport getSnapshotDiffReport(String snapshotRoot,
    * @throws IOException on error
    */
   @Idempotent
+  @ReadOnly
   SnapshotDiffReportListing getSnapshotDiffReportListing(String snapshotRoot,
       String fromSnapshot, String toSnapshot, byte[] startPath, int index)
       throws IOException;
@@ -1465,6 +1502,7 @@ void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   AclStatus getAclStatus(String src) throws IOException;
 
   /**
@@ -1546,6 +1584,7 @@ void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
       throws IOException;
 
@@ -1561,6 +1600,7 @@ List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> listXAttrs(String src)
       throws IOException;
 
@@ -1595,6 +1635,7 @@ List<XAttr> listXAttrs(String src)
    * @throws IOException see specific implementation
    */
   @Idempotent
+  @ReadOnly
   void checkAccess(String path, FsAction mode) throws IOException;
 
   /**
@@ -1685,6 +1726,7 @@ AddErasureCodingPolicyResponse[] addErasureCodingPolicies(
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   ErasureCodingPolicy getErasureCodingPolicy(String src) throws IOException;
 
   /**
@@ -1705,6 +1747,7 @@ AddErasureCodingPolicyResponse[] addErasureCodingPolicies(
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   QuotaUsage getQuotaUsage(String path) throws IOException;
 
   /**
@@ -112,6 +112,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FinalizeUpgradeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FsyncRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedLocatedFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedLocatedFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryRequestProto;
@@ -906,6 +908,31 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
     }
   }
 
+  @Override
+  public HdfsLocatedFileStatus[] getBatchedLocatedFileInfo(String[] srcs,
+      boolean needBlockToken) throws IOException {
+    GetBatchedLocatedFileInfoRequestProto req =
+        GetBatchedLocatedFileInfoRequestProto.newBuilder()
+            .addAllSrcs(Arrays.asList(srcs))
+            .setNeedBlockToken(needBlockToken)
+            .build();
+    try {
+      GetBatchedLocatedFileInfoResponseProto res =
+          rpcProxy.getBatchedLocatedFileInfo(null, req);
+      HdfsLocatedFileStatus[] result =
+          new HdfsLocatedFileStatus[res.getStatusesCount()];
+      for (int i = 0; i < result.length; i++) {
+        GetLocatedFileInfoResponseProto status = res.getStatuses(i);
+        result[i] = (HdfsLocatedFileStatus) (status.hasFs()
+            ? PBHelperClient.convert(status.getFs())
+            : null);
+      }
+      return result;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public HdfsFileStatus getFileLinkInfo(String src) throws IOException {
     GetFileLinkInfoRequestProto req = GetFileLinkInfoRequestProto.newBuilder()
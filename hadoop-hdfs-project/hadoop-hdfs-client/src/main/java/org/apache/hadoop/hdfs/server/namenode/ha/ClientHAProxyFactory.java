@@ -19,6 +19,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.NameNodeProxiesClient;
+import org.apache.hadoop.ipc.AlignmentContext;
 import org.apache.hadoop.security.UserGroupInformation;
 
 import java.io.IOException;
@@ -26,13 +27,21 @@
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ClientHAProxyFactory<T> implements HAProxyFactory<T> {
+
+  private AlignmentContext alignmentContext;
+
+  @Override
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public T createProxy(Configuration conf, InetSocketAddress nnAddr,
       Class<T> xface, UserGroupInformation ugi, boolean withRetries,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
     return (T) NameNodeProxiesClient.createNonHAProxyWithClientProtocol(
-      nnAddr, conf, ugi, false, fallbackToSimpleAuth);
+      nnAddr, conf, ugi, false, fallbackToSimpleAuth, alignmentContext);
   }
 
   @Override
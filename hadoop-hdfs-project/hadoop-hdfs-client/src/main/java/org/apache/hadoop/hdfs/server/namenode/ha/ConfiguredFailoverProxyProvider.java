@@ -122,16 +122,29 @@ public Class<T> getInterface() {
   @Override
   public synchronized ProxyInfo<T> getProxy() {
     AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
-    if (current.namenode == null) {
+    return new ProxyInfo<T>(createProxyIfNeeded(current),
+        current.address.toString());
+  }
+
+  /**
+   * Create the RPC proxy to the NameNode at the given address if it has not
+   * been created yet.
+   */
+  protected synchronized T createProxyIfNeeded(AddressRpcProxyPair<T> pair) {
+    if (pair.namenode == null) {
       try {
-        current.namenode = factory.createProxy(conf,
-            current.address, xface, ugi, false, getFallbackToSimpleAuth());
+        pair.namenode = factory.createProxy(conf,
+            pair.address, xface, ugi, false, getFallbackToSimpleAuth());
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
       }
     }
-    return new ProxyInfo<T>(current.namenode, current.address.toString());
+    return pair.namenode;
+  }
+
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
   }
 
   @Override
@@ -147,7 +160,7 @@ synchronized void incrementProxyIndex() {
    * A little pair object to store the address and connected RPC proxy object to
    * an NN. Note that {@link AddressRpcProxyPair#namenode} may be null.
    */
-  private static class AddressRpcProxyPair<T> {
+  protected static class AddressRpcProxyPair<T> {
     public final InetSocketAddress address;
     public T namenode;
 
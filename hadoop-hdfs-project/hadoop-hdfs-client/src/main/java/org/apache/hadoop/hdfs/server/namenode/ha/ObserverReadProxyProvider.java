@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.Client.ConnectionId;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A {@link org.apache.hadoop.io.retry.FailoverProxyProvider} implementation
+ * that sends read-only calls (those annotated with {@link ReadOnly}) to
+ * Observer NameNodes and all other calls to the active NameNode, which is
+ * found the same way as by {@link ConfiguredFailoverProxyProvider}.
+ * <p>
+ * Every call carries the highest transaction id the client has seen in any
+ * NameNode response, and an Observer only serves a read after it has applied
+ * that transaction, so a client always reads its own writes. A read that no
+ * Observer can serve goes to the active NameNode instead.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ObserverReadProxyProvider<T extends ClientProtocol>
+    extends ConfiguredFailoverProxyProvider<T> {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(ObserverReadProxyProvider.class);
+
+  /** Returned by {@link #invokeOnObserver} if no Observer served a call. */
+  private static final Object NO_OBSERVER = new Object();
+
+  /** Client-side context for syncing with the NameNode server side. */
+  private final AlignmentContext alignmentContext;
+
+  /** The proxy handed out to the retry layer; it routes every call. */
+  private final T combinedProxy;
+
+  /**
+   * How long reads only go to the active after no NameNode could serve
+   * a read as an Observer.
+   */
+  private final long observerProbeRetryPeriodMs;
+
+  /** The index of the NameNode that most recently served a read. */
+  private int observerIndex = -1;
+
+  /** Time before which no Observer is tried. */
+  private volatile long nextObserverProbeTime = 0;
+
+  @SuppressWarnings("unchecked")
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface, HAProxyFactory<T> factory) {
+    super(conf, uri, xface, factory);
+    this.alignmentContext = new ClientGSIContext();
+    factory.setAlignmentContext(alignmentContext);
+    this.observerProbeRetryPeriodMs = conf.getTimeDuration(
+        HdfsClientConfigKeys.Failover.OBSERVER_PROBE_RETRY_PERIOD_KEY,
+        HdfsClientConfigKeys.Failover.OBSERVER_PROBE_RETRY_PERIOD_DEFAULT,
+        TimeUnit.MILLISECONDS);
+    this.combinedProxy = (T) Proxy.newProxyInstance(
+        ObserverReadInvocationHandler.class.getClassLoader(),
+        new Class<?>[] {xface}, new ObserverReadInvocationHandler());
+  }
+
+  @VisibleForTesting
+  AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    // Create the proxy to the current NameNode eagerly so that connection
+    // problems surface the same way as with ConfiguredFailoverProxyProvider.
+    ProxyInfo<T> current = super.getProxy();
+    return new ProxyInfo<T>(combinedProxy, current.proxyInfo);
+  }
+
+  /**
+   * Try the NameNodes other than the current (presumed active) one for a
+   * read, starting with the one that served the last read.
+   *
+   * @return the result of the call, or {@link #NO_OBSERVER} if no NameNode
+   *         could serve it as an Observer.
+   */
+  private Object invokeOnObserver(Method method, Object[] args)
+      throws Throwable {
+    final int count = proxies.size();
+    final int activeIndex = getCurrentProxyIndex();
+    int start;
+    synchronized (this) {
+      start = observerIndex >= 0 ? observerIndex : activeIndex + 1;
+    }
+    for (int i = 0; i < count; i++) {
+      int index = (start + i) % count;
+      if (index == activeIndex) {
+        continue;
+      }
+      AddressRpcProxyPair<T> pair = proxies.get(index);
+      try {
+        Object result = method.invoke(createProxyIfNeeded(pair), args);
+        synchronized (this) {
+          observerIndex = index;
+        }
+        return result;
+      } catch (InvocationTargetException ite) {
+        Throwable cause = ite.getCause();
+        if (!shouldTryNextNameNode(cause)) {
+          // The Observer has caught up with the client, so its answer,
+          // including an exception, is authoritative.
+          throw cause;
+        }
+        LOG.debug("NameNode {} could not serve {} as an observer: {}",
+            pair.address, method.getName(), cause.toString());
+      } catch (RuntimeException e) {
+        // Failed to create the proxy; try the next NameNode.
+        LOG.debug("Failed to create proxy to {}", pair.address, e);
+      }
+    }
+    nextObserverProbeTime = Time.monotonicNow() + observerProbeRetryPeriodMs;
+    LOG.debug("No observer could serve {}; sending reads to the active for"
+        + " the next {} ms", method.getName(), observerProbeRetryPeriodMs);
+    return NO_OBSERVER;
+  }
+
+  /**
+   * @return true if the exception means the NameNode cannot serve reads
+   * as an up to date Observer right now.
+   */
+  private static boolean shouldTryNextNameNode(Throwable t) {
+    if (t instanceof RemoteException) {
+      IOException unwrapped = ((RemoteException) t).unwrapRemoteException(
+          StandbyException.class, RetriableException.class,
+          SafeModeException.class);
+      return unwrapped instanceof StandbyException
+          || unwrapped instanceof RetriableException
+          || unwrapped instanceof SafeModeException;
+    }
+    // Connection failures and other local errors.
+    return t instanceof IOException;
+  }
+
+  /**
+   * An InvocationHandler that routes read-only calls to an Observer and
+   * everything else, including reads no Observer could serve, to the
+   * current NameNode of the underlying {@link ConfiguredFailoverProxyProvider}.
+   */
+  private class ObserverReadInvocationHandler implements RpcInvocationHandler {
+
+    @Override
+    public Object invoke(Object proxy, final Method method, final Object[] args)
+        throws Throwable {
+      if (method.isAnnotationPresent(ReadOnly.class)
+          && proxies.size() > 1
+          && Time.monotonicNow() >= nextObserverProbeTime) {
+        Object result = invokeOnObserver(method, args);
+        if (result != NO_OBSERVER) {
+          return result;
+        }
+      }
+      try {
+        return method.invoke(
+            createProxyIfNeeded(proxies.get(getCurrentProxyIndex())), args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      // The proxies are closed by the proxy provider.
+    }
+
+    @Override
+    public ConnectionId getConnectionId() {
+      return RPC.getConnectionIdForProxy(
+          createProxyIfNeeded(proxies.get(getCurrentProxyIndex())));
+    }
+  }
+}
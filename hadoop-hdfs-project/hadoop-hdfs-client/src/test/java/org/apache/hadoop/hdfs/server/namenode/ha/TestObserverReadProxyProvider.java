@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Time;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link ObserverReadProxyProvider} using mocked NameNodes.
+ * machine1 is the active NameNode and machine2 is the Observer.
+ */
+public class TestObserverReadProxyProvider {
+
+  private Configuration conf;
+  private URI nnUri;
+  private ClientProtocol active;
+  private ClientProtocol observer;
+
+  @Before
+  public void setup() throws URISyntaxException {
+    String ns = "mycluster-" + Time.monotonicNow();
+    nnUri = new URI("hdfs://" + ns);
+    conf = new Configuration();
+    conf.set(HdfsClientConfigKeys.DFS_NAMESERVICES, ns);
+    conf.set(
+        HdfsClientConfigKeys.DFS_HA_NAMENODES_KEY_PREFIX + "." + ns, "nn1,nn2");
+    conf.set(
+        HdfsClientConfigKeys.DFS_NAMENODE_RPC_ADDRESS_KEY + "." + ns + ".nn1",
+        "machine1.foo.bar:8020");
+    conf.set(
+        HdfsClientConfigKeys.DFS_NAMENODE_RPC_ADDRESS_KEY + "." + ns + ".nn2",
+        "machine2.foo.bar:8020");
+    active = Mockito.mock(ClientProtocol.class);
+    observer = Mockito.mock(ClientProtocol.class);
+  }
+
+  @Test
+  public void testReadsGoToObserverAndWritesToActive() throws Exception {
+    HdfsFileStatus status = Mockito.mock(HdfsFileStatus.class);
+    Mockito.when(observer.getFileInfo("/foo")).thenReturn(status);
+    Mockito.when(active.mkdirs(Matchers.eq("/bar"),
+        Matchers.any(FsPermission.class), Matchers.anyBoolean()))
+        .thenReturn(true);
+
+    ClientProtocol proxy = createProvider().getProxy().proxy;
+    Assert.assertSame(status, proxy.getFileInfo("/foo"));
+    Assert.assertTrue(proxy.mkdirs("/bar", FsPermission.getDefault(), true));
+
+    Mockito.verify(observer).getFileInfo("/foo");
+    Mockito.verify(active, Mockito.never()).getFileInfo(Matchers.anyString());
+    Mockito.verify(active).mkdirs(Matchers.eq("/bar"),
+        Matchers.any(FsPermission.class), Matchers.anyBoolean());
+    Mockito.verify(observer, Mockito.never()).mkdirs(Matchers.anyString(),
+        Matchers.any(FsPermission.class), Matchers.anyBoolean());
+  }
+
+  @Test
+  public void testReadFallsBackToActive() throws Exception {
+    HdfsFileStatus status = Mockito.mock(HdfsFileStatus.class);
+    Mockito.when(observer.getFileInfo("/foo")).thenThrow(new RemoteException(
+        StandbyException.class.getName(), "not an observer"));
+    Mockito.when(active.getFileInfo("/foo")).thenReturn(status);
+
+    ClientProtocol proxy = createProvider().getProxy().proxy;
+    Assert.assertSame(status, proxy.getFileInfo("/foo"));
+    // No observer is probed again until the retry period expires.
+    Assert.assertSame(status, proxy.getFileInfo("/foo"));
+
+    Mockito.verify(observer, Mockito.times(1)).getFileInfo("/foo");
+    Mockito.verify(active, Mockito.times(2)).getFileInfo("/foo");
+  }
+
+  @Test
+  public void testObserverExceptionIsReturned() throws Exception {
+    Mockito.when(observer.getFileInfo("/foo")).thenThrow(new RemoteException(
+        FileNotFoundException.class.getName(), "/foo"));
+
+    ClientProtocol proxy = createProvider().getProxy().proxy;
+    try {
+      proxy.getFileInfo("/foo");
+      Assert.fail("Should fail with the exception thrown by the observer");
+    } catch (RemoteException re) {
+      Assert.assertTrue(re.unwrapRemoteException()
+          instanceof FileNotFoundException);
+    }
+    Mockito.verify(active, Mockito.never()).getFileInfo(Matchers.anyString());
+  }
+
+  private ObserverReadProxyProvider<ClientProtocol> createProvider() {
+    final Map<String, ClientProtocol> byHost = new HashMap<>();
+    byHost.put("machine1.foo.bar", active);
+    byHost.put("machine2.foo.bar", observer);
+    return new ObserverReadProxyProvider<>(conf, nnUri, ClientProtocol.class,
+        new HAProxyFactory<ClientProtocol>() {
+          @Override
+          public ClientProtocol createProxy(Configuration conf,
+              InetSocketAddress nnAddr, Class<ClientProtocol> xface,
+              UserGroupInformation ugi, boolean withRetries,
+              AtomicBoolean fallbackToSimpleAuth) throws IOException {
+            return byHost.get(nnAddr.getHostName());
+          }
+
+          @Override
+          public ClientProtocol createProxy(Configuration conf,
+              InetSocketAddress nnAddr, Class<ClientProtocol> xface,
+              UserGroupInformation ugi, boolean withRetries)
+              throws IOException {
+            return byHost.get(nnAddr.getHostName());
+          }
+        });
+  }
+}
@@ -150,10 +150,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.cached-dfsused.check.interval.ms";
   public static final long DFS_DN_CACHED_DFSUSED_CHECK_INTERVAL_DEFAULT_MS =
       600000;
+  public static final String DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY =
+      "dfs.datanode.replica.journal.enabled";
+  public static final boolean DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT =
+      false;
 
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
   public static final float    DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT = 0.25f;
+  public static final String  DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT =
+    "dfs.namenode.inode.map.allocation.percent";
+  public static final float    DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT_DEFAULT = 1.0f;
+  public static final String  DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT =
+    "dfs.namenode.blocks.map.allocation.percent";
+  public static final float    DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT_DEFAULT = 2.0f;
 
   public static final int     DFS_NAMENODE_HTTP_PORT_DEFAULT =
       HdfsClientConfigKeys.DFS_NAMENODE_HTTP_PORT_DEFAULT;
@@ -335,6 +345,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = true;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_KEY =
+      "dfs.namenode.edits.asynclogging.pipeline.depth";
+  public static final int     DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_DEFAULT =
+      1;
+  public static final String  DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_KEY =
+      "dfs.namenode.edits.sync.postpone-response";
+  public static final boolean DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_DEFAULT =
+      false;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -362,12 +380,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_THREADS_KEY = "dfs.content-summary.threads";
+  public static final int     DFS_CONTENT_SUMMARY_THREADS_DEFAULT = 0;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
   public static final int     DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT = 4000;
+  public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_KEY = "dfs.datanode.socket.reuse.keepalive.park";
+  public static final boolean DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_DEFAULT = false;
   public static final String  DFS_DATANODE_OOB_TIMEOUT_KEY = "dfs.datanode.oob.timeout-ms";
   public static final String  DFS_DATANODE_OOB_TIMEOUT_DEFAULT = "1500,0,0,0"; // OOB_TYPE1, OOB_TYPE2, OOB_TYPE3, OOB_TYPE4
 
@@ -550,6 +572,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_KEY =
+      "dfs.namenode.audit.log.async.pipeline.enabled";
+  public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY =
+      "dfs.namenode.audit.log.async.queue.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT =
+      16384;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY =
+      "dfs.namenode.audit.log.async.batch.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_DEFAULT =
+      256;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY =
+      "dfs.namenode.audit.log.async.overflow.policy";
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
@@ -644,6 +680,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
   public static final int
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_KEY =
+      "dfs.datanode.directoryscan.max.iops.per.volume";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_DEFAULT = 0;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_KEY =
+      "dfs.datanode.directoryscan.reconcile.batch.size";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_DEFAULT = 1000;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_KEY =
+      "dfs.datanode.directoryscan.reconcile.batch.interval";
+  public static final long
+      DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_DEFAULT = 2000;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -740,6 +791,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
   public static final long    DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS_DEFAULT = 5L * 60L * 1000L;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY = "dfs.namenode.blockreport.chunk.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_DEFAULT = 100000;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -763,6 +816,21 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // property for parallel fsimage loading
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final long DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT =
+      1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -897,6 +965,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_HA_NAMENODE_ID_KEY = "dfs.ha.namenode.id";
   public static final String  DFS_HA_STANDBY_CHECKPOINTS_KEY = "dfs.ha.standby.checkpoints";
   public static final boolean DFS_HA_STANDBY_CHECKPOINTS_DEFAULT = true;
+  public static final String  DFS_HA_OBSERVER_ENABLED_KEY = "dfs.ha.observer.enabled";
+  public static final boolean DFS_HA_OBSERVER_ENABLED_DEFAULT = false;
   public static final String DFS_HA_LOGROLL_PERIOD_KEY = "dfs.ha.log-roll.period";
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
@@ -906,6 +976,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY =
           "dfs.ha.tail-edits.in-progress";
   public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY =
+      "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
   public static final String DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY =
       "dfs.ha.tail-edits.rolledits.timeout";
   public static final int DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_DEFAULT = 60; // 1m
@@ -996,6 +1069,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_JOURNALNODE_SYNC_INTERVAL_KEY =
       "dfs.journalnode.sync.interval";
   public static final long DFS_JOURNALNODE_SYNC_INTERVAL_DEFAULT = 2*60*1000L;
+  public static final String DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY =
+      "dfs.journalnode.edit-cache-size.bytes";
+  public static final int DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -1029,6 +1105,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT = 600000; // 10 minutes
   public static final String DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY = "dfs.namenode.retrycache.heap.percent";
   public static final float DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT = 0.03f;
+  public static final String DFS_NAMENODE_RETRY_CACHE_COMPACT_KEY = "dfs.namenode.retrycache.compact";
+  public static final boolean DFS_NAMENODE_RETRY_CACHE_COMPACT_DEFAULT = false;
   
   // Hidden configuration undocumented in hdfs-site. xml
   // Timeout to wait for block receiver and responder thread to stop
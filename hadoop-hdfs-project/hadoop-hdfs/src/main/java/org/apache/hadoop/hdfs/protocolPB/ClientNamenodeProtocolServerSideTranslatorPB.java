@@ -108,6 +108,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FsyncResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedLocatedFileInfoRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedLocatedFileInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto.Builder;
@@ -975,6 +977,30 @@ public GetLocatedFileInfoResponseProto getLocatedFileInfo(
     }
   }
 
+  @Override
+  public GetBatchedLocatedFileInfoResponseProto getBatchedLocatedFileInfo(
+      RpcController controller, GetBatchedLocatedFileInfoRequestProto req)
+      throws ServiceException {
+    try {
+      List<String> srcs = req.getSrcsList();
+      HdfsFileStatus[] result = server.getBatchedLocatedFileInfo(
+          srcs.toArray(new String[srcs.size()]), req.getNeedBlockToken());
+      GetBatchedLocatedFileInfoResponseProto.Builder builder =
+          GetBatchedLocatedFileInfoResponseProto.newBuilder();
+      for (HdfsFileStatus status : result) {
+        if (status != null) {
+          builder.addStatuses(GetLocatedFileInfoResponseProto.newBuilder()
+              .setFs(PBHelperClient.convert(status)));
+        } else {
+          builder.addStatuses(VOID_GETLOCATEDFILEINFO_RESPONSE);
+        }
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetFileLinkInfoResponseProto getFileLinkInfo(RpcController controller,
       GetFileLinkInfoRequestProto req) throws ServiceException {
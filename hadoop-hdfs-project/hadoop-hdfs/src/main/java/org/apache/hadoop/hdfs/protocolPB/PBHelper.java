@@ -793,6 +793,8 @@ public static NNHAStatusHeartbeatProto.State convert(HAServiceState s) {
     case ACTIVE:
       return NNHAStatusHeartbeatProto.State.ACTIVE;
     case STANDBY:
+    case OBSERVER:
+      // Datanodes treat an observer like any other standby.
       return NNHAStatusHeartbeatProto.State.STANDBY;
     default:
       throw new IllegalArgumentException("Unexpected HAServiceState:"
@@ -21,6 +21,7 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -37,6 +38,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -52,6 +54,7 @@
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
 import org.apache.hadoop.hdfs.web.URLConnectionFactory;
+import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
@@ -67,6 +70,13 @@
 public class QuorumJournalManager implements JournalManager {
   static final Log LOG = LogFactory.getLog(QuorumJournalManager.class);
 
+  /**
+   * Minimum interval between two warnings about falling back from RPC to
+   * streaming; a JournalNode whose cache does not yet hold the requested
+   * edits causes a fallback on every tail.
+   */
+  private static final long RPC_FALLBACK_WARN_INTERVAL_MS = 60 * 1000;
+
   // Timeouts for which the QJM will wait for each of the following actions.
   private final int startSegmentTimeoutMs;
   private final int prepareRecoveryTimeoutMs;
@@ -91,7 +101,18 @@ public class QuorumJournalManager implements JournalManager {
   private final AsyncLoggerSet loggers;
 
   private int outputBufferCapacity = 512 * 1024;
+
+  /**
+   * Whether in-progress edits may be read over RPC from the JournalNodes'
+   * in-memory edits cache, rather than streamed over HTTP from the
+   * segment files.
+   */
+  private final boolean inProgressTailingEnabled;
+  /** Maximum number of transactions requested in a single RPC. */
+  private final int maxTxnsPerRpc;
   private final URLConnectionFactory connectionFactory;
+  /** The earliest time at which the next RPC fallback is logged as WARN. */
+  private long nextRpcFallbackWarnTime = Long.MIN_VALUE;
 
   @VisibleForTesting
   public QuorumJournalManager(Configuration conf,
@@ -156,6 +177,16 @@ public QuorumJournalManager(Configuration conf,
             .DFS_QJM_OPERATIONS_TIMEOUT,
         DFSConfigKeys.DFS_QJM_OPERATIONS_TIMEOUT_DEFAULT, TimeUnit
             .MILLISECONDS);
+
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0,
+        "Must specify %s greater than 0!",
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -467,10 +498,109 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
     selectInputStreams(streams, fromTxnId, inProgressOk, false);
   }
 
+  /**
+   * Select input streams.
+   * inProgressOk should be true only for tailing, not for startup
+   */
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk,
       boolean onlyDurableTxns) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Tailing edits starting from txn ID " + fromTxnId +
+            " via RPC mechanism");
+      }
+      try {
+        Collection<EditLogInputStream> rpcStreams = new ArrayList<>();
+        selectRpcInputStreams(rpcStreams, fromTxnId, onlyDurableTxns);
+        streams.addAll(rpcStreams);
+        return;
+      } catch (IOException ioe) {
+        logRpcFallback(fromTxnId, ioe);
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk,
+        onlyDurableTxns);
+  }
+
+  private void logRpcFallback(long fromTxnId, IOException ioe) {
+    String msg = "Encountered exception while tailing edits >= " + fromTxnId
+        + " via RPC; falling back to streaming.";
+    long now = Time.monotonicNow();
+    if (now >= nextRpcFallbackWarnTime) {
+      nextRpcFallbackWarnTime = now + RPC_FALLBACK_WARN_INTERVAL_MS;
+      LOG.warn(msg + " Further fallbacks in the next "
+          + RPC_FALLBACK_WARN_INTERVAL_MS + " ms are logged at DEBUG.", ioe);
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug(msg, ioe);
+    }
+  }
+
+  /**
+   * Fetch edits from the quorum via RPC, served from the JournalNodes'
+   * in-memory edits cache. A single stream is produced from one JournalNode
+   * whose response covers the selected range. If onlyDurableTxns is set,
+   * that range is limited to the transactions which a majority of the
+   * JournalNodes have returned.
+   *
+   * @throws IOException if a quorum could not be reached or a quorum of
+   *         JournalNodes could not serve the edits from their caches; the
+   *         caller should then fall back to
+   *         {@link #selectStreamingInputStreams}.
+   */
+  void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId, boolean onlyDurableTxns) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> responseMap =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+    assert responseMap.size() >= loggers.getMajoritySize() :
+        "Quorum call returned without a majority";
+
+    List<Integer> responseCounts = new ArrayList<>();
+    for (GetJournaledEditsResponseProto resp : responseMap.values()) {
+      responseCounts.add(resp.getTxnCount());
+    }
+    Collections.sort(responseCounts);
+    int highestTxnCount = responseCounts.get(responseCounts.size() - 1);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Got txn counts " + responseCounts +
+          " from loggers for edits starting at txn ID " + fromTxnId);
+    }
+
+    // The majority-th highest count is the number of transactions which a
+    // quorum has acknowledged, i.e. which are guaranteed to be durable.
+    int maxAllowedTxns = !onlyDurableTxns ? highestTxnCount :
+        responseCounts.get(responseCounts.size() - loggers.getMajoritySize());
+    if (maxAllowedTxns == 0) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("No new edits available in logs; requested starting from " +
+            "ID " + fromTxnId);
+      }
+      return;
+    }
+    // Choose an arbitrary logger from the set of responses which meet the
+    // maxAllowedTxns criteria
+    for (GetJournaledEditsResponseProto resp : responseMap.values()) {
+      if (resp.getTxnCount() >= maxAllowedTxns) {
+        streams.add(EditLogFileInputStream.fromByteString(resp.getEditLog(),
+            fromTxnId, fromTxnId + maxAllowedTxns - 1, true));
+        return;
+      }
+    }
+    throw new IllegalStateException("Didn't find any logger with at least " +
+        maxAllowedTxns + " transactions");
+  }
+
+  /**
+   * Select streams by reading the edit log segments from the JournalNodes
+   * over HTTP, as listed in each JournalNode's edit log manifest.
+   */
+  void selectStreamingInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId, boolean inProgressOk,
+      boolean onlyDurableTxns) throws IOException {
 
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
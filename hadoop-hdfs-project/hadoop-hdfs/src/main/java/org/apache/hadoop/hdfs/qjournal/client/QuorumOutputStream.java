@@ -83,35 +83,11 @@ public void setReadyToFlush() throws IOException {
 
   @Override
   protected void flushAndSync(boolean durable) throws IOException {
-    int numReadyBytes = buf.countReadyBytes();
-    if (numReadyBytes > 0) {
+    if (buf.countReadyBytes() > 0) {
       int numReadyTxns = buf.countReadyTxns();
       long firstTxToFlush = buf.getFirstReadyTxId();
-
-      assert numReadyTxns > 0;
-
-      // Copy from our double-buffer into a new byte array. This is for
-      // two reasons:
-      // 1) The IPC code has no way of specifying to send only a slice of
-      //    a larger array.
-      // 2) because the calls to the underlying nodes are asynchronous, we
-      //    need a defensive copy to avoid accidentally mutating the buffer
-      //    before it is sent.
-      DataOutputBuffer bufToSend = new DataOutputBuffer(numReadyBytes);
-      buf.flushTo(bufToSend);
-      assert bufToSend.getLength() == numReadyBytes;
-      byte[] data = bufToSend.getData();
-      assert data.length == bufToSend.getLength();
-
-      QuorumCall<AsyncLogger, Void> qcall = loggers.sendEdits(
-          segmentTxId, firstTxToFlush,
-          numReadyTxns, data);
-      loggers.waitForWriteQuorum(qcall, writeTimeoutMs, "sendEdits");
-      
-      // Since we successfully wrote this batch, let the loggers know. Any future
-      // RPCs will thus let the loggers know of the most recent transaction, even
-      // if a logger has fallen behind.
-      loggers.setCommittedTxId(firstTxToFlush + numReadyTxns - 1);
+      QuorumCall<AsyncLogger, Void> qcall = sendReadyEdits();
+      waitForEdits(qcall, firstTxToFlush, numReadyTxns);
 
       // If we don't have this dummy send, committed TxId might be one-batch
       // stale on the Journal Nodes
@@ -124,6 +100,65 @@ protected void flushAndSync(boolean durable) throws IOException {
     }
   }
 
+  /**
+   * Send the ready edits to the loggers and wait for a quorum of them in
+   * {@link PendingFlush#waitForDurable()}. The loggers write the batches in
+   * the order they were sent, so several batches can be outstanding.
+   * <p>
+   * When the committed txid has to be kept up to date on the JournalNodes,
+   * this flushes synchronously, since the dummy send which carries the
+   * committed txid must not overtake later batches.
+   */
+  @Override
+  public PendingFlush startFlush() throws IOException {
+    if (updateCommittedTxId || buf.countReadyBytes() == 0) {
+      return super.startFlush();
+    }
+    final int numReadyTxns = buf.countReadyTxns();
+    final long firstTxToFlush = buf.getFirstReadyTxId();
+    final QuorumCall<AsyncLogger, Void> qcall = sendReadyEdits();
+    return new PendingFlush() {
+      @Override
+      public void waitForDurable() throws IOException {
+        waitForEdits(qcall, firstTxToFlush, numReadyTxns);
+      }
+    };
+  }
+
+  /** Send the edits which are ready to flush to the loggers. */
+  private QuorumCall<AsyncLogger, Void> sendReadyEdits() throws IOException {
+    int numReadyBytes = buf.countReadyBytes();
+    int numReadyTxns = buf.countReadyTxns();
+    long firstTxToFlush = buf.getFirstReadyTxId();
+
+    assert numReadyTxns > 0;
+
+    // Copy from our double-buffer into a new byte array. This is for
+    // two reasons:
+    // 1) The IPC code has no way of specifying to send only a slice of
+    //    a larger array.
+    // 2) because the calls to the underlying nodes are asynchronous, we
+    //    need a defensive copy to avoid accidentally mutating the buffer
+    //    before it is sent.
+    DataOutputBuffer bufToSend = new DataOutputBuffer(numReadyBytes);
+    buf.flushTo(bufToSend);
+    assert bufToSend.getLength() == numReadyBytes;
+    byte[] data = bufToSend.getData();
+    assert data.length == bufToSend.getLength();
+
+    return loggers.sendEdits(segmentTxId, firstTxToFlush, numReadyTxns, data);
+  }
+
+  private void waitForEdits(QuorumCall<AsyncLogger, Void> qcall,
+      long firstTxToFlush, int numReadyTxns) throws IOException {
+    loggers.waitForWriteQuorum(qcall, writeTimeoutMs, "sendEdits");
+
+    // Since we successfully wrote this batch, let the loggers know. Any future
+    // RPCs will thus let the loggers know of the most recent transaction, even
+    // if a logger has fallen behind.
+    loggers.setCommittedTxId(firstTxToFlush + numReadyTxns - 1);
+  }
+
   @Override
   public String generateReport() {
     StringBuilder sb = new StringBuilder();
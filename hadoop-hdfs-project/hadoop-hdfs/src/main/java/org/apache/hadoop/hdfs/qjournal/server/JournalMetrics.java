@@ -25,6 +25,7 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 
 /**
  * The server-side metrics for a journal from the JournalNode's
@@ -48,6 +49,15 @@ class JournalMetrics {
 
   @Metric("Number of edit logs downloaded by JournalNodeSyncer")
   private MutableCounterLong numEditLogsSynced;
+
+  @Metric(value = {"RpcRequestCacheMissAmount", "Number of RPC requests " +
+      "unable to be served due to lack of availability in cache, and how " +
+      "many transactions away the request was from being in the cache."},
+      valueName = "Txns")
+  MutableStat rpcRequestCacheMissAmount;
+
+  @Metric("Number of RPC requests with zero edits returned")
+  MutableCounterLong rpcEmptyResponses;
   
   private final int[] QUANTILE_INTERVALS = new int[] {
       1*60, // 1m
@@ -0,0 +1,374 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An in-memory cache of edits in their serialized form. This is used to serve
+ * the {@link Journal#getJournaledEdits(long, int)} call, used by the
+ * QJM when {@value DFSConfigKeys#DFS_HA_TAILEDITS_INPROGRESS_KEY} is
+ * enabled.
+ *
+ * <p>When a batch of edits is received by the JournalNode, it is put into this
+ * cache via {@link #storeEdits(byte[], long, long, int)}. Edits must be
+ * stored contiguously; if a batch is stored which does not directly follow
+ * the previously stored batch, the cache is cleared before storing the new
+ * one. The cache evicts the oldest batches once the total size of cached
+ * edits exceeds {@value DFSConfigKeys#DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY}
+ * bytes.
+ *
+ * <p>Edits are retrieved via {@link #retrieveEdits(long, int, List)}. A
+ * request for transactions older than the oldest cached transaction results
+ * in a {@link CacheMissException}; the caller is expected to fall back to
+ * reading the edits from the on-disk segments instead. The returned buffers
+ * begin with an edit log header, so that they can be read in the same way
+ * as an edit log file.
+ */
+class JournaledEditsCache {
+
+  private static final int INVALID_LAYOUT_VERSION = 0;
+  private static final long INVALID_TXN_ID = -1;
+
+  /** The capacity, in bytes, of this cache. */
+  private final int capacity;
+
+  /**
+   * Guards all of the fields below. Readers only hold it while collecting
+   * references to cached batches, which are never modified once stored.
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+
+  /**
+   * Stores the actual data as a mapping of the StartTxnId of a batch of edits
+   * to the serialized batch of edits. Stores only contiguous ranges; that is,
+   * the last transaction ID in one batch is always one less than the first
+   * transaction ID in the next batch.
+   */
+  private final NavigableMap<Long, byte[]> dataMap = new TreeMap<>();
+
+  /** Stores the layout version currently present in the cache. */
+  private int layoutVersion = INVALID_LAYOUT_VERSION;
+
+  /** Stores the serialized version of the header for the current version. */
+  private ByteBuffer layoutHeader;
+
+  /**
+   * The lowest/highest transaction IDs present in the cache.
+   * {@value INVALID_TXN_ID} if there are no transactions in the cache.
+   */
+  private long lowestTxnId = INVALID_TXN_ID;
+  private long highestTxnId = INVALID_TXN_ID;
+
+  /** The total size, in bytes, of the batches held in {@link #dataMap}. */
+  private int totalSize;
+
+  JournaledEditsCache(Configuration conf) {
+    capacity = conf.getInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT);
+    if (capacity > 0.9 * Runtime.getRuntime().maxMemory()) {
+      Journal.LOG.warn(String.format("Cache capacity is set at %d bytes but " +
+          "maximum JVM memory is only %d bytes. It is recommended that you " +
+          "decrease the cache size or increase the heap size.",
+          capacity, Runtime.getRuntime().maxMemory()));
+    }
+    Journal.LOG.info("Enabling the journaled edits cache with a capacity " +
+        "of bytes: " + capacity);
+  }
+
+  /**
+   * Fetch the data for edits starting at the specific transaction ID, fetching
+   * up to {@code maxTxns} transactions. Populates a list of output buffers
+   * which contains a serialized version of the edits, and returns the count of
+   * edits contained within the serialized buffers. The serialized edits are
+   * prefixed with a standard edit log header containing information about the
+   * layout version. The transactions returned are guaranteed to have
+   * contiguous transaction IDs.
+   *
+   * If {@code requestedStartTxn} is higher than the highest transaction which
+   * has been added to this cache, a response with an empty buffer and a
+   * transaction count of 0 will be returned. If {@code requestedStartTxn} is
+   * lower than the lowest transaction currently contained in this cache, or no
+   * transactions have yet been added to the cache, an exception will be thrown.
+   *
+   * @param requestedStartTxn The ID of the first transaction to return. If any
+   *                          transactions are returned, it is guaranteed that
+   *                          the first one will have this ID.
+   * @param maxTxns The maximum number of transactions to return.
+   * @param outputBuffers A list to populate with output buffers. When
+   *                      concatenated, these form a full response.
+   * @return The number of transactions contained within the set of output
+   *         buffers.
+   * @throws IOException If transactions are requested which cannot be served
+   *                     by this cache.
+   */
+  int retrieveEdits(long requestedStartTxn, int maxTxns,
+      List<ByteBuffer> outputBuffers) throws IOException {
+    int txnCount = 0;
+    int logVersion;
+
+    lock.readLock().lock();
+    try {
+      if (lowestTxnId == INVALID_TXN_ID || requestedStartTxn < lowestTxnId) {
+        throw getCacheMissException(requestedStartTxn);
+      } else if (requestedStartTxn > highestTxnId) {
+        return 0;
+      }
+      logVersion = layoutVersion;
+      outputBuffers.add(layoutHeader.duplicate());
+      Long firstKey = dataMap.floorKey(requestedStartTxn);
+      Map.Entry<Long, byte[]> prev = null;
+      for (Map.Entry<Long, byte[]> ent :
+          dataMap.tailMap(firstKey, true).entrySet()) {
+        if (txnCount >= maxTxns) {
+          break;
+        }
+        if (prev != null) {
+          // Transactions before requestedStartTxn are removed from the first
+          // buffer after the loop, so they are not counted here.
+          outputBuffers.add(ByteBuffer.wrap(prev.getValue()));
+          txnCount += ent.getKey() - Math.max(requestedStartTxn, prev.getKey());
+        }
+        prev = ent;
+      }
+      if (prev != null && txnCount < maxTxns) {
+        // The last batch ends at highestTxnId.
+        outputBuffers.add(ByteBuffer.wrap(prev.getValue()));
+        txnCount += highestTxnId + 1 -
+            Math.max(requestedStartTxn, prev.getKey());
+      }
+      // Release the lock before deserializing the buffers to find transaction
+      // boundaries; the cached arrays are never modified once stored.
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // Remove extra leading transactions in the first buffer (the 0th buffer
+    // is the header).
+    ByteBuffer firstBuf = outputBuffers.get(1);
+    firstBuf.position(
+        findTransactionPosition(firstBuf.array(), requestedStartTxn,
+            logVersion));
+    // Remove trailing transactions in the last buffer if necessary
+    if (txnCount > maxTxns) {
+      ByteBuffer lastBuf = outputBuffers.get(outputBuffers.size() - 1);
+      lastBuf.limit(findTransactionPosition(lastBuf.array(),
+          requestedStartTxn + maxTxns, logVersion));
+      txnCount = maxTxns;
+    }
+    return txnCount;
+  }
+
+  /**
+   * Store a batch of serialized edits into this cache. Removes old batches
+   * as necessary to keep the total size of the cache below the capacity.
+   * See the class Javadoc for more info.
+   *
+   * This attempts to always handle malformed inputs gracefully rather than
+   * throwing an exception, to allow the rest of the Journal's operations
+   * to proceed normally.
+   *
+   * @param inputData A buffer containing edits in serialized form
+   * @param newStartTxn The txn ID of the first edit in {@code inputData}
+   * @param newEndTxn The txn ID of the last edit in {@code inputData}
+   * @param newLayoutVersion The version of the layout used to serialize
+   *                         the edits
+   */
+  void storeEdits(byte[] inputData, long newStartTxn, long newEndTxn,
+      int newLayoutVersion) {
+    if (newStartTxn < 0 || newEndTxn < newStartTxn) {
+      Journal.LOG.error(String.format("Attempted to cache data of length %d " +
+          "with newStartTxn %d and newEndTxn %d",
+          inputData.length, newStartTxn, newEndTxn));
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (newLayoutVersion != layoutVersion) {
+        try {
+          updateLayoutVersion(newLayoutVersion, newStartTxn);
+        } catch (IOException ioe) {
+          Journal.LOG.error(String.format("Unable to save new edits [%d, %d] " +
+              "due to exception when updating to new layout version %d",
+              newStartTxn, newEndTxn, newLayoutVersion), ioe);
+          return;
+        }
+      } else if (highestTxnId != INVALID_TXN_ID &&
+          newStartTxn != highestTxnId + 1) {
+        // Cache only holds a contiguous range of transactions; this batch
+        // overwrites or skips past what was cached (e.g. after a recovery),
+        // so start afresh.
+        Journal.LOG.warn(String.format("Cache has edits up to %d but is " +
+            "receiving edits starting at %d; clearing the cache",
+            highestTxnId, newStartTxn));
+        clear();
+      }
+      if (inputData.length > capacity) {
+        clear();
+        Journal.LOG.warn(String.format("A single batch of edits was too " +
+                "large to fit into the cache: startTxn = %d, endTxn = %d, " +
+                "input length = %d. The capacity of the cache (%s) must be " +
+                "increased for it to work properly (current capacity %d)." +
+                "Cache is now empty.",
+            newStartTxn, newEndTxn, inputData.length,
+            DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY, capacity));
+        return;
+      }
+      if (dataMap.isEmpty()) {
+        lowestTxnId = newStartTxn;
+      }
+      dataMap.put(newStartTxn, inputData);
+      highestTxnId = newEndTxn;
+      totalSize += inputData.length;
+
+      while (totalSize > capacity) {
+        Map.Entry<Long, byte[]> lowest = dataMap.pollFirstEntry();
+        totalSize -= lowest.getValue().length;
+        lowestTxnId = dataMap.firstKey();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Skip through a given serialized edits buffer to find the position of the
+   * transaction with ID {@code txnId}.
+   *
+   * @param buf A buffer of serialized edits, without a log header.
+   * @param txnId The transaction ID to search for.
+   * @param logVersion The layout version the edits were serialized with.
+   * @return The offset of the transaction, or the length of the buffer if all
+   *         transactions in it precede {@code txnId}.
+   */
+  private static int findTransactionPosition(byte[] buf, long txnId,
+      int logVersion) throws IOException {
+    FSEditLogLoader.PositionTrackingInputStream tracker =
+        new FSEditLogLoader.PositionTrackingInputStream(
+            new ByteArrayInputStream(buf));
+    FSEditLogOp.Reader reader = FSEditLogOp.Reader.create(
+        new DataInputStream(tracker), tracker, logVersion);
+    long previousPos = 0;
+    long scanned;
+    while ((scanned = reader.scanOp()) < txnId &&
+        scanned != HdfsServerConstants.INVALID_TXID) {
+      previousPos = tracker.getPos();
+    }
+    // tracker is backed by a byte[]; position cannot go above an integer
+    return (int) previousPos;
+  }
+
+  /**
+   * Update the layout version of the cache. This clears out all existing
+   * entries, and populates the new layout version and header for that version.
+   *
+   * @param newLayoutVersion The new layout version to be stored in the cache
+   * @param newStartTxn The new lowest transaction in the cache
+   */
+  private void updateLayoutVersion(int newLayoutVersion, long newStartTxn)
+      throws IOException {
+    StringBuilder logMsg = new StringBuilder()
+        .append("Updating layout version from ").append(layoutVersion)
+        .append(" to ").append(newLayoutVersion)
+        .append(" for storing edits on the cache starting from txn ID ")
+        .append(newStartTxn);
+    if (layoutVersion != INVALID_LAYOUT_VERSION) {
+      logMsg.append("; previous version had txn IDs ").append(lowestTxnId)
+          .append(" to ").append(highestTxnId);
+    }
+    Journal.LOG.info(logMsg.toString());
+
+    clear();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    EditLogFileOutputStream.writeHeader(newLayoutVersion,
+        new DataOutputStream(baos));
+    layoutVersion = newLayoutVersion;
+    layoutHeader = ByteBuffer.wrap(baos.toByteArray());
+  }
+
+  /** Clear all cached edits, keeping the current layout version. */
+  private void clear() {
+    dataMap.clear();
+    totalSize = 0;
+    lowestTxnId = INVALID_TXN_ID;
+    highestTxnId = INVALID_TXN_ID;
+  }
+
+  private CacheMissException getCacheMissException(long requestedTxnId) {
+    if (lowestTxnId == INVALID_TXN_ID) {
+      return new CacheMissException(0, "Cache is empty; either it was never " +
+          "written to or the last write overflowed the cache capacity.");
+    } else {
+      return new CacheMissException(lowestTxnId - requestedTxnId,
+          "Cache does not contain txn ID %d. The lowest available is %d",
+          requestedTxnId, lowestTxnId);
+    }
+  }
+
+  @VisibleForTesting
+  int getTotalSize() {
+    lock.readLock().lock();
+    try {
+      return totalSize;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Thrown when edits are requested which are older than the oldest
+   * transaction held in the cache.
+   */
+  static class CacheMissException extends IOException {
+
+    private static final long serialVersionUID = 0L;
+
+    private final long cacheMissAmount;
+
+    CacheMissException(long cacheMissAmount, String msgFormat,
+        Object... msgArgs) {
+      super(String.format(msgFormat, msgArgs));
+      this.cacheMissAmount = cacheMissAmount;
+    }
+
+    long getCacheMissAmount() {
+      return cacheMissAmount;
+    }
+
+  }
+
+}
@@ -124,6 +124,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -338,6 +339,9 @@ public long getTotalECBlockGroups() {
   private final Set<Block> postponedMisreplicatedBlocks =
       new LinkedHashSet<Block>();
   private final int blocksPerPostpondedRescan;
+
+  /** Maximum number of replicas of a block report processed per lock hold. */
+  private final int blockReportChunkSize;
   private final ArrayList<Block> rescannedMisreplicatedBlocks;
 
   /**
@@ -457,9 +461,12 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         datanodeManager.getBlockInvalidateLimit(),
         startupDelayBlockDeletionInMs);
 
-    // Compute the map capacity by allocating 2% of total memory
+    // Compute the map capacity by allocating 2% of total memory by default
+    float blocksMapPercent = conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_ALLOCATION_PERCENT_DEFAULT);
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(blocksMapPercent, "BlocksMap"));
     placementPolicies = new BlockPlacementPolicies(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
@@ -536,6 +543,10 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+    int chunkSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_DEFAULT);
+    this.blockReportChunkSize = chunkSize > 0 ? chunkSize : Integer.MAX_VALUE;
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
@@ -578,6 +589,7 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
     LOG.info("redundancyRecheckInterval  = {}ms", redundancyRecheckIntervalMs);
     LOG.info("encryptDataTransfer        = {}", encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = {}", maxNumBlocksToLog);
+    LOG.info("blockReportChunkSize       = {}", blockReportChunkSize);
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -1806,7 +1818,7 @@ int computeBlockReconstructionWork(int blocksToProcess) {
       blocksToReconstruct = neededReconstruction
           .chooseLowRedundancyBlocks(blocksToProcess);
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("computeBlockReconstructionWork");
     }
     return computeReconstructionWorkForBlocks(blocksToReconstruct);
   }
@@ -1840,7 +1852,7 @@ int computeReconstructionWorkForBlocks(
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("computeReconstructionWorkForBlocks");
     }
 
     // Step 2: choose target nodes for each reconstruction task
@@ -1876,7 +1888,7 @@ int computeReconstructionWorkForBlocks(
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("computeReconstructionWorkForBlocks");
     }
 
     if (blockLog.isDebugEnabled()) {
@@ -2316,7 +2328,7 @@ void processPendingReconstructions() {
           }
         }
       } finally {
-        namesystem.writeUnlock();
+        namesystem.writeUnlock("processPendingReconstructions");
       }
       /* If we know the target datanodes where the replication timedout,
        * we could invoke decBlocksScheduled() on it. Its ok for now.
@@ -2479,15 +2491,198 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context) throws IOException {
-    namesystem.writeLock();
-    final long startTime = Time.monotonicNow(); //after acquiring write lock
-    final long endTime;
-    DatanodeDescriptor node;
-    Collection<Block> invalidatedBlocks = Collections.emptyList();
-    String strBlockReportId =
-        context != null ? Long.toHexString(context.getReportId()) : "";
+    return processReport(nodeID, storage, newReport, context, false);
+  }
 
+  /**
+   * The given storage is reporting all its blocks.
+   * Update the (storage-->block list) and (block-->storage list) maps.
+   *
+   * The report is processed in chunks of at most
+   * {@link DFSConfigKeys#DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY} replicas,
+   * each under its own hold of the namesystem write lock, so that a large
+   * report does not block other operations for its whole duration.
+   *
+   * @param queueChunks if true, each chunk is run as a block op (see
+   *        {@link #runBlockOp(Callable)}), so that the lock is released and
+   *        other queued block ops run between chunks
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean processReport(final DatanodeID nodeID,
+      final DatanodeStorage storage,
+      final BlockListAsLongs newReport,
+      BlockReportContext context,
+      boolean queueChunks) throws IOException {
+    final FullBlockReport report =
+        new FullBlockReport(nodeID, storage, newReport, context);
+    final long startTime = Time.monotonicNow();
+    boolean done = false;
     try {
+      while (!done) {
+        if (queueChunks) {
+          done = runBlockOp(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException {
+              return report.processNextChunk();
+            }
+          });
+        } else {
+          done = report.processNextChunk();
+        }
+      }
+    } finally {
+      if (!done) {
+        // A queued chunk may not have run at all.
+        report.abandon();
+      }
+    }
+    if (!report.processed) {
+      // Discarded or rejected before any of it was processed
+      return report.result;
+    }
+    final long endTime = Time.monotonicNow();
+
+    for (Block b : report.invalidatedBlocks) {
+      blockLog.debug("BLOCK* processReport 0x{}: {} on node {} size {} does not"
+          + " belong to any file", report.strBlockReportId, b, report.node,
+          b.getNumBytes());
+    }
+
+    // Log the block report processing stats from Namenode perspective
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addStorageBlockReport((int) (endTime - startTime));
+      metrics.addStorageBlockReportLockHold(report.lockHoldTime);
+    }
+    blockLog.info("BLOCK* processReport 0x{}: from storage {} node {}, " +
+        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs, " +
+        "lock held: {} msecs in {} chunks, invalidatedBlocks: {}",
+        report.strBlockReportId, storage.getStorageID(),
+        nodeID, newReport.getNumberOfBlocks(),
+        report.node.hasStaleStorages(), (endTime - startTime),
+        report.lockHoldTime, report.numChunks,
+        report.invalidatedBlocks.size());
+    return !report.node.hasStaleStorages();
+  }
+
+  /**
+   * The state of a full block report from one storage while it is processed
+   * chunk by chunk.
+   */
+  private class FullBlockReport {
+    private final DatanodeID nodeID;
+    private final DatanodeStorage storage;
+    private final BlockReportContext context;
+    private final String strBlockReportId;
+    private final Iterator<BlockReportReplica> replicas;
+    private final Collection<Block> invalidatedBlocks = new ArrayList<>();
+    private DatanodeDescriptor node;
+    private DatanodeStorageInfo storageInfo;
+    private boolean firstReport;
+    /** The lowest block ID on the storage not yet diffed against the report. */
+    private long nextStoredBlockId = Long.MIN_VALUE;
+    private int numChunks;
+    private long lockHoldTime;
+    /** Whether the report was accepted for processing. */
+    private boolean processed;
+    /** Whether this report holds the in-progress mark of the storage. */
+    private boolean inProgress;
+    /** The return value of processReport if the report was not processed. */
+    private boolean result;
+
+    FullBlockReport(DatanodeID nodeID, DatanodeStorage storage,
+        BlockListAsLongs report, BlockReportContext context) {
+      this.nodeID = nodeID;
+      this.storage = storage;
+      this.context = context;
+      this.strBlockReportId =
+          context != null ? Long.toHexString(context.getReportId()) : "";
+      // Sorting does not need the lock, so do it before taking it.
+      this.replicas = sortReport(nodeID, report, context, strBlockReportId)
+          .iterator();
+    }
+
+    /**
+     * Process the next chunk of the report under the namesystem write lock.
+     * If a chunk fails, the report is abandoned and the storage is not
+     * marked as having sent a block report, so that its next report is
+     * reconciled against the whole storage again.
+     * @return true if the report has been processed completely.
+     */
+    boolean processNextChunk() throws IOException {
+      namesystem.writeLock();
+      final long lockStartTime = Time.monotonicNow();
+      // Until the chunk succeeds, assume that it ends the report.
+      boolean done = true;
+      try {
+        if (numChunks == 0) {
+          if (!startReport(lockStartTime)) {
+            return true;
+          }
+          processed = true;
+        } else if (datanodeManager.getDatanode(nodeID) != node
+            || !node.isRegistered()
+            || node.getStorageInfo(storage.getStorageID()) == null) {
+          // The node or storage went away between chunks.
+          throw new IOException("ProcessReport 0x" + strBlockReportId
+              + ": storage " + storage.getStorageID() + " of node " + nodeID
+              + " was removed while its block report was being processed");
+        }
+        numChunks++;
+
+        if (firstReport) {
+          processFirstBlockReport(storageInfo, replicas, blockReportChunkSize);
+          done = !replicas.hasNext();
+        } else if (StorageType.PROVIDED.equals(
+            storageInfo.getStorageType())) {
+          // Block reports for provided storage are not
+          // maintained by DN heartbeats
+          done = true;
+        } else {
+          nextStoredBlockId = processReport(storageInfo,
+              Iterators.limit(replicas, blockReportChunkSize),
+              nextStoredBlockId, invalidatedBlocks, strBlockReportId);
+          done = !replicas.hasNext();
+          if (done) {
+            // Remove the stored blocks past the last reported one
+            removeUnreportedBlocks(storageInfo, nextStoredBlockId);
+          }
+        }
+        if (done) {
+          storageInfo.receivedBlockReport();
+        }
+        return done;
+      } finally {
+        if (done && inProgress) {
+          storageInfo.setBlockReportInProgress(false);
+          inProgress = false;
+        }
+        lockHoldTime += Time.monotonicNow() - lockStartTime;
+        namesystem.writeUnlock("processReport");
+      }
+    }
+
+    /**
+     * Release the storage if the report did not finish processing.
+     */
+    void abandon() {
+      namesystem.writeLock();
+      try {
+        if (inProgress) {
+          storageInfo.setBlockReportInProgress(false);
+          inProgress = false;
+        }
+      } finally {
+        namesystem.writeUnlock("processReport");
+      }
+    }
+
+    /**
+     * Check whether the report should be processed at all.
+     * @return false if it should not, in which case {@link #result} is set.
+     */
+    private boolean startReport(long now) throws IOException {
       node = datanodeManager.getDatanode(nodeID);
       if (node == null || !node.isRegistered()) {
         throw new IOException(
@@ -2498,8 +2693,7 @@ public boolean processReport(final DatanodeID nodeID,
       // that we receive while still in startup phase.
       // Register DN with provided storage, not with storage owned by DN
       // DN should still have a ref to the DNStorageInfo.
-      DatanodeStorageInfo storageInfo =
-          providedStorageMap.getStorage(node, storage);
+      storageInfo = providedStorageMap.getStorage(node, storage);
 
       if (storageInfo == null) {
         // We handle this for backwards compatibility.
@@ -2512,16 +2706,29 @@ public boolean processReport(final DatanodeID nodeID,
             + " because namenode still in startup phase",
             strBlockReportId, nodeID);
         blockReportLeaseManager.removeLease(node);
-        return !node.hasStaleStorages();
+        result = !node.hasStaleStorages();
+        return false;
       }
       if (context != null) {
-        if (!blockReportLeaseManager.checkLease(node, startTime,
+        if (!blockReportLeaseManager.checkLease(node, now,
               context.getLeaseId())) {
+          result = false;
           return false;
         }
       }
+      if (storageInfo.isBlockReportInProgress()) {
+        // A retried or concurrent report for the same storage; merging it
+        // with the one being processed would corrupt both diffs.
+        throw new IOException("ProcessReport 0x" + strBlockReportId
+            + ": another block report for storage "
+            + storageInfo.getStorageID() + " of node " + nodeID
+            + " is being processed");
+      }
+      storageInfo.setBlockReportInProgress(true);
+      inProgress = true;
 
-      if (storageInfo.getBlockReportCount() == 0) {
+      firstReport = storageInfo.getBlockReportCount() == 0;
+      if (firstReport) {
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
         blockLog.info("BLOCK* processReport 0x{}: Processing first "
@@ -2529,37 +2736,34 @@ public boolean processReport(final DatanodeID nodeID,
             strBlockReportId,
             storageInfo.getStorageID(),
             nodeID.getDatanodeUuid());
-        processFirstBlockReport(storageInfo, newReport);
-      } else {
-        // Block reports for provided storage are not
-        // maintained by DN heartbeats
-        if (!StorageType.PROVIDED.equals(storageInfo.getStorageType())) {
-          invalidatedBlocks = processReport(storageInfo, newReport, context);
-        }
       }
-      storageInfo.receivedBlockReport();
-    } finally {
-      endTime = Time.monotonicNow();
-      namesystem.writeUnlock();
-    }
-
-    for (Block b : invalidatedBlocks) {
-      blockLog.debug("BLOCK* processReport 0x{}: {} on node {} size {} does not"
-          + " belong to any file", strBlockReportId, b, node, b.getNumBytes());
+      return true;
     }
+  }
 
-    // Log the block report processing stats from Namenode perspective
-    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
-    if (metrics != null) {
-      metrics.addStorageBlockReport((int) (endTime - startTime));
+  /**
+   * @return the replicas of the report in ascending order of block ID,
+   * sorting them if the DataNode did not.
+   */
+  private Iterable<BlockReportReplica> sortReport(DatanodeID nodeID,
+      BlockListAsLongs report, BlockReportContext context,
+      String strBlockReportId) {
+    if (context == null || context.isSorted()) {
+      return report;
+    }
+    blockLog.warn("BLOCK* processReport 0x{}: Report from the DataNode ({}) "
+                  + "is unsorted. This will cause overhead on the NameNode "
+                  + "which needs to sort the Full BR. Please update the "
+                  + "DataNode to the same version of Hadoop HDFS as the "
+                  + "NameNode ({}).",
+                  strBlockReportId,
+                  nodeID.getDatanodeUuid(),
+                  VersionInfo.getVersion());
+    Set<BlockReportReplica> set = new FoldedTreeSet<>();
+    for (BlockReportReplica iblk : report) {
+      set.add(new BlockReportReplica(iblk));
     }
-    blockLog.info("BLOCK* processReport 0x{}: from storage {} node {}, " +
-        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs, " +
-        "invalidatedBlocks: {}", strBlockReportId, storage.getStorageID(),
-        nodeID, newReport.getNumberOfBlocks(),
-        node.hasStaleStorages(), (endTime - startTime),
-        invalidatedBlocks.size());
-    return !node.hasStaleStorages();
+    return set;
   }
 
   public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
@@ -2581,7 +2785,7 @@ public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
             context.getTotalRpcs(), Long.toHexString(context.getReportId()));
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("removeBRLeaseIfNeeded");
     }
   }
 
@@ -2619,17 +2823,26 @@ void rescanPostponedMisreplicatedBlocks() {
       postponedMisreplicatedBlocks.addAll(rescannedMisreplicatedBlocks);
       rescannedMisreplicatedBlocks.clear();
       long endSize = postponedMisreplicatedBlocks.size();
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("rescanPostponedMisreplicatedBlocks");
       LOG.info("Rescan of postponedMisreplicatedBlocks completed in {}" +
           " msecs. {} blocks are left. {} blocks were removed.",
           (Time.monotonicNow() - startTime), endSize, (startSize - endSize));
     }
   }
   
-  Collection<Block> processReport(
+  /**
+   * Process one chunk of a sorted block report. Only the stored blocks with
+   * IDs of at least nextStoredBlockId are diffed against the chunk.
+   *
+   * @return the lowest block ID on the storage that is not yet diffed
+   * against the report, or {@link Long#MAX_VALUE} if there is none.
+   */
+  private long processReport(
       final DatanodeStorageInfo storageInfo,
-      final BlockListAsLongs report,
-      BlockReportContext context) throws IOException {
+      final Iterator<BlockReportReplica> replicas,
+      final long nextStoredBlockId,
+      final Collection<Block> invalidatedBlocks,
+      final String strBlockReportId) throws IOException {
     // Normal case:
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
@@ -2640,36 +2853,40 @@ Collection<Block> processReport(
     Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<>();
     Collection<StatefulBlockInfo> toUC = new LinkedList<>();
 
-    boolean sorted = false;
-    String strBlockReportId = "";
-    if (context != null) {
-      sorted = context.isSorted();
-      strBlockReportId = Long.toHexString(context.getReportId());
-    }
-
-    Iterable<BlockReportReplica> sortedReport;
-    if (!sorted) {
-      blockLog.warn("BLOCK* processReport 0x{}: Report from the DataNode ({}) "
-                    + "is unsorted. This will cause overhead on the NameNode "
-                    + "which needs to sort the Full BR. Please update the "
-                    + "DataNode to the same version of Hadoop HDFS as the "
-                    + "NameNode ({}).",
-                    strBlockReportId,
-                    storageInfo.getDatanodeDescriptor().getDatanodeUuid(),
-                    VersionInfo.getVersion());
-      Set<BlockReportReplica> set = new FoldedTreeSet<>();
-      for (BlockReportReplica iblk : report) {
-        set.add(new BlockReportReplica(iblk));
-      }
-      sortedReport = set;
-    } else {
-      sortedReport = report;
-    }
+    long nextBlockId = reportDiffSorted(storageInfo, replicas,
+        nextStoredBlockId, toAdd, toRemove, toInvalidate, toCorrupt, toUC);
 
-    reportDiffSorted(storageInfo, sortedReport,
-                     toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+    applyReportDiff(storageInfo, toAdd, toRemove, toInvalidate, toCorrupt,
+        toUC, strBlockReportId);
+    invalidatedBlocks.addAll(toInvalidate);
+    return nextBlockId;
+  }
 
+  /**
+   * Remove the blocks with IDs of at least startBlockId from the storage,
+   * since they were not in its block report.
+   */
+  private void removeUnreportedBlocks(DatanodeStorageInfo storageInfo,
+      long startBlockId) {
+    if (startBlockId == Long.MAX_VALUE) {
+      return;
+    }
+    Collection<BlockInfo> toRemove = new ArrayList<>();
+    Iterator<BlockInfo> it = storageInfo.getBlockIterator(startBlockId);
+    while (it.hasNext()) {
+      toRemove.add(it.next());
+    }
+    DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    for (BlockInfo b : toRemove) {
+      removeStoredBlock(b, node);
+    }
+  }
 
+  private void applyReportDiff(DatanodeStorageInfo storageInfo,
+      Collection<BlockInfoToAdd> toAdd, Collection<BlockInfo> toRemove,
+      Collection<Block> toInvalidate, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC, String strBlockReportId)
+      throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -2694,8 +2911,6 @@ Collection<Block> processReport(
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
   }
 
   /**
@@ -2754,10 +2969,22 @@ void processFirstBlockReport(
       final DatanodeStorageInfo storageInfo,
       final BlockListAsLongs report) throws IOException {
     if (report == null) return;
+    processFirstBlockReport(storageInfo, report.iterator(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Process at most maxReplicas replicas of an initial block report.
+   * @see #processFirstBlockReport(DatanodeStorageInfo, BlockListAsLongs)
+   */
+  private void processFirstBlockReport(
+      final DatanodeStorageInfo storageInfo,
+      final Iterator<BlockReportReplica> replicas,
+      final int maxReplicas) throws IOException {
     assert (namesystem.hasWriteLock());
     assert (storageInfo.getBlockReportCount() == 0);
 
-    for (BlockReportReplica iblk : report) {
+    for (int i = 0; i < maxReplicas && replicas.hasNext(); i++) {
+      BlockReportReplica iblk = replicas.next();
       ReplicaState reportedState = iblk.getState();
 
       if (LOG.isDebugEnabled()) {
@@ -2818,8 +3045,16 @@ void processFirstBlockReport(
     }
   }
 
-  private void reportDiffSorted(DatanodeStorageInfo storageInfo,
-      Iterable<BlockReportReplica> newReport,
+  /**
+   * Diff the given replicas against the blocks of the storage with IDs of at
+   * least nextStoredBlockId.
+   *
+   * @return the lowest block ID on the storage that is not yet diffed
+   * against the report, or {@link Long#MAX_VALUE} if there is none.
+   */
+  private long reportDiffSorted(DatanodeStorageInfo storageInfo,
+      Iterator<BlockReportReplica> newReport,
+      long nextStoredBlockId,
       Collection<BlockInfoToAdd> toAdd,     // add to DatanodeDescriptor
       Collection<BlockInfo> toRemove,       // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
@@ -2827,11 +3062,13 @@ private void reportDiffSorted(DatanodeStorageInfo storageInfo,
       Collection<StatefulBlockInfo> toUC) { // add to under-construction list
 
     // The blocks must be sorted and the storagenodes blocks must be sorted
-    Iterator<BlockInfo> storageBlocksIterator = storageInfo.getBlockIterator();
+    Iterator<BlockInfo> storageBlocksIterator =
+        storageInfo.getBlockIterator(nextStoredBlockId);
     DatanodeDescriptor dn = storageInfo.getDatanodeDescriptor();
     BlockInfo storageBlock = null;
 
-    for (BlockReportReplica replica : newReport) {
+    while (newReport.hasNext()) {
+      BlockReportReplica replica = newReport.next();
 
       long replicaID = replica.getBlockId();
       if (BlockIdManager.isStripedBlockID(replicaID)
@@ -2888,10 +3125,12 @@ && isGenStampInFuture(replica)) {
       } while (storageBlock != null);
     }
 
-    // Iterate any remaining blocks that have not been reported and remove them
-    while (storageBlocksIterator.hasNext()) {
-      toRemove.add(storageBlocksIterator.next());
+    // The remaining blocks are diffed against the next chunk of the report,
+    // or removed if there is none.
+    if (storageBlock == null && storageBlocksIterator.hasNext()) {
+      storageBlock = storageBlocksIterator.next();
     }
+    return storageBlock == null ? Long.MAX_VALUE : storageBlock.getBlockId();
   }
 
   private void reportDiffSortedInner(
@@ -3461,7 +3700,7 @@ private void processMisReplicatesAsync() throws InterruptedException {
           break;
         }
       } finally {
-        namesystem.writeUnlock();
+        namesystem.writeUnlock("processMisReplicatesAsync");
         // Make sure it is out of the write lock for sufficiently long time.
         Thread.sleep(sleepDuration);
       }
@@ -4282,7 +4521,7 @@ private void updateNeededReconstructions(final BlockInfo block,
             repl.outOfServiceReplicas(), oldExpectedReplicas);
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("updateNeededReconstructions");
     }
   }
 
@@ -4339,7 +4578,7 @@ private int invalidateWorkForOneNode(DatanodeInfo dn) {
         return 0;
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("invalidateWorkForOneNode");
     }
     blockLog.debug("BLOCK* {}: ask {} to delete {}", getClass().getSimpleName(),
         dn, toInvalidate);
@@ -4582,7 +4821,7 @@ private void scanAndCompactStorages() throws InterruptedException {
                      (ratio < storageInfoDefragmentRatio)
                      ? " (queued for defragmentation)" : "");
           } finally {
-            namesystem.readUnlock();
+            namesystem.readUnlock("scanAndCompactStorages");
           }
         }
       }
@@ -4610,7 +4849,7 @@ private void scanAndCompactStorages() throws InterruptedException {
                        aborted ? " (aborted)" : "");
             }
           } finally {
-            namesystem.writeUnlock();
+            namesystem.writeUnlock("scanAndCompactStorages");
           }
           // Wait between each iteration
           Thread.sleep(1000);
@@ -4649,7 +4888,7 @@ int computeDatanodeWork() {
       this.updateState();
       this.scheduledReplicationBlocksCount = workFound;
     } finally {
-      namesystem.writeUnlock();
+      namesystem.writeUnlock("computeDatanodeWork");
     }
     workFound += this.computeInvalidateWork(nodesToProcess);
     return workFound;
@@ -4888,7 +5127,7 @@ private void processQueue() {
               action = queue.poll();
             } while (action != null);
           } finally {
-            namesystem.writeUnlock();
+            namesystem.writeUnlock("processQueue");
             metrics.addBlockOpsBatched(processed - 1);
           }
         } catch (InterruptedException e) {
@@ -625,7 +625,7 @@ public void run() {
             break;
           }
         } finally {
-          namesystem.writeUnlock();
+          namesystem.writeUnlock("safeModeMonitor");
         }
 
         try {
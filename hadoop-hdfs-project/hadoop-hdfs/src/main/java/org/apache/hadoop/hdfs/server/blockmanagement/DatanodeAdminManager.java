@@ -493,7 +493,7 @@ public void run() {
         processPendingNodes();
         check();
       } finally {
-        namesystem.writeUnlock();
+        namesystem.writeUnlock("decommissionMonitor");
       }
       if (numBlocksChecked + numNodesChecked > 0) {
         LOG.info("Checked {} blocks and {} nodes this tick", numBlocksChecked,
@@ -670,7 +670,7 @@ private void processBlocksInternal(
           // lock.
           // Yielding is required in case of block number is greater than the
           // configured per-iteration-limit.
-          namesystem.writeUnlock();
+          namesystem.writeUnlock("decommissionMonitor");
           try {
             LOG.debug("Yielded lock during decommission/maintenance check");
             Thread.sleep(0, 500);
@@ -31,6 +31,7 @@
 import org.apache.hadoop.hdfs.util.FoldedTreeSet;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterators;
 
 /**
  * A Datanode has one or more storages. A storage in the Datanode is represented
@@ -119,6 +120,13 @@ public void updateFromStorage(DatanodeStorage storage) {
    */
   private boolean blockContentsStale = true;
 
+  /**
+   * Whether a full block report for this storage is being processed. The
+   * report is processed in chunks which release the namesystem lock in
+   * between, so a second report must not be processed at the same time.
+   */
+  private boolean blockReportInProgress = false;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this(dn, s.getStorageID(), s.getStorageType(), s.getState());
   }
@@ -153,6 +161,14 @@ void receivedHeartbeat(StorageReport report) {
     heartbeatedSinceFailover = true;
   }
 
+  boolean isBlockReportInProgress() {
+    return blockReportInProgress;
+  }
+
+  void setBlockReportInProgress(boolean blockReportInProgress) {
+    this.blockReportInProgress = blockReportInProgress;
+  }
+
   void receivedBlockReport() {
     if (heartbeatedSinceFailover) {
       blockContentsStale = false;
@@ -288,6 +304,15 @@ Iterator<BlockInfo> getBlockIterator() {
     return Collections.unmodifiableSet(blocks).iterator();
   }
 
+  /**
+   * @return iterator to the blocks of this storage whose IDs are equal to or
+   * greater than startBlockId, in ascending order of block ID
+   */
+  Iterator<BlockInfo> getBlockIterator(long startBlockId) {
+    return Iterators.unmodifiableIterator(
+        blocks.tailIterator(new Block(startBlockId)));
+  }
+
   void updateState(StorageReport r) {
     capacity = r.getCapacity();
     dfsUsed = r.getDfsUsed();
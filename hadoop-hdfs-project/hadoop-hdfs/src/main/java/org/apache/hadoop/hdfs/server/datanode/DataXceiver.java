@@ -58,9 +58,11 @@
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.StopWatch;
 import org.apache.hadoop.util.Time;
@@ -82,6 +84,8 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -118,6 +122,12 @@ class DataXceiver extends Receiver implements Runnable {
   private final int ioFileBufferSize;
   private final int smallBufferSize;
   private Thread xceiver = null;
+  /**
+   * The channel of the socket, which can be parked with the
+   * {@link IdlePeerWatcher} while waiting for the next operation, or null.
+   */
+  private SelectableChannel idleChannel = null;
+  private int opsProcessed = 0;
 
   /**
    * Client Name used in previous operation. Not available on first request
@@ -147,6 +157,12 @@ private DataXceiver(Peer peer, DataNode datanode,
     remoteAddressWithoutPort =
         (colonIdx < 0) ? remoteAddress : remoteAddress.substring(0, colonIdx);
     localAddress = peer.getLocalAddressString();
+    final ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream && ((SocketInputStream) channel)
+        .getChannel() instanceof SelectableChannel) {
+      idleChannel = (SelectableChannel) ((SocketInputStream) channel)
+          .getChannel();
+    }
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("Number of active connections is: "
@@ -219,46 +235,67 @@ private synchronized BlockReceiver getCurrentBlockReceiver() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
+    // whether the previous operations were processed by another thread
+    final boolean resumed = opsProcessed != 0;
+    boolean parked = false;
     Op op = null;
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption", imne);
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection", imne);
+      if (resumed) {
+        dataXceiverServer.resumePeer(peer, Thread.currentThread());
+      } else {
+        dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+        peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+        InputStream input = socketIn;
+        try {
+          IOStreamPair saslStreams = datanode.saslServer.receive(peer,
+              socketOut, socketIn, datanode.getXferAddress().getPort(),
+              datanode.getDatanodeId());
+          input = new BufferedInputStream(saslStreams.in,
+              smallBufferSize);
+          socketOut = saslStreams.out;
+          if (saslStreams.in != socketIn) {
+            // the wrapped stream may buffer data the channel does not show
+            idleChannel = null;
+          }
+        } catch (InvalidMagicNumberException imne) {
+          if (imne.isHandshake4Encryption()) {
+            LOG.info("Failed to read expected encryption handshake from " +
+                "client at " + peer.getRemoteAddressString() + ". Perhaps " +
+                "the client is running an older version of Hadoop which " +
+                "does not support encryption", imne);
+          } else {
+            LOG.info("Failed to read expected SASL data transfer " +
+                "protection handshake from client at " +
+                peer.getRemoteAddressString() + ". Perhaps the client is " +
+                "running an older version of Hadoop which does not support " +
+                "SASL data transfer protection", imne);
+          }
+          return;
         }
-        return;
+
+        super.initialize(new DataInputStream(input));
       }
-      
-      super.initialize(new DataInputStream(input));
-      
+
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
         updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
 
+        // Rather than wait for the next operation, let the IdlePeerWatcher
+        // wait for it, unless it is already buffered, or it has just been
+        // found to arrive by the IdlePeerWatcher.
+        if (opsProcessed != 0 && (!resumed || op != null)
+            && idleChannel != null && in.available() == 0
+            && dataXceiverServer.parkIdlePeer(this, idleChannel)) {
+          parked = true;
+          break;
+        }
+
         try {
           if (opsProcessed != 0) {
             assert dnConf.socketKeepaliveTimeout > 0;
@@ -324,18 +361,40 @@ public void run() {
       }
     } finally {
       collectThreadLocalStates();
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
-      }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+      if (!parked) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(datanode.getDisplayName()
+              + ":Number of active connections is: "
+              + datanode.getXceiverCount());
+        }
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
       }
     }
   }
 
+  /**
+   * Process the next operation of a parked DataXceiver on a new thread, once
+   * the {@link IdlePeerWatcher} found that it arrived.
+   */
+  void resume() {
+    new Daemon(datanode.threadGroup, this).start();
+  }
+
+  /**
+   * Close the socket of a parked DataXceiver, when its keepalive timeout
+   * expires before the next operation arrives.
+   */
+  void closeIdlePeer() {
+    LOG.debug("Cached {} closing after {} ops.  " +
+        "This message is usually benign.", peer, opsProcessed);
+    dataXceiverServer.closePeer(peer);
+    IOUtils.closeStream(in);
+  }
+
   /**
    * In this short living thread, any local states should be collected before
    * the thread dies away.
@@ -20,6 +20,7 @@
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectableChannel;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -27,6 +28,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -49,6 +51,8 @@ class DataXceiverServer implements Runnable {
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
+  /** Watches the idle kept-alive sockets, null if disabled. */
+  private final IdlePeerWatcher idlePeerWatcher;
   
   /**
    * Maximal number of concurrent xceivers per node.
@@ -118,7 +122,7 @@ synchronized void release() {
   
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     this.peerServer = peerServer;
     this.datanode = datanode;
     
@@ -135,10 +139,26 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    // only the TCP sockets have a channel which can be selected
+    final int keepaliveTimeout = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT);
+    if (peerServer instanceof TcpPeerServer && keepaliveTimeout > 0
+        && conf.getBoolean(
+            DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_KEY,
+            DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_DEFAULT)) {
+      this.idlePeerWatcher = new IdlePeerWatcher(keepaliveTimeout);
+    } else {
+      this.idlePeerWatcher = null;
+    }
   }
 
   @Override
   public void run() {
+    if (idlePeerWatcher != null) {
+      idlePeerWatcher.start();
+    }
     Peer peer = null;
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
@@ -211,6 +231,9 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (idlePeerWatcher != null) {
+      idlePeerWatcher.shutdown();
+    }
   }
 
   void kill() {
@@ -235,6 +258,32 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     datanode.metrics.incrDataNodeActiveXceiversCount();
   }
 
+  /**
+   * Record the thread of a DataXceiver resumed by the
+   * {@link IdlePeerWatcher}.
+   */
+  synchronized void resumePeer(Peer peer, Thread t) throws IOException {
+    if (!peers.containsKey(peer)) {
+      throw new IOException("Peer closed.");
+    }
+    peers.put(peer, t);
+  }
+
+  /**
+   * Park a DataXceiver waiting for the next operation of its client, so that
+   * its thread can exit.
+   *
+   * @return true if the DataXceiver was parked.
+   */
+  boolean parkIdlePeer(DataXceiver xceiver, SelectableChannel channel) {
+    return idlePeerWatcher != null && idlePeerWatcher.park(xceiver, channel);
+  }
+
+  @VisibleForTesting
+  int getNumParkedPeers() {
+    return idlePeerWatcher == null ? 0 : idlePeerWatcher.getNumParked();
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
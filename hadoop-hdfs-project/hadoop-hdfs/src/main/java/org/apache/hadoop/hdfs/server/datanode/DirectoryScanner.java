@@ -43,13 +43,14 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi.ScanInfo;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.StopWatch;
 import org.apache.hadoop.util.Time;
@@ -73,6 +74,14 @@ public class DirectoryScanner implements Runnable {
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
   private final int throttleLimitMsPerSec;
+  // maximum number of directories listed per second on each volume, or 0
+  private final int maxIopsPerVolume;
+  // number of blocks reconciled between two pauses, or 0 to not pause
+  private final int reconcileBatchSize;
+  private final long reconcileBatchIntervalMs;
+  // whether the first scan runs right away, to reconcile the replicas
+  // loaded from the replica journals
+  private final boolean scanOnStart;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -225,6 +234,9 @@ public DirectoryScanner(DataNode datanode, FsDatasetSpi<?> dataset,
         DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_DEFAULT,
         TimeUnit.SECONDS);
     scanPeriodMsecs = interval * MILLIS_PER_SECOND; //msec
+    scanOnStart = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT);
 
     int throttle =
         conf.getInt(
@@ -250,6 +262,19 @@ public DirectoryScanner(DataNode datanode, FsDatasetSpi<?> dataset,
       throttleLimitMsPerSec = throttle;
     }
 
+    maxIopsPerVolume = Math.max(0, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_DEFAULT));
+    reconcileBatchSize = Math.max(0, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_KEY,
+        DFSConfigKeys
+            .DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_DEFAULT));
+    reconcileBatchIntervalMs = Math.max(0, conf.getTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_KEY,
+        DFSConfigKeys
+            .DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_DEFAULT,
+        TimeUnit.MILLISECONDS));
+
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
@@ -266,7 +291,7 @@ public DirectoryScanner(DataNode datanode, FsDatasetSpi<?> dataset,
    */
   void start() {
     shouldRun = true;
-    long offset = ThreadLocalRandom.current().nextInt(
+    long offset = scanOnStart ? 0 : ThreadLocalRandom.current().nextInt(
         (int) (scanPeriodMsecs/MILLIS_PER_SECOND)) * MILLIS_PER_SECOND; //msec
     long firstScanTime = Time.now() + offset;
     String logMsg;
@@ -368,111 +393,162 @@ void shutdown() {
   }
 
   /**
-   * Reconcile differences between disk and in-memory blocks
+   * Reconcile differences between disk and in-memory blocks.  Each block is
+   * reconciled under the dataset lock on its own, and the scanner pauses
+   * after every
+   * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_KEY}
+   * blocks while it is running.
    */
   @VisibleForTesting
   public void reconcile() throws IOException {
+    final long startTime = Time.monotonicNow();
     scan();
+    int reconciled = 0;
+    reconcileLoop:
     for (Entry<String, LinkedList<ScanInfo>> entry : diffs.entrySet()) {
       String bpid = entry.getKey();
       LinkedList<ScanInfo> diff = entry.getValue();
       
       for (ScanInfo info : diff) {
+        final long begin = System.nanoTime();
         dataset.checkAndUpdate(bpid, info);
+        final DataNodeMetrics metrics = getMetrics();
+        if (metrics != null) {
+          metrics.addDirectoryScanReconcileNanos(System.nanoTime() - begin);
+        }
+        if (reconcileBatchSize > 0 && ++reconciled % reconcileBatchSize == 0
+            && !pauseReconcile()) {
+          LOG.warn("Stopped reconciling the blocks after " + reconciled
+              + " blocks because the scanner was shut down");
+          break reconcileLoop;
+        }
       }
     }
     if (!retainDiffs) clear();
+    final DataNodeMetrics metrics = getMetrics();
+    if (metrics != null) {
+      metrics.addDirectoryScan(Time.monotonicNow() - startTime);
+    }
+  }
+
+  /**
+   * Pause between two batches of reconciled blocks, so that the threads
+   * waiting for the dataset lock can make progress.  There is no pause when
+   * the scanner is not running, e.g. when {@link #reconcile()} is called
+   * by the tests.
+   *
+   * @return whether the scanner should keep on reconciling the blocks
+   */
+  private boolean pauseReconcile() {
+    if (!shouldRun || reconcileBatchIntervalMs == 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(reconcileBatchIntervalMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return shouldRun;
+  }
+
+  private DataNodeMetrics getMetrics() {
+    return datanode == null ? null : datanode.getMetrics();
   }
 
   /**
    * Scan for the differences between disk and in-memory blocks
    * Scan only the "finalized blocks" lists of both disk and memory.
+   * <p>
+   * The differences are computed from a copy of the finalized replicas,
+   * without holding the dataset lock, so that the writers are not blocked
+   * while the reports of large volumes are compared.  The replicas which
+   * change in the meantime are checked again by
+   * {@link FsDatasetSpi#checkAndUpdate}, which compares the disk and the
+   * replica map under the lock.
    */
   private void scan() {
     clear();
     Map<String, ScanInfo[]> diskReport = getDiskReport();
 
-    // Hold FSDataset lock to prevent further changes to the block map
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
-        Stats statsRecord = new Stats(bpid);
-        stats.put(bpid, statsRecord);
-        LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
-        diffs.put(bpid, diffRecord);
-        
-        statsRecord.totalBlocks = blockpoolReport.length;
-        final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid);
-        Collections.sort(bl); // Sort based on blockId
-  
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < bl.size() && d < blockpoolReport.length) {
-          ReplicaInfo memBlock = bl.get(m);
-          ScanInfo info = blockpoolReport[d];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
-              // Block is missing in memory
-              statsRecord.missingMemoryBlocks++;
-              addDifference(diffRecord, statsRecord, info);
-            }
-            d++;
-            continue;
-          }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
-            m++;
-            continue;
-          }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getVolume().getStorageType() != StorageType.PROVIDED &&
-              info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          } else if (memBlock.compareWith(info) != 0) {
-            // volumeMap record and on-disk files don't match.
-            statsRecord.duplicateBlocks++;
+    for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
+      String bpid = entry.getKey();
+      ScanInfo[] blockpoolReport = entry.getValue();
+      
+      Stats statsRecord = new Stats(bpid);
+      stats.put(bpid, statsRecord);
+      LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
+      diffs.put(bpid, diffRecord);
+      
+      statsRecord.totalBlocks = blockpoolReport.length;
+      final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid);
+      Collections.sort(bl); // Sort based on blockId
+
+      int d = 0; // index for blockpoolReport
+      int m = 0; // index for memReprot
+      while (m < bl.size() && d < blockpoolReport.length) {
+        ReplicaInfo memBlock = bl.get(m);
+        ScanInfo info = blockpoolReport[d];
+        if (info.getBlockId() < memBlock.getBlockId()) {
+          if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
+            // Block is missing in memory
+            statsRecord.missingMemoryBlocks++;
             addDifference(diffRecord, statsRecord, info);
           }
           d++;
-
-          if (d < blockpoolReport.length) {
-            // There may be multiple on-disk records for the same block, don't increment
-            // the memory record pointer if so.
-            ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
-            if (nextInfo.getBlockId() != info.getBlockId()) {
-              ++m;
-            }
-          } else {
-            ++m;
-          }
+          continue;
         }
-        while (m < bl.size()) {
-          ReplicaInfo current = bl.get(m++);
+        if (info.getBlockId() > memBlock.getBlockId()) {
+          // Block is missing on the disk
           addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
+                        memBlock.getBlockId(), info.getVolume());
+          m++;
+          continue;
         }
-        while (d < blockpoolReport.length) {
-          if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+        // Block file and/or metadata file exists on the disk
+        // Block exists in memory
+        if (info.getVolume().getStorageType() != StorageType.PROVIDED &&
+            info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+            || info.getBlockLength() != memBlock.getNumBytes()) {
+          // Block metadata file is missing or has wrong generation stamp,
+          // or block file length is different than expected
+          statsRecord.mismatchBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        } else if (memBlock.compareWith(info) != 0) {
+          // volumeMap record and on-disk files don't match.
+          statsRecord.duplicateBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        }
+        d++;
+
+        if (d < blockpoolReport.length) {
+          // There may be multiple on-disk records for the same block, don't increment
+          // the memory record pointer if so.
+          ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
+          if (nextInfo.getBlockId() != info.getBlockId()) {
+            ++m;
           }
-          d++;
+        } else {
+          ++m;
         }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+      while (m < bl.size()) {
+        ReplicaInfo current = bl.get(m++);
+        addDifference(diffRecord, statsRecord,
+                      current.getBlockId(), current.getVolume());
+      }
+      while (d < blockpoolReport.length) {
+        if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
+          statsRecord.missingMemoryBlocks++;
+          addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+        }
+        d++;
+      }
+      LOG.info(statsRecord.toString());
+    } //end for
   }
 
   /**
@@ -591,6 +667,8 @@ public class ReportCompiler implements Callable<ScanInfoPerBlockPool> {
     // Variable for tracking time spent running and waiting for testing
     // purposes
     private final StopWatch perfTimer = new StopWatch();
+    // Limits the number of directories listed per second, or null
+    private final DataTransferThrottler iopsThrottler;
 
     /**
      * Create a report compiler for the given volume on the given datanode.
@@ -601,6 +679,9 @@ public class ReportCompiler implements Callable<ScanInfoPerBlockPool> {
     public ReportCompiler(DataNode datanode, FsVolumeSpi volume) {
       this.datanode = datanode;
       this.volume = volume;
+      this.iopsThrottler = maxIopsPerVolume > 0 ?
+          new DataTransferThrottler(MILLIS_PER_SECOND, maxIopsPerVolume) :
+          null;
     }
 
     /**
@@ -635,8 +716,10 @@ public ScanInfoPerBlockPool call() throws IOException {
     /**
      * Called by the thread before each potential disk scan so that a pause
      * can be optionally inserted to limit the number of scans per second.
-     * The limit is controlled by
-     * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY}.
+     * The limits are controlled by
+     * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY}
+     * and
+     * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_KEY}.
      */
     public void throttle() throws InterruptedException {
       accumulateTimeRunning();
@@ -648,6 +731,14 @@ public void throttle() throws InterruptedException {
         throttleTimer.reset().start();
       }
 
+      if (iopsThrottler != null) {
+        iopsThrottler.throttle(1);
+        // The throttler only restores the interrupt status
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+
       accumulateTimeWaiting();
     }
 
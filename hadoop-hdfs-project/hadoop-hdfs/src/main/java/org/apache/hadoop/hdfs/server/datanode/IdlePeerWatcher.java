@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+
+/**
+ * Watches the sockets of the {@link DataXceiver}s which wait for the next
+ * operation of their client, so that they do not hold a thread each while
+ * they are idle. A DataXceiver parks its socket here instead of blocking in
+ * a read, and its thread exits. When the next operation arrives, the
+ * DataXceiver resumes on a new thread. When the keepalive timeout expires
+ * first, the socket is closed as the DataXceiver would have done.
+ * <p>
+ * The sockets stay registered with the selector until they are closed, with
+ * no interest while their DataXceiver is running.
+ */
+class IdlePeerWatcher extends Thread {
+  public static final Logger LOG = DataNode.LOG;
+
+  /** How often the keepalive timeouts are checked, in milliseconds. */
+  private static final long CHECK_INTERVAL = 100;
+
+  /** The state of a parked DataXceiver, attached to its selection key. */
+  private static class Parked {
+    private final DataXceiver xceiver;
+    private final SelectableChannel channel;
+    private long deadline;
+
+    Parked(DataXceiver xceiver, SelectableChannel channel) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+    }
+  }
+
+  private final int keepaliveTimeout;
+  private final Selector selector;
+  private final ConcurrentLinkedQueue<Parked> pending =
+      new ConcurrentLinkedQueue<Parked>();
+  private final AtomicInteger numParked = new AtomicInteger();
+  private volatile boolean running = true;
+
+  IdlePeerWatcher(int keepaliveTimeout) throws IOException {
+    super("IdlePeerWatcher");
+    setDaemon(true);
+    this.keepaliveTimeout = keepaliveTimeout;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Park a DataXceiver until its client sends the next operation. The caller
+   * must not use the DataXceiver anymore, unless this returns false.
+   *
+   * @param channel the channel of the socket of the DataXceiver.
+   * @return true if the DataXceiver was parked.
+   */
+  boolean park(DataXceiver xceiver, SelectableChannel channel) {
+    if (!running) {
+      return false;
+    }
+    final Parked parked = new Parked(xceiver, channel);
+    parked.deadline = Time.monotonicNow() + keepaliveTimeout;
+    numParked.incrementAndGet();
+    pending.add(parked);
+    selector.wakeup();
+    return true;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        registerPending();
+        selector.select(CHECK_INTERVAL);
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          if (key.isValid() && key.isReadable()) {
+            key.interestOps(0);
+            resume((Parked) key.attachment());
+          }
+        }
+        closeExpired();
+      }
+    } catch (Throwable t) {
+      if (running) {
+        LOG.error(getName() + " exiting", t);
+      }
+    } finally {
+      running = false;
+      closeAll();
+    }
+  }
+
+  private void registerPending() {
+    Parked parked;
+    while ((parked = pending.poll()) != null) {
+      final SelectionKey key = parked.channel.keyFor(selector);
+      try {
+        if (key == null) {
+          parked.channel.register(selector, SelectionKey.OP_READ, parked);
+        } else {
+          key.attach(parked);
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } catch (ClosedChannelException | CancelledKeyException e) {
+        // the socket was closed, e.g. by the DataXceiverServer shutdown
+        close(parked);
+      }
+    }
+  }
+
+  private void resume(Parked parked) {
+    numParked.decrementAndGet();
+    try {
+      parked.xceiver.resume();
+    } catch (Throwable t) {
+      LOG.warn("Failed to resume " + parked.xceiver, t);
+      parked.xceiver.closeIdlePeer();
+    }
+  }
+
+  private void close(Parked parked) {
+    numParked.decrementAndGet();
+    parked.xceiver.closeIdlePeer();
+  }
+
+  private void closeExpired() {
+    final long now = Time.monotonicNow();
+    List<Parked> expired = null;
+    for (SelectionKey key : selector.keys()) {
+      try {
+        if (key.isValid() && key.interestOps() != 0
+            && ((Parked) key.attachment()).deadline - now <= 0) {
+          key.interestOps(0);
+          if (expired == null) {
+            expired = new ArrayList<Parked>();
+          }
+          expired.add((Parked) key.attachment());
+        }
+      } catch (CancelledKeyException e) {
+        // the socket was closed concurrently
+      }
+    }
+    if (expired != null) {
+      for (Parked parked : expired) {
+        close(parked);
+      }
+    }
+  }
+
+  private void closeAll() {
+    for (SelectionKey key : selector.keys()) {
+      try {
+        if (key.isValid() && key.interestOps() != 0) {
+          close((Parked) key.attachment());
+        }
+      } catch (CancelledKeyException e) {
+        // the socket was closed concurrently
+      }
+    }
+    Parked parked;
+    while ((parked = pending.poll()) != null) {
+      close(parked);
+    }
+    IOUtils.cleanup(null, selector);
+  }
+
+  /** Stop the watcher and close the parked sockets. */
+  void shutdown() {
+    running = false;
+    selector.wakeup();
+    try {
+      join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** @return the number of sockets the watcher is waiting for. */
+  int getNumParked() {
+    return numParked.get();
+  }
+}
@@ -29,6 +29,8 @@
 import java.io.RandomAccessFile;
 import java.io.Writer;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -55,6 +57,7 @@
 
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
@@ -90,6 +93,11 @@ class BlockPoolSlice {
   private final boolean deleteDuplicateReplicas;
   private static final String REPLICA_CACHE_FILE = "replicas";
   private final long replicaCacheExpiry = 5*60*1000;
+  private static final String REPLICA_JOURNAL_FILE = "replicas.journal";
+  private final boolean replicaJournalEnabled;
+  // the journal of the finalized replicas, null until the replicas are
+  // loaded, or if it is disabled or failed
+  private volatile ReplicaJournal replicaJournal;
   private AtomicLong numOfBlocks = new AtomicLong();
   private final long cachedDfsUsedCheckTime;
   private final Timer timer;
@@ -138,6 +146,11 @@ class BlockPoolSlice {
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH,
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
 
+    this.replicaJournalEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_DEFAULT) &&
+        !volume.isTransientStorage();
+
     this.timer = timer;
 
     // Files that were being written when the datanode was last shutdown
@@ -157,10 +170,13 @@ class BlockPoolSlice {
 
     // Use cached value initially if available. Or the following call will
     // block until the initial du command completes.
-    this.dfsUsage = new CachingGetSpaceUsed.Builder().setPath(bpDir)
-                                                     .setConf(conf)
-                                                     .setInitialUsed(loadDfsUsed())
-                                                     .build();
+    this.dfsUsage = new FSCachingGetSpaceUsed.Builder()
+        .setBpid(bpid)
+        .setVolume(volume)
+        .setPath(bpDir)
+        .setConf(conf)
+        .setInitialUsed(loadDfsUsed())
+        .build();
 
     // Make the dfs usage to be saved during shutdown.
     shutdownHook = new Runnable() {
@@ -366,19 +382,159 @@ void getVolumeMap(ReplicaMap volumeMap,
       throws IOException {
     // Recover lazy persist replicas, they will be added to the volumeMap
     // when we scan the finalized directory.
+    int numRecovered = 0;
     if (lazypersistDir.exists()) {
-      int numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
+      numRecovered = moveLazyPersistReplicasToFinalized(lazypersistDir);
       FsDatasetImpl.LOG.info(
           "Recovered " + numRecovered + " replicas from " + lazypersistDir);
     }
 
     boolean  success = readReplicasFromCache(volumeMap, lazyWriteReplicaMap);
+    // The recovered lazy persist replicas are not in the journal.
+    if (!success && replicaJournalEnabled && numRecovered == 0) {
+      success = readReplicasFromJournal(volumeMap, lazyWriteReplicaMap);
+    }
     if (!success) {
       // add finalized replicas
       addToReplicasMap(volumeMap, finalizedDir, lazyWriteReplicaMap, true);
       // add rbw replicas
       addToReplicasMap(volumeMap, rbwDir, lazyWriteReplicaMap, false);
     }
+    if (replicaJournalEnabled) {
+      openReplicaJournal(volumeMap);
+    }
+    if (dfsUsage instanceof ReplicaCachingGetSpaceUsed) {
+      // the replicas are known now, no need to wait for the next refresh
+      ((ReplicaCachingGetSpaceUsed) dfsUsage).refresh(volumeMap);
+    }
+  }
+
+  /**
+   * Add the finalized replicas logged in the journal and the rbw replicas
+   * to the volume map. The journal may miss the latest changes of the
+   * replicas after a crash, the directory scanner reconciles them later.
+   *
+   * @return true if the journal was read.
+   */
+  private boolean readReplicasFromJournal(ReplicaMap volumeMap,
+      final RamDiskReplicaTracker lazyWriteReplicaMap) throws IOException {
+    final File journalFile = new File(currentDir, REPLICA_JOURNAL_FILE);
+    final Map<Long, Block> blocks;
+    try {
+      blocks = ReplicaJournal.replay(volume, journalFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to read the replica journal " + journalFile
+          + ", scanning the replicas on the disk instead", e);
+      return false;
+    }
+    if (blocks == null) {
+      LOG.info("Replica journal " + journalFile + " doesn't exist");
+      return false;
+    }
+    // Add the rbw replicas first, they supersede the finalized replicas they
+    // were appended to. A replica found elsewhere is not replaced either, so
+    // that a stale record never causes the deletion of a duplicate replica.
+    addToReplicasMap(volumeMap, rbwDir, lazyWriteReplicaMap, false);
+    for (Block block : blocks.values()) {
+      if (volumeMap.get(bpid, block.getBlockId()) == null) {
+        addReplicaToReplicasMap(block, volumeMap, lazyWriteReplicaMap, true);
+      }
+    }
+    LOG.info("Read " + blocks.size() + " finalized replicas from the replica"
+        + " journal " + journalFile);
+    return true;
+  }
+
+  /**
+   * Rewrite the journal with the finalized replicas of this slice, and log
+   * their next changes to it. Only the snapshot of the replicas is taken
+   * under the lock of the volume map.
+   */
+  private void openReplicaJournal(ReplicaMap volumeMap) {
+    final File journalFile = new File(currentDir, REPLICA_JOURNAL_FILE);
+    final ReplicaJournal journal = new ReplicaJournal(volume, journalFile);
+    final List<ReplicaJournal.Record> snapshot;
+    try (AutoCloseableLock l = volumeMap.getLock().acquire()) {
+      snapshot = journal.startRewrite(volumeMap.replicas(bpid));
+      replicaJournal = journal;
+    }
+    try {
+      journal.finishRewrite(snapshot);
+    } catch (IOException e) {
+      disableReplicaJournal(journal, e);
+    }
+  }
+
+  /**
+   * Log a finalized replica to the journal. The caller must hold the lock
+   * of the volume map.
+   */
+  void journalReplicaFinalized(ReplicaInfo replicaInfo,
+      ReplicaMap volumeMap) {
+    final ReplicaJournal journal = replicaJournal;
+    if (journal != null) {
+      try {
+        journal.add(replicaInfo);
+        compactReplicaJournal(journal, volumeMap);
+      } catch (IOException e) {
+        disableReplicaJournal(journal, e);
+      }
+    }
+  }
+
+  /**
+   * Log the removal of a finalized replica to the journal. The caller must
+   * hold the lock of the volume map.
+   */
+  void journalReplicaRemoved(long blockId, ReplicaMap volumeMap) {
+    final ReplicaJournal journal = replicaJournal;
+    if (journal != null) {
+      try {
+        journal.remove(blockId);
+        compactReplicaJournal(journal, volumeMap);
+      } catch (IOException e) {
+        disableReplicaJournal(journal, e);
+      }
+    }
+  }
+
+  /**
+   * Rewrite the journal if it has grown too much. The caller holds the lock
+   * of the volume map, so only the snapshot of the replicas is taken here;
+   * the journal is written by a background thread.
+   */
+  private void compactReplicaJournal(final ReplicaJournal journal,
+      ReplicaMap volumeMap) {
+    if (!journal.needsCompaction()) {
+      return;
+    }
+    final List<ReplicaJournal.Record> snapshot =
+        journal.startRewrite(volumeMap.replicas(bpid));
+    Daemon compactor = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          journal.finishRewrite(snapshot);
+        } catch (IOException e) {
+          disableReplicaJournal(journal, e);
+        }
+      }
+    });
+    compactor.setName("Replica journal compaction of " + this);
+    compactor.start();
+  }
+
+  /**
+   * Stop logging to the journal, and delete it, since it misses changes.
+   * The replicas are scanned on the next startup.
+   */
+  private void disableReplicaJournal(ReplicaJournal journal, IOException e) {
+    LOG.warn("Failed to write to the replica journal of " + this
+        + ", disabling it", e);
+    if (replicaJournal == journal) {
+      replicaJournal = null;
+    }
+    journal.delete();
   }
 
   /**
@@ -754,6 +910,11 @@ public String toString() {
   }
 
   void shutdown(BlockListAsLongs blocksListToPersist) {
+    final ReplicaJournal journal = replicaJournal;
+    if (journal != null) {
+      replicaJournal = null;
+      journal.close();
+    }
     saveReplicas(blocksListToPersist);
     saveDfsUsed();
     dfsUsedSaved = true;
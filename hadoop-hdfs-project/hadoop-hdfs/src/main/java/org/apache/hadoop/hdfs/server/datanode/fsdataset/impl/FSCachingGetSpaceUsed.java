@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.CachingGetSpaceUsed;
+import org.apache.hadoop.fs.GetSpaceUsed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link CachingGetSpaceUsed} which computes the space used by a block
+ * pool slice from the state of the DataNode, rather than from the files.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public abstract class FSCachingGetSpaceUsed extends CachingGetSpaceUsed {
+  static final Logger LOG =
+      LoggerFactory.getLogger(FSCachingGetSpaceUsed.class);
+
+  private final FsVolumeImpl volume;
+  private final String bpid;
+
+  /**
+   * This is the constructor used by the builder.
+   * All overriding classes should implement this.
+   */
+  public FSCachingGetSpaceUsed(Builder builder) throws IOException {
+    super(builder);
+    this.volume = builder.getVolume();
+    this.bpid = builder.getBpid();
+  }
+
+  protected FsVolumeImpl getVolume() {
+    return volume;
+  }
+
+  protected String getBpid() {
+    return bpid;
+  }
+
+  /**
+   * The builder of the {@link GetSpaceUsed} of a block pool slice. It
+   * builds the other implementations as {@link GetSpaceUsed.Builder} does.
+   */
+  public static class Builder extends GetSpaceUsed.Builder {
+    private FsVolumeImpl volume;
+    private String bpid;
+
+    public FsVolumeImpl getVolume() {
+      return volume;
+    }
+
+    public Builder setVolume(FsVolumeImpl volume) {
+      this.volume = volume;
+      return this;
+    }
+
+    public String getBpid() {
+      return bpid;
+    }
+
+    public Builder setBpid(String bpid) {
+      this.bpid = bpid;
+      return this;
+    }
+
+    @Override
+    public GetSpaceUsed build() throws IOException {
+      final Class<? extends GetSpaceUsed> klass = getKlass();
+      if (!FSCachingGetSpaceUsed.class.isAssignableFrom(klass)) {
+        return super.build();
+      }
+      FSCachingGetSpaceUsed getSpaceUsed;
+      try {
+        getSpaceUsed = (FSCachingGetSpaceUsed)
+            klass.getConstructor(Builder.class).newInstance(this);
+      } catch (InstantiationException | IllegalAccessException |
+          InvocationTargetException | NoSuchMethodException e) {
+        LOG.warn("Error trying to create an instance of " + klass, e);
+        // fall back to the default implementation
+        return super.build();
+      }
+      // Call init after classes constructors have finished.
+      getSpaceUsed.init();
+      return getSpaceUsed;
+    }
+  }
+}
@@ -72,6 +72,7 @@
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetricHelper;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
 import org.apache.hadoop.hdfs.server.datanode.Replica;
@@ -176,6 +177,39 @@ public StorageReport[] getStorageReports(String bpid)
     return reports.toArray(new StorageReport[reports.size()]);
   }
 
+  /**
+   * Record the time a thread had to wait for the dataset lock, because it
+   * was held by another thread.
+   */
+  private void addDatasetLockWait(long waitNanos) {
+    final DataNodeMetrics metrics = datanode.getMetrics();
+    if (metrics != null) {
+      metrics.addDatasetLockWaitNanos(waitNanos);
+    }
+  }
+
+  /**
+   * Log a finalized replica to the replica journal of its volume. The
+   * caller must hold the dataset lock.
+   */
+  private void journalReplicaFinalized(String bpid, ReplicaInfo replica) {
+    if (replica.getVolume() instanceof FsVolumeImpl) {
+      ((FsVolumeImpl) replica.getVolume()).journalReplicaFinalized(
+          bpid, replica, volumeMap);
+    }
+  }
+
+  /**
+   * Log the removal of a finalized replica to the replica journal of its
+   * volume. The caller must hold the dataset lock.
+   */
+  private void journalReplicaRemoved(String bpid, ReplicaInfo replica) {
+    if (replica.getVolume() instanceof FsVolumeImpl) {
+      ((FsVolumeImpl) replica.getVolume()).journalReplicaRemoved(
+          bpid, replica.getBlockId(), volumeMap);
+    }
+  }
+
   @Override
   public FsVolumeImpl getVolume(final ExtendedBlock b) {
     try (AutoCloseableLock lock = datasetLock.acquire()) {
@@ -274,7 +308,34 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
             DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY,
             DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT,
             TimeUnit.MILLISECONDS),
-          300));
+          300) {
+          @Override
+          public void lock() {
+            // A timed tryLock, unlike tryLock(), honors the fairness. It
+            // fails at once if the thread is interrupted, so the interrupt
+            // is cleared for it and restored afterwards.
+            boolean interrupted = Thread.interrupted();
+            try {
+              while (true) {
+                try {
+                  if (tryLock(0, TimeUnit.NANOSECONDS)) {
+                    return;
+                  }
+                  break;
+                } catch (InterruptedException e) {
+                  interrupted = true;
+                }
+              }
+              final long begin = System.nanoTime();
+              super.lock();
+              addDatasetLockWait(System.nanoTime() - begin);
+            } finally {
+              if (interrupted) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+        });
     this.datasetLockCondition = datasetLock.newCondition();
 
     // The number of volumes required for operation is the total number
@@ -298,6 +359,28 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
     volumeMap = new ReplicaMap(datasetLock);
+    volumeMap.setListener(new ReplicaMap.Listener() {
+      @Override
+      public void onAdd(String bpid, ReplicaInfo replica,
+          ReplicaInfo previous) {
+        if (previous != null && previous != replica &&
+            previous.getState() == ReplicaState.FINALIZED &&
+            (replica.getState() != ReplicaState.FINALIZED ||
+                previous.getVolume() != replica.getVolume())) {
+          journalReplicaRemoved(bpid, previous);
+        }
+        if (replica.getState() == ReplicaState.FINALIZED) {
+          journalReplicaFinalized(bpid, replica);
+        }
+      }
+
+      @Override
+      public void onRemove(String bpid, ReplicaInfo replica) {
+        if (replica.getState() == ReplicaState.FINALIZED) {
+          journalReplicaRemoved(bpid, replica);
+        }
+      }
+    });
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -1334,6 +1417,8 @@ public Replica recoverClose(ExtendedBlock b, long newGS,
           // finalize the replica if RBW
           if (replicaInfo.getState() == ReplicaState.RBW) {
             finalizeReplica(b.getBlockPoolId(), replicaInfo);
+          } else if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+            journalReplicaFinalized(b.getBlockPoolId(), replicaInfo);
           }
           return replicaInfo;
         }
@@ -2493,6 +2578,10 @@ public void checkAndUpdate(String bpid, ScanInfo scanInfo)
             + memBlockInfo.getBlockDataLength());
         memBlockInfo.setNumBytes(memBlockInfo.getBlockDataLength());
       }
+      // log the replica again, it may have been updated above
+      if (volumeMap.get(bpid, blockId) == memBlockInfo) {
+        journalReplicaFinalized(bpid, memBlockInfo);
+      }
     }
 
     // Send corrupt block report outside the lock
@@ -1469,6 +1469,31 @@ public void incrNumBlocks(String bpid) throws IOException {
     getBlockPoolSlice(bpid).incrNumBlocks();
   }
 
+  /**
+   * Log a finalized replica to the replica journal of the block pool, if
+   * there is one. The caller must hold the lock of the volume map.
+   */
+  void journalReplicaFinalized(String bpid, ReplicaInfo replicaInfo,
+      ReplicaMap volumeMap) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.journalReplicaFinalized(replicaInfo, volumeMap);
+    }
+  }
+
+  /**
+   * Log the removal of a finalized replica to the replica journal of the
+   * block pool, if there is one. The caller must hold the lock of the
+   * volume map.
+   */
+  void journalReplicaRemoved(String bpid, long blockId,
+      ReplicaMap volumeMap) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.journalReplicaRemoved(blockId, volumeMap);
+    }
+  }
+
   public void resolveDuplicateReplicas(String bpid, ReplicaInfo memBlockInfo,
       ReplicaInfo diskBlockInfo, ReplicaMap volumeMap) throws IOException {
     getBlockPoolSlice(bpid).resolveDuplicateReplicas(
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Computes the space used by a block pool slice from the replicas in the
+ * replica map of the DataNode, instead of running du on its directories.
+ * The length of each metadata file is still read from the file, since it
+ * depends on the checksum the client chose when writing the block, but no
+ * directory is listed.
+ * <p>
+ * Between two refreshes, the value is updated as replicas are finalized
+ * and deleted, like the other
+ * {@link org.apache.hadoop.fs.CachingGetSpaceUsed} implementations.
+ * <p>
+ * To use set fs.getspaceused.classname
+ * to org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.
+ * ReplicaCachingGetSpaceUsed in the hdfs-site.xml of the DataNode.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ReplicaCachingGetSpaceUsed extends FSCachingGetSpaceUsed {
+  public ReplicaCachingGetSpaceUsed(Builder builder) throws IOException {
+    super(builder);
+  }
+
+  @Override
+  protected void refresh() {
+    final FsDatasetImpl dataset = (FsDatasetImpl) getVolume().getDataset();
+    if (dataset != null && dataset.volumeMap != null) {
+      refresh(dataset.volumeMap);
+    }
+  }
+
+  /**
+   * Recompute the space used from the replicas of the slice in the given
+   * map.
+   */
+  void refresh(ReplicaMap volumeMap) {
+    final long start = Time.monotonicNow();
+    long dfsUsed = 0;
+    long count = 0;
+    for (ReplicaInfo replica : volumeMap.copyReplicas(getBpid())) {
+      if (replica.getVolume() == getVolume()) {
+        dfsUsed += replica.getBytesOnDisk() + replica.getMetadataLength();
+        count++;
+      }
+    }
+    setUsed(dfsUsed);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Refreshed the space used by " + count + " replicas of "
+          + getBpid() + " on " + getVolume() + ": " + dfsUsed + " bytes in "
+          + (Time.monotonicNow() - start) + " ms");
+    }
+  }
+}
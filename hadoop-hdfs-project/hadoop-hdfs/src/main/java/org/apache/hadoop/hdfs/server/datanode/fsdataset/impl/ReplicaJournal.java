@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * An append-only log of the finalized replicas of a {@link BlockPoolSlice}.
+ * A record is appended when a replica is finalized, or when a finalized
+ * replica changes or goes away, so that the finalized replicas of the slice
+ * can be listed again by replaying the log instead of scanning the
+ * finalized directory.
+ * <p>
+ * The file starts with a magic number and a version. Each record is the
+ * operation byte followed by the block ID, the generation stamp and the
+ * length of the replica. Each record is handed to the operating system in
+ * a single write as it is logged, so it survives a crash of the DataNode
+ * process. The records are not synced to the disk, so the last ones may be
+ * lost, or torn, on a crash of the host; the replay stops at a torn record,
+ * and the directory scanner reconciles the replicas. The log is rewritten
+ * from the replica map when it grows too much, and on each startup.
+ * <p>
+ * The records are written under the dataset lock, so that their order is
+ * the order of the updates of the replica map. A rewrite only takes a
+ * snapshot of the replicas under the lock, see {@link #startRewrite}; the
+ * new log is written by {@link #finishRewrite} without it, and the records
+ * written meanwhile are appended to the new log before it replaces the old
+ * one.
+ */
+class ReplicaJournal implements Closeable {
+  private static final int MAGIC = 0x524a4e4c;
+  private static final int VERSION = 1;
+  private static final byte OP_ADD = 1;
+  private static final byte OP_REMOVE = 2;
+  /** The length of a record: the operation and three longs. */
+  private static final int RECORD_LENGTH = 1 + 3 * 8;
+
+  /**
+   * The minimum number of records between two rewrites of the log, so that
+   * small slices do not rewrite it all the time.
+   */
+  private static final long MIN_RECORDS_TO_COMPACT = 1 << 20;
+
+  private final FsVolumeImpl volume;
+  private final FileIoProvider fileIoProvider;
+  private final File file;
+  // null until the first rewrite is finished, not buffered
+  private FileOutputStream out;
+  private boolean closed;
+  /**
+   * The records written since the snapshot of a rewrite in progress, or
+   * null if there is no rewrite in progress.
+   */
+  private List<Record> pendingRecords;
+  /** The number of records in the log. */
+  private long numRecords;
+  /** The number of records after which the log should be rewritten. */
+  private long compactThreshold;
+
+  /**
+   * Create a journal which replaces the existing log. Nothing is written
+   * to the file until the first rewrite is finished, but the records are
+   * kept for it.
+   */
+  ReplicaJournal(FsVolumeImpl volume, File file) {
+    this.volume = volume;
+    this.fileIoProvider = volume.getFileIoProvider();
+    this.file = file;
+    this.pendingRecords = new ArrayList<>();
+  }
+
+  /**
+   * Read the log of the finalized replicas.
+   *
+   * @return the finalized replicas by block ID, or null if there is no log.
+   * @throws IOException if the log cannot be read or is corrupt.
+   */
+  static Map<Long, Block> replay(FsVolumeImpl volume, File file)
+      throws IOException {
+    if (!volume.getFileIoProvider().exists(volume, file)) {
+      return null;
+    }
+    final Map<Long, Block> blocks = new HashMap<>();
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(
+          volume.getFileIoProvider().getFileInputStream(volume, file)));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unexpected header in " + file);
+      }
+      while (true) {
+        final int op = in.read();
+        if (op == -1) {
+          break;
+        }
+        final long blockId;
+        final long genStamp;
+        final long numBytes;
+        try {
+          blockId = in.readLong();
+          genStamp = in.readLong();
+          numBytes = in.readLong();
+        } catch (EOFException e) {
+          // the last record was torn by a crash
+          break;
+        }
+        switch (op) {
+        case OP_ADD:
+          blocks.put(blockId, new Block(blockId, numBytes, genStamp));
+          break;
+        case OP_REMOVE:
+          blocks.remove(blockId);
+          break;
+        default:
+          throw new IOException("Unexpected operation " + op + " in " + file);
+        }
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+    return blocks;
+  }
+
+  /** Log a finalized replica, which replaces any previous record of it. */
+  synchronized void add(ReplicaInfo replica) throws IOException {
+    write(new Record(OP_ADD, replica.getBlockId(),
+        replica.getGenerationStamp(), replica.getNumBytes()));
+  }
+
+  /** Log the removal of a finalized replica. */
+  synchronized void remove(long blockId) throws IOException {
+    write(new Record(OP_REMOVE, blockId, 0, 0));
+  }
+
+  private void write(Record record) throws IOException {
+    if (closed) {
+      // closed by the shutdown of the slice
+      return;
+    }
+    if (out != null) {
+      out.write(record.toBytes());
+    }
+    if (pendingRecords != null) {
+      pendingRecords.add(record);
+    }
+    numRecords++;
+  }
+
+  /**
+   * @return true if the log has grown enough to be rewritten, and no
+   * rewrite is in progress.
+   */
+  synchronized boolean needsCompaction() {
+    return pendingRecords == null && numRecords > compactThreshold;
+  }
+
+  /**
+   * Start to replace the log with a new one with a record per finalized
+   * replica. The caller must hold the dataset lock, and must then call
+   * {@link #finishRewrite} without it.
+   *
+   * @param replicas the replicas of the slice; only the finalized ones are
+   *                 written to the log.
+   * @return the snapshot of the finalized replicas to write.
+   */
+  synchronized List<Record> startRewrite(Iterable<ReplicaInfo> replicas) {
+    final List<Record> snapshot = new ArrayList<>();
+    if (replicas != null) {
+      for (ReplicaInfo replica : replicas) {
+        if (replica.getVolume() == volume &&
+            replica.getState() == ReplicaState.FINALIZED) {
+          snapshot.add(new Record(OP_ADD, replica.getBlockId(),
+              replica.getGenerationStamp(), replica.getNumBytes()));
+        }
+      }
+    }
+    if (pendingRecords == null) {
+      pendingRecords = new ArrayList<>();
+    } else {
+      // the records are in the snapshot
+      pendingRecords.clear();
+    }
+    return snapshot;
+  }
+
+  /**
+   * Write the new log of a rewrite started by {@link #startRewrite}, append
+   * the records written since, and replace the old log with it. The new log
+   * is synced to the disk before it replaces the old one.
+   */
+  void finishRewrite(Collection<Record> snapshot) throws IOException {
+    final File tmpFile = new File(file.getPath() + ".tmp");
+    FileOutputStream tmpFos = null;
+    DataOutputStream tmpOut = null;
+    try {
+      tmpFos = fileIoProvider.getFileOutputStream(volume, tmpFile);
+      tmpOut = new DataOutputStream(new BufferedOutputStream(tmpFos));
+      tmpOut.writeInt(MAGIC);
+      tmpOut.writeInt(VERSION);
+      for (Record record : snapshot) {
+        tmpOut.write(record.toBytes());
+      }
+      tmpOut.flush();
+      fileIoProvider.sync(volume, tmpFos);
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        for (Record record : pendingRecords) {
+          tmpOut.write(record.toBytes());
+        }
+        tmpOut.close();
+        tmpOut = null;
+        IOUtils.closeStream(out);
+        out = null;
+        fileIoProvider.replaceFile(volume, tmpFile, file);
+        out = fileIoProvider.getFileOutputStream(volume, file, true);
+        numRecords = snapshot.size() + pendingRecords.size();
+        compactThreshold =
+            Math.max(2 * snapshot.size(), MIN_RECORDS_TO_COMPACT);
+      }
+    } finally {
+      synchronized (this) {
+        pendingRecords = null;
+      }
+      IOUtils.closeStream(tmpOut);
+      fileIoProvider.deleteWithExistsCheck(volume, tmpFile);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    pendingRecords = null;
+    IOUtils.closeStream(out);
+    out = null;
+  }
+
+  /** A record of the log. */
+  static final class Record {
+    private final byte op;
+    private final long blockId;
+    private final long genStamp;
+    private final long numBytes;
+
+    private Record(byte op, long blockId, long genStamp, long numBytes) {
+      this.op = op;
+      this.blockId = blockId;
+      this.genStamp = genStamp;
+      this.numBytes = numBytes;
+    }
+
+    private byte[] toBytes() {
+      return ByteBuffer.allocate(RECORD_LENGTH).put(op).putLong(blockId)
+          .putLong(genStamp).putLong(numBytes).array();
+    }
+  }
+
+  /** Close the log and delete it, so that it is not replayed. */
+  synchronized void delete() {
+    close();
+    fileIoProvider.deleteWithExistsCheck(volume, file);
+  }
+}
@@ -17,10 +17,13 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -29,14 +32,43 @@
 import org.apache.hadoop.util.AutoCloseableLock;
 
 /**
- * Maintains the replica map. 
+ * Maintains the replica map.
+ * <p>
+ * The map is striped by block pool. The updates of the map take the lock of
+ * the map, then the write lock of the block pool. The lookups only take the
+ * read lock of the block pool, so that they do not wait for the lock of the
+ * map, which is the dataset lock of the DataNode, and is held for long
+ * operations such as the creation or the finalization of a replica.
+ * The fields of a replica are not guarded by these locks, so callers that
+ * read them must still hold the dataset lock.
  */
 class ReplicaMap {
-  // Lock object to synchronize this instance.
+  // Lock object to synchronize the updates of this instance.
   private final AutoCloseableLock lock;
   
-  // Map of block pool Id to a set of ReplicaInfo.
-  private final Map<String, FoldedTreeSet<ReplicaInfo>> map = new HashMap<>();
+  // Map of block pool Id to the replicas of the block pool.
+  private final Map<String, BlockPoolReplicas> map =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Notified of the updates of the map, with the lock of the map held.
+   */
+  interface Listener {
+    /**
+     * @param previous the replica replaced by the added one, or null.
+     */
+    void onAdd(String bpid, ReplicaInfo replica, ReplicaInfo previous);
+
+    void onRemove(String bpid, ReplicaInfo replica);
+  }
+
+  private volatile Listener listener;
+
+  /** The replicas of a block pool, with the lock of the stripe. */
+  private static class BlockPoolReplicas {
+    private final FoldedTreeSet<ReplicaInfo> set = new FoldedTreeSet<>();
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+  }
 
   // Special comparator used to compare Long to Block ID in the TreeSet.
   private static final Comparator<Object> LONG_AND_BLOCK_COMPARATOR
@@ -58,6 +90,14 @@ public int compare(Object o1, Object o2) {
     this.lock = lock;
   }
   
+  /**
+   * Set the listener of the updates of the map. The replicas added by
+   * {@link #addAll(ReplicaMap)} are not notified.
+   */
+  void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
   String[] getBlockPoolList() {
     try (AutoCloseableLock l = lock.acquire()) {
       return map.keySet().toArray(new String[map.keySet().size()]);   
@@ -104,12 +144,15 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        return null;
-      }
-      return set.get(blockId, LONG_AND_BLOCK_COMPARATOR);
+    BlockPoolReplicas replicas = map.get(bpid);
+    if (replicas == null) {
+      return null;
+    }
+    replicas.rwLock.readLock().lock();
+    try {
+      return replicas.set.get(blockId, LONG_AND_BLOCK_COMPARATOR);
+    } finally {
+      replicas.rwLock.readLock().unlock();
     }
   }
 
@@ -125,21 +168,41 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
     try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
+      BlockPoolReplicas replicas = getOrCreate(bpid);
+      ReplicaInfo previous;
+      replicas.rwLock.writeLock().lock();
+      try {
+        previous = replicas.set.addOrReplace(replicaInfo);
+      } finally {
+        replicas.rwLock.writeLock().unlock();
       }
-      return set.addOrReplace(replicaInfo);
+      if (listener != null) {
+        listener.onAdd(bpid, replicaInfo, previous);
+      }
+      return previous;
     }
   }
 
+  /**
+   * Get the replicas of the block pool, adding an entry for the block pool
+   * if it does not exist already. Must be called with the lock held.
+   */
+  private BlockPoolReplicas getOrCreate(String bpid) {
+    BlockPoolReplicas replicas = map.get(bpid);
+    if (replicas == null) {
+      replicas = new BlockPoolReplicas();
+      map.put(bpid, replicas);
+    }
+    return replicas;
+  }
+
   /**
    * Add all entries from the given replica map into the local replica map.
    */
   void addAll(ReplicaMap other) {
-    map.putAll(other.map);
+    try (AutoCloseableLock l = lock.acquire()) {
+      map.putAll(other.map);
+    }
   }
   
   /**
@@ -154,14 +217,22 @@ ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
     try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
-        ReplicaInfo replicaInfo =
-            set.get(block.getBlockId(), LONG_AND_BLOCK_COMPARATOR);
-        if (replicaInfo != null &&
-            block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
-          return set.removeAndGet(replicaInfo);
+      BlockPoolReplicas replicas = map.get(bpid);
+      if (replicas != null) {
+        ReplicaInfo removed = null;
+        replicas.rwLock.writeLock().lock();
+        try {
+          ReplicaInfo replicaInfo =
+              replicas.set.get(block.getBlockId(), LONG_AND_BLOCK_COMPARATOR);
+          if (replicaInfo != null &&
+              block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
+            removed = replicas.set.removeAndGet(replicaInfo);
+          }
+        } finally {
+          replicas.rwLock.writeLock().unlock();
         }
+        notifyRemove(bpid, removed);
+        return removed;
       }
     }
     
@@ -177,13 +248,28 @@ ReplicaInfo remove(String bpid, Block block) {
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
     try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set != null) {
-        return set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
+      BlockPoolReplicas replicas = map.get(bpid);
+      if (replicas != null) {
+        ReplicaInfo removed;
+        replicas.rwLock.writeLock().lock();
+        try {
+          removed =
+              replicas.set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
+        } finally {
+          replicas.rwLock.writeLock().unlock();
+        }
+        notifyRemove(bpid, removed);
+        return removed;
       }
     }
     return null;
   }
+
+  private void notifyRemove(String bpid, ReplicaInfo removed) {
+    if (removed != null && listener != null) {
+      listener.onRemove(bpid, removed);
+    }
+  }
  
   /**
    * Get the size of the map for given block pool
@@ -191,9 +277,15 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      return set != null ? set.size() : 0;
+    BlockPoolReplicas replicas = map.get(bpid);
+    if (replicas == null) {
+      return 0;
+    }
+    replicas.rwLock.readLock().lock();
+    try {
+      return replicas.set.size();
+    } finally {
+      replicas.rwLock.readLock().unlock();
     }
   }
   
@@ -208,18 +300,36 @@ int size(String bpid) {
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    return map.get(bpid);
+    BlockPoolReplicas replicas = map.get(bpid);
+    return replicas != null ? replicas.set : null;
+  }
+
+  /**
+   * Get a copy of the replicas for given block pool. Unlike
+   * {@link #replicas(String)}, this does not need the lock of the map, so
+   * it does not block the lookups; it only blocks the updates of the block
+   * pool while the replicas are copied.
+   *
+   * @param bpid block pool id
+   * @return a copy of the replicas belonging to the block pool
+   */
+  Collection<ReplicaInfo> copyReplicas(String bpid) {
+    BlockPoolReplicas replicas = map.get(bpid);
+    if (replicas == null) {
+      return new ArrayList<>();
+    }
+    replicas.rwLock.readLock().lock();
+    try {
+      return new ArrayList<>(replicas.set);
+    } finally {
+      replicas.rwLock.readLock().unlock();
+    }
   }
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
     try (AutoCloseableLock l = lock.acquire()) {
-      FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
-      if (set == null) {
-        // Add an entry for block pool if it does not exist already
-        set = new FoldedTreeSet<>();
-        map.put(bpid, set);
-      }
+      getOrCreate(bpid);
     }
   }
   
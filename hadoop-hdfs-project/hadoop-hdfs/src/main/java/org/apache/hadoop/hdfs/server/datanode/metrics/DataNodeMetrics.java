@@ -131,6 +131,15 @@ public class DataNodeMetrics {
   @Metric MutableRate sendDataPacketTransferNanos;
   final MutableQuantiles[] sendDataPacketTransferNanosQuantiles;
 
+  @Metric("Time waited for the dataset lock when it was held by another " +
+      "thread in ns")
+  MutableRate datasetLockWaitNanos;
+  @Metric("Duration of the directory scans in ms")
+  MutableRate directoryScans;
+  @Metric("Time to reconcile a block found different on the disk by the " +
+      "directory scanner, which holds the dataset lock, in ns")
+  MutableRate directoryScanReconcileNanos;
+
   @Metric("Count of blocks in pending IBR")
   private MutableGaugeLong blocksInPendingIBR;
   @Metric("Count of blocks at receiving status in pending IBR")
@@ -341,6 +350,18 @@ public void addFlushNanos(long latencyNanos) {
     }
   }
 
+  public void addDatasetLockWaitNanos(long waitNanos) {
+    datasetLockWaitNanos.add(waitNanos);
+  }
+
+  public void addDirectoryScan(long latency) {
+    directoryScans.add(latency);
+  }
+
+  public void addDirectoryScanReconcileNanos(long latencyNanos) {
+    directoryScanReconcileNanos.add(latencyNanos);
+  }
+
   public void addFsyncNanos(long latencyNanos) {
     fsyncNanos.add(latencyNanos);
     for (MutableQuantiles q : fsyncNanosQuantiles) {
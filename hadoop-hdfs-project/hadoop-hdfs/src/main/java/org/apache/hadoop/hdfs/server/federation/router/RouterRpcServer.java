@@ -30,6 +30,7 @@
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -1129,6 +1130,62 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
         locations, method, HdfsFileStatus.class, null);
   }
 
+  @Override // ClientProtocol
+  public HdfsLocatedFileStatus[] getBatchedLocatedFileInfo(String[] srcs,
+      boolean needBlockToken) throws IOException {
+    checkOperation(OperationCategory.READ);
+
+    // Group the paths by the subcluster of their first destination, and
+    // send one batched call to each subcluster
+    final List<List<RemoteLocation>> locations = new ArrayList<>();
+    final Map<String, List<Integer>> indexesByNs = new HashMap<>();
+    for (int i = 0; i < srcs.length; i++) {
+      List<RemoteLocation> srcLocations = getLocationsForPath(srcs[i], false);
+      locations.add(srcLocations);
+      String nsId = srcLocations.get(0).getNameserviceId();
+      List<Integer> indexes = indexesByNs.get(nsId);
+      if (indexes == null) {
+        indexes = new ArrayList<>();
+        indexesByNs.put(nsId, indexes);
+      }
+      indexes.add(i);
+    }
+
+    final HdfsLocatedFileStatus[] ret = new HdfsLocatedFileStatus[srcs.length];
+    for (Entry<String, List<Integer>> entry : indexesByNs.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      int done = 0;
+      while (done < indexes.size()) {
+        // The namenode may answer for only some of the paths
+        String[] dests = new String[indexes.size() - done];
+        for (int j = 0; j < dests.length; j++) {
+          dests[j] = locations.get(indexes.get(done + j)).get(0).getDest();
+        }
+        RemoteMethod method = new RemoteMethod("getBatchedLocatedFileInfo",
+            new Class<?>[] {String[].class, boolean.class}, dests,
+            Boolean.valueOf(needBlockToken));
+        HdfsLocatedFileStatus[] stats = (HdfsLocatedFileStatus[])
+            rpcClient.invokeSingle(entry.getKey(), method);
+        if (stats == null || stats.length == 0) {
+          throw new IOException("Subcluster " + entry.getKey()
+              + " returned no file info for " + dests.length + " paths");
+        }
+        for (int j = 0; j < stats.length; j++) {
+          ret[indexes.get(done + j)] = stats[j];
+        }
+        done += stats.length;
+      }
+    }
+
+    // Paths not found at their first destination may be at another one
+    for (int i = 0; i < srcs.length; i++) {
+      if (ret[i] == null && locations.get(i).size() > 1) {
+        ret[i] = getLocatedFileInfo(srcs[i], needBlockToken);
+      }
+    }
+    return ret;
+  }
+
   @Override // ClientProtocol
   public long[] getStats() throws IOException {
     checkOperation(OperationCategory.UNCHECKED);
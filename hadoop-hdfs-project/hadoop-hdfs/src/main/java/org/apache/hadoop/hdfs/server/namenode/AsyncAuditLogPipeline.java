@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Moves audit logging off the RPC handler threads. Handlers enqueue a small
+ * {@link AuditEvent} holding the arguments of the event, and a single
+ * background thread drains the queue in batches and hands each event to the
+ * configured {@link AuditLogger}s, which do the formatting and writing.
+ *
+ * <p>The queue is bounded. When it is full, the
+ * {@link DFSConfigKeys#DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY}
+ * policy decides whether handlers wait for space ({@link OverflowPolicy#BLOCK})
+ * or the event is dropped and counted ({@link OverflowPolicy#DISCARD}).
+ *
+ * <p>Audit loggers run on the background thread, so they must rely on the
+ * arguments they are passed rather than on the state of the current RPC
+ * call. The RPC protocol name, which the default audit logger records, is
+ * captured at enqueue time and made available through
+ * {@link #getProtocol()}.
+ */
+class AsyncAuditLogPipeline {
+  static final Logger LOG =
+      LoggerFactory.getLogger(AsyncAuditLogPipeline.class);
+
+  /** What to do with an event when the queue is full. */
+  enum OverflowPolicy {
+    /** Block the handler until there is space in the queue. */
+    BLOCK,
+    /** Drop the event and count it. */
+    DISCARD
+  }
+
+  /**
+   * How long a handler waits for space in the queue before checking that the
+   * background thread is still there to make some.
+   */
+  private static final long PUT_TIMEOUT_MS = 1000;
+
+  /** The protocol of the event being dispatched on the background thread. */
+  private static final ThreadLocal<String> DISPATCH_PROTOCOL =
+      new ThreadLocal<>();
+
+  private final List<AuditLogger> loggers;
+  private final DelegationTokenSecretManager dtSecretManager;
+  private final BlockingQueue<AuditEvent> queue;
+  private final OverflowPolicy overflowPolicy;
+  private final int maxBatchSize;
+  private final AtomicLong droppedEvents = new AtomicLong();
+  private final Daemon dispatcher;
+  private volatile boolean shouldRun = true;
+
+  AsyncAuditLogPipeline(Configuration conf, List<AuditLogger> loggers,
+      DelegationTokenSecretManager dtSecretManager) {
+    int capacity = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT);
+    Preconditions.checkArgument(capacity > 0, "%s must be positive",
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY);
+    this.maxBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_DEFAULT);
+    Preconditions.checkArgument(maxBatchSize > 0, "%s must be positive",
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY);
+    this.overflowPolicy = conf.getEnum(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY,
+        OverflowPolicy.BLOCK);
+    this.loggers = loggers;
+    this.dtSecretManager = dtSecretManager;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.dispatcher = new Daemon(new Dispatcher());
+    this.dispatcher.setName("AuditLogDispatcher");
+    LOG.info("Audit events are logged asynchronously: queue size = {}, " +
+        "batch size = {}, overflow policy = {}",
+        capacity, maxBatchSize, overflowPolicy);
+  }
+
+  void start() {
+    dispatcher.start();
+  }
+
+  /**
+   * Stop the background thread once it has dispatched the events already
+   * in the queue.
+   */
+  void stop() {
+    shouldRun = false;
+    dispatcher.interrupt();
+    try {
+      dispatcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Queue an audit event. Called on the RPC handler thread.
+   */
+  void logAuditEvent(boolean succeeded, String ugiStr,
+      UserGroupInformation ugi, InetAddress addr, String cmd, String src,
+      String dst, FileStatus status, CallerContext callerContext) {
+    AuditEvent event = new AuditEvent(succeeded, ugiStr, ugi, addr, cmd, src,
+        dst, status, callerContext, Server.getProtocol());
+    if (overflowPolicy == OverflowPolicy.DISCARD) {
+      if (!queue.offer(event)) {
+        droppedEvents.incrementAndGet();
+      }
+      return;
+    }
+    try {
+      while (!queue.offer(event, PUT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        if (!dispatcher.isAlive()) {
+          // Nothing drains the queue; log the event on this thread instead.
+          dispatch(event);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // Do not lose the event; log it on this thread instead.
+      Thread.currentThread().interrupt();
+      dispatch(event);
+    }
+  }
+
+  /** @return the number of events waiting to be logged. */
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  /** @return the number of events dropped because the queue was full. */
+  long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+
+  /**
+   * @return the RPC protocol of the audit event being logged. On the
+   * background thread this is the protocol captured when the event was
+   * queued; otherwise it is the protocol of the current RPC call.
+   */
+  static String getProtocol() {
+    String protocol = DISPATCH_PROTOCOL.get();
+    return protocol != null ? protocol : Server.getProtocol();
+  }
+
+  private void dispatch(AuditEvent e) {
+    DISPATCH_PROTOCOL.set(e.protocol);
+    try {
+      for (AuditLogger logger : loggers) {
+        if (logger instanceof HdfsAuditLogger) {
+          ((HdfsAuditLogger) logger).logAuditEvent(e.succeeded, e.ugiStr,
+              e.addr, e.cmd, e.src, e.dst, e.status, e.callerContext, e.ugi,
+              dtSecretManager);
+        } else {
+          logger.logAuditEvent(e.succeeded, e.ugiStr, e.addr, e.cmd, e.src,
+              e.dst, e.status);
+        }
+      }
+    } catch (Throwable t) {
+      // Keep the background thread alive, or the handlers would block on a
+      // full queue.
+      LOG.warn("Failed to log audit event " + e.cmd + " " + e.src, t);
+    } finally {
+      DISPATCH_PROTOCOL.remove();
+    }
+  }
+
+  private class Dispatcher implements Runnable {
+    @Override
+    public void run() {
+      List<AuditEvent> batch = new ArrayList<>(maxBatchSize);
+      while (shouldRun || !queue.isEmpty()) {
+        try {
+          AuditEvent first = queue.poll(1, TimeUnit.SECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.add(first);
+        } catch (InterruptedException e) {
+          // stop() interrupts us; drain whatever is left before exiting.
+          if (shouldRun) {
+            LOG.warn("Audit log dispatcher interrupted", e);
+          }
+          shouldRun = false;
+        }
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        for (AuditEvent e : batch) {
+          dispatch(e);
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  /** The arguments of one audit event. */
+  private static final class AuditEvent {
+    private final boolean succeeded;
+    private final String ugiStr;
+    private final UserGroupInformation ugi;
+    private final InetAddress addr;
+    private final String cmd;
+    private final String src;
+    private final String dst;
+    private final FileStatus status;
+    private final CallerContext callerContext;
+    private final String protocol;
+
+    AuditEvent(boolean succeeded, String ugiStr, UserGroupInformation ugi,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, CallerContext callerContext, String protocol) {
+      this.succeeded = succeeded;
+      this.ugiStr = ugiStr;
+      this.ugi = ugi;
+      this.addr = addr;
+      this.cmd = cmd;
+      this.src = src;
+      this.dst = dst;
+      this.status = status;
+      this.callerContext = callerContext;
+      this.protocol = protocol;
+    }
+  }
+}
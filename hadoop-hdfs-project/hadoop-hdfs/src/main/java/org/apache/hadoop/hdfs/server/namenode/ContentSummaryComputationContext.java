@@ -44,6 +44,7 @@ public class ContentSummaryComputationContext {
   private long nextCountLimit = 0;
   private long limitPerRun = 0;
   private long yieldCount = 0;
+  private long sleepMicroSec = 0;
   private long sleepMilliSec = 0;
   private int sleepNanoSec = 0;
 
@@ -75,6 +76,7 @@ public ContentSummaryComputationContext(FSDirectory dir,
     this.nextCountLimit = limitPerRun;
     this.counts = new ContentCounts.Builder().build();
     this.snapshotCounts = new ContentCounts.Builder().build();
+    this.sleepMicroSec = sleepMicroSec;
     this.sleepMilliSec = sleepMicroSec/1000;
     this.sleepNanoSec = (int)((sleepMicroSec%1000)*1000);
     this.pc = pc;
@@ -91,6 +93,49 @@ public long getYieldCount() {
     return yieldCount;
   }
 
+  /**
+   * Create a context with the same settings and empty counts, to compute the
+   * content summary of a subtree in another thread.
+   */
+  ContentSummaryComputationContext newSubtreeContext() {
+    return new ContentSummaryComputationContext(dir, fsn, limitPerRun,
+        sleepMicroSec, pc);
+  }
+
+  /** Add the counts and yields of a subtree context to this context. */
+  void addSubtree(ContentSummaryComputationContext subtree) {
+    counts.addContents(subtree.counts);
+    snapshotCounts.addContents(subtree.snapshotCounts);
+    yieldCount += subtree.yieldCount;
+  }
+
+  /**
+   * @return true if the locks held by the current thread may be released in
+   *         the middle of the computation.
+   */
+  boolean canRelinquishLocks() {
+    if (limitPerRun <= 0 || dir == null || fsn == null) {
+      return false;
+    }
+    // only the read locks, which were acquired once, can be released
+    return dir.hasReadLock() && fsn.hasReadLock() && !dir.hasWriteLock()
+        && !fsn.hasWriteLock() && dir.getReadHoldCount() == 1
+        && fsn.getReadHoldCount() == 1;
+  }
+
+  /** Release the locks, checked with {@link #canRelinquishLocks()}. */
+  void releaseLocks() {
+    dir.readUnlock();
+    fsn.readUnlock("contentSummary");
+  }
+
+  /** Reacquire the locks released by {@link #releaseLocks()}. */
+  void reacquireLocks() {
+    fsn.readLock();
+    dir.readLock();
+    yieldCount++;
+  }
+
   /**
    * Relinquish locks held during computation for a short while
    * and reacquire them. This will give other threads a chance
@@ -116,32 +161,22 @@ public boolean yield() {
     // Update the next limit
     nextCountLimit = currentCount + limitPerRun;
 
-    boolean hadDirReadLock = dir.hasReadLock();
-    boolean hadDirWriteLock = dir.hasWriteLock();
-    boolean hadFsnReadLock = fsn.hasReadLock();
-    boolean hadFsnWriteLock = fsn.hasWriteLock();
-
     // sanity check.
-    if (!hadDirReadLock || !hadFsnReadLock || hadDirWriteLock ||
-        hadFsnWriteLock || dir.getReadHoldCount() != 1 ||
-        fsn.getReadHoldCount() != 1) {
+    if (!canRelinquishLocks()) {
       // cannot relinquish
       return false;
     }
 
     // unlock
-    dir.readUnlock();
-    fsn.readUnlock("contentSummary");
+    releaseLocks();
 
     try {
       Thread.sleep(sleepMilliSec, sleepNanoSec);
     } catch (InterruptedException ie) {
     } finally {
       // reacquire
-      fsn.readLock();
-      dir.readLock();
+      reacquireLocks();
     }
-    yieldCount++;
     return true;
   }
 
@@ -115,6 +115,39 @@ public void flush(boolean durable) throws IOException {
     totalTimeSync += (end - start);
   }
 
+  /**
+   * A flush started by {@link #startFlush()} which may not be durable yet.
+   */
+  public interface PendingFlush {
+    /**
+     * Wait until the flushed data is durable.
+     * @throws IOException if the data could not be made durable
+     */
+    void waitForDurable() throws IOException;
+  }
+
+  /** A {@link PendingFlush} whose data is already durable. */
+  static final PendingFlush DURABLE = new PendingFlush() {
+    @Override
+    public void waitForDurable() {
+    }
+  };
+
+  /**
+   * Start to flush the data that is ready to flush, without waiting for it
+   * to be durable. More data can be made ready and flushed while earlier
+   * flushes are pending; they become durable in the order they were started.
+   * <p>
+   * The default implementation flushes synchronously.
+   *
+   * @return the pending flush
+   * @throws IOException
+   */
+  public PendingFlush startFlush() throws IOException {
+    flush();
+    return DURABLE;
+  }
+
   /**
    * Implement the policy when to automatically sync the buffered edits log
    * The buffered edits can be flushed when the buffer becomes full or
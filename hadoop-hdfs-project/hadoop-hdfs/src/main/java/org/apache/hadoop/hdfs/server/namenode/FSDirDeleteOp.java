@@ -98,6 +98,28 @@ static long delete(FSDirectory fsd, INodesInPath iip,
   static BlocksMapUpdateInfo delete(
       FSNamesystem fsn, String src, boolean recursive, boolean logRetryCache)
       throws IOException {
+    return delete(fsn, src, recursive, logRetryCache, null);
+  }
+
+  /**
+   * Remove a file/directory from the namespace.
+   * <p>
+   * Same as {@link #delete(FSNamesystem, String, boolean, boolean)}, except
+   * that when the deletion unlinks more than
+   * {@link FSNamesystem#INODE_DELETION_INCREMENT} inodes, they are handed
+   * back in <code>deferredINodes</code> instead of being removed from the
+   * inodeMap under the current lock hold. The checkpoint lock is then held
+   * on return, and the caller is responsible for removing the inodes
+   * incrementally and releasing it, see
+   * {@link FSNamesystem#removeINodes(List)}.
+   *
+   * @param deferredINodes receives the unlinked inodes whose removal from
+   *          the inodeMap has been deferred; may be null to always remove
+   *          them in one shot
+   */
+  static BlocksMapUpdateInfo delete(
+      FSNamesystem fsn, String src, boolean recursive, boolean logRetryCache,
+      List<INode> deferredINodes) throws IOException {
     FSDirectory fsd = fsn.getFSDirectory();
     FSPermissionChecker pc = fsd.getPermissionChecker();
 
@@ -118,7 +140,7 @@ static BlocksMapUpdateInfo delete(
       checkProtectedDescendants(fsd, iip);
     }
 
-    return deleteInternal(fsn, iip, logRetryCache);
+    return deleteInternal(fsn, iip, logRetryCache, deferredINodes);
   }
 
   /**
@@ -175,6 +197,12 @@ static void deleteForEditLog(FSDirectory fsd, INodesInPath iip, long mtime)
   static BlocksMapUpdateInfo deleteInternal(
       FSNamesystem fsn, INodesInPath iip, boolean logRetryCache)
       throws IOException {
+    return deleteInternal(fsn, iip, logRetryCache, null);
+  }
+
+  private static BlocksMapUpdateInfo deleteInternal(
+      FSNamesystem fsn, INodesInPath iip, boolean logRetryCache,
+      List<INode> deferredINodes) throws IOException {
     assert fsn.hasWriteLock();
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.delete: " + iip.getPath());
@@ -195,7 +223,19 @@ static BlocksMapUpdateInfo deleteInternal(
     fsd.getEditLog().logDelete(iip.getPath(), mtime, logRetryCache);
     incrDeletedFileCount(filesRemoved);
 
-    fsn.removeLeasesAndINodes(removedUCFiles, removedINodes, true);
+    if (deferredINodes != null &&
+        removedINodes.size() > FSNamesystem.INODE_DELETION_INCREMENT &&
+        fsn.tryCpLock()) {
+      // The inodes are already unlinked from the tree, so only the inodeMap
+      // still references them. Let the caller drain them incrementally,
+      // holding the checkpoint lock until then so that no image is saved
+      // with them. When a checkpoint holds the lock, they are removed now.
+      fsn.removeLeasesAndINodes(removedUCFiles, null, true);
+      deferredINodes.addAll(removedINodes);
+      removedINodes.clear();
+    } else {
+      fsn.removeLeasesAndINodes(removedUCFiles, removedINodes, true);
+    }
 
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug(
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.DirectoryListingStartAfterNotFoundException;
@@ -45,12 +46,27 @@
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static org.apache.hadoop.util.Time.now;
 
 class FSDirStatAndListingOp {
+  /**
+   * The number of subtrees a content summary is split into per thread, so
+   * that the threads stay busy when the subtrees have different sizes.
+   */
+  private static final int SUBTREES_PER_CONTENT_SUMMARY_THREAD = 8;
+
   static DirectoryListing getListingInt(FSDirectory fsd, final String srcArg,
       byte[] startAfter, boolean needLocation) throws IOException {
     final FSPermissionChecker pc = fsd.getPermissionChecker();
@@ -530,8 +546,12 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
             new ContentSummaryComputationContext(fsd, fsd.getFSNamesystem(),
                 fsd.getContentCountLimit(), fsd.getContentSleepMicroSec(),
                 fsd.getPermissionChecker());
-        ContentSummary cs = targetNode.computeAndConvertContentSummary(
-            iip.getPathSnapshotId(), cscc);
+        final int snapshotId = iip.getPathSnapshotId();
+        if (!computeContentSummaryInParallel(fsd, targetNode, snapshotId,
+            cscc)) {
+          targetNode.computeContentSummary(snapshotId, cscc);
+        }
+        ContentSummary cs = targetNode.convertContentSummary(cscc);
         fsd.addYieldCount(cscc.getYieldCount());
         return cs;
       }
@@ -540,6 +560,115 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
     }
   }
 
+  /**
+   * Compute the content summary of a directory with the threads of
+   * {@link FSDirectory#getContentSummaryExecutor()}. The directory and its
+   * descendants are expanded breadth first, under the locks, until there are
+   * enough subtrees for the threads or a locking period worth of children has
+   * been visited. The locks are then released while the threads count the
+   * subtrees, each of them taking the locks and yielding them on its own.
+   *
+   * @return false if the content summary cannot be computed in parallel, in
+   *         which case nothing was counted.
+   */
+  private static boolean computeContentSummaryInParallel(FSDirectory fsd,
+      INode targetNode, final int snapshotId,
+      ContentSummaryComputationContext summary) throws IOException {
+    final ExecutorService executor = fsd.getContentSummaryExecutor();
+    if (executor == null || !isExpandable(targetNode)
+        || !summary.canRelinquishLocks()) {
+      return false;
+    }
+    final int maxSubtrees =
+        fsd.getContentSummaryThreads() * SUBTREES_PER_CONTENT_SUMMARY_THREAD;
+    final List<INode> subtrees = new ArrayList<>();
+    final Deque<INodeDirectory> toExpand = new ArrayDeque<>();
+    toExpand.add(targetNode.asDirectory());
+    long visited = 0;
+    while (!toExpand.isEmpty()
+        && subtrees.size() + toExpand.size() < maxSubtrees) {
+      final INodeDirectory dir = toExpand.peek();
+      final ReadOnlyList<INode> children = dir.getChildrenList(snapshotId);
+      if (dir != targetNode
+          && visited + children.size() > fsd.getContentCountLimit()) {
+        break;
+      }
+      toExpand.remove();
+      visited += children.size();
+      // The storagespace of the directories with quota is not checked
+      // against the computed one, as it is when computing sequentially.
+      dir.computeContentSummaryWithoutChildren(snapshotId, summary);
+      for (int i = 0; i < children.size(); i++) {
+        final INode child = children.get(i);
+        if (isExpandable(child)) {
+          toExpand.add(child.asDirectory());
+        } else if (child.isDirectory()) {
+          subtrees.add(child);
+        } else {
+          child.computeContentSummary(snapshotId, summary);
+        }
+      }
+    }
+    subtrees.addAll(toExpand);
+    if (subtrees.size() < 2) {
+      for (INode subtree : subtrees) {
+        subtree.computeContentSummary(snapshotId, summary);
+      }
+      return true;
+    }
+
+    final FSNamesystem fsn = fsd.getFSNamesystem();
+    final List<Future<ContentSummaryComputationContext>> futures =
+        new ArrayList<>(subtrees.size());
+    summary.releaseLocks();
+    try {
+      for (final INode subtree : subtrees) {
+        final ContentSummaryComputationContext subtreeSummary =
+            summary.newSubtreeContext();
+        futures.add(executor.submit(
+            new Callable<ContentSummaryComputationContext>() {
+              @Override
+              public ContentSummaryComputationContext call()
+                  throws AccessControlException {
+                fsn.readLock();
+                fsd.readLock();
+                try {
+                  return subtree.computeContentSummary(snapshotId,
+                      subtreeSummary);
+                } finally {
+                  fsd.readUnlock();
+                  fsn.readUnlock("contentSummary");
+                }
+              }
+            }));
+      }
+      for (Future<ContentSummaryComputationContext> future : futures) {
+        summary.addSubtree(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while computing the content summary");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    } finally {
+      for (Future<ContentSummaryComputationContext> future : futures) {
+        future.cancel(true);
+      }
+      summary.reacquireLocks();
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the content summary of the directory can be computed from
+   *         the ones of its children, computed separately.
+   */
+  private static boolean isExpandable(INode inode) {
+    return inode.isDirectory() && !inode.isReference();
+  }
+
   static QuotaUsage getQuotaUsage(
       FSDirectory fsd, String src) throws IOException {
     FSPermissionChecker pc = fsd.getPermissionChecker();
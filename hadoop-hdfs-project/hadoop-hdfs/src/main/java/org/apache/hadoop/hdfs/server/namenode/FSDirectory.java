@@ -22,6 +22,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -78,6 +79,8 @@
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -156,6 +159,9 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final int contentSummaryThreads;
+  // computes content summaries in parallel, null if disabled
+  private final ExecutorService contentSummaryExecutor;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
@@ -268,7 +274,9 @@ public enum DirOp {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_ALLOCATION_PERCENT_DEFAULT));
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -323,6 +331,13 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryThreads = conf.getInt(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_THREADS_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_THREADS_DEFAULT);
+    this.contentSummaryExecutor = contentSummaryThreads > 0 ?
+        Executors.newFixedThreadPool(contentSummaryThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ContentSummary-%d").build()) : null;
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -578,6 +593,15 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  int getContentSummaryThreads() {
+    return contentSummaryThreads;
+  }
+
+  /** @return the executor of parallel content summaries, or null. */
+  ExecutorService getContentSummaryExecutor() {
+    return contentSummaryExecutor;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -1526,6 +1550,9 @@ void cacheName(INode inode) {
   void shutdown() {
     nameCache.reset();
     inodeMap.clear();
+    if (contentSummaryExecutor != null) {
+      contentSummaryExecutor.shutdownNow();
+    }
   }
   
   /**
@@ -1656,7 +1683,7 @@ private static byte[][] resolveDotInodesPath(
       return new byte[][]{INodeDirectory.ROOT_NAME};
     }
     INode inode = fsd.getInode(id);
-    if (inode == null) {
+    if (inode == null || isUnlinked(inode)) {
       throw new FileNotFoundException(
           "File for given inode path does not exist: " +
               DFSUtil.byteArray2PathString(pathComponents));
@@ -1676,6 +1703,21 @@ private static byte[][] resolveDotInodesPath(
         inode.getPathComponents(), pathComponents, 4);
   }
 
+  /**
+   * @return true if the inode has been unlinked from the namespace by a
+   *         delete, but is still in the inodeMap because its removal is done
+   *         incrementally, see {@link FSNamesystem#removeINodes}.
+   */
+  private static boolean isUnlinked(INode inode) {
+    // the delete clears the parent of the files and directories it unlinks,
+    // so their ancestors do not lead to the root anymore
+    INode top = inode;
+    while (top.getParent() != null) {
+      top = top.getParent();
+    }
+    return !top.isRoot();
+  }
+
   private static byte[][] constructRemainingPath(byte[][] components,
       byte[][] extraComponents, int startAt) {
     int remainder = extraComponents.length - startAt;
@@ -175,8 +175,23 @@ private enum State {
   // is a sync currently running?
   private volatile boolean isSyncRunning;
 
+  // the number of syncs started by startSync() and not finished yet.
+  private int numPendingSyncs = 0;
+  // the last transactionId synced by a pending sync.
+  private long pendingSynctxid = 0;
+
   // is an automatic sync scheduled?
   private volatile boolean isAutoSyncScheduled = false;
+
+  // whether an rpc handler which would wait in logSync for a sync run by
+  // another thread postpones the response of its call instead.
+  private final boolean postponeSyncResponses;
+  // the rpc calls whose responses wait for their edits to be synced.
+  private final List<PostponedCall> postponedCalls =
+      new ArrayList<PostponedCall>();
+  // whether responses may be postponed during the running sync.  they are
+  // not during the follow-up sync for the calls postponed earlier.
+  private boolean postponeDuringSync = false;
   
   // these are statistics counters.
   private long numTransactions;        // number of transactions
@@ -244,7 +259,10 @@ static FSEditLog newInstance(Configuration conf, NNStorage storage,
     this.storage = storage;
     metrics = NameNode.getNameNodeMetrics();
     lastPrintTime = monotonicNow();
-     
+    postponeSyncResponses = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_DEFAULT);
+
     // If this list is empty, an error will be thrown on first use
     // of the editlog, as no journals will exist
     this.editsDirs = Lists.newArrayList(editsDirs);
@@ -638,16 +656,70 @@ void logSyncAll() {
    * Because this step is unsynchronized, actions that need to avoid
    * concurrency with sync() should be synchronized and also call
    * waitForSyncToFinish() before assuming they are running alone.
+   *
+   * If {@link DFSConfigKeys#DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_KEY}
+   * is set, an rpc handler which would wait for a sync run by another thread
+   * postpones the response of its call and returns right away instead. The
+   * syncing thread sends the response once the edits are synced, and syncs
+   * once more for the postponed calls its sync did not cover. Responses are
+   * not postponed during that second sync, so the handlers which would wait
+   * for it sync by themselves, and no handler syncs more than twice.
    */
   public void logSync() {
     // Fetch the transactionId of this thread.
-    logSync(myTransactionId.get().txid);
+    final long mytxid = myTransactionId.get().txid;
+    if (postponeSyncResponses && postponeResponse(mytxid)) {
+      return;
+    }
+    logSync(mytxid);
+  }
+
+  /**
+   * Postpone the response of the current rpc call until the edits up to
+   * mytxid are synced, if another thread is syncing.
+   * @return whether the response was postponed
+   */
+  private synchronized boolean postponeResponse(long mytxid) {
+    final Server.Call call = Server.getCurCall().get();
+    // an automatic sync must be done by the thread which scheduled it, so
+    // that the edits logged meanwhile do not wait for it forever.
+    if (call == null || mytxid <= synctxid || isAutoSyncScheduled
+        || !isSyncRunning || !postponeDuringSync) {
+      return false;
+    }
+    call.postponeResponse();
+    postponedCalls.add(new PostponedCall(call, mytxid));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Postponed response of " + call + " until txid " + mytxid
+          + " is synced");
+    }
+    return true;
   }
 
   protected void logSync(long mytxid) {
+    final long postponedTxId = syncOnce(mytxid, true);
+    if (postponedTxId > 0) {
+      // the calls postponed during the sync above.
+      syncOnce(postponedTxId, false);
+    }
+  }
+
+  /**
+   * Sync the edits up to mytxid, unless they have been synced already.
+   * If the sync fails, the responses of all the postponed calls are
+   * aborted, since their edits may not be durable.
+   * @param allowPostpone whether other handlers may postpone their
+   * responses while this sync is running
+   * @return the highest txid of the postponed calls still waiting for a
+   * sync, which this thread must do next, or 0 if there is none
+   */
+  private long syncOnce(long mytxid, boolean allowPostpone) {
     long syncStart = 0;
     boolean sync = false;
+    boolean synced = false;
     long editsBatchedInSync = 0;
+    List<PostponedCall> syncedCalls = null;
+    long nextSyncTxId = 0;
     try {
       EditLogOutputStream logStream = null;
       synchronized (this) {
@@ -655,7 +727,8 @@ protected void logSync(long mytxid) {
           printStatistics(false);
 
           // if somebody is already syncing, then wait
-          while (mytxid > synctxid && isSyncRunning) {
+          while (mytxid > synctxid
+              && (isSyncRunning || numPendingSyncs > 0)) {
             try {
               wait(1000);
             } catch (InterruptedException ie) {
@@ -666,7 +739,7 @@ protected void logSync(long mytxid) {
           // If this transaction was already flushed, then nothing to do
           //
           if (mytxid <= synctxid) {
-            return;
+            return 0;
           }
 
           // now, this thread will do the sync.  track if other edits were
@@ -675,6 +748,7 @@ protected void logSync(long mytxid) {
           editsBatchedInSync = txid - synctxid - 1;
           syncStart = txid;
           isSyncRunning = true;
+          postponeDuringSync = allowPostpone;
           sync = true;
 
           // swap buffers
@@ -710,17 +784,9 @@ protected void logSync(long mytxid) {
           logStream.flush();
         }
       } catch (IOException ex) {
-        synchronized (this) {
-          final String msg =
-              "Could not sync enough journals to persistent storage. "
-              + "Unsynced transactions: " + (txid - synctxid);
-          LOG.error(msg, new Exception());
-          synchronized(journalSetLock) {
-            IOUtils.cleanupWithLogger(LOG, journalSet);
-          }
-          terminate(1, msg);
-        }
+        terminateOnSyncFailure();
       }
+      synced = true;
       long elapsed = monotonicNow() - start;
   
       if (metrics != null) { // Metrics non-null only when used inside name node
@@ -733,21 +799,191 @@ protected void logSync(long mytxid) {
       // Prevent RuntimeException from blocking other log edit sync 
       synchronized (this) {
         if (sync) {
-          synctxid = syncStart;
-          for (JournalManager jm : journalSet.getJournalManagers()) {
-            /**
-             * {@link FileJournalManager#lastReadableTxId} is only meaningful
-             * for file-based journals. Therefore the interface is not added to
-             * other types of {@link JournalManager}.
-             */
-            if (jm instanceof FileJournalManager) {
-              ((FileJournalManager)jm).setLastReadableTxId(syncStart);
+          setSyncTxId(syncStart);
+          isSyncRunning = false;
+          if (!postponedCalls.isEmpty()) {
+            syncedCalls = new ArrayList<PostponedCall>();
+            for (Iterator<PostponedCall> it = postponedCalls.iterator();
+                 it.hasNext();) {
+              PostponedCall postponed = it.next();
+              if (!synced || postponed.txid <= synctxid) {
+                syncedCalls.add(postponed);
+                it.remove();
+              } else {
+                nextSyncTxId = Math.max(nextSyncTxId, postponed.txid);
+              }
             }
           }
-          isSyncRunning = false;
         }
         this.notifyAll();
      }
+      if (syncedCalls != null) {
+        for (PostponedCall postponed : syncedCalls) {
+          try {
+            if (synced) {
+              postponed.call.sendResponse();
+            } else {
+              postponed.call.abortResponse(new IOException(
+                  "Failed to sync edits up to txid " + syncStart));
+            }
+          } catch (Exception e) {} // don't care if not sent.
+        }
+      }
+    }
+    return nextSyncTxId;
+  }
+
+  /** An rpc call whose response waits for a sync. */
+  private static class PostponedCall {
+    private final Server.Call call;
+    private final long txid;
+
+    PostponedCall(Server.Call call, long txid) {
+      this.call = call;
+      this.txid = txid;
+    }
+  }
+
+  /**
+   * A sync started by {@link #startSync()} whose edits may not be durable
+   * yet.
+   */
+  static class PendingSync {
+    private final long txid;
+    private final long editsBatchedInSync;
+    private final EditLogOutputStream.PendingFlush flush;
+    private final long startTime;
+
+    PendingSync(long txid, long editsBatchedInSync,
+        EditLogOutputStream.PendingFlush flush, long startTime) {
+      this.txid = txid;
+      this.editsBatchedInSync = editsBatchedInSync;
+      this.flush = flush;
+      this.startTime = startTime;
+    }
+  }
+
+  /**
+   * Start to sync all the edits written so far, without waiting for them to
+   * be durable. Unlike {@link #logSync(long)}, a sync can be started while
+   * earlier ones are still pending, so that the next batch of edits is sent
+   * to the journals while the previous batch is being acknowledged. Each
+   * sync must be completed by {@link #finishSync(PendingSync)}, in the order
+   * the syncs were started.
+   *
+   * @return the pending sync, or null if there is nothing to sync.
+   */
+  PendingSync startSync() {
+    final long syncTxId;
+    final long editsBatchedInSync;
+    final EditLogOutputStream logStream;
+    synchronized (this) {
+      try {
+        printStatistics(false);
+
+        while (isSyncRunning) {
+          try {
+            wait(1000);
+          } catch (InterruptedException ie) {
+          }
+        }
+        final long lastSyncTxId = Math.max(synctxid, pendingSynctxid);
+        if (txid <= lastSyncTxId) {
+          return null;
+        }
+        syncTxId = txid;
+        editsBatchedInSync = txid - lastSyncTxId - 1;
+
+        // swap buffers
+        try {
+          if (journalSet.isEmpty()) {
+            throw new IOException("No journals available to flush");
+          }
+          editLogStream.setReadyToFlush();
+        } catch (IOException e) {
+          final String msg =
+              "Could not sync enough journals to persistent storage " +
+              "due to " + e.getMessage() + ". " +
+              "Unsynced transactions: " + (txid - synctxid);
+          LOG.error(msg, new Exception());
+          synchronized(journalSetLock) {
+            IOUtils.cleanupWithLogger(LOG, journalSet);
+          }
+          terminate(1, msg);
+        }
+        pendingSynctxid = syncTxId;
+        numPendingSyncs++;
+      } finally {
+        doneWithAutoSyncScheduling();
+      }
+      logStream = editLogStream;
+    }
+
+    long start = monotonicNow();
+    EditLogOutputStream.PendingFlush flush = EditLogOutputStream.DURABLE;
+    try {
+      if (logStream != null) {
+        flush = logStream.startFlush();
+      }
+    } catch (IOException ex) {
+      synchronized (this) {
+        numPendingSyncs--;
+        this.notifyAll();
+      }
+      terminateOnSyncFailure();
+    }
+    return new PendingSync(syncTxId, editsBatchedInSync, flush, start);
+  }
+
+  /**
+   * Wait for a sync started by {@link #startSync()} to be durable.
+   */
+  void finishSync(PendingSync sync) {
+    try {
+      try {
+        sync.flush.waitForDurable();
+      } catch (IOException ex) {
+        terminateOnSyncFailure();
+      }
+      long elapsed = monotonicNow() - sync.startTime;
+
+      if (metrics != null) { // Metrics non-null only when used inside name node
+        metrics.addSync(elapsed);
+        metrics.incrTransactionsBatchedInSync(sync.editsBatchedInSync);
+        numTransactionsBatchedInSync.addAndGet(sync.editsBatchedInSync);
+      }
+    } finally {
+      synchronized (this) {
+        setSyncTxId(sync.txid);
+        numPendingSyncs--;
+        this.notifyAll();
+      }
+    }
+  }
+
+  private synchronized void terminateOnSyncFailure() {
+    final String msg =
+        "Could not sync enough journals to persistent storage. "
+        + "Unsynced transactions: " + (txid - synctxid);
+    LOG.error(msg, new Exception());
+    synchronized(journalSetLock) {
+      IOUtils.cleanupWithLogger(LOG, journalSet);
+    }
+    terminate(1, msg);
+  }
+
+  private void setSyncTxId(long syncTxId) {
+    assert Thread.holdsLock(this);
+    synctxid = syncTxId;
+    for (JournalManager jm : journalSet.getJournalManagers()) {
+      /**
+       * {@link FileJournalManager#lastReadableTxId} is only meaningful
+       * for file-based journals. Therefore the interface is not added to
+       * other types of {@link JournalManager}.
+       */
+      if (jm instanceof FileJournalManager) {
+        ((FileJournalManager)jm).setLastReadableTxId(syncTxId);
+      }
     }
   }
 
@@ -1486,7 +1722,7 @@ public synchronized void purgeLogsOlderThan(final long minTxIdToKeep) {
    * with file operations should wait for any running sync to finish.
    */
   synchronized void waitForSyncToFinish() {
-    while (isSyncRunning) {
+    while (isSyncRunning || numPendingSyncs > 0) {
       try {
         wait(1000);
       } catch (InterruptedException ie) {}
@@ -20,17 +20,24 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.util.ExitUtil;
+import org.apache.hadoop.util.Time;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
@@ -40,6 +47,7 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // use separate mutex to avoid possible deadlock when stopping the thread.
   private final Object syncThreadLock = new Object();
   private Thread syncThread;
+  private Thread ackThread;
   private static ThreadLocal<Edit> threadEdit = new ThreadLocal<Edit>();
 
   // requires concurrent access from caller threads and syncing thread.
@@ -51,10 +59,36 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // of the edit log buffer - ie. a sync will eventually be forced.
   private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
 
+  // when pipelining, the syncs started by the syncing thread and not yet
+  // acknowledged, in the order they were started.  the ack thread waits for
+  // each of them to be durable and notifies its edits.
+  private final int pipelineDepth;
+  private final Semaphore pipelineSlots;
+  private final BlockingQueue<SyncBatch> ackWaitQ =
+      new LinkedBlockingQueue<SyncBatch>();
+  // queued after the last sync to stop the ack thread.  it is not
+  // interrupted, since an interrupt while waiting for the journals to ack
+  // a sync would fail the sync and terminate the NN.
+  private static final SyncBatch STOP_ACKING =
+      new SyncBatch(null, Collections.<Edit>emptyList(), null);
+  private final NameNodeMetrics metrics;
+
   FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
     super(conf, storage, editsDirs);
     // op instances cannot be shared due to queuing for background thread.
     cache.disableCache();
+    pipelineDepth = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_DEFAULT);
+    Preconditions.checkArgument(pipelineDepth > 0, "%s must be positive",
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_KEY);
+    pipelineSlots = new Semaphore(pipelineDepth);
+    metrics = NameNode.getNameNodeMetrics();
+    LOG.info("Edit log sync pipeline depth: " + pipelineDepth);
+  }
+
+  private boolean isPipelined() {
+    return pipelineDepth > 1;
   }
 
   private boolean isSyncThreadAlive() {
@@ -68,6 +102,11 @@ private void startSyncThread() {
       if (!isSyncThreadAlive()) {
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
+        if (isPipelined()) {
+          ackThread = new Thread(new SyncAcker(),
+              this.getClass().getSimpleName() + "Ack");
+          ackThread.start();
+        }
       }
     }
   }
@@ -84,6 +123,25 @@ private void stopSyncThread() {
           syncThread = null;
         }
       }
+      if (ackThread != null) {
+        try {
+          // the sync thread is gone, so no sync follows the pill.
+          ackWaitQ.add(STOP_ACKING);
+          ackThread.join();
+        } catch (InterruptedException e) {
+          // we're quitting anyway.
+        } finally {
+          ackThread = null;
+        }
+      }
+      // notify the edits of the syncs the ack thread did not get to,
+      // if it died.
+      SyncBatch batch;
+      while ((batch = ackWaitQ.poll()) != null) {
+        if (batch != STOP_ACKING) {
+          ackSync(batch);
+        }
+      }
     }
   }
 
@@ -180,7 +238,9 @@ public void run() {
           // sync when editq runs dry, but have edits pending a sync.
           doSync = !syncWaitQ.isEmpty();
         }
-        if (doSync) {
+        if (doSync && isPipelined()) {
+          startPipelinedSync();
+        } else if (doSync) {
           // normally edit log exceptions cause the NN to terminate, but tests
           // relying on ExitUtil.terminate need to see the exception.
           RuntimeException syncEx = null;
@@ -201,6 +261,74 @@ public void run() {
     }
   }
 
+  /**
+   * Start to sync the edits waiting for a sync, and hand them to the ack
+   * thread, which notifies them once they are durable.  Blocks while the
+   * pipeline is full.
+   */
+  private void startPipelinedSync() throws InterruptedException {
+    long start = Time.monotonicNow();
+    pipelineSlots.acquire();
+    if (metrics != null) {
+      metrics.addSyncPipelineWait(Time.monotonicNow() - start);
+    }
+    PendingSync sync = null;
+    RuntimeException syncEx = null;
+    try {
+      sync = startSync();
+    } catch (RuntimeException ex) {
+      syncEx = ex;
+    }
+    ackWaitQ.add(new SyncBatch(sync, new ArrayList<Edit>(syncWaitQ), syncEx));
+    syncWaitQ.clear();
+  }
+
+  // waits for the pipelined syncs to be durable, in order.
+  private class SyncAcker implements Runnable {
+    @Override
+    public void run() {
+      try {
+        SyncBatch batch;
+        while ((batch = ackWaitQ.take()) != STOP_ACKING) {
+          ackSync(batch);
+        }
+      } catch (InterruptedException ie) {
+        LOG.info(Thread.currentThread().getName() +
+            " was interrupted, exiting");
+      } catch (Throwable t) {
+        terminate(t);
+      }
+    }
+  }
+
+  private void ackSync(SyncBatch batch) {
+    RuntimeException syncEx = batch.syncEx;
+    if (syncEx == null && batch.sync != null) {
+      try {
+        finishSync(batch.sync);
+      } catch (RuntimeException ex) {
+        syncEx = ex;
+      }
+    }
+    for (Edit edit : batch.edits) {
+      edit.logSyncNotify(syncEx);
+    }
+    pipelineSlots.release();
+  }
+
+  // the edits waiting for a pipelined sync.
+  private static class SyncBatch {
+    private final PendingSync sync;
+    private final List<Edit> edits;
+    private final RuntimeException syncEx;
+
+    SyncBatch(PendingSync sync, List<Edit> edits, RuntimeException syncEx) {
+      this.sync = sync;
+      this.edits = edits;
+      this.syncEx = syncEx;
+    }
+  }
+
   private void terminate(Throwable t) {
     String message = "Exception while edit logging: "+t.getMessage();
     LOG.fatal(message, t);
@@ -92,7 +92,7 @@ public class FSImage implements Closeable {
    * The last transaction ID that was either loaded from an image
    * or loaded by loading edits files.
    */
-  protected long lastAppliedTxId = 0;
+  protected volatile long lastAppliedTxId = 0;
 
   final private Configuration conf;
 
@@ -952,7 +952,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver =
+        new FSImageFormatProtobuf.Saver(context, conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
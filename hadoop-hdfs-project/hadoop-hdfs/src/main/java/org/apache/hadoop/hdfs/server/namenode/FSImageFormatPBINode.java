@@ -18,13 +18,23 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -67,7 +77,9 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.io.IOUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
@@ -236,6 +248,45 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       this.parent = parent;
     }
 
+    /**
+     * Load the INODE_DIR sub-sections on the given executor. Each DirEntry
+     * updates a distinct parent directory, so only the shared name cache and
+     * blocks map updates in {@link #addToParent} need to be serialized.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, final String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the INodeDirectory section in parallel with "
+          + sections.size() + " sub-sections");
+      final CountDownLatch latch = new CountDownLatch(sections.size());
+      final List<IOException> exceptions = new CopyOnWriteArrayList<>();
+      for (final FileSummary.Section s : sections) {
+        service.submit(new Runnable() {
+          @Override
+          public void run() {
+            InputStream ins = null;
+            try {
+              ins = parent.getInputStreamForSection(s, compressionCodec);
+              loadINodeDirectorySection(ins);
+            } catch (Exception e) {
+              LOG.error("An exception occurred loading INodeDirectories in "
+                  + "parallel", e);
+              exceptions.add(e instanceof IOException ? (IOException) e
+                  : new IOException(e));
+            } finally {
+              latch.countDown();
+              IOUtils.cleanupWithLogger(null, ins);
+            }
+          }
+        });
+      }
+      awaitParallelLoad(latch);
+      if (!exceptions.isEmpty()) {
+        throw exceptions.get(0);
+      }
+      LOG.info("Completed loading all INodeDirectory sub-sections");
+    }
+
     void loadINodeDirectorySection(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
@@ -258,13 +309,122 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
       }
     }
 
-    void loadINodeSection(InputStream in, StartupProgress prog,
+    /**
+     * Load the INODE sub-sections on the given executor. The first
+     * sub-section starts with the {@link INodeSection} header, which is read
+     * before any sub-section is submitted.
+     */
+    void loadINodeSectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, final String compressionCodec,
+        StartupProgress prog, Step currentStep) throws IOException {
+      LOG.info("Loading the INode section in parallel with "
+          + sections.size() + " sub-sections");
+      final Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE,
+          currentStep);
+      final CountDownLatch latch = new CountDownLatch(sections.size());
+      final AtomicLong totalLoaded = new AtomicLong(0);
+      final List<IOException> exceptions = new CopyOnWriteArrayList<>();
+      long expectedInodes = 0;
+      for (int i = 0; i < sections.size(); i++) {
+        final InputStream ins;
+        try {
+          ins = parent.getInputStreamForSection(sections.get(i),
+              compressionCodec);
+          if (i == 0) {
+            expectedInodes = loadINodeSectionHeader(ins, prog, currentStep);
+          }
+        } catch (IOException e) {
+          // Let the tasks already submitted finish before failing.
+          for (int j = i; j < sections.size(); j++) {
+            latch.countDown();
+          }
+          awaitParallelLoad(latch);
+          throw e;
+        }
+        service.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              totalLoaded.addAndGet(loadINodesInSection(ins, counter));
+            } catch (Exception e) {
+              LOG.error("An exception occurred loading INodes in parallel",
+                  e);
+              exceptions.add(e instanceof IOException ? (IOException) e
+                  : new IOException(e));
+            } finally {
+              latch.countDown();
+              IOUtils.cleanupWithLogger(null, ins);
+            }
+          }
+        });
+      }
+      awaitParallelLoad(latch);
+      if (!exceptions.isEmpty()) {
+        throw exceptions.get(0);
+      }
+      if (totalLoaded.get() != expectedInodes) {
+        throw new IOException("Expected to load " + expectedInodes
+            + " inodes in parallel, but loaded " + totalLoaded.get()
+            + ". The image may be corrupt.");
+      }
+      LOG.info("Completed loading all INode sub-sections. Loaded "
+          + totalLoaded.get() + " inodes.");
+    }
+
+    private static void awaitParallelLoad(CountDownLatch latch)
+        throws IOException {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for the parallel image "
+            + "load to complete", e);
+      }
+    }
+
+    private long loadINodeSectionHeader(InputStream in, StartupProgress prog,
         Step currentStep) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
       long numInodes = s.getNumInodes();
       LOG.info("Loading " + numInodes + " INodes.");
       prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
+      return numInodes;
+    }
+
+    /**
+     * Load inodes until the end of the given stream, which must be limited
+     * to a single INODE sub-section.
+     * @return the number of inodes loaded
+     */
+    private long loadINodesInSection(InputStream in, Counter counter)
+        throws IOException {
+      long loaded = 0;
+      while (true) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        // note that in is a LimitedInputStream
+        if (p == null) {
+          break;
+        }
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          synchronized (this) {
+            loadRootINode(p);
+          }
+        } else {
+          INode n = loadINode(p);
+          synchronized (this) {
+            dir.addToInodeMap(n);
+          }
+        }
+        loaded++;
+        counter.increment();
+      }
+      return loaded;
+    }
+
+    void loadINodeSection(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
+      long numInodes = loadINodeSectionHeader(in, prog, currentStep);
       Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
       for (int i = 0; i < numInodes; ++i) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
@@ -304,10 +464,14 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
-      dir.cacheName(child);
+      // The name cache and the blocks map are shared by all the threads
+      // loading INODE_DIR sub-sections.
+      synchronized (this) {
+        dir.cacheName(child);
 
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        if (child.isFile()) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -553,6 +717,10 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
       return b;
     }
 
+    /** Number of inodes serialized by each task of a parallel save. */
+    @VisibleForTesting
+    static int INODES_PER_SAVE_TASK = 4096;
+
     private final FSNamesystem fsn;
     private final FileSummary.Builder summary;
     private final SaveNamespaceContext context;
@@ -598,9 +766,14 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
+        if (i % parent.getInodesPerSubSection() == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+        }
       }
-      parent.commitSection(summary,
-          FSImageFormatProtobuf.SectionName.INODE_DIR);
+      parent.commitSectionAndSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
     }
 
     void serializeINodeSection(OutputStream out) throws IOException {
@@ -611,17 +784,99 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
+      ExecutorService service = parent.getParallelSaveExecutor();
+      if (service != null) {
+        serializeINodesInParallel(out, iter, service);
+      } else {
+        int i = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (i % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_SUB);
+          }
         }
       }
-      parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
+      parent.commitSectionAndSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
+    }
+
+    /**
+     * Serialize the inodes into protobuf on the given executor, a chunk of
+     * at most {@link #INODES_PER_SAVE_TASK} inodes per task, while this
+     * thread walks
+     * the inodeMap and writes the serialized chunks out in iteration order.
+     * The number of chunks in flight is bounded, so at most a few chunks are
+     * buffered in memory at any time.
+     */
+    private void serializeINodesInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter, ExecutorService service)
+        throws IOException {
+      final int maxInFlight = Math.max(2, parent.getParallelSaveThreads() * 2);
+      final int chunkSize = (int) Math.min(INODES_PER_SAVE_TASK,
+          parent.getInodesPerSubSection());
+      final Deque<Future<ByteArrayOutputStream>> inFlight =
+          new ArrayDeque<>(maxInFlight);
+      // the number of inodes in each chunk in flight; the last one is short
+      final Deque<Integer> inFlightSizes = new ArrayDeque<>(maxInFlight);
+      long written = 0;
+      long nextSubSection = parent.getInodesPerSubSection();
+      while (iter.hasNext() || !inFlight.isEmpty()) {
+        while (iter.hasNext() && inFlight.size() < maxInFlight) {
+          final List<INodeWithAdditionalFields> chunk =
+              new ArrayList<>(chunkSize);
+          while (iter.hasNext() && chunk.size() < chunkSize) {
+            chunk.add(iter.next());
+          }
+          inFlight.add(service.submit(
+              new Callable<ByteArrayOutputStream>() {
+                @Override
+                public ByteArrayOutputStream call() throws IOException {
+                  ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                  for (INodeWithAdditionalFields n : chunk) {
+                    save(bytes, n);
+                  }
+                  return bytes;
+                }
+              }));
+          inFlightSizes.add(chunk.size());
+        }
+        Future<ByteArrayOutputStream> next = inFlight.poll();
+        try {
+          ByteArrayOutputStream bytes = next.get();
+          bytes.writeTo(out);
+        } catch (InterruptedException e) {
+          cancelAll(inFlight);
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while saving inodes", e);
+        } catch (ExecutionException e) {
+          cancelAll(inFlight);
+          Throwable cause = e.getCause();
+          throw cause instanceof IOException ? (IOException) cause
+              : new IOException(cause);
+        }
+        written += inFlightSizes.poll();
+        context.checkCancelled();
+        if (written >= nextSubSection) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+          nextSubSection += parent.getInodesPerSubSection();
+        }
+      }
+    }
+
+    private static void cancelAll(Deque<? extends Future<?>> futures) {
+      for (Future<?> f : futures) {
+        f.cancel(true);
+      }
+      futures.clear();
     }
 
     void serializeFilesUCSection(OutputStream out) throws IOException {
@@ -36,10 +36,13 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicyInfo;
 import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
@@ -48,6 +51,7 @@
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ErasureCodingPolicyProto;
@@ -74,6 +78,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -106,7 +111,9 @@ static <T> DeduplicationMap<T> newMap() {
         return new DeduplicationMap<T>();
       }
 
-      int getId(E value) {
+      // Synchronized, as inodes may be serialized by several threads when
+      // the image is saved in parallel.
+      synchronized int getId(E value) {
         if (value == null) {
           return 0;
         }
@@ -119,11 +126,11 @@ int getId(E value) {
         return v;
       }
 
-      int size() {
+      synchronized int size() {
         return map.size();
       }
 
-      Set<Entry<E, Integer>> entrySet() {
+      synchronized Set<Entry<E, Integer>> entrySet() {
         return map.entrySet();
       }
     }
@@ -156,6 +163,8 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file being loaded, re-opened for each parallel sub-section */
+    private File filename;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -181,6 +190,7 @@ public LoaderContext getLoaderContext() {
 
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
+      filename = file;
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
@@ -216,6 +226,11 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
 
       ArrayList<FileSummary.Section> sections = Lists.newArrayList(summary
           .getSectionsList());
+      // Sub-sections only index ranges of their parent section; take them
+      // out so that the parent sections are still loaded in order below.
+      ArrayList<FileSummary.Section> subSections =
+          getAndRemoveSubSections(sections);
+      boolean loadInParallel = enableParallelSaveAndLoad(conf);
       Collections.sort(sections, new Comparator<FileSummary.Section>() {
         @Override
         public int compare(FileSummary.Section s1, FileSummary.Section s2) {
@@ -231,6 +246,26 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         }
       });
 
+      ExecutorService executorService = null;
+      if (loadInParallel && !subSections.isEmpty()) {
+        executorService = getParallelExecutorService();
+      }
+      try {
+        loadSections(sections, subSections, executorService, channel, fin,
+            summary.getCodec(), inodeLoader, snapshotLoader);
+      } finally {
+        if (executorService != null) {
+          executorService.shutdown();
+        }
+      }
+    }
+
+    private void loadSections(ArrayList<FileSummary.Section> sections,
+        ArrayList<FileSummary.Section> subSections,
+        ExecutorService executorService, FileChannel channel,
+        FileInputStream fin, String codec,
+        FSImageFormatPBINode.Loader inodeLoader,
+        FSImageFormatPBSnapshot.Loader snapshotLoader) throws IOException {
       StartupProgress prog = NameNode.getStartupProgress();
       /**
        * beginStep() and the endStep() calls do not match the boundary of the
@@ -244,10 +279,10 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         InputStream in = new BufferedInputStream(new LimitInputStream(fin,
             s.getLength()));
 
-        in = FSImageUtil.wrapInputStreamForCompression(conf,
-            summary.getCodec(), in);
+        in = FSImageUtil.wrapInputStreamForCompression(conf, codec, in);
 
         String n = s.getName();
+        ArrayList<FileSummary.Section> stageSubSections;
 
         switch (SectionName.fromString(n)) {
         case NS_INFO:
@@ -259,14 +294,28 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in, prog, currentStep);
+          stageSubSections = getSubSectionsOfName(subSections,
+              SectionName.INODE_SUB);
+          if (executorService != null && !stageSubSections.isEmpty()) {
+            inodeLoader.loadINodeSectionInParallel(executorService,
+                stageSubSections, codec, prog, currentStep);
+          } else {
+            inodeLoader.loadINodeSection(in, prog, currentStep);
+          }
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
         case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+          stageSubSections = getSubSectionsOfName(subSections,
+              SectionName.INODE_DIR_SUB);
+          if (executorService != null && !stageSubSections.isEmpty()) {
+            inodeLoader.loadINodeDirectorySectionInParallel(executorService,
+                stageSubSections, codec);
+          } else {
+            inodeLoader.loadINodeDirectorySection(in);
+          }
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -305,6 +354,74 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       }
     }
 
+    /**
+     * Open a new stream positioned at the start of the given (sub-)section,
+     * so that several sections of the image can be read concurrently.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section,
+        String compressionCodec) throws IOException {
+      FileInputStream fin = new FileInputStream(filename);
+      try {
+        FileChannel channel = fin.getChannel();
+        channel.position(section.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf,
+            compressionCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
+    private ExecutorService getParallelExecutorService() {
+      int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      if (threads < 1) {
+        LOG.warn("Parallel is enabled and {} is set to {}. Setting to the " +
+            "default value {}", DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            threads, DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        threads = DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT;
+      }
+      LOG.info("The fsimage will be loaded in parallel using {} threads",
+          threads);
+      return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("FSImageLoader-%d").build());
+    }
+
+    /**
+     * Remove all the sub-section entries from the given list and return them.
+     */
+    private ArrayList<FileSummary.Section> getAndRemoveSubSections(
+        ArrayList<FileSummary.Section> sections) {
+      ArrayList<FileSummary.Section> subSections = new ArrayList<>();
+      Iterator<FileSummary.Section> iter = sections.iterator();
+      while (iter.hasNext()) {
+        FileSummary.Section s = iter.next();
+        SectionName n = SectionName.fromString(s.getName());
+        if (n != null && n.isSubSection()) {
+          subSections.add(s);
+          iter.remove();
+        }
+      }
+      return subSections;
+    }
+
+    /**
+     * Return the sub-sections of the given name, in the order in which they
+     * appear in the image.
+     */
+    private ArrayList<FileSummary.Section> getSubSectionsOfName(
+        ArrayList<FileSummary.Section> subSections, SectionName name) {
+      ArrayList<FileSummary.Section> result = new ArrayList<>();
+      for (FileSummary.Section s : subSections) {
+        if (name.name.equals(s.getName())) {
+          result.add(s);
+        }
+      }
+      return result;
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       BlockIdManager blockIdManager = fsn.getBlockManager().getBlockIdManager();
@@ -395,8 +512,15 @@ public static final class Saver {
 
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
+    private final Configuration conf;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
+    private long subSectionOffset = currentOffset;
     private MD5Hash savedDigest;
+    /** Whether sub-section entries are added to the file summary. */
+    private boolean writeSubSections = false;
+    private long inodesPerSubSection = Long.MAX_VALUE;
+    /** Serializes inodes in parallel when sub-sections are written. */
+    private ExecutorService parallelSaveExecutor;
 
     private FileChannel fileChannel;
     // OutputStream for the section data
@@ -405,8 +529,13 @@ public static final class Saver {
     private OutputStream underlyingOutputStream;
 
     Saver(SaveNamespaceContext context) {
+      this(context, null);
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.conf = conf;
     }
 
     public MD5Hash getSavedDigest() {
@@ -421,6 +550,57 @@ public SaverContext getSaverContext() {
       return saverContext;
     }
 
+    long getInodesPerSubSection() {
+      return inodesPerSubSection;
+    }
+
+    /**
+     * @return the executor used to serialize inodes in parallel, or null if
+     * the image is saved serially.
+     */
+    ExecutorService getParallelSaveExecutor() {
+      return parallelSaveExecutor;
+    }
+
+    int getParallelSaveThreads() {
+      return conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+    }
+
+    /**
+     * Add a sub-section entry covering everything written since the end of
+     * the previous sub-section (or the start of the enclosing section). The
+     * sub-sections of a section are independently loadable, but the
+     * enclosing section is still committed as a whole, so that a loader
+     * which ignores sub-sections can read the image serially.
+     */
+    public void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      // The output stream must be flushed before the position is read, as
+      // the flush moves it forward.
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length == 0) {
+        LOG.debug("Skipping empty sub-section for {}", name);
+        return;
+      }
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
+    }
+
+    /**
+     * Commit the last sub-section of a section and then the section itself.
+     */
+    public void commitSectionAndSubSection(FileSummary.Builder summary,
+        SectionName name, SectionName subSectionName) throws IOException {
+      commitSubSection(summary, subSectionName);
+      commitSection(summary, name);
+    }
+
     public void commitSection(FileSummary.Builder summary, SectionName name)
         throws IOException {
       long oldOffset = currentOffset;
@@ -435,6 +615,7 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -454,10 +635,44 @@ void save(File file, FSImageCompression compression) throws IOException {
         LOG.info("Image file {} of size {} bytes saved in {} seconds.", file,
             file.length(), (monotonicNow() - startTime) / 1000);
       } finally {
+        if (parallelSaveExecutor != null) {
+          parallelSaveExecutor.shutdownNow();
+          parallelSaveExecutor = null;
+        }
         fout.close();
       }
     }
 
+    private void configureSubSections() {
+      if (conf == null || codec != null || !enableParallelSaveAndLoad(conf)) {
+        return;
+      }
+      int targetSections = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT);
+      long inodeThreshold = conf.getLong(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
+      long inodeCount = context.getSourceNamesystem().dir.getINodeMap().size();
+      if (targetSections <= 1 || inodeCount < inodeThreshold) {
+        LOG.info("Not writing sub-sections as the image has {} inodes " +
+            "(threshold {}) and {} target sections", inodeCount,
+            inodeThreshold, targetSections);
+        return;
+      }
+      writeSubSections = true;
+      inodesPerSubSection =
+          (inodeCount + targetSections - 1) / targetSections;
+      LOG.info("Writing sub-sections of {} inodes each for {} inodes",
+          inodesPerSubSection, inodeCount);
+      int threads = getParallelSaveThreads();
+      if (threads > 1) {
+        parallelSaveExecutor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageSaver-%d").build());
+      }
+    }
+
     private static void saveFileSummary(OutputStream out, FileSummary summary)
         throws IOException {
       summary.writeDelimitedTo(out);
@@ -512,6 +727,7 @@ private void saveInternal(FileOutputStream fout,
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
+      configureSubSections();
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
@@ -659,7 +875,9 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    INODE_SUB("INODE_SUB", true),
+    INODE_DIR_SUB("INODE_DIR_SUB", true);
 
     private static final SectionName[] values = SectionName.values();
 
@@ -672,12 +890,47 @@ public static SectionName fromString(String name) {
     }
 
     private final String name;
+    private final boolean subSection;
 
     private SectionName(String name) {
+      this(name, false);
+    }
+
+    private SectionName(String name, boolean subSection) {
       this.name = name;
+      this.subSection = subSection;
+    }
+
+    /**
+     * @return true if this names a sub-section, i.e. an independently
+     * loadable range of a parent section rather than a section of its own.
+     */
+    public boolean isSubSection() {
+      return subSection;
     }
   }
 
+  /**
+   * @return whether the fsimage should be written with sub-sections and
+   * loaded in parallel. Parallel loading is not supported for compressed
+   * images, as the serial loader cannot read a section made of several
+   * compressed streams.
+   */
+  public static boolean enableParallelSaveAndLoad(Configuration conf) {
+    boolean loadInParallel = conf.getBoolean(
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+    if (loadInParallel && conf.getBoolean(
+        DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY,
+        DFSConfigKeys.DFS_IMAGE_COMPRESS_DEFAULT)) {
+      LOG.warn("Parallel image loading and saving is not supported when {} " +
+          "is set to true. Parallel will be disabled.",
+          DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY);
+      loadInParallel = false;
+    }
+    return loadInParallel;
+  }
+
   private static int getOndiskTrunkSize(com.google.protobuf.GeneratedMessage s) {
     return CodedOutputStream.computeRawVarint32Size(s.getSerializedSize())
         + s.getSerializedSize();
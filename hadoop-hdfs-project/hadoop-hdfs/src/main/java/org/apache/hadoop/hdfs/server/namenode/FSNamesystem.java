@@ -43,6 +43,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_DEFAULT;
@@ -74,6 +76,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_COMPACT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_COMPACT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
@@ -208,6 +212,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.ReencryptAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -300,6 +305,7 @@
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenIdentifier;
 import org.apache.hadoop.security.token.delegation.DelegationKey;
+import org.apache.hadoop.util.ChunkedArrayList;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.ReflectionUtils;
@@ -398,6 +404,11 @@ private void logAuditEvent(boolean succeeded,
       UserGroupInformation ugi, InetAddress addr, String cmd, String src,
       String dst, FileStatus status) {
     final String ugiStr = ugi.toString();
+    if (asyncAuditPipeline != null) {
+      asyncAuditPipeline.logAuditEvent(succeeded, ugiStr, ugi, addr, cmd, src,
+          dst, status, CallerContext.getCurrent());
+      return;
+    }
     for (AuditLogger logger : auditLoggers) {
       if (logger instanceof HdfsAuditLogger) {
         HdfsAuditLogger hdfsLogger = (HdfsAuditLogger) logger;
@@ -427,6 +438,7 @@ private void logAuditEvent(boolean succeeded,
 
   static final int DEFAULT_MAX_CORRUPT_FILEBLOCKS_RETURNED = 100;
   static int BLOCK_DELETION_INCREMENT = 1000;
+  static int INODE_DELETION_INCREMENT = 1000;
   private final boolean isPermissionEnabled;
   private final UserGroupInformation fsOwner;
   private final String supergroup;
@@ -455,6 +467,8 @@ private void logAuditEvent(boolean succeeded,
   // underlying logger is disabled, and avoid some unnecessary work.
   private final boolean isDefaultAuditLogger;
   private final List<AuditLogger> auditLoggers;
+  /** Hands audit events to {@link #auditLoggers} off the handler threads. */
+  private final AsyncAuditLogPipeline asyncAuditPipeline;
 
   /** The namespace tree. */
   FSDirectory dir;
@@ -887,6 +901,14 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
       this.auditLoggers = initAuditLoggers(conf);
       this.isDefaultAuditLogger = auditLoggers.size() == 1 &&
         auditLoggers.get(0) instanceof DefaultAuditLogger;
+      if (conf.getBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_KEY,
+          DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_ENABLED_DEFAULT)) {
+        this.asyncAuditPipeline =
+            new AsyncAuditLogPipeline(conf, auditLoggers, dtSecretManager);
+        this.asyncAuditPipeline.start();
+      } else {
+        this.asyncAuditPipeline = null;
+      }
       this.retryCache = ignoreRetryCache ? null : initRetryCache(conf);
       Class<? extends INodeAttributeProvider> klass = conf.getClass(
           DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY,
@@ -984,12 +1006,16 @@ static RetryCache initRetryCache(Configuration conf) {
       long entryExpiryMillis = conf.getLong(
           DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY,
           DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT);
+      boolean compact = conf.getBoolean(
+          DFS_NAMENODE_RETRY_CACHE_COMPACT_KEY,
+          DFS_NAMENODE_RETRY_CACHE_COMPACT_DEFAULT);
       LOG.info("Retry cache will use " + heapPercent
           + " of total heap and retry cache entry expiry time is "
-          + entryExpiryMillis + " millis");
+          + entryExpiryMillis + " millis"
+          + (compact ? ", with compact entries" : ""));
       long entryExpiryNanos = entryExpiryMillis * 1000 * 1000;
       return new RetryCache("NameNodeRetryCache", heapPercent,
-          entryExpiryNanos);
+          entryExpiryNanos, compact);
     }
     return null;
   }
@@ -1583,6 +1609,7 @@ public void readLock() {
   public void readUnlock() {
     this.fsLock.readUnlock();
   }
+  @Override
   public void readUnlock(String opName) {
     this.fsLock.readUnlock(opName);
   }
@@ -1598,6 +1625,7 @@ public void writeLockInterruptibly() throws InterruptedException {
   public void writeUnlock() {
     this.fsLock.writeUnlock();
   }
+  @Override
   public void writeUnlock(String opName) {
     this.fsLock.writeUnlock(opName);
   }
@@ -1633,6 +1661,16 @@ public void cpLockInterruptibly() throws InterruptedException {
     this.cpLock.lockInterruptibly();
   }
 
+  /**
+   * Lock the checkpoint lock only if it is free. Unlike {@link #cpLock()},
+   * this can be called with the write lock held.
+   *
+   * @return true if the checkpoint lock was acquired
+   */
+  boolean tryCpLock() {
+    return this.cpLock.tryLock();
+  }
+
   /** Unlock the checkpoint lock */
   public void cpUnlock() {
     this.cpLock.unlock();
@@ -1687,6 +1725,9 @@ void close() {
       } finally {
         IOUtils.cleanupWithLogger(LOG, dir);
         IOUtils.cleanupWithLogger(LOG, fsImage);
+        if (asyncAuditPipeline != null) {
+          asyncAuditPipeline.stop();
+        }
       }
     }
   }
@@ -1704,7 +1745,16 @@ public boolean isInStandbyState() {
       return haEnabled;
     }
 
-    return HAServiceState.STANDBY == haContext.getState().getServiceState();
+    HAServiceState state = haContext.getState().getServiceState();
+    return HAServiceState.STANDBY == state || HAServiceState.OBSERVER == state;
+  }
+
+  /**
+   * @return true if the namesystem serves reads as an Observer NameNode.
+   */
+  public boolean isInObserverState() {
+    return haContext != null && haContext.getState() != null &&
+        HAServiceState.OBSERVER == haContext.getState().getServiceState();
   }
 
   /**
@@ -1933,6 +1983,15 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
             }
           }
         }
+      } else if (isInObserverState()) {
+        for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+          // The observer may apply the edit adding a block before the
+          // datanodes have reported it; let the client ask the active.
+          if (b.getLocations() == null || b.getLocations().length == 0) {
+            throw new StandbyException("Observer has no locations for "
+                + b.getBlock() + " of " + srcArg);
+          }
+        }
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, srcArg);
@@ -1943,7 +2002,7 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
 
     logAuditEvent(true, operationName, srcArg);
 
-    if (!isInSafeMode() && res.updateAccessTime()) {
+    if (!isInSafeMode() && !isInObserverState() && res.updateAccessTime()) {
       String src = srcArg;
       writeLock();
       final long now = now();
@@ -2954,13 +3013,14 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
       throws IOException {
     final String operationName = "delete";
     BlocksMapUpdateInfo toRemovedBlocks = null;
+    List<INode> toRemovedINodes = new ChunkedArrayList<>();
     writeLock();
     boolean ret = false;
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot delete " + src);
       toRemovedBlocks = FSDirDeleteOp.delete(
-          this, src, recursive, logRetryCache);
+          this, src, recursive, logRetryCache, toRemovedINodes);
       ret = toRemovedBlocks != null;
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -2968,7 +3028,18 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     } finally {
       writeUnlock(operationName);
     }
-    getEditLog().logSync();
+    if (!toRemovedINodes.isEmpty()) {
+      // The delete took the checkpoint lock when it deferred the removal
+      // of the inodes, see removeINodes.
+      try {
+        getEditLog().logSync();
+        removeINodes(toRemovedINodes); // Incremental removal of inodes
+      } finally {
+        cpUnlock();
+      }
+    } else {
+      getEditLog().logSync();
+    }
     if (toRemovedBlocks != null) {
       removeBlocks(toRemovedBlocks); // Incremental deletion of blocks
     }
@@ -3005,6 +3076,40 @@ void removeBlocks(BlocksMapUpdateInfo blocks) {
     }
   }
   
+  /**
+   * From the given list, incrementally remove the inodes from the inodeMap.
+   * The inodes must already be unlinked from the directory tree. The write
+   * lock is dropped and reacquired every INODE_DELETION_INCREMENT so that a
+   * large recursive delete does not stall other namespace operations.
+   * <p>
+   * The caller must hold the checkpoint lock from the unlinking of the
+   * inodes until they are all removed, so that no image is saved while the
+   * inodeMap still contains unlinked inodes.
+   *
+   * @param inodes unlinked inodes to be removed from the inodeMap
+   */
+  void removeINodes(List<INode> inodes) {
+    assert cpLock.isHeldByCurrentThread();
+    Iterator<INode> iter = inodes.iterator();
+    List<INode> batch = new ArrayList<>(
+        Math.min(inodes.size(), INODE_DELETION_INCREMENT));
+    while (iter.hasNext()) {
+      batch.clear();
+      for (int i = 0; i < INODE_DELETION_INCREMENT && iter.hasNext(); i++) {
+        batch.add(iter.next());
+      }
+      writeLock();
+      dir.writeLock();
+      try {
+        dir.removeFromInodeMap(batch);
+      } finally {
+        dir.writeUnlock();
+        writeUnlock("removeINodes");
+      }
+    }
+    inodes.clear();
+  }
+
   /**
    * Remove leases and inodes related to a given path
    * @param removedUCFiles INodes whose leases need to be released
@@ -3074,6 +3179,43 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink,
     return stat;
   }
 
+  /**
+   * Get the file info with block locations of several paths under a single
+   * hold of the read lock. At most {@link FSDirectory#getLsLimit()} paths
+   * are looked up per call.
+   *
+   * @return the file info of the first paths of srcs, with null for the
+   *         paths that are not found
+   * @throws AccessControlException if permission to any of the paths is
+   *         denied
+   */
+  HdfsLocatedFileStatus[] getBatchedFileInfo(final String[] srcs,
+      boolean needBlockToken) throws IOException {
+    // Audited the same way as getFileInfo for each of the paths
+    final String operationName = needBlockToken ? "open" : "getfileinfo";
+    checkOperation(OperationCategory.READ);
+    final HdfsLocatedFileStatus[] stats =
+        new HdfsLocatedFileStatus[Math.min(srcs.length, dir.getLsLimit())];
+    int i = 0;
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      for (; i < stats.length; i++) {
+        stats[i] = (HdfsLocatedFileStatus) FSDirStatAndListingOp.getFileInfo(
+            dir, srcs[i], true, true, needBlockToken);
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, srcs[i]);
+      throw e;
+    } finally {
+      readUnlock(operationName);
+    }
+    for (i = 0; i < stats.length; i++) {
+      logAuditEvent(true, operationName, srcs[i]);
+    }
+    return stats;
+  }
+
   /**
    * Returns true if the file is closed
    */
@@ -4284,6 +4426,19 @@ public int getFsLockQueueLength() {
     return fsLock.getQueueLength();
   }
 
+  @Metric({"AuditLogQueueSize", "Number of audit events waiting to be " +
+      "logged by the asynchronous audit log pipeline"})
+  public int getAuditLogQueueSize() {
+    return asyncAuditPipeline == null ? 0 : asyncAuditPipeline.getQueueSize();
+  }
+
+  @Metric({"AuditLogDroppedEvents", "Number of audit events dropped " +
+      "because the asynchronous audit log queue was full"})
+  public long getAuditLogDroppedEvents() {
+    return asyncAuditPipeline == null ? 0 :
+        asyncAuditPipeline.getDroppedEvents();
+  }
+
   int getNumberOfDatanodes(DatanodeReportType type) {
     readLock();
     try {
@@ -7803,7 +7958,7 @@ public void logAuditEvent(boolean succeeded, String userName,
           sb.append(trackingId);
         }
         sb.append("\t").append("proto=");
-        sb.append(Server.getProtocol());
+        sb.append(AsyncAuditLogPipeline.getProtocol());
         if (isCallerContextEnabled &&
             callerContext != null &&
             callerContext.isContextValid()) {
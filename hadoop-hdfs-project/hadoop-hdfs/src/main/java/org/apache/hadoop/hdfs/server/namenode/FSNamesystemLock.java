@@ -26,6 +26,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Timer;
@@ -55,6 +57,10 @@
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ * <p>
+ * The time an RPC call waits for and holds the lock is also added to the
+ * {@link org.apache.hadoop.ipc.ProcessingDetails} of the call, so that the
+ * RPC scheduler can charge the caller for it.
  */
 class FSNamesystemLock {
   @VisibleForTesting
@@ -139,9 +145,13 @@ public Long initialValue() {
   }
 
   public void readLock() {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.readLock().lock();
     if (coarseLock.getReadHoldCount() == 1) {
-      readLockHeldTimeStampNanos.set(timer.monotonicNowNanos());
+      final long currentTimeNanos = timer.monotonicNowNanos();
+      readLockHeldTimeStampNanos.set(currentTimeNanos);
+      updateProcessingDetails(Timing.LOCKWAIT,
+          currentTimeNanos - startTimeNanos);
     }
   }
 
@@ -158,6 +168,7 @@ public void readUnlock(String opName) {
     if (needReport) {
       addMetric(opName, readLockIntervalNanos, false);
       readLockHeldTimeStampNanos.remove();
+      updateProcessingDetails(Timing.LOCKSHARED, readLockIntervalNanos);
     }
     final long readLockIntervalMs =
         TimeUnit.NANOSECONDS.toMillis(readLockIntervalNanos);
@@ -194,16 +205,22 @@ public void readUnlock(String opName) {
   }
   
   public void writeLock() {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.writeLock().lock();
     if (coarseLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      updateProcessingDetails(Timing.LOCKWAIT,
+          writeLockHeldTimeStampNanos - startTimeNanos);
     }
   }
 
   public void writeLockInterruptibly() throws InterruptedException {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.writeLock().lockInterruptibly();
     if (coarseLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      updateProcessingDetails(Timing.LOCKWAIT,
+          writeLockHeldTimeStampNanos - startTimeNanos);
     }
   }
 
@@ -233,8 +250,9 @@ public void writeUnlock(String opName) {
    * for long time will be logged in logs and metrics.
    */
   public void writeUnlock(String opName, boolean suppressWriteLockReport) {
-    final boolean needReport = !suppressWriteLockReport && coarseLock
-        .getWriteHoldCount() == 1 && coarseLock.isWriteLockedByCurrentThread();
+    final boolean releasing = coarseLock.getWriteHoldCount() == 1 &&
+        coarseLock.isWriteLockedByCurrentThread();
+    final boolean needReport = !suppressWriteLockReport && releasing;
     final long currentTimeNanos = timer.monotonicNowNanos();
     final long writeLockIntervalNanos =
         currentTimeNanos - writeLockHeldTimeStampNanos;
@@ -268,6 +286,9 @@ public void writeUnlock(String opName, boolean suppressWriteLockReport) {
     if (needReport) {
       addMetric(opName, writeLockIntervalNanos, true);
     }
+    if (releasing) {
+      updateProcessingDetails(Timing.LOCKEXCLUSIVE, writeLockIntervalNanos);
+    }
 
     if (logReport) {
       FSNamesystem.LOG.info("FSNamesystem write lock held for " +
@@ -306,6 +327,17 @@ public int getQueueLength() {
     return coarseLock.getQueueLength();
   }
 
+  /**
+   * Add the time spent waiting for or holding the lock to the processing
+   * details of the current RPC call, if any.
+   */
+  private static void updateProcessingDetails(Timing type, long deltaNanos) {
+    Server.Call call = Server.getCurCall().get();
+    if (call != null) {
+      call.getProcessingDetails().add(type, deltaNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
   /**
    * Add the lock hold time for a recent operation to the metrics.
    * @param operationName Name of the operation for which to record the time
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * This is the server side implementation responsible for passing
+ * state alignment info to clients. The state id is the last transaction id
+ * the namesystem has written (on the active) or applied (on a standby or
+ * observer).
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+class GlobalStateIdContext implements AlignmentContext {
+  private final FSNamesystem namesystem;
+  private final Set<String> coordinatedMethods;
+
+  /**
+   * Server side constructor.
+   * @param namesystem server side state provider
+   */
+  GlobalStateIdContext(FSNamesystem namesystem) {
+    this.namesystem = namesystem;
+    this.coordinatedMethods = new HashSet<>();
+    // For now, only ClientProtocol methods can be coordinated, so only
+    // checking against ClientProtocol is fine.
+    for (Method method : ClientProtocol.class.getDeclaredMethods()) {
+      if (method.isAnnotationPresent(ReadOnly.class)) {
+        coordinatedMethods.add(method.getName());
+      }
+    }
+  }
+
+  /**
+   * Server side implementation for providing state alignment info in
+   * responses.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    header.setStateId(getLastSeenStateId());
+  }
+
+  /**
+   * Server side implementation only provides state information.
+   * It is not expected to be called.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    throw new UnsupportedOperationException("Client should only call this");
+  }
+
+  /**
+   * Server side implementation only receives state alignment info.
+   * It is not expected to be called.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    throw new UnsupportedOperationException("Client should only call this");
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return namesystem.getFSImage().getLastAppliedOrWrittenTxId();
+  }
+
+  /**
+   * Only read-only calls served by an observer wait for the client state;
+   * the active is never behind any state its clients have seen.
+   */
+  @Override
+  public boolean isCoordinatedCall(String protocolName, String methodName) {
+    return protocolName.equals(HdfsConstants.CLIENT_NAMENODE_PROTOCOL_NAME)
+        && coordinatedMethods.contains(methodName)
+        && namesystem.isInObserverState();
+  }
+}
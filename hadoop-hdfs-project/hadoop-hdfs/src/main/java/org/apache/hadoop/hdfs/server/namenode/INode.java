@@ -433,6 +433,14 @@ public final ContentSummary computeContentSummary(
   public final ContentSummary computeAndConvertContentSummary(int snapshotId,
       ContentSummaryComputationContext summary) throws AccessControlException {
     computeContentSummary(snapshotId, summary);
+    return convertContentSummary(summary);
+  }
+
+  /**
+   * Convert the counts of a {@link ContentSummary} computation of this inode.
+   */
+  final ContentSummary convertContentSummary(
+      ContentSummaryComputationContext summary) {
     final ContentCounts counts = summary.getCounts();
     final ContentCounts snapshotCounts = summary.getSnapshotCounts();
     final QuotaCounts q = getQuotaCounts();
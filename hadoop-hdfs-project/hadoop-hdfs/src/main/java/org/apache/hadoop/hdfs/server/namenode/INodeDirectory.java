@@ -39,6 +39,7 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature.DirectoryDiffList;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.util.ChunkedList;
 import org.apache.hadoop.hdfs.util.Diff.ListType;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
@@ -71,6 +72,18 @@ public static INodeDirectory valueOf(INode inode, Object path
   // Thus allocate the corresponding ArrayLists with a small initial capacity.
   public static final int DEFAULT_FILES_PER_DIRECTORY = 2;
 
+  /**
+   * Directories with more children than this keep them in a
+   * {@link ChunkedList}, so that creating or deleting a child does not move
+   * millions of references. They switch back to an {@link ArrayList} when
+   * they shrink to half of it.
+   */
+  @VisibleForTesting
+  static final int CHUNKED_CHILDREN_THRESHOLD = 64 * 1024;
+  /** The maximum number of children in each chunk of a {@link ChunkedList}. */
+  @VisibleForTesting
+  static final int CHILDREN_CHUNK_SIZE = 1024;
+
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
   private List<INode> children = null;
@@ -530,6 +543,10 @@ public boolean removeChild(final INode child) {
 
     final INode removed = children.remove(i);
     Preconditions.checkState(removed == child);
+    if (children instanceof ChunkedList
+        && children.size() < CHUNKED_CHILDREN_THRESHOLD / 2) {
+      children = new ArrayList<>(children);
+    }
     return true;
   }
 
@@ -585,6 +602,10 @@ private void addChild(final INode node, final int insertionPoint) {
     }
     node.setParent(this);
     children.add(-insertionPoint - 1, node);
+    if (children.size() > CHUNKED_CHILDREN_THRESHOLD
+        && !(children instanceof ChunkedList)) {
+      children = new ChunkedList<>(CHILDREN_CHUNK_SIZE, children);
+    }
 
     if (node.getGroupName() == null) {
       node.setGroup(getGroupName());
@@ -654,6 +675,18 @@ public QuotaCounts computeQuotaUsage4CurrentDirectory(
   @Override
   public ContentSummaryComputationContext computeContentSummary(int snapshotId,
       ContentSummaryComputationContext summary) throws AccessControlException {
+    computeSnapshotContentSummary(snapshotId, summary);
+    final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
+    if (q != null && snapshotId == Snapshot.CURRENT_STATE_ID) {
+      return q.computeContentSummary(this, summary);
+    } else {
+      return computeDirectoryContentSummary(summary, snapshotId);
+    }
+  }
+
+  private void computeSnapshotContentSummary(int snapshotId,
+      ContentSummaryComputationContext summary)
+      throws AccessControlException {
     final DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null && snapshotId == Snapshot.CURRENT_STATE_ID) {
       final ContentCounts counts = new ContentCounts.Builder().build();
@@ -666,12 +699,18 @@ public ContentSummaryComputationContext computeContentSummary(int snapshotId,
       // later from the ContentSummary of all).
       summary.getSnapshotCounts().addContents(counts);
     }
-    final DirectoryWithQuotaFeature q = getDirectoryWithQuotaFeature();
-    if (q != null && snapshotId == Snapshot.CURRENT_STATE_ID) {
-      return q.computeContentSummary(this, summary);
-    } else {
-      return computeDirectoryContentSummary(summary, snapshotId);
-    }
+  }
+
+  /**
+   * Compute the content summary of this directory without its children, for
+   * a computation which counts the children separately.
+   */
+  void computeContentSummaryWithoutChildren(int snapshotId,
+      ContentSummaryComputationContext summary) throws AccessControlException {
+    computeSnapshotContentSummary(snapshotId, summary);
+    // throws exception if failing the permission check
+    summary.checkPermission(this, snapshotId, FsAction.READ_EXECUTE);
+    summary.getCounts().addContent(Content.DIRECTORY, 1);
   }
 
   protected ContentSummaryComputationContext computeDirectoryContentSummary(
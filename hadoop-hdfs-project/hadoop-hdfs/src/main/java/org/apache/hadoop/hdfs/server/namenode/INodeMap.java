@@ -34,9 +34,12 @@
  */
 public class INodeMap {
   
-  static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+  /**
+   * Create an INodeMap whose hash table takes the given percentage of the
+   * maximum heap (1% by default).
+   */
+  static INodeMap newInstance(INodeDirectory rootDir, double percentage) {
+    int capacity = LightWeightGSet.computeCapacity(percentage, "INodeMap");
     GSet<INode, INodeWithAdditionalFields> map =
         new LightWeightGSet<>(capacity);
     map.put(rootDir);
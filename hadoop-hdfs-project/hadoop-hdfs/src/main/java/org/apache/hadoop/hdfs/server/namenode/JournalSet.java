@@ -24,8 +24,10 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -527,6 +529,33 @@ public void apply(JournalAndStream jas) throws IOException {
         }
       }, "flush");
     }
+
+    @Override
+    public PendingFlush startFlush() throws IOException {
+      final Map<JournalAndStream, PendingFlush> pending = new HashMap<>();
+      mapJournalsAndReportErrors(new JournalClosure() {
+        @Override
+        public void apply(JournalAndStream jas) throws IOException {
+          if (jas.isActive()) {
+            pending.put(jas, jas.getCurrentStream().startFlush());
+          }
+        }
+      }, "startFlush");
+      return new PendingFlush() {
+        @Override
+        public void waitForDurable() throws IOException {
+          mapJournalsAndReportErrors(new JournalClosure() {
+            @Override
+            public void apply(JournalAndStream jas) throws IOException {
+              PendingFlush flush = pending.get(jas);
+              if (flush != null && jas.isActive()) {
+                flush.waitForDurable();
+              }
+            }
+          }, "flush");
+        }
+      };
+    }
     
     @Override
     public boolean shouldForceSync() {
@@ -359,6 +359,7 @@ public long getProtocolVersion(String protocol,
       LoggerFactory.getLogger("BlockStateChange");
   public static final HAState ACTIVE_STATE = new ActiveState();
   public static final HAState STANDBY_STATE = new StandbyState();
+  public static final HAState OBSERVER_STATE = new StandbyState(true);
 
   private static final String NAMENODE_HTRACE_PREFIX = "namenode.htrace.";
 
@@ -369,6 +370,7 @@ public long getProtocolVersion(String protocol,
   protected final NamenodeRole role;
   private volatile HAState state;
   private final boolean haEnabled;
+  private final boolean observerEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
   private AtomicBoolean started = new AtomicBoolean(false);
@@ -960,6 +962,9 @@ protected NameNode(Configuration conf, NamenodeRole role)
     String nsId = getNameServiceId(conf);
     String namenodeId = HAUtil.getNameNodeId(conf, nsId);
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
+    this.observerEnabled = haEnabled && conf.getBoolean(
+        DFSConfigKeys.DFS_HA_OBSERVER_ENABLED_KEY,
+        DFSConfigKeys.DFS_HA_OBSERVER_ENABLED_DEFAULT);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
     this.haContext = createHAContext();
@@ -996,6 +1001,8 @@ protected HAState createHAState(StartupOption startOpt) {
     if (!haEnabled || startOpt == StartupOption.UPGRADE 
         || startOpt == StartupOption.UPGRADEONLY) {
       return ACTIVE_STATE;
+    } else if (observerEnabled) {
+      return OBSERVER_STATE;
     } else {
       return STANDBY_STATE;
     }
@@ -1991,7 +1998,11 @@ public boolean allowStaleReads() {
   }
   
   public boolean isStandbyState() {
-    return (state.equals(STANDBY_STATE));
+    return (state.equals(STANDBY_STATE) || state.equals(OBSERVER_STATE));
+  }
+
+  public boolean isObserverState() {
+    return state.equals(OBSERVER_STATE);
   }
   
   public boolean isActiveState() {
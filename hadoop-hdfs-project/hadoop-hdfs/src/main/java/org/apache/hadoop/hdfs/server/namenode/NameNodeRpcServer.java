@@ -41,7 +41,6 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 
@@ -453,6 +452,9 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager())
         .build();
+    // Let clients that track the last seen transaction id read from an
+    // observer without going back in time.
+    clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -1160,6 +1162,17 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
         namesystem.getFileInfo(src, true, true, needBlockToken);
   }
 
+  @Override // ClientProtocol
+  public HdfsLocatedFileStatus[] getBatchedLocatedFileInfo(String[] srcs,
+      boolean needBlockToken) throws IOException {
+    checkNNStartup();
+    HdfsLocatedFileStatus[] result =
+        namesystem.getBatchedFileInfo(srcs, needBlockToken);
+    metrics.incrBatchedFileInfoOps();
+    metrics.incrFilesInBatchedFileInfoOps(result.length);
+    return result;
+  }
+
   @Override // ClientProtocol
   public boolean isFileClosed(String src) throws IOException{
     checkNNStartup();
@@ -1512,15 +1525,10 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
       // BlockManager.processReport accumulates information of prior calls
       // for the same node and storage, so the value returned by the last
       // call of this loop is the final updated value for noStaleStorage.
+      // Each chunk of the report is run as a separate block op.
       //
-      final int index = r;
-      noStaleStorages = bm.runBlockOp(new Callable<Boolean>() {
-        @Override
-        public Boolean call() throws IOException {
-          return bm.processReport(nodeReg, reports[index].getStorage(),
-              blocks, context);
-        }
-      });
+      noStaleStorages = bm.processReport(nodeReg, reports[r].getStorage(),
+          blocks, context, true);
     }
     bm.removeBRLeaseIfNeeded(nodeReg, context);
 
@@ -24,6 +24,7 @@
 import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNode.OperationCategory;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
 
 /**
@@ -36,16 +37,30 @@
  * </ul>
  * 
  * It does not handle read/write/checkpoint operations.
+ *
+ * An observer is a standby that also serves read operations. It cannot
+ * become active directly; it has to be transitioned to standby first.
  */
 @InterfaceAudience.Private
 public class StandbyState extends HAState {
+  private final boolean isObserver;
+
   public StandbyState() {
-    super(HAServiceState.STANDBY);
+    this(false);
+  }
+
+  public StandbyState(boolean isObserver) {
+    super(isObserver ? HAServiceState.OBSERVER : HAServiceState.STANDBY);
+    this.isObserver = isObserver;
   }
 
   @Override
   public void setState(HAContext context, HAState s) throws ServiceFailedException {
-    if (s == NameNode.ACTIVE_STATE) {
+    if (s == NameNode.ACTIVE_STATE && !isObserver) {
+      setStateInternal(context, s);
+      return;
+    }
+    if (s == NameNode.STANDBY_STATE && isObserver) {
       setStateInternal(context, s);
       return;
     }
@@ -82,12 +97,22 @@ public void checkOperation(HAContext context, OperationCategory op)
         (op == OperationCategory.READ && context.allowStaleReads())) {
       return;
     }
+    if (op == OperationCategory.READ && isObserver && isCoordinatedCall()) {
+      // The RPC server has already made the call wait until this node
+      // caught up with the state the client has seen.
+      return;
+    }
     String faq = ". Visit https://s.apache.org/sbnn-error";
     String msg = "Operation category " + op + " is not supported in state "
         + context.getState() + faq;
     throw new StandbyException(msg);
   }
 
+  private static boolean isCoordinatedCall() {
+    Server.Call call = Server.getCurCall().get();
+    return call != null && call.isCallCoordinated();
+  }
+
   @Override
   public boolean shouldPopulateReplQueues() {
     return false;
@@ -58,6 +58,10 @@ public class NameNodeMetrics {
   @Metric MutableCounterLong createSymlinkOps;
   @Metric MutableCounterLong getLinkTargetOps;
   @Metric MutableCounterLong filesInGetListingOps;
+  @Metric("Number of getBatchedLocatedFileInfo operations")
+  MutableCounterLong batchedFileInfoOps;
+  @Metric("Number of files/dirs returned by getBatchedLocatedFileInfo")
+  MutableCounterLong filesInBatchedFileInfoOps;
   @Metric ("Number of successful re-replications")
   MutableCounterLong successfulReReplications;
   @Metric ("Number of times we failed to schedule a block re-replication.")
@@ -98,6 +102,7 @@ public long totalFileOps(){
       deleteFileOps.value() +
       getListingOps.value() +
       fileInfoOps.value() +
+      batchedFileInfoOps.value() +
       getLinkTargetOps.value() +
       createSnapshotOps.value() +
       deleteSnapshotOps.value() +
@@ -117,9 +122,16 @@ public long totalFileOps(){
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Journal transactions batched in sync")
   final MutableQuantiles[] numTransactionsBatchedInSync;
+  @Metric("Time waiting for a free slot in the journal sync pipeline")
+  MutableRate syncPipelineWait;
+  final MutableQuantiles[] syncPipelineWaitQuantiles;
   @Metric("Number of blockReports from individual storages")
   MutableRate storageBlockReport;
   final MutableQuantiles[] storageBlockReportQuantiles;
+  @Metric("Namesystem lock hold time for blockReports from individual " +
+      "storages")
+  MutableRate storageBlockReportLockHold;
+  final MutableQuantiles[] storageBlockReportLockHoldQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
   @Metric("Generate EDEK time") private MutableRate generateEDEKTime;
@@ -151,7 +163,9 @@ public long totalFileOps(){
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
     numTransactionsBatchedInSync = new MutableQuantiles[len];
+    syncPipelineWaitQuantiles = new MutableQuantiles[len];
     storageBlockReportQuantiles = new MutableQuantiles[len];
+    storageBlockReportLockHoldQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
     warmUpEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -166,9 +180,15 @@ public long totalFileOps(){
           "numTransactionsBatchedInSync" + interval + "s",
           "Number of Transactions batched in sync", "ops",
           "count", interval);
+      syncPipelineWaitQuantiles[i] = registry.newQuantiles(
+          "syncPipelineWait" + interval + "s",
+          "Journal sync pipeline slot wait", "ops", "latency", interval);
       storageBlockReportQuantiles[i] = registry.newQuantiles(
           "storageBlockReport" + interval + "s",
           "Storage block report", "ops", "latency", interval);
+      storageBlockReportLockHoldQuantiles[i] = registry.newQuantiles(
+          "storageBlockReportLockHold" + interval + "s",
+          "Storage block report lock hold", "ops", "latency", interval);
       cacheReportQuantiles[i] = registry.newQuantiles(
           "cacheReport" + interval + "s",
           "Cache report", "ops", "latency", interval);
@@ -257,6 +277,14 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrBatchedFileInfoOps() {
+    batchedFileInfoOps.incr();
+  }
+
+  public void incrFilesInBatchedFileInfoOps(int delta) {
+    filesInBatchedFileInfoOps.incr(delta);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -335,6 +363,13 @@ public void addSync(long elapsed) {
     }
   }
 
+  public void addSyncPipelineWait(long elapsed) {
+    syncPipelineWait.add(elapsed);
+    for (MutableQuantiles q : syncPipelineWaitQuantiles) {
+      q.add(elapsed);
+    }
+  }
+
   public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
@@ -346,6 +381,13 @@ public void addStorageBlockReport(long latency) {
     }
   }
 
+  public void addStorageBlockReportLockHold(long latency) {
+    storageBlockReportLockHold.add(latency);
+    for (MutableQuantiles q : storageBlockReportLockHoldQuantiles) {
+      q.add(latency);
+    }
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
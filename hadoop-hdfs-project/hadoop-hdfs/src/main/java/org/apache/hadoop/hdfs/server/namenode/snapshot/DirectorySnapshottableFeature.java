@@ -468,13 +468,18 @@ private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
       }
 
       ReadOnlyList<INode> children = dir.getChildrenList(earlier.getId());
-      boolean iterate = false;
-      for (INode child : children) {
-        final byte[] name = child.getLocalNameBytes();
-        if (!processFlag && !iterate && !Arrays.equals(resume[level], name)) {
-          continue;
+      int start = 0;
+      if (!processFlag) {
+        // The children are sorted by name, so look the one to resume from up
+        // rather than comparing the names of all the children before it.
+        start = ReadOnlyList.Util.binarySearch(children, resume[level]);
+        if (start < 0) {
+          start = children.size();
         }
-        iterate = true;
+      }
+      for (int i = start; i < children.size(); i++) {
+        final INode child = children.get(i);
+        final byte[] name = child.getLocalNameBytes();
         level = level + 1;
         boolean toProcess = diff.searchIndex(ListType.DELETED, name) < 0;
         if (!toProcess && child instanceof INodeReference.WithName) {
@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link List} for very large lists that are modified in the middle.
+ * <p>
+ * The elements are kept in a sequence of chunks of at most
+ * <code>maxChunkSize</code> elements each. Inserting or removing an element
+ * only moves the elements of one chunk and updates the start offsets of the
+ * following chunks, instead of moving all the following elements as
+ * {@link ArrayList} does. Positional access finds the chunk by binary search
+ * over the chunk offsets.
+ * <p>
+ * With n elements and chunks of size c, {@link #get(int)} and
+ * {@link #set(int, Object)} take O(log(n/c)) time, and
+ * {@link #add(int, Object)} and {@link #remove(int)} take O(c + n/c) time.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <E> The type of the list elements.
+ */
+@InterfaceAudience.Private
+public class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+  private final int maxChunkSize;
+  /** The chunks. None of them is empty. */
+  private final ArrayList<ArrayList<E>> chunks = new ArrayList<>();
+  /** offsets[k] is the index in this list of the first element of chunk k. */
+  private int[] offsets = new int[8];
+  private int size = 0;
+
+  public ChunkedList(int maxChunkSize) {
+    Preconditions.checkArgument(maxChunkSize >= 2,
+        "maxChunkSize = %s < 2", maxChunkSize);
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /** Create a list holding the elements of c, in the same order. */
+  public ChunkedList(int maxChunkSize, Collection<? extends E> c) {
+    this(maxChunkSize);
+    // Leave room in each chunk so that inserts do not split right away
+    final int fill = Math.max(1, maxChunkSize / 2);
+    ArrayList<E> chunk = null;
+    for (E e : c) {
+      if (chunk == null || chunk.size() == fill) {
+        chunk = new ArrayList<>(maxChunkSize);
+        insertChunk(chunks.size(), chunk, size);
+      }
+      chunk.add(e);
+      size++;
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public E get(int index) {
+    checkIndex(index, size);
+    final int k = chunkOf(index);
+    return chunks.get(k).get(index - offsets[k]);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    checkIndex(index, size);
+    final int k = chunkOf(index);
+    return chunks.get(k).set(index - offsets[k], element);
+  }
+
+  @Override
+  public void add(int index, E element) {
+    checkIndex(index, size + 1);
+    final int k;
+    if (chunks.isEmpty()) {
+      k = 0;
+      insertChunk(0, new ArrayList<E>(maxChunkSize), 0);
+    } else if (index == size) {
+      k = chunks.size() - 1;
+    } else {
+      k = chunkOf(index);
+    }
+    final ArrayList<E> chunk = chunks.get(k);
+    chunk.add(index - offsets[k], element);
+    size++;
+    modCount++;
+    shiftOffsets(k + 1, 1);
+
+    if (chunk.size() > maxChunkSize) {
+      // Split the chunk in half
+      final int half = chunk.size() / 2;
+      final List<E> tail = chunk.subList(half, chunk.size());
+      final ArrayList<E> next = new ArrayList<>(maxChunkSize);
+      next.addAll(tail);
+      tail.clear();
+      insertChunk(k + 1, next, offsets[k] + half);
+    }
+  }
+
+  @Override
+  public E remove(int index) {
+    checkIndex(index, size);
+    final int k = chunkOf(index);
+    final ArrayList<E> chunk = chunks.get(k);
+    final E removed = chunk.remove(index - offsets[k]);
+    size--;
+    modCount++;
+    shiftOffsets(k + 1, -1);
+
+    if (chunk.isEmpty()) {
+      removeChunk(k);
+    } else if (k + 1 < chunks.size()
+        && chunk.size() + chunks.get(k + 1).size() <= maxChunkSize / 2) {
+      // Merge with the next chunk so that deletes do not leave many small
+      // chunks behind
+      chunk.addAll(chunks.get(k + 1));
+      removeChunk(k + 1);
+    }
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    chunks.clear();
+    offsets = new int[8];
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    // Iterate chunk by chunk rather than by positional access
+    return new Iterator<E>() {
+      private final int expectedModCount = modCount;
+      private int chunk = 0;
+      private int offset = 0;
+
+      @Override
+      public boolean hasNext() {
+        return chunk < chunks.size();
+      }
+
+      @Override
+      public E next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final ArrayList<E> c = chunks.get(chunk);
+        final E e = c.get(offset++);
+        if (offset == c.size()) {
+          chunk++;
+          offset = 0;
+        }
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /** @return the number of chunks, for testing. */
+  int getNumChunks() {
+    return chunks.size();
+  }
+
+  /** @return the index of the chunk holding the element at index. */
+  private int chunkOf(int index) {
+    int low = 0;
+    int high = chunks.size() - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (offsets[mid] <= index) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private void shiftOffsets(int fromChunk, int delta) {
+    for (int k = fromChunk; k < chunks.size(); k++) {
+      offsets[k] += delta;
+    }
+  }
+
+  private void insertChunk(int k, ArrayList<E> chunk, int offset) {
+    final int n = chunks.size();
+    if (n == offsets.length) {
+      offsets = Arrays.copyOf(offsets, n * 2);
+    }
+    System.arraycopy(offsets, k, offsets, k + 1, n - k);
+    offsets[k] = offset;
+    chunks.add(k, chunk);
+  }
+
+  private void removeChunk(int k) {
+    final int n = chunks.size();
+    System.arraycopy(offsets, k + 1, offsets, k, n - k - 1);
+    chunks.remove(k);
+  }
+
+  private void checkIndex(int index, int bound) {
+    if (index < 0 || index >= bound) {
+      throw new IndexOutOfBoundsException(
+          "index = " + index + ", size = " + size);
+    }
+  }
+}
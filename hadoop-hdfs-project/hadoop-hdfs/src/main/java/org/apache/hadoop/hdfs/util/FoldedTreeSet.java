@@ -251,6 +251,13 @@ private TreeSetIterator(FoldedTreeSet<E> tree) {
       }
     }
 
+    private TreeSetIterator(FoldedTreeSet<E> tree, Node<E> node, int index) {
+      this.tree = tree;
+      this.iteratorModCount = tree.modCount;
+      this.node = node;
+      this.index = index;
+    }
+
     @Override
     public boolean hasNext() {
       checkForModification();
@@ -479,6 +486,51 @@ public Iterator<E> iterator() {
     return new TreeSetIterator<>(this);
   }
 
+  /**
+   * Return an iterator over the entries equal to or greater than the lookup
+   * object, in ascending order.
+   *
+   * @param fromElement Lookup key. It is compared to the stored entries the
+   *                    same way as in {@link #get(Object, Comparator)}.
+   *
+   * @return Iterator starting at the first entry not less than fromElement
+   */
+  public Iterator<E> tailIterator(Object fromElement) {
+    Objects.requireNonNull(fromElement);
+
+    Node<E> ceilingNode = null;
+    int ceilingIndex = 0;
+    Node<E> node = root;
+    while (node != null) {
+      E[] entries = node.entries;
+      int leftIndex = node.leftIndex;
+      int rightIndex = node.rightIndex;
+      if (compare(fromElement, entries[leftIndex], comparator) <= 0) {
+        ceilingNode = node;
+        ceilingIndex = leftIndex;
+        node = node.left;
+      } else if (compare(fromElement, entries[rightIndex], comparator) > 0) {
+        node = node.right;
+      } else {
+        // The first entry not less than fromElement is in this node
+        int low = leftIndex + 1;
+        int high = rightIndex;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (compare(fromElement, entries[mid], comparator) > 0) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        ceilingNode = node;
+        ceilingIndex = low;
+        break;
+      }
+    }
+    return new TreeSetIterator<>(this, ceilingNode, ceilingIndex);
+  }
+
   @Override
   public Object[] toArray() {
     Object[] objects = new Object[size];
@@ -25,6 +25,13 @@ public interface RwLock {
   /** Release read lock. */
   public void readUnlock();
 
+  /**
+   * Release read lock, attributing the hold time to the given operation
+   * in the lock hold time metrics.
+   * @param opName name of the operation that held the lock
+   */
+  public void readUnlock(String opName);
+
   /** Check if the current thread holds read lock. */
   public boolean hasReadLock();
 
@@ -37,6 +44,13 @@ public interface RwLock {
   /** Release write lock. */
   public void writeUnlock();
 
+  /**
+   * Release write lock, attributing the hold time to the given operation
+   * in the lock hold time metrics.
+   * @param opName name of the operation that held the lock
+   */
+  public void writeUnlock(String opName);
+
   /** Check if the current thread holds write lock. */
   public boolean hasWriteLock();
 }
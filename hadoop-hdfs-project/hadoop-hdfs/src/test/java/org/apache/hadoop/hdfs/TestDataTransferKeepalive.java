@@ -22,6 +22,7 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -35,6 +36,7 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.io.IOUtils;
@@ -243,6 +245,90 @@ public void testManyClosedSocketsInCache() throws Exception {
     DFSTestUtil.readFile(fs, TEST_FILE);
   }
 
+  /**
+   * Test that the sockets waiting for the next operation do not hold an
+   * xceiver thread each when they are parked, while they are still reused,
+   * and closed once the keepalive timeout expires.
+   */
+  @Test(timeout=60000)
+  public void testParkedIdleSockets() throws Exception {
+    final int numStreams = 20;
+    final int keepalive = 5000;
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 600000L);
+    clientConf.setInt(HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_KEY,
+        numStreams);
+    clientConf.set(DFS_CLIENT_CONTEXT, "testParkedIdleSockets");
+    DistributedFileSystem fs =
+        (DistributedFileSystem)FileSystem.get(cluster.getURI(),
+            clientConf);
+    PeerCache peerCache = ClientContext.getFromConf(clientConf).getPeerCache();
+    DFSTestUtil.createFile(fs, TEST_FILE, 1L, (short)1, 0L);
+
+    // Without parking, each idle socket holds an xceiver thread.
+    restartDataNode(keepalive, false);
+    readConcurrently(fs, numStreams);
+    assertEquals(numStreams, peerCache.size());
+    assertXceiverCount(numStreams);
+    peerCache.clear();
+    waitForXceiverCount(0);
+
+    // With parking, the idle sockets hold no thread.
+    restartDataNode(keepalive, true);
+    readConcurrently(fs, numStreams);
+    assertEquals(numStreams, peerCache.size());
+    waitForXceiverCount(0);
+
+    // The parked sockets are resumed for the next operations.
+    readConcurrently(fs, numStreams);
+    assertEquals(numStreams, peerCache.size());
+    waitForXceiverCount(0);
+
+    // Once the keepalive timeout expires, the sockets are closed.
+    Thread.sleep(keepalive + 1000);
+    Peer peer = peerCache.get(dn.getDatanodeId(), false);
+    assertNotNull(peer);
+    assertEquals(-1, peer.getInputStream().read());
+    IOUtils.cleanup(null, peer);
+  }
+
+  private void restartDataNode(int keepalive, boolean park) throws Exception {
+    DataNodeProperties props = cluster.stopDataNode(0);
+    props.conf.setInt(DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY, keepalive);
+    props.conf.setBoolean(DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_PARK_KEY, park);
+    assertTrue(cluster.restartDataNode(props, true));
+    dn = cluster.getDataNodes().get(0);
+    cluster.waitActive();
+  }
+
+  /**
+   * Open the streams before reading any of them, so that each one needs its
+   * own socket, which is cached when the stream is closed.
+   */
+  private void readConcurrently(FileSystem fs, int numStreams)
+      throws Exception {
+    InputStream[] stms = new InputStream[numStreams];
+    try {
+      for (int i = 0; i < stms.length; i++) {
+        stms[i] = fs.open(TEST_FILE);
+      }
+      for (InputStream stm : stms) {
+        IOUtils.copyBytes(stm, new IOUtils.NullOutputStream(), 1024);
+      }
+    } finally {
+      IOUtils.cleanup(null, stms);
+    }
+  }
+
+  private void waitForXceiverCount(final int expected) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return getXceiverCountWithoutServer() == expected;
+      }
+    }, 100, 10000);
+  }
+
   private void assertXceiverCount(int expected) {
     int count = getXceiverCountWithoutServer();
     if (count != expected) {
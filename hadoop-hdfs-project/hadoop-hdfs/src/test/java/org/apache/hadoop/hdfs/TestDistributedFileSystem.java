@@ -1283,6 +1283,43 @@ public void testListFiles() throws IOException {
     }
   }
 
+  @Test
+  public void testGetLocatedFileStatuses() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    // Make the NameNode answer for only some of the paths per RPC
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 2);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path[] paths = new Path[5];
+      for (int i = 0; i < paths.length - 1; i++) {
+        paths[i] = new Path("/batched/file" + i);
+        DFSTestUtil.createFile(fs, paths[i], 1024 * (i + 1), (short) 1, 0L);
+      }
+      paths[paths.length - 1] = new Path("/batched");
+
+      LocatedFileStatus[] stats = fs.getLocatedFileStatuses(paths);
+      assertEquals(paths.length, stats.length);
+      for (int i = 0; i < paths.length - 1; i++) {
+        assertEquals(fs.makeQualified(paths[i]), stats[i].getPath());
+        assertEquals(1024 * (i + 1), stats[i].getLen());
+        assertEquals(1, stats[i].getBlockLocations().length);
+      }
+      assertTrue(stats[paths.length - 1].isDirectory());
+
+      try {
+        fs.getLocatedFileStatuses(
+            new Path[] {paths[0], new Path("/batched/missing")});
+        fail("Expected FileNotFoundException");
+      } catch (FileNotFoundException e) {
+        GenericTestUtils.assertExceptionContains("/batched/missing", e);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testListStatusOfSnapshotDirs() throws IOException {
     MiniDFSCluster cluster = new MiniDFSCluster.Builder(new HdfsConfiguration())
@@ -142,6 +142,30 @@ public void testSingleWriter() throws Exception {
     // Should be finalized
     checkRecovery(cluster, 4, 4);
   }
+
+  /**
+   * Test that several batches can be sent before the first is acknowledged.
+   */
+  @Test
+  public void testPipelinedFlush() throws Exception {
+    EditLogOutputStream stm = qjm.startLogSegment(1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    List<EditLogOutputStream.PendingFlush> flushes = new ArrayList<>();
+    for (int batch = 0; batch < 5; batch++) {
+      for (int i = 1; i <= 3; i++) {
+        QJMTestUtil.writeOp(stm, batch * 3 + i);
+      }
+      stm.setReadyToFlush();
+      flushes.add(stm.startFlush());
+    }
+    for (EditLogOutputStream.PendingFlush flush : flushes) {
+      flush.waitForDurable();
+    }
+    stm.close();
+    qjm.finalizeLogSegment(1, 15);
+
+    checkRecovery(cluster, 1, 15);
+  }
   
   @Test
   public void testFormat() throws Exception {
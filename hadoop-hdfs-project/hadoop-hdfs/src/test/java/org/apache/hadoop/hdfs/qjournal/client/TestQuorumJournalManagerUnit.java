@@ -17,25 +17,35 @@
  */
 package org.apache.hadoop.hdfs.qjournal.client;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Assert;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.client.AsyncLogger;
 import org.apache.hadoop.hdfs.qjournal.client.QuorumException;
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
 import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
+import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.log4j.Level;
 import org.junit.Before;
@@ -47,6 +57,7 @@
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
 
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.writeOp;
 
@@ -71,6 +82,7 @@ public void setup() throws Exception {
         mockLogger(),
         mockLogger());
 
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
     qjm = new QuorumJournalManager(conf, new URI("qjournal://host/jid"), FAKE_NSINFO) {
       @Override
       protected List<AsyncLogger> createLoggers(AsyncLogger.Factory factory) {
@@ -215,6 +227,67 @@ public void testWriteEditsOneSlow() throws Exception {
     Mockito.verify(spyLoggers.get(0)).setCommittedTxId(1L);
   }
 
+  @Test
+  public void testSelectRpcInputStreamsOnlyDurableTxns() throws Exception {
+    mockJournaledEdits(5, 3, 1);
+
+    // Three transactions have been returned by a majority of the loggers.
+    List<EditLogInputStream> streams = new ArrayList<>();
+    qjm.selectRpcInputStreams(streams, 1, true);
+    assertEquals(1, streams.size());
+    assertEquals(1, streams.get(0).getFirstTxId());
+    assertEquals(3, streams.get(0).getLastTxId());
+
+    streams.clear();
+    qjm.selectRpcInputStreams(streams, 1, false);
+    assertEquals(1, streams.size());
+    assertEquals(5, streams.get(0).getLastTxId());
+
+    mockJournaledEdits(5, 0, 0);
+    streams.clear();
+    qjm.selectRpcInputStreams(streams, 1, true);
+    assertEquals(0, streams.size());
+  }
+
+  @Test
+  public void testSelectInputStreamsFallsBackToStreaming() throws Exception {
+    futureReturns(GetJournaledEditsResponseProto.newBuilder()
+        .setTxnCount(5).setEditLog(ByteString.EMPTY).build())
+        .when(spyLoggers.get(0)).getJournaledEdits(anyLong(), anyInt());
+    for (int i = 1; i < spyLoggers.size(); i++) {
+      futureThrows(new IOException("cache miss"))
+          .when(spyLoggers.get(i)).getJournaledEdits(anyLong(), anyInt());
+    }
+    for (AsyncLogger logger : spyLoggers) {
+      futureReturns(new RemoteEditLogManifest(
+          ImmutableList.of(new RemoteEditLog(1, 3, true)), 3))
+          .when(logger).getEditLogManifest(anyLong(), anyBoolean());
+      Mockito.doReturn(new URL("http://localhost/getJournal"))
+          .when(logger).buildURLToFetchLogs(anyLong());
+    }
+
+    // Tailing falls back to the edit log segments every time the RPC fails.
+    for (int i = 0; i < 2; i++) {
+      List<EditLogInputStream> streams = new ArrayList<>();
+      qjm.selectInputStreams(streams, 1, true, true);
+      assertEquals(1, streams.size());
+      assertEquals(1, streams.get(0).getFirstTxId());
+      assertEquals(3, streams.get(0).getLastTxId());
+    }
+    for (AsyncLogger logger : spyLoggers) {
+      Mockito.verify(logger, Mockito.times(2))
+          .getEditLogManifest(1, true);
+    }
+  }
+
+  private void mockJournaledEdits(int... txnCounts) {
+    for (int i = 0; i < txnCounts.length; i++) {
+      futureReturns(GetJournaledEditsResponseProto.newBuilder()
+          .setTxnCount(txnCounts[i]).setEditLog(ByteString.EMPTY).build())
+          .when(spyLoggers.get(i)).getJournaledEdits(anyLong(), anyInt());
+    }
+  }
+
   private EditLogOutputStream createLogSegment() throws IOException {
     futureReturns(null).when(spyLoggers.get(0)).startLogSegment(Mockito.anyLong(),
         Mockito.eq(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION));
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Test the {@link JournaledEditsCache} used for caching edits in-memory on the
+ * {@link Journal}.
+ */
+public class TestJournaledEditsCache {
+
+  private static final int EDITS_CAPACITY = 100;
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  private JournaledEditsCache cache;
+
+  @Before
+  public void setup() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        createTxnData(1, 1).length * EDITS_CAPACITY);
+    cache = new JournaledEditsCache(conf);
+  }
+
+  @Test
+  public void testCacheSingleSegment() throws Exception {
+    storeEdits(1, 20);
+    // Leading part of the segment
+    assertTxnCountAndContents(1, 5, 5);
+    // All of the segment
+    assertTxnCountAndContents(1, 20, 20);
+    // Past the segment
+    assertTxnCountAndContents(1, 40, 20);
+    // Trailing part of the segment
+    assertTxnCountAndContents(10, 11, 20);
+    // Trailing part of the segment, past the end
+    assertTxnCountAndContents(10, 20, 20);
+  }
+
+  @Test
+  public void testCacheBelowCapacityRequestOnBoundary() throws Exception {
+    storeEdits(1, 5);
+    storeEdits(6, 20);
+    storeEdits(21, 30);
+
+    // First segment only
+    assertTxnCountAndContents(1, 3, 3);
+    // On segment boundary
+    assertTxnCountAndContents(6, 10, 15);
+    // Spanning multiple segments
+    assertTxnCountAndContents(1, 30, 30);
+    // Spanning from a segment boundary into the middle of a later segment
+    assertTxnCountAndContents(6, 18, 23);
+    // Past the end of the cache
+    assertTxnCountAndContents(21, 20, 30);
+  }
+
+  @Test
+  public void testCacheBelowCapacityRequestOffBoundary() throws Exception {
+    storeEdits(1, 5);
+    storeEdits(6, 20);
+    storeEdits(21, 30);
+
+    assertTxnCountAndContents(3, 1, 3);
+    assertTxnCountAndContents(3, 6, 8);
+    assertTxnCountAndContents(15, 10, 24);
+    assertTxnCountAndContents(15, 50, 30);
+  }
+
+  @Test
+  public void testCacheAboveCapacity() throws Exception {
+    int thirdCapacity = EDITS_CAPACITY / 3;
+    storeEdits(1, thirdCapacity);
+    storeEdits(thirdCapacity + 1, thirdCapacity * 2);
+    storeEdits(thirdCapacity * 2 + 1, EDITS_CAPACITY);
+    storeEdits(EDITS_CAPACITY + 1, thirdCapacity * 4);
+    storeEdits(thirdCapacity * 4 + 1, thirdCapacity * 5);
+
+    try {
+      cache.retrieveEdits(1, 10, new ArrayList<ByteBuffer>());
+      fail();
+    } catch (IOException ioe) {
+      // expected
+    }
+    assertTxnCountAndContents(EDITS_CAPACITY + 1, EDITS_CAPACITY,
+        thirdCapacity * 5);
+  }
+
+  @Test
+  public void testCacheSingleAdditionAboveCapacity() throws Exception {
+    storeEdits(1, EDITS_CAPACITY * 2);
+    assertCacheMiss(1);
+    storeEdits(EDITS_CAPACITY * 2 + 1, EDITS_CAPACITY * 2 + 5);
+    assertTxnCountAndContents(EDITS_CAPACITY * 2 + 1, 5,
+        EDITS_CAPACITY * 2 + 5);
+  }
+
+  @Test
+  public void testCacheWithFutureLayoutVersion() throws Exception {
+    byte[] firstHalf = createTxnData(1, 5);
+    byte[] secondHalf = createTxnData(6, 5);
+    int futureVersion = LAYOUT_VERSION - 1;
+    cache.storeEdits(firstHalf, 1, 5, LAYOUT_VERSION);
+    assertEquals(firstHalf.length, cache.getTotalSize());
+    cache.storeEdits(secondHalf, 6, 10, futureVersion);
+    // The cache was cleared on the layout version change
+    assertEquals(secondHalf.length, cache.getTotalSize());
+    assertCacheMiss(1);
+
+    List<ByteBuffer> buffers = new ArrayList<>();
+    assertEquals(5, cache.retrieveEdits(6, 5, buffers));
+    ByteBuffer header = buffers.get(0);
+    assertEquals(futureVersion, header.getInt(header.position()));
+  }
+
+  @Test
+  public void testCacheClearedOnNonContiguousEdits() throws Exception {
+    storeEdits(1, 10);
+    // e.g. a new writer started a segment after recovering a shorter one
+    storeEdits(9, 15);
+    assertCacheMiss(1);
+    assertTxnCountAndContents(9, 7, 15);
+  }
+
+  @Test
+  public void testCacheEmptyOrFutureRequests() throws Exception {
+    assertCacheMiss(1);
+    storeEdits(1, 10);
+    assertEquals(0, cache.retrieveEdits(11, 5, new ArrayList<ByteBuffer>()));
+  }
+
+  private void storeEdits(int startTxn, int endTxn) throws Exception {
+    cache.storeEdits(createTxnData(startTxn, endTxn - startTxn + 1), startTxn,
+        endTxn, LAYOUT_VERSION);
+  }
+
+  private void assertCacheMiss(long startTxn) {
+    try {
+      cache.retrieveEdits(startTxn, 10, new ArrayList<ByteBuffer>());
+      fail("Expected a cache miss for txn " + startTxn);
+    } catch (IOException ioe) {
+      assertTrue(ioe instanceof JournaledEditsCache.CacheMissException);
+    }
+  }
+
+  /**
+   * Assert that retrieving {@code requestedMaxTxns} edits starting at
+   * {@code startTxn} returns the edits up to {@code expectedEndTxn}, and that
+   * the returned buffers can be read as an edit log containing exactly those
+   * transactions.
+   */
+  private void assertTxnCountAndContents(int startTxn, int requestedMaxTxns,
+      int expectedEndTxn) throws Exception {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    int expectedTxnCount = expectedEndTxn - startTxn + 1;
+    assertEquals(expectedTxnCount,
+        cache.retrieveEdits(startTxn, requestedMaxTxns, buffers));
+
+    EditLogInputStream stream = EditLogFileInputStream.fromByteString(
+        ByteString.copyFrom(buffers), startTxn, expectedEndTxn, true);
+    try {
+      for (long txid = startTxn; txid <= expectedEndTxn; txid++) {
+        FSEditLogOp op = stream.readOp();
+        assertEquals(txid, op.getTransactionId());
+      }
+      assertNull(stream.readOp());
+    } finally {
+      stream.close();
+    }
+  }
+
+}
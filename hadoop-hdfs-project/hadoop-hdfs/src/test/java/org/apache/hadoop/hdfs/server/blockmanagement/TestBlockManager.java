@@ -39,6 +39,7 @@
 import org.apache.hadoop.hdfs.StripedFileTestUtil;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -927,6 +928,142 @@ public void testFullBR() throws Exception {
     }
   }
 
+  @Test
+  public void testChunkedFullBR() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+        "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY, 5);
+    bm = new BlockManager(fsn, false, conf);
+    doReturn(true).when(fsn).isRunning();
+
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =
+        new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    ArrayList<BlockInfo> blocks = new ArrayList<>();
+    for (int id = 1; id <= 24; id++) {
+      blocks.add(addBlockToBM(id));
+    }
+
+    // The first report spans several chunks
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        generateReport(blocks),
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(1, ds.getBlockReportCount());
+    assertEquals(24, ds.numBlocks());
+
+    // Drop blocks at and around the chunk boundaries, and at the end
+    List<BlockInfo> reported = new ArrayList<>(blocks);
+    List<BlockInfo> dropped = new ArrayList<>();
+    for (int i : new int[] {23, 11, 10, 5, 0}) {
+      dropped.add(reported.remove(i));
+    }
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        generateReport(reported),
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(2, ds.getBlockReportCount());
+    assertEquals(reported.size(), ds.numBlocks());
+    for (BlockInfo block : reported) {
+      assertTrue(bm.getStoredBlock(block).findStorageInfo(ds) >= 0);
+    }
+    for (BlockInfo block : dropped) {
+      assertEquals(-1, bm.getStoredBlock(block).findStorageInfo(ds));
+    }
+
+    // A report with no blocks removes all of them
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        BlockListAsLongs.EMPTY,
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(0, ds.numBlocks());
+  }
+
+  @Test
+  public void testChunkedFullBRFailure() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY,
+        "need to set a dummy value here so it assumes a multi-rack cluster");
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_CHUNK_SIZE_KEY, 5);
+    bm = new BlockManager(fsn, false, conf);
+    doReturn(true).when(fsn).isRunning();
+
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =
+        new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    ArrayList<BlockInfo> blocks = new ArrayList<>();
+    for (int id = 1; id <= 12; id++) {
+      blocks.add(addBlockToBM(id));
+    }
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        generateReport(blocks),
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(1, ds.getBlockReportCount());
+
+    // A second report for a storage is rejected while one is in progress
+    ds.setBlockReportInProgress(true);
+    try {
+      bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+          BlockListAsLongs.EMPTY,
+          new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+      Assert.fail("Processed two reports for a storage at once");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("is being processed", e);
+    }
+    assertEquals(12, ds.numBlocks());
+    ds.setBlockReportInProgress(false);
+
+    // The second chunk of this report fails after the first was applied
+    final Iterator<BlockReportReplica> replicas =
+        generateReport(blocks.subList(6, 12)).iterator();
+    BlockListAsLongs failing = Mockito.mock(BlockListAsLongs.class);
+    doReturn(new Iterator<BlockReportReplica>() {
+      private int count;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public BlockReportReplica next() {
+        if (++count > 5) {
+          throw new IllegalStateException("Injected failure");
+        }
+        return replicas.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }).when(failing).iterator();
+    try {
+      bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+          failing, new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+      Assert.fail("Injected failure was not thrown");
+    } catch (IllegalStateException e) {
+      GenericTestUtils.assertExceptionContains("Injected failure", e);
+    }
+    assertFalse(ds.isBlockReportInProgress());
+    assertEquals(1, ds.getBlockReportCount());
+
+    // The next report is reconciled against the whole storage
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        generateReport(blocks),
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(2, ds.getBlockReportCount());
+    assertEquals(blocks.size(), ds.numBlocks());
+  }
+
   private BlockListAsLongs generateReport(List<BlockInfo> blocks) {
     BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
     for (BlockInfo block : blocks) {
@@ -24,6 +24,8 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -1080,6 +1082,44 @@ public void testDirectoryScannerInFederatedCluster() throws Exception {
     }
   }
 
+  /**
+   * Test that the report compiler threads are limited by
+   * {@link DFSConfigKeys#DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_KEY}
+   * and that the scans are reported in the metrics of the DataNode.
+   */
+  @Test(timeout = 60000)
+  public void testMaxIopsPerVolume() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_IOPS_PER_VOLUME_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      DataNode dataNode = cluster.getDataNodes().get(0);
+      fds = DataNodeTestUtils.getFSDataset(dataNode);
+      client = cluster.getFileSystem().getClient();
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 5, false);
+
+      scanner = new DirectoryScanner(dataNode, fds, conf);
+      scanner.setRetainDiffs(true);
+      scan(5, 0, 0, 0, 0, 0);
+
+      // The finalized directory of a volume and its subdirectories are
+      // listed at one directory per second.
+      assertTrue("Throttle does not appear to be engaged",
+          scanner.timeWaitingMs.get() >= 500L);
+      assertCounter("DirectoryScansNumOps", 1L,
+          getMetrics(dataNode.getMetrics().name()));
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+    }
+  }
+
   private void writeFile(FileSystem fs, int numFiles) throws IOException {
     final String fileName = "/" + GenericTestUtils.getMethodName();
     final Path filePath = new Path(fileName);
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the startup of a DataNode from the replica journals, when the
+ * replica cache of a clean shutdown is missing.
+ */
+public class TestReplicaJournal {
+  private static final int NUM_FILES = 5;
+  private static final int FILE_LEN = 1024;
+  // far from the IDs allocated by the NameNode in the test
+  private static final long PLANTED_BLOCK_ID_DELTA = 1000000;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private String bpid;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_REPLICA_JOURNAL_ENABLED_KEY,
+        true);
+    // the test runs the directory scanner itself
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INTERVAL_KEY, -1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    bpid = cluster.getNamesystem().getBlockPoolId();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Create the files, then delete the first one and append to the second
+   * one, so that the journals have all kinds of records.
+   *
+   * @return the blocks of the remaining files.
+   */
+  private List<ExtendedBlock> createReplicas() throws Exception {
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < NUM_FILES; i++) {
+      Path file = new Path("/file" + i);
+      DFSTestUtil.createFile(fs, file, FILE_LEN, (short) 1, 0L);
+      files.add(file);
+    }
+    final ExtendedBlock deleted = DFSTestUtil.getFirstBlock(fs, files.get(0));
+    fs.delete(files.get(0), false);
+    DFSTestUtil.appendFile(fs, files.get(1), FILE_LEN);
+
+    final FsDatasetSpi<?> dataset =
+        DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          DataNodeTestUtils.triggerHeartbeat(cluster.getDataNodes().get(0));
+          return dataset.getStoredBlock(bpid, deleted.getBlockId()) == null;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 100, 30000);
+
+    List<ExtendedBlock> blocks = new ArrayList<>();
+    for (Path file : files.subList(1, files.size())) {
+      blocks.add(DFSTestUtil.getFirstBlock(fs, file));
+    }
+    return blocks;
+  }
+
+  /**
+   * Copy the files of a replica to a new block ID, which is not in the
+   * journals.
+   *
+   * @return the ID of the new block.
+   */
+  private long plantReplica(ExtendedBlock block) throws IOException {
+    final File blockFile = cluster.getBlockFile(0, block);
+    final File dir = blockFile.getParentFile();
+    final long gs = block.getGenerationStamp();
+    final long blockId = block.getBlockId() + PLANTED_BLOCK_ID_DELTA;
+    final String plantedName = new Block(blockId).getBlockName();
+    FileUtils.copyFile(blockFile, new File(dir, plantedName));
+    FileUtils.copyFile(
+        new File(dir, DatanodeUtil.getMetaName(blockFile.getName(), gs)),
+        new File(dir, DatanodeUtil.getMetaName(plantedName, gs)));
+    return blockId;
+  }
+
+  /** @return the current directories of the block pool on the DataNode. */
+  private List<File> getBlockPoolCurrentDirs() {
+    List<File> dirs = new ArrayList<>();
+    for (int i = 0; i < cluster.getStoragesPerDatanode(); i++) {
+      dirs.add(MiniDFSCluster.getFinalizedDir(
+          cluster.getInstanceStorageDir(0, i), bpid).getParentFile());
+    }
+    return dirs;
+  }
+
+  /**
+   * Stop the DataNode, and delete its replica caches, as if it had
+   * crashed.
+   */
+  private DataNodeProperties crashDataNode() {
+    DataNodeProperties dnProps = cluster.stopDataNode(0);
+    for (File dir : getBlockPoolCurrentDirs()) {
+      FileUtils.deleteQuietly(new File(dir, "replicas"));
+      assertTrue(new File(dir, "replicas.journal").exists());
+    }
+    return dnProps;
+  }
+
+  private static void verifyReplicas(FsDatasetSpi<?> dataset,
+      List<ExtendedBlock> blocks) throws IOException {
+    for (ExtendedBlock block : blocks) {
+      Block stored = dataset.getStoredBlock(block.getBlockPoolId(),
+          block.getBlockId());
+      assertNotNull("Missing " + block, stored);
+      assertEquals(block.getGenerationStamp(), stored.getGenerationStamp());
+      assertEquals(block.getNumBytes(), stored.getNumBytes());
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testStartupFromJournal() throws Exception {
+    final List<ExtendedBlock> blocks = createReplicas();
+    DataNodeProperties dnProps = crashDataNode();
+    final long plantedId = plantReplica(blocks.get(0));
+
+    cluster.restartDataNode(dnProps);
+    cluster.waitActive();
+    DataNode dn = cluster.getDataNodes().get(0);
+    FsDatasetSpi<?> dataset = DataNodeTestUtils.getFSDataset(dn);
+    verifyReplicas(dataset, blocks);
+    // the finalized directories were not scanned
+    assertNull(dataset.getStoredBlock(bpid, plantedId));
+
+    // the directory scanner reconciles the replicas missing in the journals
+    DirectoryScanner scanner = new DirectoryScanner(dn, dataset, conf);
+    try {
+      scanner.reconcile();
+    } finally {
+      scanner.shutdown();
+    }
+    assertNotNull(dataset.getStoredBlock(bpid, plantedId));
+  }
+
+  @Test(timeout=120000)
+  public void testStartupWithCorruptJournal() throws Exception {
+    final List<ExtendedBlock> blocks = createReplicas();
+    DataNodeProperties dnProps = crashDataNode();
+    final long plantedId = plantReplica(blocks.get(0));
+    for (File dir : getBlockPoolCurrentDirs()) {
+      FileOutputStream out =
+          new FileOutputStream(new File(dir, "replicas.journal"));
+      try {
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+      } finally {
+        IOUtils.closeStream(out);
+      }
+    }
+
+    // the DataNode falls back to scanning the directories
+    cluster.restartDataNode(dnProps);
+    cluster.waitActive();
+    FsDatasetSpi<?> dataset =
+        DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+    verifyReplicas(dataset, blocks);
+    assertNotNull(dataset.getStoredBlock(bpid, plantedId));
+  }
+}
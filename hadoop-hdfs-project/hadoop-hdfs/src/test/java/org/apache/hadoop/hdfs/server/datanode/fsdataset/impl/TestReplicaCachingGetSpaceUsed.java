@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.GetSpaceUsed;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests {@link ReplicaCachingGetSpaceUsed}.
+ */
+public class TestReplicaCachingGetSpaceUsed {
+  private static final long REFRESH_INTERVAL_MS = 100;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setClass("fs.getspaceused.classname",
+        ReplicaCachingGetSpaceUsed.class, GetSpaceUsed.class);
+    conf.setLong(CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY,
+        REFRESH_INTERVAL_MS);
+    conf.setLong("fs.getspaceused.jitterMillis", 0);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSpaceUsedFromReplicas() throws Exception {
+    final String bpid = cluster.getNamesystem().getBlockPoolId();
+    for (int i = 0; i < 10; i++) {
+      DFSTestUtil.createFile(fs, new Path("/file" + i), 1024 * (i + 1),
+          (short) 1, i);
+    }
+    waitForSpaceUsed(bpid);
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(fs.delete(new Path("/file" + i), false));
+    }
+    waitForSpaceUsed(bpid);
+
+    // After the restart the value comes from a refresh only; du would also
+    // count the directories, so the values would differ.
+    cluster.restartDataNodes(true);
+    cluster.waitActive();
+    waitForSpaceUsed(bpid);
+  }
+
+  private void waitForSpaceUsed(final String bpid) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return getSpaceUsedByReplicas(bpid) == getSpaceUsed(bpid);
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 100, 30000);
+  }
+
+  private long getSpaceUsed(String bpid) throws IOException {
+    final DataNode dn = cluster.getDataNodes().get(0);
+    long used = 0;
+    try (FsDatasetSpi.FsVolumeReferences volumes =
+        dn.getFSDataset().getFsVolumeReferences()) {
+      for (FsVolumeSpi volume : volumes) {
+        used += ((FsVolumeImpl) volume).getBlockPoolUsed(bpid);
+      }
+    }
+    return used;
+  }
+
+  private long getSpaceUsedByReplicas(String bpid) {
+    final DataNode dn = cluster.getDataNodes().get(0);
+    long used = 0;
+    for (ReplicaInfo replica : dn.getFSDataset().getFinalizedBlocks(bpid)) {
+      used += replica.getBlockDataLength() + replica.getMetadataLength();
+    }
+    return used;
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.PathUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests the rewrite of a {@link ReplicaJournal} while records are logged.
+ */
+public class TestReplicaJournalRewrite {
+  private FsVolumeImpl volume;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    volume = Mockito.mock(FsVolumeImpl.class);
+    Mockito.doReturn(new FileIoProvider(null, null))
+        .when(volume).getFileIoProvider();
+    File dir = PathUtils.getTestDir(getClass());
+    FileUtils.deleteQuietly(dir);
+    assertTrue(dir.mkdirs());
+    file = new File(dir, "replicas.journal");
+  }
+
+  private ReplicaInfo replica(long blockId) {
+    return new FinalizedReplica(blockId, blockId * 10, 1000 + blockId,
+        volume, null);
+  }
+
+  @Test
+  public void testRecordsLoggedDuringRewrite() throws Exception {
+    List<ReplicaInfo> replicas = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      replicas.add(replica(id));
+    }
+    ReplicaJournal journal = new ReplicaJournal(volume, file);
+    List<ReplicaJournal.Record> snapshot = journal.startRewrite(replicas);
+    assertFalse(journal.needsCompaction());
+
+    // Logged after the snapshot, before the new log is written
+    journal.add(replica(4));
+    journal.remove(2);
+    journal.finishRewrite(snapshot);
+
+    // Logged to the new log
+    journal.add(replica(5));
+    journal.remove(1);
+    journal.close();
+
+    Map<Long, Block> blocks = ReplicaJournal.replay(volume, file);
+    assertEquals(3, blocks.size());
+    for (long id : new long[] {3, 4, 5}) {
+      assertEquals(new Block(id, id * 10, 1000 + id), blocks.get(id));
+      assertEquals(id * 10, blocks.get(id).getNumBytes());
+    }
+    assertNull(blocks.get(1L));
+    assertNull(blocks.get(2L));
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void testReplayWithoutClose() throws Exception {
+    List<ReplicaInfo> replicas = new ArrayList<>();
+    replicas.add(replica(1));
+    replicas.add(replica(2));
+    ReplicaJournal journal = new ReplicaJournal(volume, file);
+    try {
+      journal.finishRewrite(journal.startRewrite(replicas));
+      journal.add(replica(3));
+      journal.remove(1);
+
+      // The writer dies without closing the log
+      Map<Long, Block> blocks = ReplicaJournal.replay(volume, file);
+      assertEquals(2, blocks.size());
+      assertEquals(30, blocks.get(3L).getNumBytes());
+      assertNull(blocks.get(1L));
+
+      // A record torn by a crash of the host is ignored
+      FileOutputStream torn = new FileOutputStream(file, true);
+      try {
+        torn.write(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 4});
+      } finally {
+        torn.close();
+      }
+      blocks = ReplicaJournal.replay(volume, file);
+      assertEquals(2, blocks.size());
+      assertNull(blocks.get(4L));
+    } finally {
+      IOUtils.closeStream(journal);
+    }
+  }
+
+  @Test
+  public void testRewriteAfterClose() throws Exception {
+    List<ReplicaInfo> replicas = new ArrayList<>();
+    replicas.add(replica(1));
+    ReplicaJournal journal = new ReplicaJournal(volume, file);
+    List<ReplicaJournal.Record> snapshot = journal.startRewrite(replicas);
+    journal.close();
+
+    // The slice was shut down meanwhile; the log is left alone
+    journal.finishRewrite(snapshot);
+    assertNull(ReplicaJournal.replay(volume, file));
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+}
@@ -17,12 +17,20 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,7 +39,8 @@
  * Unit test for ReplicasMap class
  */
 public class TestReplicaMap {
-  private final ReplicaMap map = new ReplicaMap(new AutoCloseableLock());
+  private final AutoCloseableLock lock = new AutoCloseableLock();
+  private final ReplicaMap map = new ReplicaMap(lock);
   private final String bpid = "BP-TEST";
   private final  Block block = new Block(1234, 1234, 1234);
   
@@ -108,4 +117,26 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  /**
+   * Test that the lookups do not wait for the lock of the map, which is held
+   * by the updates of the replicas of the DataNode.
+   */
+  @Test(timeout=60000)
+  public void testGetWithoutLock() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (AutoCloseableLock l = lock.acquire()) {
+      Future<ReplicaInfo> future = executor.submit(
+          new Callable<ReplicaInfo>() {
+            @Override
+            public ReplicaInfo call() {
+              assertEquals(1, map.size(bpid));
+              return map.get(bpid, block);
+            }
+          });
+      assertNotNull(future.get(30, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
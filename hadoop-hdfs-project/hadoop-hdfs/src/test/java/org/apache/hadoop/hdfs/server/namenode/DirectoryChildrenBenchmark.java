@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.util.ChunkedList;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Micro-benchmark of the children list of a very large directory.
+ * <p>
+ * It fills a list with <code>numChildren</code> inodes, then times random
+ * creates, random deletes and a full listing in pages of 1000 entries, the
+ * default listing limit, the way
+ * {@link INodeDirectory} and {@link FSDirStatAndListingOp} use the list. The
+ * {@link ArrayList} used for small directories is compared with the
+ * {@link ChunkedList} used for large ones.
+ * <p>
+ * Usage: DirectoryChildrenBenchmark [numChildren [numOps]]
+ * <p>
+ * The default of 10 million children needs a heap of a few gigabytes.
+ */
+public class DirectoryChildrenBenchmark {
+  private static final PermissionStatus PERM = PermissionStatus.createImmutable(
+      "user", "group", FsPermission.createImmutable((short) 0755));
+  private static final int PAGE_SIZE = 1000;
+
+  public static void main(String[] args) {
+    final int numChildren = args.length > 0 ?
+        Integer.parseInt(args[0]) : 10 * 1000 * 1000;
+    final int numOps = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+    // Children names are spread out so that creates can go in between them
+    final List<INode> inodes = new ArrayList<>(numChildren);
+    for (int i = 0; i < numChildren; i++) {
+      inodes.add(newINode(2L * i));
+    }
+    final List<INode> creates = new ArrayList<>(numOps);
+    final Random random = new Random(0);
+    for (int i = 0; i < numOps; i++) {
+      creates.add(newINode(2L * random.nextInt(numChildren) + 1));
+    }
+
+    run("ArrayList", new ArrayList<>(inodes), creates, numOps);
+    run("ChunkedList", new ChunkedList<>(
+        INodeDirectory.CHILDREN_CHUNK_SIZE, inodes), creates, numOps);
+  }
+
+  private static INode newINode(long id) {
+    return new INodeDirectory(id,
+        DFSUtil.string2Bytes(String.format("child%012d", id)), PERM, 0L);
+  }
+
+  private static void run(String name, List<INode> children,
+      List<INode> creates, int numOps) {
+    final Random random = new Random(0);
+
+    long start = Time.monotonicNow();
+    for (INode inode : creates) {
+      final int i = Collections.binarySearch(children,
+          inode.getLocalNameBytes());
+      if (i < 0) {
+        children.add(-i - 1, inode);
+      }
+    }
+    final long createMs = Time.monotonicNow() - start;
+
+    start = Time.monotonicNow();
+    for (int k = 0; k < numOps; k++) {
+      final INode inode = children.get(random.nextInt(children.size()));
+      final int i = Collections.binarySearch(children,
+          inode.getLocalNameBytes());
+      children.remove(i);
+    }
+    final long deleteMs = Time.monotonicNow() - start;
+
+    // List the directory page by page, looking up the start of each page by
+    // the last name returned, like getListing does
+    start = Time.monotonicNow();
+    long listed = 0;
+    byte[] startAfter = new byte[0];
+    while (true) {
+      int i = Collections.binarySearch(children, startAfter);
+      i = i < 0 ? -i - 1 : i + 1;
+      final int end = Math.min(i + PAGE_SIZE, children.size());
+      if (i >= end) {
+        break;
+      }
+      for (; i < end; i++) {
+        startAfter = children.get(i).getLocalNameBytes();
+        listed++;
+      }
+    }
+    final long listMs = Time.monotonicNow() - start;
+
+    System.out.println(name + ": " + numOps + " creates in " + createMs
+        + " ms, " + numOps + " deletes in " + deleteMs + " ms, listed "
+        + listed + " children in " + listMs + " ms");
+  }
+}
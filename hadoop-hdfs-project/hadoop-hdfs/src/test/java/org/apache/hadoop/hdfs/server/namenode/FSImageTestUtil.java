@@ -189,6 +189,11 @@ public static FSImageTransactionalStorageInspector inspectStorageDirectory(
    */
   public static FSEditLog createStandaloneEditLog(File logDir)
       throws IOException {
+    return createStandaloneEditLog(logDir, new Configuration());
+  }
+
+  public static FSEditLog createStandaloneEditLog(File logDir,
+      Configuration conf) throws IOException {
     assertTrue(logDir.mkdirs() || logDir.exists());
     if (!FileUtil.fullyDeleteContents(logDir)) {
       throw new IOException("Unable to delete contents of " + logDir);
@@ -201,7 +206,7 @@ public static FSEditLog createStandaloneEditLog(File logDir)
     Mockito.doReturn(sd).when(storage)
       .getStorageDirectory(Matchers.<URI>anyObject());
 
-    FSEditLog editLog = new FSEditLog(new Configuration(), 
+    FSEditLog editLog = new FSEditLog(conf,
                          storage,
                          ImmutableList.of(logDir.toURI()));
     editLog.initJournalsForWrite();
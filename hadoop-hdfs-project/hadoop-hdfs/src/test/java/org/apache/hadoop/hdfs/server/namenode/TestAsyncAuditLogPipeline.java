@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AsyncAuditLogPipeline}.
+ */
+public class TestAsyncAuditLogPipeline {
+
+  /** Records the commands it is asked to log. */
+  private static class RecordingAuditLogger implements AuditLogger {
+    private final List<String> cmds =
+        Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release;
+
+    RecordingAuditLogger(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void initialize(Configuration conf) {
+    }
+
+    @Override
+    public void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus stat) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      cmds.add(cmd);
+    }
+  }
+
+  /** Throws an {@link Error} on the first event, and records the others. */
+  private static class FailingAuditLogger extends RecordingAuditLogger {
+    private boolean failed;
+
+    FailingAuditLogger() {
+      super(new CountDownLatch(0));
+    }
+
+    @Override
+    public void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus stat) {
+      if (!failed) {
+        failed = true;
+        throw new Error("Injected failure of " + cmd);
+      }
+      super.logAuditEvent(succeeded, userName, addr, cmd, src, dst, stat);
+    }
+  }
+
+  private static void log(AsyncAuditLogPipeline pipeline, int i)
+      throws Exception {
+    pipeline.logAuditEvent(true, "user", UserGroupInformation.getCurrentUser(),
+        null, "cmd" + i, "/src", null, null, null);
+  }
+
+  @Test(timeout = 30000)
+  public void testEventsLoggedInOrderAndDrainedOnStop() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY, 7);
+    RecordingAuditLogger logger =
+        new RecordingAuditLogger(new CountDownLatch(0));
+    AsyncAuditLogPipeline pipeline = new AsyncAuditLogPipeline(conf,
+        Collections.<AuditLogger>singletonList(logger), null);
+    pipeline.start();
+    for (int i = 0; i < 100; i++) {
+      log(pipeline, i);
+    }
+    pipeline.stop();
+    assertEquals(100, logger.cmds.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("cmd" + i, logger.cmds.get(i));
+    }
+    assertEquals(0, pipeline.getQueueSize());
+    assertEquals(0, pipeline.getDroppedEvents());
+  }
+
+  @Test(timeout = 30000)
+  public void testDiscardWhenFull() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 10);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY, 1);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY,
+        AsyncAuditLogPipeline.OverflowPolicy.DISCARD.name());
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingAuditLogger logger = new RecordingAuditLogger(release);
+    AsyncAuditLogPipeline pipeline = new AsyncAuditLogPipeline(conf,
+        Collections.<AuditLogger>singletonList(logger), null);
+    // Fill the queue before the dispatcher runs so the count is exact.
+    for (int i = 0; i < 25; i++) {
+      log(pipeline, i);
+    }
+    assertEquals(10, pipeline.getQueueSize());
+    assertEquals(15, pipeline.getDroppedEvents());
+    pipeline.start();
+    release.countDown();
+    pipeline.stop();
+    assertEquals(10, logger.cmds.size());
+    assertEquals("cmd0", logger.cmds.get(0));
+    assertEquals("cmd9", logger.cmds.get(9));
+  }
+
+  @Test(timeout = 30000)
+  public void testDispatcherSurvivesLoggerError() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY, 1);
+    FailingAuditLogger logger = new FailingAuditLogger();
+    AsyncAuditLogPipeline pipeline = new AsyncAuditLogPipeline(conf,
+        Collections.<AuditLogger>singletonList(logger), null);
+    pipeline.start();
+    // More events than the queue holds, so the handlers would block if the
+    // dispatcher died on the first one.
+    for (int i = 0; i < 20; i++) {
+      log(pipeline, i);
+    }
+    pipeline.stop();
+    assertEquals(19, logger.cmds.size());
+    for (int i = 1; i < 20; i++) {
+      assertEquals("cmd" + i, logger.cmds.get(i - 1));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testBlockedEventLoggedWithoutDispatcher() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 2);
+    RecordingAuditLogger logger =
+        new RecordingAuditLogger(new CountDownLatch(0));
+    AsyncAuditLogPipeline pipeline = new AsyncAuditLogPipeline(conf,
+        Collections.<AuditLogger>singletonList(logger), null);
+    // Nothing drains the full queue, so the handler logs the event itself
+    // instead of waiting forever.
+    for (int i = 0; i < 3; i++) {
+      log(pipeline, i);
+    }
+    assertEquals(2, pipeline.getQueueSize());
+    assertEquals(1, logger.cmds.size());
+    assertEquals("cmd2", logger.cmds.get(0));
+  }
+}
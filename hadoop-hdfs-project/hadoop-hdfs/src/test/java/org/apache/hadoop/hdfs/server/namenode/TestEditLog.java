@@ -39,6 +39,7 @@
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.URI;
+import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -48,8 +49,13 @@
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -73,14 +79,20 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
+import org.apache.hadoop.hdfs.server.namenode.JournalSet.JournalAndStream;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.util.XMLUtils.InvalidXmlException;
 import org.apache.hadoop.hdfs.util.XMLUtils.Stanza;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.ipc.ExternalCall;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
+import org.apache.hadoop.util.ExitUtil;
+import org.apache.hadoop.util.ExitUtil.ExitException;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Time;
 import org.apache.log4j.Level;
@@ -92,6 +104,8 @@
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
@@ -1023,6 +1037,186 @@ public void testAutoSync() throws Exception {
     }
   }
 
+  /**
+   * Test that an rpc handler which would wait for a sync run by another
+   * thread postpones the response of its call instead, and that the
+   * response is sent once its edit is synced.
+   */
+  @Test(timeout=60000)
+  public void testPostponeSyncResponse() throws Exception {
+    File logDir = new File(TEST_DIR, "testPostponeSyncResponse");
+    logDir.mkdirs();
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_KEY, true);
+    final FSEditLog log =
+        FSImageTestUtil.createStandaloneEditLog(logDir, conf);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      log.openForWrite(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+      final long startTxId = log.getSyncTxId();
+
+      // Block the first sync until the handler has logged its edit
+      JournalAndStream jas = log.getJournals().get(0);
+      EditLogOutputStream spyElos = Mockito.spy(jas.getCurrentStream());
+      jas.setCurrentStreamForTests(spyElos);
+      final CountDownLatch inFlush = new CountDownLatch(1);
+      final CountDownLatch releaseFlush = new CountDownLatch(1);
+      Mockito.doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          if (inFlush.getCount() > 0) {
+            inFlush.countDown();
+            releaseFlush.await();
+          }
+          invocation.callRealMethod();
+          return null;
+        }
+      }).when(spyElos).flush();
+
+      Thread syncer = new Thread() {
+        @Override
+        public void run() {
+          log.logDelete("/a", 1L, false);
+          log.logSync();
+        }
+      };
+      syncer.start();
+      inFlush.await();
+
+      final ExternalCall<Void> call = new ExternalCall<Void>(
+          new PrivilegedExceptionAction<Void>() {
+            @Override
+            public Void run() {
+              log.logDelete("/b", 1L, false);
+              log.logSync();
+              return null;
+            }
+          }) {
+        @Override
+        public UserGroupInformation getRemoteUser() {
+          return null;
+        }
+      };
+      // Run the call like an rpc handler would; it must not block
+      Server.getCurCall().set(call);
+      try {
+        call.run();
+      } finally {
+        Server.getCurCall().set(null);
+      }
+      Future<Void> response = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          return call.get();
+        }
+      });
+      try {
+        response.get(1, TimeUnit.SECONDS);
+        fail("Response sent before the edit was synced");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      // The syncing thread syncs the postponed edit too, then responds
+      releaseFlush.countDown();
+      response.get();
+      syncer.join();
+      assertEquals(startTxId + 2, log.getSyncTxId());
+    } finally {
+      executor.shutdownNow();
+      log.close();
+    }
+  }
+
+  /**
+   * Test that a postponed response is aborted, not sent, if the sync which
+   * covers its edit fails.
+   */
+  @Test(timeout=60000)
+  public void testPostponedResponseAbortedOnSyncFailure() throws Exception {
+    File logDir =
+        new File(TEST_DIR, "testPostponedResponseAbortedOnSyncFailure");
+    logDir.mkdirs();
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_SYNC_POSTPONE_RESPONSE_KEY, true);
+    final FSEditLog log =
+        FSImageTestUtil.createStandaloneEditLog(logDir, conf);
+    ExitUtil.disableSystemExit();
+    try {
+      log.openForWrite(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+
+      // Fail the first sync once the handler has logged its edit
+      JournalAndStream jas = log.getJournals().get(0);
+      EditLogOutputStream spyElos = Mockito.spy(jas.getCurrentStream());
+      jas.setCurrentStreamForTests(spyElos);
+      final CountDownLatch inFlush = new CountDownLatch(1);
+      final CountDownLatch releaseFlush = new CountDownLatch(1);
+      Mockito.doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          invocation.callRealMethod();
+          if (inFlush.getCount() > 0) {
+            inFlush.countDown();
+            releaseFlush.await();
+            throw new IOException("Injected failure");
+          }
+          return null;
+        }
+      }).when(spyElos).flush();
+
+      final ExitException[] syncFailure = new ExitException[1];
+      Thread syncer = new Thread() {
+        @Override
+        public void run() {
+          log.logDelete("/a", 1L, false);
+          try {
+            log.logSync();
+          } catch (ExitException e) {
+            syncFailure[0] = e;
+          }
+        }
+      };
+      syncer.start();
+      inFlush.await();
+
+      final ExternalCall<Void> call = new ExternalCall<Void>(
+          new PrivilegedExceptionAction<Void>() {
+            @Override
+            public Void run() {
+              log.logDelete("/b", 1L, false);
+              log.logSync();
+              return null;
+            }
+          }) {
+        @Override
+        public UserGroupInformation getRemoteUser() {
+          return null;
+        }
+      };
+      Server.getCurCall().set(call);
+      try {
+        call.run();
+      } finally {
+        Server.getCurCall().set(null);
+      }
+
+      releaseFlush.countDown();
+      syncer.join();
+      assertNotNull(syncFailure[0]);
+      try {
+        call.get();
+        fail("Response sent for an edit which failed to sync");
+      } catch (ExecutionException e) {
+        GenericTestUtils.assertExceptionContains("Failed to sync edits",
+            e.getCause());
+      }
+    } finally {
+      ExitUtil.resetFirstExitException();
+    }
+  }
+
   /**
    * Tests the getEditLogManifest function using mock storage for a number
    * of different situations.
@@ -73,15 +73,18 @@ public class TestEditLogRace {
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{ false });
-    params.add(new Object[]{ true });
+    params.add(new Object[]{ false, 1 });
+    params.add(new Object[]{ true, 1 });
+    params.add(new Object[]{ true, 4 });
     return params;
   }
 
   private static boolean useAsyncEditLog;
+  private static int syncPipelineDepth;
 
-  public TestEditLogRace(boolean useAsyncEditLog) {
+  public TestEditLogRace(boolean useAsyncEditLog, int syncPipelineDepth) {
     TestEditLogRace.useAsyncEditLog = useAsyncEditLog;
+    TestEditLogRace.syncPipelineDepth = syncPipelineDepth;
   }
 
   private static final Log LOG = LogFactory.getLog(TestEditLogRace.class);
@@ -361,6 +364,9 @@ private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEditLog);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINE_DEPTH_KEY,
+        syncPipelineDepth);
     FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
     //conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY, NAME_DIR);
@@ -32,6 +32,7 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 
 import org.apache.hadoop.hdfs.StripedFileTestUtil;
@@ -963,4 +964,151 @@ private void testChangeErasureCodingPolicyState(MiniDFSCluster cluster,
     DFSTestUtil.readFileAsBytes(fs, filePath);
     fs.delete(dirPath, true);
   }
+
+  @Test
+  public void testParallelSaveAndLoad() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 2);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        Path dir = new Path("/dir" + i);
+        fs.mkdirs(dir);
+        for (int j = 0; j < 5; j++) {
+          DFSTestUtil.createFile(fs, new Path(dir, "file" + j), 1024,
+              (short) 1, 0L);
+        }
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File imageFile = FSImageTestUtil.findLatestImageFile(
+          FSImageTestUtil.getFSImage(cluster.getNameNode())
+              .getStorage().getStorageDir(0));
+      RandomAccessFile raFile = new RandomAccessFile(imageFile, "r");
+      FsImageProto.FileSummary summary;
+      try {
+        summary = FSImageUtil.loadSummary(raFile);
+      } finally {
+        raFile.close();
+      }
+      int inodeSubSections = 0;
+      int inodeDirSubSections = 0;
+      for (FsImageProto.FileSummary.Section s : summary.getSectionsList()) {
+        if (FSImageFormatProtobuf.SectionName.INODE_SUB.toString()
+            .equals(s.getName())) {
+          inodeSubSections++;
+        } else if (FSImageFormatProtobuf.SectionName.INODE_DIR_SUB.toString()
+            .equals(s.getName())) {
+          inodeDirSubSections++;
+        }
+      }
+      assertTrue("Image should contain INODE sub-sections",
+          inodeSubSections > 1);
+      assertTrue("Image should contain INODE_DIR sub-sections",
+          inodeDirSubSections > 0);
+
+      long inodes = cluster.getNamesystem().dir.getINodeMap().size();
+      cluster.restartNameNodes();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      assertEquals(inodes, cluster.getNamesystem().dir.getINodeMap().size());
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 5; j++) {
+          Path file = new Path("/dir" + i, "file" + j);
+          assertEquals(1024, fs.getFileStatus(file).getLen());
+          DFSTestUtil.readFileAsBytes(fs, file);
+        }
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Save an image with several serialization tasks per INODE sub-section,
+   * the last of them short, on more than one thread, and load it back.
+   */
+  @Test
+  public void testParallelSaveWithSeveralTasksPerSubSection()
+      throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 4);
+    final int inodesPerSaveTask = FSImageFormatPBINode.Saver
+        .INODES_PER_SAVE_TASK;
+    FSImageFormatPBINode.Saver.INODES_PER_SAVE_TASK = 7;
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 25; j++) {
+          DFSTestUtil.createFile(fs, new Path("/dir" + i, "file" + j), 0,
+              (short) 1, 0L);
+        }
+      }
+      final long inodes = cluster.getNamesystem().dir.getINodeMap().size();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File imageFile = FSImageTestUtil.findLatestImageFile(
+          FSImageTestUtil.getFSImage(cluster.getNameNode())
+              .getStorage().getStorageDir(0));
+      RandomAccessFile raFile = new RandomAccessFile(imageFile, "r");
+      FsImageProto.FileSummary summary;
+      try {
+        summary = FSImageUtil.loadSummary(raFile);
+      } finally {
+        raFile.close();
+      }
+      long inodeSectionLength = 0;
+      long inodeSubSectionsLength = 0;
+      int inodeSubSections = 0;
+      for (FsImageProto.FileSummary.Section s : summary.getSectionsList()) {
+        if (FSImageFormatProtobuf.SectionName.INODE.toString()
+            .equals(s.getName())) {
+          inodeSectionLength = s.getLength();
+        } else if (FSImageFormatProtobuf.SectionName.INODE_SUB.toString()
+            .equals(s.getName())) {
+          assertTrue("Empty INODE sub-section", s.getLength() > 0);
+          inodeSubSectionsLength += s.getLength();
+          inodeSubSections++;
+        }
+      }
+      final long inodesPerSubSection = (inodes + 3) / 4;
+      assertEquals(
+          (inodes + inodesPerSubSection - 1) / inodesPerSubSection,
+          inodeSubSections);
+      assertEquals(inodeSectionLength, inodeSubSectionsLength);
+
+      cluster.restartNameNodes();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      assertEquals(inodes, cluster.getNamesystem().dir.getINodeMap().size());
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 25; j++) {
+          assertTrue(fs.exists(new Path("/dir" + i, "file" + j)));
+        }
+      }
+    } finally {
+      FSImageFormatPBINode.Saver.INODES_PER_SAVE_TASK = inodesPerSaveTask;
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
 }
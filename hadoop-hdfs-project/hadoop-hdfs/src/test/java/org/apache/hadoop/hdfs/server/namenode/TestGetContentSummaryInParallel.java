@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.PrivilegedExceptionAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.QuotaUsage;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class tests the computation of content summaries in parallel, with
+ * dfs.content-summary.threads set.
+ */
+public class TestGetContentSummaryInParallel {
+  private static final short REPLICATION = 1;
+  private static final long BLOCKSIZE = 1024;
+  private static final int FILE_LEN = 10;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private FSDirectory fsdir;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setInt(DFSConfigKeys.DFS_CONTENT_SUMMARY_THREADS_KEY, 4);
+    // make it split the tree and relinquish the locks often
+    conf.setInt(DFSConfigKeys.DFS_CONTENT_SUMMARY_LIMIT_KEY, 4);
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    fsdir = cluster.getNamesystem().getFSDirectory();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Create width directories under dir, each of them with width
+   * subdirectories of width files, and one file directly under dir.
+   */
+  private void createTree(Path dir, int width) throws Exception {
+    DFSTestUtil.createFile(dfs, new Path(dir, "file"), FILE_LEN, REPLICATION,
+        0L);
+    for (int i = 0; i < width; i++) {
+      for (int j = 0; j < width; j++) {
+        final Path sub = new Path(dir, "dir" + i + "/sub" + j);
+        dfs.mkdirs(sub);
+        for (int k = 0; k < width; k++) {
+          DFSTestUtil.createFile(dfs, new Path(sub, "file" + k), FILE_LEN,
+              REPLICATION, 0L);
+        }
+      }
+    }
+  }
+
+  /** @return the content summary computed sequentially, without yielding. */
+  private ContentSummary getSequentialSummary(Path path) throws Exception {
+    return fsdir.getINode(path.toString()).computeContentSummary(
+        fsdir.getBlockStoragePolicySuite());
+  }
+
+  private static void verifySummary(ContentSummary expected,
+      ContentSummary actual) {
+    assertEquals(expected.getDirectoryCount(), actual.getDirectoryCount());
+    assertEquals(expected.getFileCount(), actual.getFileCount());
+    assertEquals(expected.getLength(), actual.getLength());
+    assertEquals(expected.getSpaceConsumed(), actual.getSpaceConsumed());
+    assertEquals(expected.getSnapshotDirectoryCount(),
+        actual.getSnapshotDirectoryCount());
+    assertEquals(expected.getSnapshotFileCount(),
+        actual.getSnapshotFileCount());
+    assertEquals(expected.getSnapshotLength(), actual.getSnapshotLength());
+  }
+
+  @Test
+  public void testGetContentSummary() throws Exception {
+    final Path foo = new Path("/foo");
+    final int width = 5;
+    createTree(foo, width);
+
+    final long yieldCount = fsdir.getYieldCount();
+    final ContentSummary summary = dfs.getContentSummary(foo);
+    assertEquals(1 + width + width * width, summary.getDirectoryCount());
+    assertEquals(1 + width * width * width, summary.getFileCount());
+    assertEquals(FILE_LEN * summary.getFileCount(), summary.getLength());
+    verifySummary(getSequentialSummary(foo), summary);
+    // the locks were released while the subtrees were counted
+    assertTrue(fsdir.getYieldCount() > yieldCount);
+
+    // a small directory, which is not split, and a file
+    verifySummary(getSequentialSummary(new Path(foo, "dir0/sub0")),
+        dfs.getContentSummary(new Path(foo, "dir0/sub0")));
+    verifySummary(getSequentialSummary(new Path(foo, "file")),
+        dfs.getContentSummary(new Path(foo, "file")));
+
+    // without quota, getQuotaUsage falls back to the content summary
+    final QuotaUsage usage = dfs.getQuotaUsage(foo);
+    assertEquals(summary.getDirectoryCount() + summary.getFileCount(),
+        usage.getFileAndDirectoryCount());
+    assertEquals(summary.getSpaceConsumed(), usage.getSpaceConsumed());
+  }
+
+  @Test
+  public void testGetContentSummaryWithSnapshots() throws Exception {
+    final Path foo = new Path("/foo");
+    final int width = 4;
+    createTree(foo, width);
+    dfs.allowSnapshot(foo);
+    dfs.createSnapshot(foo, "s0");
+    // the deleted and renamed subtrees remain in the snapshot
+    dfs.delete(new Path(foo, "dir0"), true);
+    dfs.rename(new Path(foo, "dir1/sub0"), new Path(foo, "dir2/renamed"));
+    createTree(new Path(foo, "dir3/sub1"), 2);
+
+    verifySummary(getSequentialSummary(foo), dfs.getContentSummary(foo));
+
+    final Path snapshot = new Path(foo, ".snapshot/s0");
+    final ContentSummary summary = dfs.getContentSummary(snapshot);
+    assertEquals(1 + width + width * width, summary.getDirectoryCount());
+    assertEquals(1 + width * width * width, summary.getFileCount());
+  }
+
+  @Test
+  public void testGetContentSummaryWithPermission() throws Exception {
+    final Path foo = new Path("/foo");
+    createTree(foo, 4);
+    final UserGroupInformation userUgi =
+        UserGroupInformation.createUserForTesting(
+            "randomUser", new String[]{"randomGroup"});
+    final PrivilegedExceptionAction<ContentSummary> getContentSummary =
+        new PrivilegedExceptionAction<ContentSummary>() {
+          @Override
+          public ContentSummary run() throws Exception {
+            return cluster.getNameNodeRpc().getContentSummary(
+                foo.toString());
+          }
+        };
+    verifySummary(getSequentialSummary(foo),
+        userUgi.doAs(getContentSummary));
+
+    // a subdirectory deep enough to be counted by a pool thread
+    dfs.setPermission(new Path(foo, "dir3/sub2"), new FsPermission((short)0));
+    try {
+      userUgi.doAs(getContentSummary);
+      fail("Should've fail due to access control exception.");
+    } catch (AccessControlException e) {
+      assertTrue(e.getMessage().contains("Permission denied"));
+    }
+  }
+}
@@ -69,6 +69,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Assert;
@@ -290,6 +291,53 @@ public void testGetFullPathName() {
     assertEquals(Path.SEPARATOR, root.getFullPathName());
   }
 
+  /**
+   * Test that a directory keeps its children sorted and searchable while the
+   * children list grows past and shrinks below the size at which it is
+   * chunked.
+   */
+  @Test(timeout = 120000)
+  public void testLargeDirectoryChildren() {
+    final INodeDirectory dir = new INodeDirectory(
+        HdfsConstants.GRANDFATHER_INODE_ID, DFSUtil.string2Bytes("d"), perm,
+        0L);
+    final int n = INodeDirectory.CHUNKED_CHILDREN_THRESHOLD + 1000;
+    final List<INodeDirectory> children = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      children.add(new INodeDirectory(i,
+          DFSUtil.string2Bytes(String.format("c%08d", i)), perm, 0L));
+    }
+    // Add the even children, then fill in the odd ones in the middle
+    for (int i = 0; i < n; i += 2) {
+      assertTrue(dir.addChild(children.get(i)));
+    }
+    for (int i = 1; i < n; i += 2) {
+      assertTrue(dir.addChild(children.get(i)));
+    }
+    assertFalse(dir.addChild(children.get(n / 2)));
+    assertChildren(dir, children);
+
+    // Shrink below half the threshold
+    for (int i = n - 1; i >= INodeDirectory.CHUNKED_CHILDREN_THRESHOLD / 4;
+        i--) {
+      assertTrue(dir.removeChild(children.remove(i)));
+    }
+    assertChildren(dir, children);
+  }
+
+  private static void assertChildren(INodeDirectory dir,
+      List<INodeDirectory> expected) {
+    final ReadOnlyList<INode> actual =
+        dir.getChildrenList(Snapshot.CURRENT_STATE_ID);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSame(expected.get(i), actual.get(i));
+      assertSame(expected.get(i),
+          dir.getChild(expected.get(i).getLocalNameBytes(),
+              Snapshot.CURRENT_STATE_ID));
+    }
+  }
+
   @Test
   public void testGetBlockType() {
     replication = 3;
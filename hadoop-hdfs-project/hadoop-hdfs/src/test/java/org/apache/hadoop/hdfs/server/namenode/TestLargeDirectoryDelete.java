@@ -23,6 +23,8 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -88,6 +90,13 @@ private int getBlockCount() {
    */
   private void runThreads() throws Throwable {
     final TestThread threads[] = new TestThread[2];
+    // No file is created until the delete starts, see threads[0]
+    final FSDirectory fsd = mc.getNamesystem().getFSDirectory();
+    final long inodesBefore = fsd.getInodeMapSize();
+    final ContentSummary summary =
+        mc.getFileSystem().getContentSummary(new Path("/root"));
+    final long inodesDeleted =
+        summary.getFileCount() + summary.getDirectoryCount();
     
     // Thread for creating files
     threads[0] = new TestThread() {
@@ -138,6 +147,7 @@ protected void execute() throws Throwable {
     
     final long start = Time.now();
     FSNamesystem.BLOCK_DELETION_INCREMENT = 1;
+    FSNamesystem.INODE_DELETION_INCREMENT = 1;
     mc.getFileSystem().delete(new Path("/root"), true); // recursive delete
     final long end = Time.now();
     threads[0].endThread();
@@ -146,6 +156,17 @@ protected void execute() throws Throwable {
     LOG.info("createOperations " + createOps);
     LOG.info("lockOperations " + lockOps);
     Assert.assertTrue(lockOps + createOps > 0);
+    // Every inode under /root must have been drained from the inodeMap.
+    // threads[0] may have been stopped before it deleted its last file.
+    Assert.assertNull(fsd.getINode("/root"));
+    long inodesLeft = 0;
+    for (FileStatus status : mc.getFileSystem().listStatus(new Path("/"))) {
+      if (status.getPath().getName().startsWith("tmp")) {
+        inodesLeft++;
+      }
+    }
+    Assert.assertEquals(inodesBefore - inodesDeleted + inodesLeft,
+        fsd.getInodeMapSize());
     threads[0].rethrow();
     threads[1].rethrow();
   }
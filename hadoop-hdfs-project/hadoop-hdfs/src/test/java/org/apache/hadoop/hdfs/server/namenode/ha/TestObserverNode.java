@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.NameNodeProxiesClient;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the reads served by an observer NameNode.
+ */
+public class TestObserverNode {
+  private static final long MAX_WAIT_MS = 3000;
+
+  private MiniDFSCluster cluster;
+  private NameNode active;
+  private NameNode observer;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    // The observer only catches up when the test tails the edits.
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 3600);
+    conf.setLong(
+        CommonConfigurationKeys.IPC_SERVER_COORDINATED_CALL_MAX_WAIT_MS_KEY,
+        MAX_WAIT_MS);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology(3))
+        .numDataNodes(1)
+        .build();
+    cluster.getConfiguration(2).setBoolean(
+        DFSConfigKeys.DFS_HA_OBSERVER_ENABLED_KEY, true);
+    cluster.restartNameNode(2);
+    cluster.transitionToActive(0);
+    cluster.waitActive();
+    active = cluster.getNameNode(0);
+    observer = cluster.getNameNode(2);
+    assertTrue(observer.isObserverState());
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testObserverRejectsUncoordinatedCalls() throws Exception {
+    ClientProtocol uncoordinated = createProxy(observer, null);
+    try {
+      uncoordinated.getFileInfo("/");
+      fail("Observer served an uncoordinated read");
+    } catch (RemoteException e) {
+      assertStandby(e);
+    }
+
+    ClientProtocol coordinated = createProxy(observer, new ClientGSIContext());
+    assertNotNull(coordinated.getFileInfo("/"));
+    try {
+      coordinated.mkdirs("/dir", FsPermission.getDefault(), true);
+      fail("Observer served a write");
+    } catch (RemoteException e) {
+      assertStandby(e);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testCoordinatedReadWaitsForObserver() throws Exception {
+    ClientGSIContext context = new ClientGSIContext();
+    ClientProtocol toActive = createProxy(active, context);
+    final ClientProtocol toObserver = createProxy(observer, context);
+    assertTrue(toActive.mkdirs("/dir", FsPermission.getDefault(), true));
+
+    // The observer never catches up, so the read is rejected once the
+    // maximum wait expires.
+    long start = Time.monotonicNow();
+    try {
+      toObserver.getFileInfo("/dir");
+      fail("Observer served a read ahead of its state");
+    } catch (RemoteException e) {
+      assertStandby(e);
+    }
+    assertTrue(Time.monotonicNow() - start >= MAX_WAIT_MS);
+
+    // The read is served as soon as the observer catches up.
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<HdfsFileStatus> read = executor.submit(
+          new Callable<HdfsFileStatus>() {
+            @Override
+            public HdfsFileStatus call() throws IOException {
+              return toObserver.getFileInfo("/dir");
+            }
+          });
+      catchUp();
+      assertNotNull(read.get());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertNull(toObserver.getFileInfo("/nonexistent"));
+  }
+
+  @Test(timeout = 60000)
+  public void testObserverRejectsBlocksWithoutLocations() throws Exception {
+    FileSystem fs = cluster.getFileSystem(0);
+    Path file = new Path("/file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    catchUp();
+
+    ClientGSIContext context = new ClientGSIContext();
+    ClientProtocol toActive = createProxy(active, context);
+    final ClientProtocol toObserver = createProxy(observer, context);
+    final String src = file.toString();
+    assertNotNull(toActive.getFileInfo(src));
+    cluster.triggerBlockReports();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return toObserver.getBlockLocations(src, 0, 1024) != null;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    }, 100, 30000);
+
+    // Once the only replica is gone the observer sends the client to the
+    // active instead of returning a block it cannot be read from.
+    DataNode dn = cluster.getDataNodes().get(0);
+    String dnName = dn.getDatanodeId().getXferAddr();
+    cluster.stopDataNode(0);
+    BlockManagerTestUtil.noticeDeadDatanode(observer, dnName);
+    try {
+      toObserver.getBlockLocations(src, 0, 1024);
+      fail("Observer returned a block without locations");
+    } catch (RemoteException e) {
+      assertStandby(e);
+    }
+  }
+
+  private ClientProtocol createProxy(NameNode nn,
+      AlignmentContext alignmentContext) throws IOException {
+    return NameNodeProxiesClient.createNonHAProxyWithClientProtocol(
+        nn.getNameNodeAddress(), cluster.getConfiguration(0),
+        UserGroupInformation.getCurrentUser(), false, null,
+        alignmentContext);
+  }
+
+  private void catchUp() throws Exception {
+    active.getRpcServer().rollEditLog();
+    observer.getNamesystem().getEditLogTailer().doTailEdits();
+  }
+
+  private static void assertStandby(RemoteException e) {
+    assertTrue("Unexpected exception " + e,
+        e.unwrapRemoteException() instanceof StandbyException);
+  }
+}
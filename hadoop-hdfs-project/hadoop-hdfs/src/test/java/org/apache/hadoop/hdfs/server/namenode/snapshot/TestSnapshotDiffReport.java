@@ -24,9 +24,11 @@
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -1409,4 +1411,40 @@ public void testDiffReportWithRpcLimit2() throws Exception {
         new DiffReportEntry(DiffType.DELETE,
             DFSUtil.string2Bytes("dir3/file3")));
   }
+
+  /**
+   * Tests the diff report of a directory with many children, only some of
+   * which changed, so that the rpcs resume the computation from children in
+   * the middle of the directory and of its subdirectories.
+   */
+  @Test
+  public void testDiffReportWithRpcLimitAndManyChildren() throws Exception {
+    final Path root = new Path("/");
+    final int numDirs = 30;
+    for (int i = 0; i < numDirs; i++) {
+      hdfs.mkdirs(new Path(root, String.format("dir%02d", i)));
+    }
+    SnapshotTestHelper.createSnapshot(hdfs, root, "s0");
+    final List<DiffReportEntry> entries = new ArrayList<>();
+    entries.add(
+        new DiffReportEntry(DiffType.MODIFY, DFSUtil.string2Bytes("")));
+    for (int i = 0; i < numDirs; i += 3) {
+      final String dir = String.format("dir%02d", i);
+      entries.add(
+          new DiffReportEntry(DiffType.MODIFY, DFSUtil.string2Bytes(dir)));
+      for (int j = 0; j < 5; j++) {
+        final String file = dir + "/file" + j;
+        DFSTestUtil.createFile(hdfs, new Path(root, file), BLOCKSIZE,
+            REPLICATION, SEED);
+        entries.add(
+            new DiffReportEntry(DiffType.CREATE, DFSUtil.string2Bytes(file)));
+      }
+    }
+    hdfs.mkdirs(new Path(root, "dir99"));
+    entries.add(
+        new DiffReportEntry(DiffType.CREATE, DFSUtil.string2Bytes("dir99")));
+    SnapshotTestHelper.createSnapshot(hdfs, root, "s1");
+    verifyDiffReport(root, "s0", "s1",
+        entries.toArray(new DiffReportEntry[entries.size()]));
+  }
 }
@@ -117,6 +117,30 @@ public void testLast() {
     }
   }
 
+  /**
+   * Test of tailIterator method, of class TreeSet.
+   */
+  @Test
+  public void testTailIterator() {
+    FoldedTreeSet<Integer> tree = new FoldedTreeSet<>();
+    assertFalse(tree.tailIterator(0).hasNext());
+    // Even numbers only, spread over many nodes
+    for (int i = 0; i < 2048; i += 2) {
+      tree.add(i);
+    }
+    for (int from = -1; from < 2048; from++) {
+      Iterator<Integer> it = tree.tailIterator(from);
+      int expected = Math.max(0, from + (from & 1));
+      while (expected < 2048) {
+        assertTrue(it.hasNext());
+        assertEquals(expected, it.next().intValue());
+        expected += 2;
+      }
+      assertFalse(it.hasNext());
+    }
+    assertFalse(tree.tailIterator(2047).hasNext());
+  }
+
   /**
    * Test of size method, of class TreeSet.
    */
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test {@link ChunkedList} against {@link ArrayList}.
+ */
+public class TestChunkedList {
+  private static final int CHUNK_SIZE = 16;
+
+  @Test(timeout=60000)
+  public void testRandomOperations() {
+    final long seed = new Random().nextLong();
+    System.out.println("seed = " + seed);
+    final Random random = new Random(seed);
+    final List<Integer> expected = new ArrayList<>();
+    final ChunkedList<Integer> actual = new ChunkedList<>(CHUNK_SIZE);
+
+    for (int i = 0; i < 20000; i++) {
+      // Grow during the first half and shrink during the second half
+      final boolean add = expected.isEmpty()
+          || random.nextInt(100) < (i < 10000 ? 70 : 30);
+      if (add) {
+        final int index = random.nextInt(expected.size() + 1);
+        expected.add(index, i);
+        actual.add(index, i);
+      } else if (random.nextBoolean()) {
+        final int index = random.nextInt(expected.size());
+        assertEquals(expected.remove(index), actual.remove(index));
+      } else {
+        final int index = random.nextInt(expected.size());
+        assertEquals(expected.set(index, -i), actual.set(index, -i));
+      }
+      assertEquals(expected.size(), actual.size());
+      if (i % 1000 == 0) {
+        assertEquals(expected, actual);
+      }
+    }
+    assertEquals(expected, actual);
+    assertEquals(expected, new ArrayList<>(actual));
+  }
+
+  @Test
+  public void testChunks() {
+    final ChunkedList<Integer> list = new ChunkedList<>(CHUNK_SIZE);
+    for (int i = 0; i < CHUNK_SIZE * 10; i++) {
+      list.add(i);
+      assertEquals(i, list.get(i).intValue());
+    }
+    // Appending splits full chunks in half
+    assertTrue(list.getNumChunks() >= 10);
+    assertTrue(list.getNumChunks() <= 20);
+
+    // Removing merges small chunks again
+    while (list.size() > 1) {
+      list.remove(list.size() / 2);
+    }
+    assertEquals(1, list.getNumChunks());
+    list.remove(0);
+    assertEquals(0, list.getNumChunks());
+    assertTrue(list.isEmpty());
+  }
+
+  @Test
+  public void testCopyAndBinarySearch() {
+    final List<Integer> sorted = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      sorted.add(2 * i);
+    }
+    final ChunkedList<Integer> list = new ChunkedList<>(CHUNK_SIZE, sorted);
+    assertEquals(sorted, list);
+    // Copied chunks are half full
+    assertEquals(1000 / (CHUNK_SIZE / 2), list.getNumChunks());
+    for (int i = 0; i < 2000; i++) {
+      assertEquals(Collections.binarySearch(sorted, i),
+          Collections.binarySearch(list, i));
+    }
+  }
+
+  @Test
+  public void testOutOfBounds() {
+    final ChunkedList<Integer> list = new ChunkedList<>(CHUNK_SIZE);
+    list.add(0);
+    try {
+      list.get(1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      list.add(2, 2);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      list.remove(-1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+}